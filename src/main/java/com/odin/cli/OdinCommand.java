@@ -4,23 +4,37 @@ import picocli.CommandLine;
 import picocli.CommandLine.Command;
 import picocli.CommandLine.Option;
 import picocli.CommandLine.Parameters;
+import picocli.CommandLine.ParentCommand;
+import picocli.CommandLine.ScopeType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import com.odin.detection.DetectionCache;
+import com.odin.detection.IgnoreRules;
+import com.odin.detection.RuleRegistry;
 import com.odin.detection.StackDetector;
 import com.odin.detection.Stack;
+import com.odin.detection.StackWatcher;
 import com.odin.generators.*;
 import com.odin.validators.*;
 import com.odin.explainer.Explainer;
+import com.odin.llm.LLMClient;
+import com.odin.llm.LLMClientFactory;
+import com.odin.llm.ResponseCache;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.odin.monitoring.DockerMonitor;
 
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
-import java.nio.file.Paths;
+import java.util.Set;
 import java.util.List;
 
 /**
@@ -49,11 +63,74 @@ import java.util.List;
 public class OdinCommand implements Callable<Integer> {
     private static final Logger logger = LoggerFactory.getLogger(OdinCommand.class);
 
+    // How LLM responses are cached; the switches below override ODIN_LLM_CACHE for this run only
+    private ResponseCache.Mode cacheMode = ResponseCache.Mode.configured();
+
     public static void main(String[] args) {
         int exitCode = new CommandLine(new OdinCommand()).execute(args);
         System.exit(exitCode);
     }
 
+    /**
+     * Creates a StackDetector backed by the persistent detection cache, so
+     * repeated runs on an unchanged project skip re-reading its files, and by
+     * the bundled detection rules merged with the user's rule packs. The LLM
+     * is consulted only when static detection is unsure, and never with {@code --no-ai}.
+     *
+     * @param noAi Whether to rely on static detection alone
+     */
+    private StackDetector newStackDetector(boolean noAi) {
+        RuleRegistry rules = RuleRegistry.load(RuleRegistry.defaultUserDirectory(), DetectionCache.defaultDirectory());
+        StackDetector detector = new StackDetector(newLLMClient(System.getenv("LLM_PROVIDER")), rules);
+        detector.setCacheDirectory(DetectionCache.defaultDirectory());
+        detector.setAiFallbackThreshold(noAi ? 0 : StackDetector.DEFAULT_AI_FALLBACK_THRESHOLD);
+        return detector;
+    }
+
+    /**
+     * Creates an LLM client using the response cache as the command line says.
+     *
+     * @param provider The LLM provider, ollama if null
+     */
+    private LLMClient newLLMClient(String provider) {
+        return LLMClientFactory.createClient(provider, cacheMode);
+    }
+
+    /**
+     * Sends every LLM request, even one answered before, and skips the response cache.
+     */
+    @Option(names = "--no-cache", scope = ScopeType.INHERIT,
+        description = "Neither use nor update the cache of LLM responses")
+    void setNoCache(boolean noCache) {
+        if (noCache) {
+            cacheMode = ResponseCache.Mode.OFF;
+        }
+    }
+
+    /**
+     * Sends every LLM request again and replaces the cached responses.
+     */
+    @Option(names = "--refresh", scope = ScopeType.INHERIT,
+        description = "Ask the LLM again and replace its cached responses")
+    void setRefresh(boolean refresh) {
+        if (refresh) {
+            cacheMode = ResponseCache.Mode.REFRESH;
+        }
+    }
+
+    /**
+     * @return How the LLM clients of this run use the response cache
+     */
+    ResponseCache.Mode getCacheMode() {
+        return cacheMode;
+    }
+
+    // What the single-artifact generators read of the stack; anything else is detected on first read
+    private static final Set<Stack.Aspect> CONTAINER_ASPECTS = EnumSet.of(
+        Stack.Aspect.LANGUAGE, Stack.Aspect.FRAMEWORK, Stack.Aspect.DATABASES, Stack.Aspect.PORTS);
+    private static final Set<Stack.Aspect> PIPELINE_ASPECTS = EnumSet.of(
+        Stack.Aspect.LANGUAGE, Stack.Aspect.FRAMEWORK);
+
     @Override
     public Integer call() {
         logger.error("No command specified. Use --help to see available commands.");
@@ -65,12 +142,33 @@ public class OdinCommand implements Callable<Integer> {
         description = "Detect and summarize project stack"
     )
     public static class InitCommand implements Callable<Integer> {
-        @Parameters(index = "0", description = "Project root directory")
+        @ParentCommand
+        private OdinCommand parent;
+
+        @Parameters(index = "0", description = "Project root directory, or a .zip, .jar, .tar or .tar.gz archive of it")
         private Path projectDir;
 
         @Option(names = "--provider", description = "LLM provider to use (ollama/gemini)")
         private String provider;
 
+        @Option(names = "--exclude", split = ",", description = "Additional file or directory names to skip during detection")
+        private List<String> excludes;
+
+        @Option(names = "--watch", description = "Keep watching the project and report the stack whenever it changes, by static detection alone")
+        private boolean watch;
+
+        @Option(names = "--debounce", description = "Quiet period in milliseconds before re-detecting in watch mode (default: 500)")
+        private long debounceMillis = StackWatcher.DEFAULT_DEBOUNCE.toMillis();
+
+        @Option(names = "--max-scan-time", description = "Stop detection after this many seconds and report the best stack found so far")
+        private Long maxScanSeconds;
+
+        @Option(names = "--max-files", description = "Read at most this many files, manifests and entrypoints first, and report the best stack found so far")
+        private int maxFiles;
+
+        @Option(names = "--no-ai", description = "Never ask the LLM, even when static detection is unsure")
+        private boolean noAi;
+
         @Override
         public Integer call() throws Exception {
             logger.info("Analyzing project stack in: {}", projectDir);
@@ -80,9 +178,35 @@ public class OdinCommand implements Callable<Integer> {
                 System.setProperty("LLM_PROVIDER", provider);
             }
             
-            StackDetector detector = new StackDetector();
+            // Re-detection on every change must stay fast and offline
+            StackDetector detector = parent.newStackDetector(noAi || watch);
+            if (excludes != null) {
+                Set<String> denyList = new HashSet<>(IgnoreRules.DEFAULT_DENY_LIST);
+                denyList.addAll(excludes);
+                detector.setDenyList(denyList);
+            }
+            if (maxScanSeconds != null) {
+                detector.setMaxScanTime(Duration.ofSeconds(maxScanSeconds));
+            }
+            detector.setMaxFiles(maxFiles);
+            if (watch) {
+                return watch(detector);
+            }
             Stack stack = detector.detectStack(projectDir);
             logger.info("Detected stack: {}", stack);
+            if (stack.isTruncated()) {
+                logger.warn("Detection stopped at the scan budget; the stack above is the best found so far");
+            }
+            logger.info("Scan throughput: {}", detector.getLastScanStats());
+            return 0;
+        }
+
+        private int watch(StackDetector detector) throws IOException, InterruptedException {
+            try (StackWatcher watcher = new StackWatcher(detector, projectDir, Duration.ofMillis(debounceMillis))) {
+                logger.info("Detected stack: {}", watcher.start());
+                logger.info("Watching {} for changes, press Ctrl+C to stop", projectDir);
+                watcher.watch(stack -> logger.info("Stack changed: {}", stack));
+            }
             return 0;
         }
     }
@@ -92,6 +216,9 @@ public class OdinCommand implements Callable<Integer> {
         description = "Generate Dockerfile"
     )
     public static class DockerCommand implements Callable<Integer> {
+        @ParentCommand
+        private OdinCommand parent;
+
         @Option(names = {"-o", "--output"}, description = "Output directory")
         private Path outputDir;
 
@@ -101,6 +228,9 @@ public class OdinCommand implements Callable<Integer> {
         @Option(names = {"--provider"}, description = "LLM provider to use (ollama/gemini)")
         private String provider = "ollama";
 
+        @Option(names = "--no-ai", description = "Never ask the LLM, even when static detection is unsure")
+        private boolean noAi;
+
         @Override
         public Integer call() throws IOException {
             logger.info("Generating Dockerfile");
@@ -109,10 +239,10 @@ public class OdinCommand implements Callable<Integer> {
             Path outputPath = outputDir != null ? outputDir : projectDir.resolve("docker");
             Files.createDirectories(outputPath);
             
-            StackDetector detector = new StackDetector();
-            Stack stack = detector.detectStack(projectDir);
+            StackDetector detector = parent.newStackDetector(noAi);
+            Stack stack = detector.detectStack(projectDir, CONTAINER_ASPECTS);
             
-            DockerfileGenerator generator = new DockerfileGenerator(provider);
+            DockerfileGenerator generator = new DockerfileGenerator(parent.newLLMClient(provider));
             generator.generateDockerfile(stack, outputPath);
             return 0;
         }
@@ -128,6 +258,9 @@ public class OdinCommand implements Callable<Integer> {
         description = "Generate Docker Compose configuration"
     )
     public static class ComposeCommand implements Callable<Integer> {
+        @ParentCommand
+        private OdinCommand parent;
+
         @Option(names = {"-o", "--output"}, description = "Output directory")
         private Path outputDir;
 
@@ -137,6 +270,9 @@ public class OdinCommand implements Callable<Integer> {
         @Option(names = {"--provider"}, description = "LLM provider to use (ollama/gemini)")
         private String provider = "ollama";
 
+        @Option(names = "--no-ai", description = "Never ask the LLM, even when static detection is unsure")
+        private boolean noAi;
+
         @Override
         public Integer call() throws IOException {
             logger.info("Generating docker-compose.yml");
@@ -145,10 +281,10 @@ public class OdinCommand implements Callable<Integer> {
             Path outputPath = outputDir != null ? outputDir : projectDir.resolve("docker");
             Files.createDirectories(outputPath);
             
-            StackDetector detector = new StackDetector();
-            Stack stack = detector.detectStack(projectDir);
+            StackDetector detector = parent.newStackDetector(noAi);
+            Stack stack = detector.detectStack(projectDir, CONTAINER_ASPECTS);
             
-            DockerComposeGenerator generator = new DockerComposeGenerator(provider);
+            DockerComposeGenerator generator = new DockerComposeGenerator(parent.newLLMClient(provider));
             generator.generateDockerCompose(stack, outputPath);
             return 0;
         }
@@ -159,6 +295,9 @@ public class OdinCommand implements Callable<Integer> {
         description = "Generate Terraform configuration"
     )
     public static class TerraformCommand implements Callable<Integer> {
+        @ParentCommand
+        private OdinCommand parent;
+
         @Option(names = {"-o", "--output"}, description = "Output directory")
         private Path outputDir;
 
@@ -171,13 +310,16 @@ public class OdinCommand implements Callable<Integer> {
         @Option(names = {"--cloud"}, description = "Cloud provider (aws/gcp)")
         private String cloudProvider = "aws";
 
+        @Option(names = "--no-ai", description = "Never ask the LLM, even when static detection is unsure")
+        private boolean noAi;
+
         @Override
         public Integer call() throws IOException {
             logger.info("Generating Terraform configuration for {} cloud provider", cloudProvider);
-            StackDetector detector = new StackDetector();
-            Stack stack = detector.detectStack(projectDir);
+            StackDetector detector = parent.newStackDetector(noAi);
+            Stack stack = detector.detectStack(projectDir, CONTAINER_ASPECTS);
             
-            TerraformGenerator generator = new TerraformGenerator(provider, cloudProvider);
+            TerraformGenerator generator = new TerraformGenerator(parent.newLLMClient(provider), cloudProvider);
             generator.generateTerraform(stack, outputDir);
             return 0;
         }
@@ -188,6 +330,9 @@ public class OdinCommand implements Callable<Integer> {
         description = "Generate GitHub Actions workflow"
     )
     public static class ActionsCommand implements Callable<Integer> {
+        @ParentCommand
+        private OdinCommand parent;
+
         @Option(names = {"-o", "--output"}, description = "Output directory")
         private Path outputDir;
 
@@ -200,13 +345,16 @@ public class OdinCommand implements Callable<Integer> {
         @Option(names = {"--cloud"}, description = "Cloud provider (aws/gcp)")
         private String cloudProvider = "aws";
 
+        @Option(names = "--no-ai", description = "Never ask the LLM, even when static detection is unsure")
+        private boolean noAi;
+
         @Override
         public Integer call() throws IOException {
             logger.info("Generating GitHub Actions workflow for {} cloud provider", cloudProvider);
-            StackDetector detector = new StackDetector();
-            Stack stack = detector.detectStack(projectDir);
+            StackDetector detector = parent.newStackDetector(noAi);
+            Stack stack = detector.detectStack(projectDir, PIPELINE_ASPECTS);
             
-            GitHubActionsGenerator generator = new GitHubActionsGenerator(provider, cloudProvider);
+            GitHubActionsGenerator generator = new GitHubActionsGenerator(parent.newLLMClient(provider), cloudProvider);
             generator.generateWorkflows(stack, outputDir);
             return 0;
         }
@@ -217,6 +365,9 @@ public class OdinCommand implements Callable<Integer> {
         description = "Generate all infrastructure files"
     )
     public static class AllCommand implements Callable<Integer> {
+        @ParentCommand
+        private OdinCommand parent;
+
         @Parameters(index = "0", description = "Path to the application")
         private Path appPath;
 
@@ -229,25 +380,39 @@ public class OdinCommand implements Callable<Integer> {
         @Option(names = {"-c", "--cloud"}, description = "Cloud provider")
         private String cloudProvider;
 
+        @Option(names = {"--services"}, description = "Treat the path as a monorepo and generate infrastructure for each service")
+        private boolean services;
+
+        @Option(names = "--no-ai", description = "Never ask the LLM, even when static detection is unsure")
+        private boolean noAi;
+
         @Override
         public Integer call() throws IOException {
             try {
                 Path outputPath = outputDir != null ? outputDir : appPath.resolve("infrastructure");
                 
                 // Create a new concurrent generator with 4 LLM instances
-                ConcurrentGenerator generator = new ConcurrentGenerator(provider != null ? provider : "ollama", 4);
+                ConcurrentGenerator generator = new ConcurrentGenerator(provider != null ? provider : "ollama", 4, parent.getCacheMode());
                 
-                // Detect the stack
-                StackDetector detector = new StackDetector();
-                Stack stack = detector.detectStack(appPath);
+                // Detect the stack, or one stack per service of a monorepo
+                StackDetector detector = parent.newStackDetector(noAi);
+                List<Stack> stacks = services
+                    ? detector.detectServices(appPath)
+                    : List.of(detector.detectStack(appPath));
                 
-                // Add cloud provider if specified
-                if (cloudProvider != null) {
-                    stack.getCloudProviders().add(cloudProvider.toLowerCase());
+                List<CompletableFuture<Void>> generations = new ArrayList<>();
+                for (Stack stack : stacks) {
+                    // Add cloud provider if specified
+                    if (cloudProvider != null) {
+                        stack.getCloudProviders().add(cloudProvider.toLowerCase());
+                    }
+                    
+                    // Generate all infrastructure files concurrently, across every service of a monorepo
+                    Path serviceOutput = outputPath.resolve(stack.getPath()).normalize();
+                    logger.info("Generating infrastructure for {}: {}", stack.getPath(), stack);
+                    generations.add(generator.generateAllAsync(stack, serviceOutput));
                 }
-                
-                // Generate all infrastructure files concurrently
-                generator.generateAll(stack, outputPath);
+                CompletableFuture.allOf(generations.toArray(new CompletableFuture[0])).join();
                 generator.shutdown();
                 
                 logger.info("All infrastructure files generated successfully in: {}", outputPath);
@@ -280,6 +445,9 @@ public class OdinCommand implements Callable<Integer> {
         description = "Explain generated infrastructure code"
     )
     public static class ExplainCommand implements Callable<Integer> {
+        @ParentCommand
+        private OdinCommand parent;
+
         @Parameters(index = "0", description = "File to explain")
         private Path file;
 
@@ -290,7 +458,7 @@ public class OdinCommand implements Callable<Integer> {
         public Integer call() throws IOException {
             logger.info("Explaining file: {}", file);
             String code = Files.readString(file);
-            Explainer explainer = new Explainer(provider);
+            Explainer explainer = new Explainer(parent.newLLMClient(provider));
             String explanation = explainer.explainCode(code);
             System.out.println(explanation);
             return 0;
@@ -387,6 +555,9 @@ public class OdinCommand implements Callable<Integer> {
         description = "Generate GitHub Actions workflows"
     )
     public static class GitHubCommand implements Callable<Integer> {
+        @ParentCommand
+        private OdinCommand parent;
+
         @Parameters(index = "0", description = "Project root directory")
         private Path projectDir;
 
@@ -396,13 +567,16 @@ public class OdinCommand implements Callable<Integer> {
         @Option(names = {"--provider"}, description = "LLM provider to use (ollama/gemini)")
         private String provider = "ollama";
 
+        @Option(names = "--no-ai", description = "Never ask the LLM, even when static detection is unsure")
+        private boolean noAi;
+
         @Override
         public Integer call() throws IOException {
             logger.info("Generating GitHub Actions workflows");
-            StackDetector detector = new StackDetector();
-            Stack stack = detector.detectStack(projectDir);
+            StackDetector detector = parent.newStackDetector(noAi);
+            Stack stack = detector.detectStack(projectDir, PIPELINE_ASPECTS);
             
-            GitHubActionsGenerator generator = new GitHubActionsGenerator(provider);
+            GitHubActionsGenerator generator = new GitHubActionsGenerator(parent.newLLMClient(provider));
             generator.generateWorkflows(stack, outputDir);
             logger.info("GitHub Actions workflows generated successfully!");
             return 0;
@@ -419,6 +593,9 @@ public class OdinCommand implements Callable<Integer> {
         description = "Monitor Docker containers"
     )
     public static class MonitorCommand implements Callable<Integer> {
+        @ParentCommand
+        private OdinCommand parent;
+
         @Option(names = {"-i", "--interval"}, description = "Monitoring interval in seconds")
         private int interval = 30;
 
@@ -434,7 +611,7 @@ public class OdinCommand implements Callable<Integer> {
                 System.setProperty("LLM_PROVIDER", provider);
             }
             
-            DockerMonitor monitor = new DockerMonitor();
+            DockerMonitor monitor = new DockerMonitor(parent.newLLMClient(System.getenv("LLM_PROVIDER")));
             monitor.startMonitoring();
             
             // Keep the main thread alive
@@ -481,6 +658,9 @@ public class OdinCommand implements Callable<Integer> {
         description = "Generate Dockerfile for a project"
     )
     public static class DockerfileCommand implements Callable<Integer> {
+        @ParentCommand
+        private OdinCommand parent;
+
         @Parameters(index = "0", description = "Project root directory")
         private Path projectDir;
 
@@ -490,6 +670,9 @@ public class OdinCommand implements Callable<Integer> {
         @Option(names = "--output", description = "Output directory for generated files")
         private Path outputDir;
 
+        @Option(names = "--no-ai", description = "Never ask the LLM, even when static detection is unsure")
+        private boolean noAi;
+
         @Override
         public Integer call() throws Exception {
             if (!Files.exists(projectDir)) {
@@ -511,10 +694,10 @@ public class OdinCommand implements Callable<Integer> {
                 outputDir = projectDir;
             }
             
-            StackDetector detector = new StackDetector();
-            Stack stack = detector.detectStack(projectDir);
+            StackDetector detector = parent.newStackDetector(noAi);
+            Stack stack = detector.detectStack(projectDir, CONTAINER_ASPECTS);
             
-            DockerfileGenerator generator = new DockerfileGenerator(provider);
+            DockerfileGenerator generator = new DockerfileGenerator(parent.newLLMClient(provider));
             generator.generateDockerfile(stack, outputDir);
             
             return 0;
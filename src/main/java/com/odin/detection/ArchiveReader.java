@@ -0,0 +1,387 @@
+package com.odin.detection;
+
+import java.io.BufferedInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Streams the entries of a zip, jar, tar or gzip-compressed tar archive.
+ *
+ * Archives are read front to back in one sequential pass, decompressing as
+ * they go; nothing is extracted to disk and no entry is ever held in memory
+ * beyond what the visitor reads of it. Nested archives, such as the
+ * libraries inside a fat jar, can be streamed the same way from their entry
+ * (see {@link #read(InputStream, String, Visitor)}).
+ *
+ * Only regular files are visited. Entries whose path is absolute or leaves
+ * the archive root are skipped.
+ */
+public final class ArchiveReader {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int TAR_BLOCK = 512;
+
+    /**
+     * Callback for each regular file of an archive.
+     */
+    @FunctionalInterface
+    public interface Visitor {
+        /**
+         * Visits one entry. The stream ends at the end of the entry, need not
+         * be read fully, and must not be closed.
+         *
+         * @param name Path of the entry within the archive, with '/' separators
+         * @param attrs The entry's attributes; its size is -1 if the archive does not record it up front
+         * @param content The entry's content
+         * @return false to stop reading the archive
+         * @throws IOException if reading the entry fails
+         */
+        boolean visit(String name, BasicFileAttributes attrs, InputStream content) throws IOException;
+    }
+
+    private ArchiveReader() {
+    }
+
+    /**
+     * @param fileName A file name
+     * @return true if the file is an archive this reader understands
+     */
+    public static boolean isArchive(String fileName) {
+        return format(fileName) != null;
+    }
+
+    /**
+     * Streams every regular file of an archive to the visitor, in archive order.
+     *
+     * @param archive The archive file
+     * @param visitor Receives each entry
+     * @throws IOException if the archive cannot be read or is corrupt
+     */
+    public static void read(Path archive, Visitor visitor) throws IOException {
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(archive), BUFFER_SIZE)) {
+            read(in, archive.getFileName().toString(), visitor);
+        }
+    }
+
+    /**
+     * Streams every regular file of an archive read from a stream. The stream
+     * is not closed.
+     *
+     * @param in The archive content
+     * @param fileName Name of the archive, which selects its format
+     * @param visitor Receives each entry
+     * @throws IOException if the archive cannot be read or is corrupt
+     */
+    public static void read(InputStream in, String fileName, Visitor visitor) throws IOException {
+        String format = format(fileName);
+        if (format == null) {
+            throw new IOException("Unsupported archive: " + fileName);
+        }
+        // The wrapping streams are closed to release their inflaters, leaving the caller's stream open
+        switch (format) {
+            case "zip" -> {
+                try (ZipInputStream zip = new ZipInputStream(new Unclosable(in))) {
+                    readZip(zip, visitor);
+                }
+            }
+            case "tgz" -> {
+                try (InputStream tar = new BufferedInputStream(new GZIPInputStream(new Unclosable(in), BUFFER_SIZE), BUFFER_SIZE)) {
+                    readTar(tar, visitor);
+                }
+            }
+            default -> readTar(in, visitor);
+        }
+    }
+
+    private static String format(String fileName) {
+        String name = fileName.toLowerCase(Locale.ROOT);
+        if (name.endsWith(".zip") || name.endsWith(".jar") || name.endsWith(".war") || name.endsWith(".ear")) {
+            return "zip";
+        }
+        if (name.endsWith(".tar.gz") || name.endsWith(".tgz")) {
+            return "tgz";
+        }
+        return name.endsWith(".tar") ? "tar" : null;
+    }
+
+    private static void readZip(ZipInputStream zip, Visitor visitor) throws IOException {
+        InputStream entryContent = new Unclosable(zip);
+        for (ZipEntry entry = zip.getNextEntry(); entry != null; entry = zip.getNextEntry()) {
+            String name = normalize(entry.getName());
+            if (entry.isDirectory() || name == null) {
+                continue;
+            }
+            FileTime modified = entry.getLastModifiedTime() != null ? entry.getLastModifiedTime() : FileTime.fromMillis(0);
+            if (!visitor.visit(name, new EntryAttributes(entry.getSize(), modified), entryContent)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Reads a ustar, GNU or pax tar stream. GNU long names and pax paths
+     * replace the name of the entry that follows them.
+     */
+    private static void readTar(InputStream in, Visitor visitor) throws IOException {
+        byte[] header = new byte[TAR_BLOCK];
+        String longName = null;
+        while (in.readNBytes(header, 0, TAR_BLOCK) == TAR_BLOCK && header[0] != 0) {
+            long size = tarNumber(header, 124, 12);
+            long modified = tarNumber(header, 136, 12);
+            byte type = header[156];
+            EntryStream entry = new EntryStream(in, size);
+
+            if (type == 'L') {
+                longName = trimNul(entry.readAllBytes());
+            } else if (type == 'x') {
+                String path = paxPath(entry.readAllBytes());
+                longName = path != null ? path : longName;
+            } else if (type == '0' || type == 0 || type == '7') {
+                String name = longName != null ? longName : tarName(header);
+                longName = null;
+                String normalized = normalize(name);
+                if (normalized != null && !visitor.visit(normalized,
+                        new EntryAttributes(size, FileTime.fromMillis(modified * 1000)), entry)) {
+                    return;
+                }
+            } else {
+                longName = null;
+            }
+
+            entry.skipRemaining();
+            long padding = (TAR_BLOCK - size % TAR_BLOCK) % TAR_BLOCK;
+            in.skipNBytes(padding);
+        }
+    }
+
+    private static String tarName(byte[] header) {
+        String name = field(header, 0, 100);
+        boolean ustar = new String(header, 257, 5, StandardCharsets.US_ASCII).equals("ustar");
+        String prefix = ustar ? field(header, 345, 155) : "";
+        return prefix.isEmpty() ? name : prefix + "/" + name;
+    }
+
+    /**
+     * Parses a numeric header field: octal, or big-endian base-256 when the
+     * high bit of the first byte is set.
+     */
+    private static long tarNumber(byte[] header, int offset, int length) throws IOException {
+        if ((header[offset] & 0x80) != 0) {
+            long value = header[offset] & 0x7F;
+            for (int i = 1; i < length; i++) {
+                value = (value << 8) | (header[offset + i] & 0xFF);
+            }
+            return value;
+        }
+        String text = field(header, offset, length).trim();
+        try {
+            return text.isEmpty() ? 0 : Long.parseLong(text, 8);
+        } catch (NumberFormatException e) {
+            throw new IOException("Corrupt tar header field: " + text);
+        }
+    }
+
+    private static String field(byte[] header, int offset, int length) {
+        int end = offset;
+        while (end < offset + length && header[end] != 0) {
+            end++;
+        }
+        return new String(header, offset, end - offset, StandardCharsets.UTF_8);
+    }
+
+    private static String trimNul(byte[] data) {
+        int end = data.length;
+        while (end > 0 && data[end - 1] == 0) {
+            end--;
+        }
+        return new String(data, 0, end, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return The path of a pax extended header, or null if it sets none
+     */
+    private static String paxPath(byte[] data) {
+        // Records are "<length> <key>=<value>\n", the length counting the whole record
+        String records = new String(data, StandardCharsets.UTF_8);
+        int position = 0;
+        while (position < records.length()) {
+            int space = records.indexOf(' ', position);
+            if (space < 0) {
+                break;
+            }
+            int length;
+            try {
+                length = Integer.parseInt(records.substring(position, space));
+            } catch (NumberFormatException e) {
+                break;
+            }
+            int end = Math.min(records.length(), position + length);
+            String record = records.substring(space + 1, Math.max(space + 1, end - 1));
+            if (record.startsWith("path=")) {
+                return record.substring("path=".length());
+            }
+            position = end;
+        }
+        return null;
+    }
+
+    /**
+     * @return The entry path without leading "./" or "/", or null if it is empty or leaves the archive root
+     */
+    private static String normalize(String name) {
+        String path = name.replace('\\', '/');
+        while (path.startsWith("./") || path.startsWith("/")) {
+            path = path.substring(path.startsWith("/") ? 1 : 2);
+        }
+        if (path.isEmpty() || path.endsWith("/")) {
+            return null;
+        }
+        for (String segment : path.split("/")) {
+            if (segment.equals("..")) {
+                return null;
+            }
+        }
+        return path;
+    }
+
+    /**
+     * Attributes of an archive entry, which has no file system identity.
+     */
+    static final class EntryAttributes implements BasicFileAttributes {
+        private final long size;
+        private final FileTime modified;
+
+        EntryAttributes(long size, FileTime modified) {
+            this.size = size;
+            this.modified = modified;
+        }
+
+        @Override
+        public FileTime lastModifiedTime() {
+            return modified;
+        }
+
+        @Override
+        public FileTime lastAccessTime() {
+            return modified;
+        }
+
+        @Override
+        public FileTime creationTime() {
+            return modified;
+        }
+
+        @Override
+        public boolean isRegularFile() {
+            return true;
+        }
+
+        @Override
+        public boolean isDirectory() {
+            return false;
+        }
+
+        @Override
+        public boolean isSymbolicLink() {
+            return false;
+        }
+
+        @Override
+        public boolean isOther() {
+            return false;
+        }
+
+        @Override
+        public long size() {
+            return size;
+        }
+
+        @Override
+        public Object fileKey() {
+            return null;
+        }
+    }
+
+    /**
+     * The content of one tar entry: a window of the archive stream.
+     */
+    private static final class EntryStream extends FilterInputStream {
+        private long remaining;
+
+        EntryStream(InputStream in, long size) {
+            super(in);
+            this.remaining = size;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int b = in.read();
+            if (b < 0) {
+                throw new IOException("Truncated tar entry");
+            }
+            remaining--;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int n = in.read(buffer, offset, (int) Math.min(length, remaining));
+            if (n < 0) {
+                throw new IOException("Truncated tar entry");
+            }
+            remaining -= n;
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = in.skip(Math.min(n, remaining));
+            remaining -= skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(in.available(), remaining);
+        }
+
+        void skipRemaining() throws IOException {
+            in.skipNBytes(remaining);
+            remaining = 0;
+        }
+
+        @Override
+        public void close() {
+            // The archive stream stays open for the next entry
+        }
+    }
+
+    /**
+     * Keeps a shared stream open when a reader wrapped around it is closed.
+     */
+    private static final class Unclosable extends FilterInputStream {
+        Unclosable(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public void close() {
+            // Owned by the caller
+        }
+    }
+}
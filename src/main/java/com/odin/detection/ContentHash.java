@@ -0,0 +1,137 @@
+package com.odin.detection;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * Content hashes used to address cached detection results.
+ *
+ * File content is identified by a git-style blob id: the SHA-1 of
+ * {@code "blob <size>\0"} followed by the content. For files that fit in the
+ * scanned prefix this is exactly the id git stores for the file, so hashes
+ * from a git index can address the same cache entries. Larger files hash
+ * their real size plus the scanned prefix, which is all detection ever sees.
+ *
+ * Within one scan, identical content is recognised by the much cheaper
+ * 64-bit xxHash instead (see {@link #xxHash64(byte[], int, long)}).
+ */
+public final class ContentHash {
+    private static final ThreadLocal<MessageDigest> SHA1 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 not available", e);
+        }
+    });
+
+    private static final long PRIME1 = 0x9E3779B185EBCA87L;
+    private static final long PRIME2 = 0xC2B2AE3D27D4EB4FL;
+    private static final long PRIME3 = 0x165667B19E3779F9L;
+    private static final long PRIME4 = 0x85EBCA77C2B2AE63L;
+    private static final long PRIME5 = 0x27D4EB2F165667C5L;
+    private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle INTS = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private ContentHash() {
+    }
+
+    /**
+     * Computes the blob id of a file from its scanned prefix.
+     *
+     * @param data Buffer holding the scanned prefix
+     * @param length Number of valid bytes in {@code data}
+     * @param size The full size of the file in bytes
+     * @return The hex-encoded blob id
+     */
+    public static String blobId(byte[] data, int length, long size) {
+        MessageDigest digest = SHA1.get();
+        digest.reset();
+        digest.update(("blob " + size + "\0").getBytes(StandardCharsets.US_ASCII));
+        digest.update(data, 0, length);
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * Computes the hex-encoded SHA-1 of a string.
+     *
+     * @param text The text to hash
+     * @return The hex-encoded SHA-1 of the UTF-8 bytes of {@code text}
+     */
+    public static String sha1Hex(String text) {
+        MessageDigest digest = SHA1.get();
+        digest.reset();
+        return HexFormat.of().formatHex(digest.digest(text.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Computes the 64-bit xxHash (XXH64) of a buffer. It is not collision
+     * resistant against crafted input, but runs at memory speed, which makes
+     * it the right key for recognising duplicate files within one scan.
+     *
+     * @param data Buffer holding the content
+     * @param length Number of valid bytes in {@code data}
+     * @param seed The seed
+     * @return The hash
+     */
+    public static long xxHash64(byte[] data, int length, long seed) {
+        int p = 0;
+        long h;
+        if (length >= 32) {
+            long v1 = seed + PRIME1 + PRIME2;
+            long v2 = seed + PRIME2;
+            long v3 = seed;
+            long v4 = seed - PRIME1;
+            for (int limit = length - 32; p <= limit; p += 32) {
+                v1 = round(v1, (long) LONGS.get(data, p));
+                v2 = round(v2, (long) LONGS.get(data, p + 8));
+                v3 = round(v3, (long) LONGS.get(data, p + 16));
+                v4 = round(v4, (long) LONGS.get(data, p + 24));
+            }
+            h = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+            h = merge(h, v1);
+            h = merge(h, v2);
+            h = merge(h, v3);
+            h = merge(h, v4);
+        } else {
+            h = seed + PRIME5;
+        }
+        h += length;
+
+        for (; p + 8 <= length; p += 8) {
+            h ^= round(0, (long) LONGS.get(data, p));
+            h = Long.rotateLeft(h, 27) * PRIME1 + PRIME4;
+        }
+        if (p + 4 <= length) {
+            h ^= ((int) INTS.get(data, p) & 0xFFFFFFFFL) * PRIME1;
+            h = Long.rotateLeft(h, 23) * PRIME2 + PRIME3;
+            p += 4;
+        }
+        for (; p < length; p++) {
+            h ^= (data[p] & 0xFF) * PRIME5;
+            h = Long.rotateLeft(h, 11) * PRIME1;
+        }
+
+        h ^= h >>> 33;
+        h *= PRIME2;
+        h ^= h >>> 29;
+        h *= PRIME3;
+        h ^= h >>> 32;
+        return h;
+    }
+
+    private static long round(long accumulator, long input) {
+        accumulator += input * PRIME2;
+        accumulator = Long.rotateLeft(accumulator, 31);
+        return accumulator * PRIME1;
+    }
+
+    private static long merge(long hash, long accumulator) {
+        hash ^= round(0, accumulator);
+        return hash * PRIME1 + PRIME4;
+    }
+}
@@ -0,0 +1,184 @@
+package com.odin.detection;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Reads bounded, text-only prefixes of files for content detection.
+ *
+ * Each thread reuses one fixed-size buffer, so scanning a tree allocates no
+ * per-file content arrays no matter how large the files are. Only the first
+ * {@code maxBytes} of a file are read; detection keywords live in imports,
+ * manifests and configuration near the top of files, so the tail of large
+ * files (minified bundles, generated code, data dumps) adds cost but no signal.
+ *
+ * Binaries are skipped in two steps: well-known binary extensions are never
+ * opened, and everything else is sniffed for NUL bytes in its first block,
+ * the same heuristic git uses.
+ */
+public final class ContentReader {
+    /**
+     * Default number of bytes read from the start of each file.
+     */
+    public static final int DEFAULT_MAX_BYTES = 512 * 1024;
+
+    // Number of leading bytes inspected when sniffing for binary content
+    private static final int SNIFF_BYTES = 8000;
+
+    private static final Set<String> BINARY_EXTENSIONS = Set.of(
+        "jar", "war", "ear", "class", "zip", "gz", "tgz", "bz2", "xz", "7z", "rar", "tar",
+        "png", "jpg", "jpeg", "gif", "bmp", "ico", "webp", "tiff", "psd",
+        "pdf", "doc", "docx", "xls", "xlsx", "ppt", "pptx",
+        "so", "dll", "dylib", "exe", "bin", "o", "a", "lib", "pyc", "pyo", "wasm",
+        "woff", "woff2", "ttf", "otf", "eot",
+        "mp3", "mp4", "mov", "avi", "wav", "ogg", "webm", "flac",
+        "sqlite", "db", "dat", "iso", "img"
+    );
+
+    private final int maxBytes;
+    private final ThreadLocal<byte[]> buffers;
+
+    /**
+     * The readable prefix of a file. The backing buffer belongs to the reading
+     * thread and is overwritten by its next read.
+     */
+    public static final class Content {
+        private final byte[] data;
+        private final int length;
+
+        Content(byte[] data, int length) {
+            this.data = data;
+            this.length = length;
+        }
+
+        public byte[] getData() {
+            return data;
+        }
+
+        public int getLength() {
+            return length;
+        }
+    }
+
+    /**
+     * Creates a new ContentReader with the default prefix size.
+     */
+    public ContentReader() {
+        this(DEFAULT_MAX_BYTES);
+    }
+
+    /**
+     * Creates a new ContentReader.
+     *
+     * @param maxBytes Maximum number of bytes read from each file
+     */
+    public ContentReader(int maxBytes) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("maxBytes must be positive: " + maxBytes);
+        }
+        this.maxBytes = maxBytes;
+        this.buffers = ThreadLocal.withInitial(() -> new byte[maxBytes]);
+    }
+
+    /**
+     * @return Maximum number of bytes read from each file
+     */
+    public int getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Checks whether a file name has a well-known binary extension.
+     *
+     * @param fileName The file name
+     * @return true if the file should not be opened for content detection
+     */
+    public static boolean hasBinaryExtension(String fileName) {
+        int dot = fileName.lastIndexOf('.');
+        return dot >= 0 && BINARY_EXTENSIONS.contains(fileName.substring(dot + 1).toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * Reads the prefix of a text file.
+     *
+     * @param file The file to read
+     * @return The readable prefix, or null if the file is binary
+     * @throws IOException if the file cannot be read
+     */
+    public Content read(Path file) throws IOException {
+        if (hasBinaryExtension(file.getFileName().toString())) {
+            return null;
+        }
+
+        byte[] buffer = buffers.get();
+        int length;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            // Read and sniff the first block before reading the rest of the prefix
+            ByteBuffer target = ByteBuffer.wrap(buffer, 0, Math.min(SNIFF_BYTES, buffer.length));
+            length = fill(channel, target);
+            if (isBinary(buffer, length)) {
+                return null;
+            }
+            if (!target.hasRemaining() && target.limit() < buffer.length) {
+                target.limit(buffer.length);
+                length = fill(channel, target);
+            }
+        }
+        return new Content(buffer, length);
+    }
+
+    /**
+     * Reads the prefix of a text file from a stream, such as an archive
+     * entry. The stream is left positioned after the prefix and is not closed.
+     *
+     * @param in The file content
+     * @param fileName Name of the file, for the binary extension check
+     * @return The readable prefix, or null if the file is binary
+     * @throws IOException if the stream cannot be read
+     */
+    public Content read(InputStream in, String fileName) throws IOException {
+        if (hasBinaryExtension(fileName)) {
+            return null;
+        }
+
+        byte[] buffer = buffers.get();
+        int length = in.readNBytes(buffer, 0, Math.min(SNIFF_BYTES, buffer.length));
+        if (isBinary(buffer, length)) {
+            return null;
+        }
+        if (length == Math.min(SNIFF_BYTES, buffer.length)) {
+            length += in.readNBytes(buffer, length, buffer.length - length);
+        }
+        return new Content(buffer, length);
+    }
+
+    /**
+     * Reads from the channel until the buffer is full or the file ends.
+     *
+     * @return The buffer position after reading
+     */
+    private static int fill(FileChannel channel, ByteBuffer target) throws IOException {
+        while (target.hasRemaining() && channel.read(target) >= 0) {
+            // keep reading
+        }
+        return target.position();
+    }
+
+    /**
+     * Treats content containing a NUL byte as binary.
+     */
+    static boolean isBinary(byte[] data, int length) {
+        for (int i = 0; i < length; i++) {
+            if (data[i] == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
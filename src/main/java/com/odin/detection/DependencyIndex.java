@@ -0,0 +1,188 @@
+package com.odin.detection;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * In-memory index of the dependencies declared by a project's build manifests.
+ *
+ * Filled by {@link ManifestParser} from pom.xml, package.json, go.mod and the
+ * like, it answers most detection questions (framework, databases, cloud SDKs,
+ * testing frameworks) by dependency name without opening any source file.
+ * Names are stored lower-case, in the ecosystem's own notation: Maven
+ * coordinates as {@code groupId:artifactId}, Go modules by module path, and
+ * npm, PyPI, crates.io, RubyGems and Packagist packages by package name.
+ *
+ * Besides the dependencies declared by manifests, the index can hold the
+ * packages resolved by lockfiles (see {@link LockfileParser}), which include
+ * transitive dependencies and exact versions.
+ *
+ * Manifests may be parsed concurrently, so all state is thread-safe.
+ */
+public class DependencyIndex {
+    private final Map<String, String> versions = new ConcurrentHashMap<>();
+    private final Map<String, String> resolved = new ConcurrentHashMap<>();
+    private final Set<Path> manifests = ConcurrentHashMap.newKeySet();
+    private final AtomicReference<Path> languageManifest = new AtomicReference<>();
+    private final Map<Path, String> manifestLanguages = new ConcurrentHashMap<>();
+
+    /**
+     * Records a declared dependency. The first version seen for a name is kept.
+     *
+     * @param name Dependency name in its ecosystem's notation
+     * @param version Declared version or constraint, or null if none is given
+     */
+    public void add(String name, String version) {
+        if (name == null || name.isBlank()) {
+            return;
+        }
+        versions.putIfAbsent(name.trim().toLowerCase(Locale.ROOT), version != null ? version.trim() : "");
+    }
+
+    /**
+     * Records a package resolved by a lockfile. The first version seen for a name is kept.
+     *
+     * @param name Package name in its ecosystem's notation
+     * @param version Resolved version
+     */
+    public void addResolved(String name, String version) {
+        if (name == null || name.isBlank()) {
+            return;
+        }
+        resolved.putIfAbsent(name.trim().toLowerCase(Locale.ROOT), version != null ? version.trim() : "");
+    }
+
+    /**
+     * Records that a manifest was parsed, together with the language its
+     * ecosystem implies.
+     *
+     * @param manifest The manifest file
+     * @param language The language of the manifest's ecosystem
+     */
+    void addManifest(Path manifest, String language) {
+        manifests.add(manifest);
+        manifestLanguages.put(manifest, language);
+        Path current = languageManifest.get();
+        while (current == null || outranks(manifest, current)) {
+            if (languageManifest.compareAndSet(current, manifest)) {
+                return;
+            }
+            current = languageManifest.get();
+        }
+    }
+
+    private static boolean outranks(Path candidate, Path current) {
+        if (candidate.getNameCount() != current.getNameCount()) {
+            return candidate.getNameCount() < current.getNameCount();
+        }
+        return candidate.toString().compareTo(current.toString()) < 0;
+    }
+
+    /**
+     * @param name Dependency name
+     * @return true if the dependency is declared by any manifest
+     */
+    public boolean contains(String name) {
+        return versions.containsKey(name.toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * @param name Dependency name
+     * @return The declared version, empty if none was given, or null if the dependency is not declared
+     */
+    public String getVersion(String name) {
+        return versions.get(name.toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * @return All declared dependency names, sorted
+     */
+    public List<String> getDependencies() {
+        List<String> names = new ArrayList<>(versions.keySet());
+        names.sort(Comparator.naturalOrder());
+        return names;
+    }
+
+    /**
+     * @return Every manifest that was parsed
+     */
+    public Collection<Path> getManifests() {
+        return manifests;
+    }
+
+    /**
+     * @return The language implied by the shallowest manifest, or null if no manifest was parsed
+     */
+    public String getLanguage() {
+        Path manifest = languageManifest.get();
+        return manifest != null ? manifestLanguages.get(manifest) : null;
+    }
+
+    /**
+     * @param name Package name
+     * @return The version resolved by a lockfile, or null if no lockfile resolved the package
+     */
+    public String getResolvedVersion(String name) {
+        return resolved.get(name.toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * @return Number of packages resolved by lockfiles
+     */
+    public int getResolvedCount() {
+        return resolved.size();
+    }
+
+    public boolean isEmpty() {
+        return versions.isEmpty();
+    }
+
+    public int size() {
+        return versions.size();
+    }
+
+    /**
+     * Checks whether any declared or resolved dependency matches a rule. A
+     * rule matches a name exactly, or by prefix when it ends with {@code *}.
+     *
+     * @param rule The rule, in lower case
+     * @return true if any dependency matches
+     */
+    public boolean matches(String rule) {
+        return findMatch(rule) != null;
+    }
+
+    /**
+     * Finds a declared or resolved dependency matching a rule, preferring
+     * declared ones. For prefix rules the lowest matching name is returned.
+     *
+     * @param rule The rule, in lower case
+     * @return The matching dependency name, or null if none matches
+     */
+    public String findMatch(String rule) {
+        String declared = findMatch(versions, rule);
+        return declared != null ? declared : findMatch(resolved, rule);
+    }
+
+    private static String findMatch(Map<String, String> dependencies, String rule) {
+        if (!rule.endsWith("*")) {
+            return dependencies.containsKey(rule) ? rule : null;
+        }
+        String prefix = rule.substring(0, rule.length() - 1);
+        String match = null;
+        for (String name : dependencies.keySet()) {
+            if (name.startsWith(prefix) && (match == null || name.compareTo(match) < 0)) {
+                match = name;
+            }
+        }
+        return match;
+    }
+}
@@ -0,0 +1,341 @@
+package com.odin.detection;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Persistent, content-addressed cache of detection results.
+ *
+ * One cache file per project lives under {@code ~/.odin/cache}. It holds:
+ * 1. Per-file entries keyed by path, validated by size and modification time,
+ *    pointing at a content hash (see {@link ContentHash})
+ * 2. Content entries keyed by content hash, holding the content rule hits of
+ *    that content and the line of each rule's first match, so identical
+ *    content is matched once even if it moves
+ * 3. The last detected Stack together with the tree fingerprint it was
+ *    computed from, and the directory hashes of that tree's {@link MerkleTree}
+ *
+ * On an unchanged tree the stored Stack is returned after a metadata walk,
+ * without any file being opened. Otherwise the directory hashes show which
+ * subtrees changed, and every unchanged file resolves from its entry. Changed files are re-read and
+ * re-matched individually. The whole cache is dropped when the detection
+ * rules change, since rule ids are only meaningful for one rule set.
+ *
+ * An in-memory cache (see {@link #inMemory(String)}) keeps the same state
+ * across repeated scans of a watched project without writing it to disk.
+ *
+ * Entries may be looked up and stored concurrently by walker threads.
+ */
+public class DetectionCache {
+    private static final Logger logger = LoggerFactory.getLogger(DetectionCache.class);
+    private static final int FORMAT_VERSION = 3;
+    // Files modified this recently may still be changing within the same mtime tick
+    private static final long RACY_WINDOW_MILLIS = 2000;
+
+    private static final ObjectMapper mapper = new ObjectMapper()
+        .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    private final Path cacheFile;
+    private final String rulesetId;
+    private volatile long scanStartedAt;
+    private final Map<String, FileEntry> files;
+    private final Map<String, long[]> contents;
+    // First-match lines of the rules hit by each content, in rule id order
+    private final Map<String, int[]> lines;
+    private final Set<String> seenFiles = ConcurrentHashMap.newKeySet();
+    // Set by a scan, and cleared when it stopped short, so that only the files
+    // a complete scan did not see lose their entries
+    private volatile boolean pruneUnseen;
+    private String fingerprint;
+    private Map<String, long[]> directories;
+    private Stack stack;
+
+    /**
+     * Cached metadata of one file. Public fields for JSON serialization.
+     */
+    public static class FileEntry {
+        public long size;
+        public long modified;
+        public String hash;
+        public boolean binary;
+
+        public FileEntry() {
+        }
+
+        FileEntry(long size, long modified, String hash, boolean binary) {
+            this.size = size;
+            this.modified = modified;
+            this.hash = hash;
+            this.binary = binary;
+        }
+    }
+
+    /**
+     * On-disk representation of a project's cache. Public fields for JSON serialization.
+     */
+    public static class Snapshot {
+        public int version;
+        public String ruleset;
+        public String fingerprint;
+        public Map<String, long[]> directories;
+        public Stack stack;
+        public Map<String, FileEntry> files;
+        public Map<String, long[]> contents;
+        public Map<String, int[]> lines;
+    }
+
+    private DetectionCache(Path cacheFile, String rulesetId, Snapshot snapshot) {
+        this.cacheFile = cacheFile;
+        this.rulesetId = rulesetId;
+        this.scanStartedAt = System.currentTimeMillis();
+        this.files = new ConcurrentHashMap<>(snapshot != null && snapshot.files != null ? snapshot.files : Map.of());
+        this.contents = new ConcurrentHashMap<>(snapshot != null && snapshot.contents != null ? snapshot.contents : Map.of());
+        this.lines = new ConcurrentHashMap<>(snapshot != null && snapshot.lines != null ? snapshot.lines : Map.of());
+        this.fingerprint = snapshot != null ? snapshot.fingerprint : null;
+        this.directories = snapshot != null ? snapshot.directories : null;
+        this.stack = snapshot != null ? snapshot.stack : null;
+    }
+
+    /**
+     * @return The default cache directory, {@code ~/.odin/cache}
+     */
+    public static Path defaultDirectory() {
+        return Path.of(System.getProperty("user.home"), ".odin", "cache");
+    }
+
+    /**
+     * Opens the cache of one project, starting empty if none exists or if it
+     * was written for different detection rules.
+     *
+     * @param cacheDir The cache directory
+     * @param projectDir The project root directory
+     * @param rulesetId Identifier of the detection rules the cached hits refer to
+     * @return The project's cache
+     */
+    public static DetectionCache open(Path cacheDir, Path projectDir, String rulesetId) {
+        String key = ContentHash.sha1Hex(projectDir.toAbsolutePath().normalize().toString());
+        Path cacheFile = cacheDir.resolve(key + ".json");
+        Snapshot snapshot = null;
+        if (Files.isRegularFile(cacheFile)) {
+            try {
+                snapshot = mapper.readValue(cacheFile.toFile(), Snapshot.class);
+                if (snapshot.version != FORMAT_VERSION || !rulesetId.equals(snapshot.ruleset)) {
+                    logger.info("Discarding detection cache built for other rules: {}", cacheFile);
+                    snapshot = null;
+                }
+            } catch (IOException e) {
+                logger.warn("Failed to read detection cache {}: {}", cacheFile, e.getMessage());
+            }
+        }
+        return new DetectionCache(cacheFile, rulesetId, snapshot);
+    }
+
+    /**
+     * Creates a cache that lives only in memory, for repeated scans of the
+     * same project within one process.
+     *
+     * @param rulesetId Identifier of the detection rules the cached hits refer to
+     * @return An empty in-memory cache
+     */
+    public static DetectionCache inMemory(String rulesetId) {
+        return new DetectionCache(null, rulesetId, null);
+    }
+
+    /**
+     * Marks the start of a scan. Files not looked up after this call are
+     * dropped on the next {@link #save()}, unless the scan is cut short.
+     */
+    void beginScan() {
+        scanStartedAt = System.currentTimeMillis();
+        seenFiles.clear();
+        pruneUnseen = true;
+    }
+
+    /**
+     * Marks the current scan as cut short by its budget: the files it did
+     * not look up are not gone, only unvisited, so the next {@link #save()}
+     * keeps their entries.
+     */
+    void keepUnseen() {
+        pruneUnseen = false;
+    }
+
+    /**
+     * Looks up the cached entry of a file, valid only if its size and
+     * modification time are unchanged.
+     *
+     * @param file The file
+     * @param size Current size of the file
+     * @param modified Current modification time in milliseconds
+     * @return The entry, or null on a miss
+     */
+    FileEntry lookupFile(Path file, long size, long modified) {
+        String key = file.toString();
+        seenFiles.add(key);
+        FileEntry entry = files.get(key);
+        if (entry == null || entry.size != size || entry.modified != modified) {
+            return null;
+        }
+        if (!entry.binary && !contents.containsKey(entry.hash)) {
+            return null;
+        }
+        return entry;
+    }
+
+    /**
+     * Looks up the content rule hits stored for a content hash.
+     *
+     * @param hash The content hash
+     * @return The rule hits, or null if the content has not been matched before
+     */
+    BitSet lookupContent(String hash) {
+        long[] words = contents.get(hash);
+        return words != null ? BitSet.valueOf(words) : null;
+    }
+
+    /**
+     * Looks up the first-match lines stored for a content hash.
+     *
+     * @param hash The content hash
+     * @return The line of each hit rule's first match, by rule id, or null if unknown
+     */
+    int[] lookupLines(String hash) {
+        long[] words = contents.get(hash);
+        int[] compact = lines.get(hash);
+        if (words == null || compact == null) {
+            return null;
+        }
+        BitSet hits = BitSet.valueOf(words);
+        int[] firstLines = new int[hits.length()];
+        int i = 0;
+        for (int rule = hits.nextSetBit(0); rule >= 0 && i < compact.length; rule = hits.nextSetBit(rule + 1)) {
+            firstLines[rule] = compact[i++];
+        }
+        return firstLines;
+    }
+
+    /**
+     * Records the outcome of scanning one file.
+     *
+     * @param file The file
+     * @param size Size of the file when it was read
+     * @param modified Modification time of the file when it was read
+     * @param hash Content hash, or null for binary files
+     * @param hits The content rule hits, or null for binary files
+     * @param firstLines Line of each rule's first match, by rule id, or null if unknown
+     */
+    void storeFile(Path file, long size, long modified, String hash, BitSet hits, int[] firstLines) {
+        if (modified >= scanStartedAt - RACY_WINDOW_MILLIS) {
+            // Too recent to trust the mtime; the file will be re-read next time
+            return;
+        }
+        boolean binary = hits == null;
+        files.put(file.toString(), new FileEntry(size, modified, hash, binary));
+        if (!binary) {
+            contents.putIfAbsent(hash, hits.toLongArray());
+            if (firstLines != null) {
+                lines.putIfAbsent(hash, hits.stream().map(rule -> firstLines[rule]).toArray());
+            }
+        }
+    }
+
+    /**
+     * Returns the cached Stack if it was computed from the same tree.
+     *
+     * @param treeFingerprint Fingerprint of the current tree
+     * @return The cached Stack, or null on a miss
+     */
+    public Stack lookupStack(String treeFingerprint) {
+        return treeFingerprint.equals(fingerprint) ? stack : null;
+    }
+
+    /**
+     * Records the Stack detected for a tree.
+     *
+     * @param treeFingerprint Fingerprint of the tree
+     * @param stack The detected stack
+     */
+    public void storeStack(String treeFingerprint, Stack stack) {
+        this.fingerprint = treeFingerprint;
+        this.directories = null;
+        this.stack = stack;
+    }
+
+    /**
+     * Records the Stack detected for a tree, with the tree's directory hashes.
+     *
+     * @param tree The Merkle tree of the detected tree
+     * @param stack The detected stack
+     */
+    public void storeStack(MerkleTree tree, Stack stack) {
+        this.fingerprint = tree.getFingerprint();
+        this.directories = tree.getDirectories();
+        this.stack = stack;
+    }
+
+    /**
+     * Compares a tree top-down with the one the cached Stack was detected from.
+     *
+     * @param tree The Merkle tree of the current tree
+     * @return The directories that changed since (see {@link MerkleTree#changedSince(Map)}),
+     *         empty if there is no earlier tree
+     */
+    public List<String> changedDirectories(MerkleTree tree) {
+        return tree.changedSince(directories);
+    }
+
+    /**
+     * Drops entries of files not seen by the scan begun since the last save,
+     * if any and unless it was cut short, and content no longer referenced by
+     * any file, then writes the cache to disk unless it lives only in memory.
+     */
+    public void save() {
+        if (pruneUnseen) {
+            files.keySet().retainAll(seenFiles);
+            pruneUnseen = false;
+        }
+        Set<String> referenced = ConcurrentHashMap.newKeySet();
+        files.values().forEach(entry -> {
+            if (entry.hash != null) {
+                referenced.add(entry.hash);
+            }
+        });
+        contents.keySet().retainAll(referenced);
+        lines.keySet().retainAll(referenced);
+        if (cacheFile == null) {
+            return;
+        }
+
+        Snapshot snapshot = new Snapshot();
+        snapshot.version = FORMAT_VERSION;
+        snapshot.ruleset = rulesetId;
+        snapshot.fingerprint = fingerprint;
+        snapshot.directories = directories;
+        snapshot.stack = stack;
+        snapshot.files = files;
+        snapshot.contents = contents;
+        snapshot.lines = lines;
+
+        try {
+            Files.createDirectories(cacheFile.getParent());
+            Path temp = Files.createTempFile(cacheFile.getParent(), "detection", ".tmp");
+            mapper.writeValue(temp.toFile(), snapshot);
+            Files.move(temp, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            logger.debug("Saved detection cache with {} files to {}", files.size(), cacheFile);
+        } catch (IOException e) {
+            logger.warn("Failed to write detection cache {}: {}", cacheFile, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.odin.detection;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Compact record of why each content rule fired.
+ *
+ * Every piece of evidence is a (file id, line, rule id) triple, where the file
+ * id indexes the scanned file list. Triples are stored column-wise in growable
+ * int arrays rather than as one object per hit, so a scan of a large tree
+ * with thousands of hits costs three arrays instead of thousands of objects.
+ * Each file contributes at most one entry per rule, at the rule's first match.
+ *
+ * Files are scanned concurrently; each file's hits are appended in one
+ * synchronized call.
+ */
+public class EvidenceIndex {
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final List<Path> files;
+    private int[] fileIds = new int[INITIAL_CAPACITY];
+    private int[] lines = new int[INITIAL_CAPACITY];
+    private int[] rules = new int[INITIAL_CAPACITY];
+    private int size;
+
+    /**
+     * Creates an empty index over the given files.
+     *
+     * @param files The scanned files, indexed by file id
+     */
+    public EvidenceIndex(List<Path> files) {
+        this.files = files;
+    }
+
+    /**
+     * Records the content rule hits of one file.
+     *
+     * @param fileId Id of the file
+     * @param hits Ids of the rules that matched
+     * @param firstLines Line of each rule's first match, by rule id, or null if unknown
+     */
+    synchronized void add(int fileId, BitSet hits, int[] firstLines) {
+        int count = hits.cardinality();
+        if (size + count > fileIds.length) {
+            int capacity = Math.max(fileIds.length * 2, size + count);
+            fileIds = Arrays.copyOf(fileIds, capacity);
+            lines = Arrays.copyOf(lines, capacity);
+            rules = Arrays.copyOf(rules, capacity);
+        }
+        for (int rule = hits.nextSetBit(0); rule >= 0; rule = hits.nextSetBit(rule + 1)) {
+            fileIds[size] = fileId;
+            lines[size] = firstLines != null ? firstLines[rule] : 0;
+            rules[size] = rule;
+            size++;
+        }
+    }
+
+    /**
+     * @return Number of evidence entries
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * @param entry Index of an entry, below {@link #size()}
+     * @return Id of the file the entry was found in
+     */
+    public synchronized int getFileId(int entry) {
+        return fileIds[entry];
+    }
+
+    /**
+     * @param entry Index of an entry, below {@link #size()}
+     * @return 1-based line of the rule's first match in the file, or 0 if unknown
+     */
+    public synchronized int getLine(int entry) {
+        return lines[entry];
+    }
+
+    /**
+     * @param entry Index of an entry, below {@link #size()}
+     * @return Id of the rule that matched
+     */
+    public synchronized int getRule(int entry) {
+        return rules[entry];
+    }
+
+    /**
+     * @param fileId Id of a file
+     * @return The file's path
+     */
+    public Path getFile(int fileId) {
+        return files.get(fileId);
+    }
+
+    /**
+     * @param rule Id of a rule
+     * @return Indices of every entry of the rule, in file id order
+     */
+    public synchronized int[] entriesOf(int rule) {
+        // Concurrent appends arrive in any order; sort by file id so results are deterministic
+        long[] keys = new long[size];
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            if (rules[i] == rule) {
+                keys[count++] = ((long) fileIds[i] << 32) | i;
+            }
+        }
+        Arrays.sort(keys, 0, count);
+        int[] entries = new int[count];
+        for (int i = 0; i < count; i++) {
+            entries[i] = (int) keys[i];
+        }
+        return entries;
+    }
+}
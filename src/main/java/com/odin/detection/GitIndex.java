@@ -0,0 +1,231 @@
+package com.odin.detection;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tracked files of a git checkout, read directly from {@code .git/index}.
+ *
+ * The index records, for every tracked file, the blob id of its staged
+ * content together with the size and modification time the file had when it
+ * was staged. A file whose size and modification time still match is
+ * unchanged since, so its blob id is a content hash obtained without reading
+ * the file (see {@link ContentHash}). Files that are untracked, modified, or
+ * too recent to be trusted have no blob id and are hashed from their content
+ * as usual.
+ *
+ * Versions 2 to 4 of the index format are understood. Only stage-0 entries of
+ * regular files are used; an unreadable or unknown index is treated as absent.
+ */
+public final class GitIndex {
+    private static final Logger logger = LoggerFactory.getLogger(GitIndex.class);
+
+    private static final int SIGNATURE = 0x44495243; // "DIRC"
+    private static final int REGULAR_FILE = 0b1000;
+    private static final int FLAG_EXTENDED = 0x4000;
+    private static final int NAME_MASK = 0x0FFF;
+    private static final int STAGE_MASK = 0x3000;
+
+    /**
+     * Stat data and blob id of one tracked file.
+     */
+    private static final class Entry {
+        final int mtimeSeconds;
+        final int mtimeNanos;
+        final int size;
+        final String blobId;
+
+        Entry(int mtimeSeconds, int mtimeNanos, int size, String blobId) {
+            this.mtimeSeconds = mtimeSeconds;
+            this.mtimeNanos = mtimeNanos;
+            this.size = size;
+            this.blobId = blobId;
+        }
+    }
+
+    private final Path workTree;
+    private final FileTime indexModified;
+    private final Map<String, Entry> entries;
+
+    private GitIndex(Path workTree, FileTime indexModified, Map<String, Entry> entries) {
+        this.workTree = workTree;
+        this.indexModified = indexModified;
+        this.entries = entries;
+    }
+
+    /**
+     * Reads the index of the git checkout containing a directory.
+     *
+     * @param dir A directory, at or below the top of a git work tree
+     * @return The index, or null if the directory is not in a git checkout or its index cannot be read
+     */
+    public static GitIndex open(Path dir) {
+        Path workTree = dir.toAbsolutePath().normalize();
+        while (workTree != null && !Files.exists(workTree.resolve(".git"))) {
+            workTree = workTree.getParent();
+        }
+        if (workTree == null) {
+            return null;
+        }
+        try {
+            Path indexFile = gitDirectory(workTree.resolve(".git")).resolve("index");
+            if (!Files.isRegularFile(indexFile)) {
+                return null;
+            }
+            FileTime modified = Files.getLastModifiedTime(indexFile);
+            Map<String, Entry> entries = parse(ByteBuffer.wrap(Files.readAllBytes(indexFile)));
+            logger.debug("Read {} tracked files from {}", entries.size(), indexFile);
+            return new GitIndex(workTree, modified, entries);
+        } catch (IOException | RuntimeException e) {
+            logger.debug("Ignoring unreadable git index of {}: {}", workTree, e.toString());
+            return null;
+        }
+    }
+
+    /**
+     * Resolves {@code .git}, which is either the git directory itself or, in
+     * linked work trees and submodules, a file pointing at it.
+     */
+    private static Path gitDirectory(Path dotGit) throws IOException {
+        if (Files.isDirectory(dotGit)) {
+            return dotGit;
+        }
+        String content = Files.readString(dotGit, StandardCharsets.UTF_8).trim();
+        if (!content.startsWith("gitdir:")) {
+            throw new IOException("Not a gitdir link: " + dotGit);
+        }
+        return dotGit.getParent().resolve(content.substring("gitdir:".length()).trim()).normalize();
+    }
+
+    private static Map<String, Entry> parse(ByteBuffer buffer) throws IOException {
+        if (buffer.getInt() != SIGNATURE) {
+            throw new IOException("Not a git index");
+        }
+        int version = buffer.getInt();
+        if (version < 2 || version > 4) {
+            throw new IOException("Unsupported git index version " + version);
+        }
+        int count = buffer.getInt();
+        Map<String, Entry> entries = new HashMap<>(Math.max(16, count * 4 / 3 + 1));
+        HexFormat hex = HexFormat.of();
+        byte[] id = new byte[20];
+        byte[] previous = new byte[0];
+
+        for (int i = 0; i < count; i++) {
+            int start = buffer.position();
+            buffer.position(start + 8); // ctime
+            int mtimeSeconds = buffer.getInt();
+            int mtimeNanos = buffer.getInt();
+            buffer.position(buffer.position() + 8); // dev, ino
+            int mode = buffer.getInt();
+            buffer.position(buffer.position() + 8); // uid, gid
+            int size = buffer.getInt();
+            buffer.get(id);
+            int flags = buffer.getShort() & 0xFFFF;
+            if (version >= 3 && (flags & FLAG_EXTENDED) != 0) {
+                buffer.getShort();
+            }
+
+            byte[] name;
+            if (version == 4) {
+                // Path prefix-compressed against the previous entry, without padding
+                int strip = readVarint(buffer);
+                int keep = previous.length - strip;
+                int suffix = nulTerminatedLength(buffer);
+                name = new byte[keep + suffix];
+                System.arraycopy(previous, 0, name, 0, keep);
+                buffer.get(name, keep, suffix);
+                buffer.get();
+            } else {
+                int length = flags & NAME_MASK;
+                if (length == NAME_MASK) {
+                    length = nulTerminatedLength(buffer);
+                }
+                name = new byte[length];
+                buffer.get(name);
+                // NUL-padded to a multiple of eight bytes, with at least one NUL
+                int entryLength = buffer.position() - start;
+                buffer.position(start + ((entryLength + 8) & ~7));
+            }
+            previous = name;
+
+            if ((flags & STAGE_MASK) == 0 && (mode >>> 12) == REGULAR_FILE) {
+                entries.put(new String(name, StandardCharsets.UTF_8),
+                    new Entry(mtimeSeconds, mtimeNanos, size, hex.formatHex(id)));
+            }
+        }
+        return entries;
+    }
+
+    private static int readVarint(ByteBuffer buffer) {
+        // Git's offset encoding: each continuation adds one before shifting
+        int b = buffer.get() & 0xFF;
+        int value = b & 0x7F;
+        while ((b & 0x80) != 0) {
+            b = buffer.get() & 0xFF;
+            value = ((value + 1) << 7) | (b & 0x7F);
+        }
+        return value;
+    }
+
+    private static int nulTerminatedLength(ByteBuffer buffer) {
+        int end = buffer.position();
+        while (buffer.get(end) != 0) {
+            end++;
+        }
+        return end - buffer.position();
+    }
+
+    /**
+     * @return Number of tracked regular files
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Looks up the blob id of a file, valid only if the file is tracked and
+     * unchanged since it was staged.
+     *
+     * A file modified in the same instant the index was written, or later,
+     * may have changed without its stat data changing, so it is not trusted.
+     *
+     * @param file The file
+     * @param attrs The file's current attributes
+     * @return The hex-encoded blob id, or null if the file is untracked or may have changed
+     */
+    public String blobId(Path file, BasicFileAttributes attrs) {
+        Path relative = workTree.relativize(file.toAbsolutePath().normalize());
+        String key = relative.getFileSystem().getSeparator().equals("/")
+            ? relative.toString()
+            : relative.toString().replace(relative.getFileSystem().getSeparator(), "/");
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        FileTime modified = attrs.lastModifiedTime();
+        if (modified.compareTo(indexModified) >= 0) {
+            return null;
+        }
+        long seconds = modified.to(TimeUnit.SECONDS);
+        int nanos = modified.toInstant().getNano();
+        // The index stores 32-bit truncations of size and time; zero nanoseconds means git did not record them
+        if ((int) attrs.size() != entry.size || (int) seconds != entry.mtimeSeconds
+                || entry.mtimeNanos != 0 && nanos != entry.mtimeNanos) {
+            return null;
+        }
+        return entry.blobId;
+    }
+}
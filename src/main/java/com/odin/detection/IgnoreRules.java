@@ -0,0 +1,244 @@
+package com.odin.detection;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Decides which parts of a project tree are skipped during detection.
+ *
+ * Two mechanisms are combined:
+ * 1. A deny-list of file and directory names (node_modules, .git, target, ...)
+ *    that is checked on the bare name, before the entry is even stat'ed
+ * 2. Patterns from .gitignore and .dockerignore files, using gitignore syntax
+ *    (negation with !, directory-only patterns with a trailing /, anchoring
+ *    with a leading or inner /, and *, ?, ** globs)
+ *
+ * Instances are immutable. Reading a nested .gitignore produces a new
+ * instance that extends its parent, so rules can be shared across walker
+ * threads without locking.
+ */
+public final class IgnoreRules {
+    private static final Logger logger = LoggerFactory.getLogger(IgnoreRules.class);
+
+    /**
+     * Names of directories that never contain project sources worth scanning.
+     */
+    public static final Set<String> DEFAULT_DENY_LIST = Set.of(
+        ".git", ".hg", ".svn",
+        "node_modules", "bower_components",
+        "target", "dist", ".gradle", ".mvn",
+        "venv", ".venv", "__pycache__", ".tox", ".mypy_cache", ".pytest_cache",
+        "vendor",
+        ".idea", ".vscode",
+        ".next", ".nuxt"
+    );
+
+    private final Set<String> denyList;
+    private final List<Rule> rules;
+
+    /**
+     * A single compiled ignore pattern, scoped to the directory of its ignore file.
+     */
+    private static final class Rule {
+        final Path baseDir;
+        final Pattern pattern;
+        final boolean negated;
+        final boolean directoryOnly;
+
+        Rule(Path baseDir, Pattern pattern, boolean negated, boolean directoryOnly) {
+            this.baseDir = baseDir;
+            this.pattern = pattern;
+            this.negated = negated;
+            this.directoryOnly = directoryOnly;
+        }
+    }
+
+    private IgnoreRules(Set<String> denyList, List<Rule> rules) {
+        this.denyList = denyList;
+        this.rules = rules;
+    }
+
+    /**
+     * @return Rules using the default deny-list and no ignore-file patterns
+     */
+    public static IgnoreRules defaults() {
+        return new IgnoreRules(DEFAULT_DENY_LIST, List.of());
+    }
+
+    /**
+     * Creates rules with a custom deny-list.
+     *
+     * @param denyList Names of files and directories to skip
+     * @return Rules using the given deny-list and no ignore-file patterns
+     */
+    public static IgnoreRules withDenyList(Collection<String> denyList) {
+        return new IgnoreRules(Set.copyOf(denyList), List.of());
+    }
+
+    /**
+     * @return The names skipped without being stat'ed
+     */
+    public Set<String> getDenyList() {
+        return denyList;
+    }
+
+    /**
+     * Checks an entry against the deny-list by name alone.
+     *
+     * @param name The file or directory name
+     * @return true if the entry must be skipped
+     */
+    public boolean isDenied(String name) {
+        return denyList.contains(name);
+    }
+
+    /**
+     * Checks an entry against the ignore-file patterns. Later patterns override
+     * earlier ones, so a negated pattern can re-include a path.
+     *
+     * @param path The file or directory
+     * @param directory Whether the entry is a directory
+     * @return true if the entry must be skipped
+     */
+    public boolean isIgnored(Path path, boolean directory) {
+        boolean ignored = false;
+        for (Rule rule : rules) {
+            if (rule.directoryOnly && !directory) {
+                continue;
+            }
+            if (!path.startsWith(rule.baseDir)) {
+                continue;
+            }
+            String relative = rule.baseDir.relativize(path).toString().replace('\\', '/');
+            if (rule.pattern.matcher(relative).matches()) {
+                ignored = !rule.negated;
+            }
+        }
+        return ignored;
+    }
+
+    /**
+     * Returns rules extended with the patterns of an ignore file.
+     *
+     * @param ignoreFile The .gitignore or .dockerignore file to read
+     * @param anchored Whether every pattern is relative to the file's directory,
+     *                 as in .dockerignore, rather than matching at any depth
+     * @return The extended rules, or this instance if the file cannot be read
+     */
+    public IgnoreRules withIgnoreFile(Path ignoreFile, boolean anchored) {
+        List<String> lines;
+        try {
+            lines = Files.readAllLines(ignoreFile);
+        } catch (IOException e) {
+            logger.warn("Failed to read ignore file: {}", ignoreFile);
+            return this;
+        }
+
+        List<Rule> extended = new ArrayList<>(rules);
+        Path baseDir = ignoreFile.getParent();
+        for (int i = 0; i < lines.size(); i++) {
+            Rule rule;
+            try {
+                rule = parse(baseDir, lines.get(i), anchored);
+            } catch (PatternSyntaxException e) {
+                // Git ignores patterns it cannot parse, such as a reversed range
+                logger.warn("Skipping invalid pattern at {}:{}: {}", ignoreFile, i + 1, lines.get(i).strip());
+                continue;
+            }
+            if (rule != null) {
+                extended.add(rule);
+            }
+        }
+        return extended.size() == rules.size() ? this : new IgnoreRules(denyList, List.copyOf(extended));
+    }
+
+    /**
+     * Parses one line of an ignore file.
+     *
+     * @return The compiled rule, or null for blank lines and comments
+     * @throws PatternSyntaxException if the glob does not translate to a valid pattern
+     */
+    private static Rule parse(Path baseDir, String line, boolean anchored) {
+        String pattern = line.strip();
+        if (pattern.isEmpty() || pattern.startsWith("#")) {
+            return null;
+        }
+
+        boolean negated = pattern.startsWith("!");
+        if (negated) {
+            pattern = pattern.substring(1);
+        }
+        boolean directoryOnly = pattern.endsWith("/");
+        while (pattern.endsWith("/")) {
+            pattern = pattern.substring(0, pattern.length() - 1);
+        }
+        if (pattern.startsWith("/")) {
+            anchored = true;
+            pattern = pattern.substring(1);
+        } else if (pattern.contains("/")) {
+            anchored = true;
+        }
+        if (pattern.isEmpty()) {
+            return null;
+        }
+
+        String regex = globToRegex(pattern);
+        if (!anchored) {
+            regex = "(?:.*/)?" + regex;
+        }
+        return new Rule(baseDir, Pattern.compile(regex), negated, directoryOnly);
+    }
+
+    /**
+     * Converts a gitignore glob into an equivalent regular expression.
+     */
+    static String globToRegex(String glob) {
+        StringBuilder regex = new StringBuilder();
+        int i = 0;
+        while (i < glob.length()) {
+            char c = glob.charAt(i);
+            if (c == '*') {
+                if (glob.startsWith("**/", i)) {
+                    regex.append("(?:.*/)?");
+                    i += 3;
+                    continue;
+                } else if (glob.startsWith("**", i)) {
+                    regex.append(".*");
+                    i += 2;
+                    continue;
+                }
+                regex.append("[^/]*");
+            } else if (c == '?') {
+                regex.append("[^/]");
+            } else if (c == '[') {
+                int end = glob.indexOf(']', i + 1);
+                if (end < 0) {
+                    regex.append("\\[");
+                } else {
+                    String set = glob.substring(i + 1, end).replace("\\", "\\\\");
+                    if (set.startsWith("!")) {
+                        set = "^" + set.substring(1);
+                    }
+                    regex.append('[').append(set).append(']');
+                    i = end;
+                }
+            } else if (c == '\\' && i + 1 < glob.length()) {
+                regex.append(Pattern.quote(String.valueOf(glob.charAt(++i))));
+            } else {
+                regex.append(Pattern.quote(String.valueOf(c)));
+            }
+            i++;
+        }
+        return regex.toString();
+    }
+}
@@ -0,0 +1,430 @@
+package com.odin.detection;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Multi-pattern matcher that finds every detection rule hit in one linear pass.
+ *
+ * Rule patterns are alternations such as {@code "flask|Flask\\(|from flask"}.
+ * Each alternative that is a plain literal (optionally with escaped
+ * punctuation) is compiled into a single Aho-Corasick automaton over bytes.
+ * Alternatives that use real regex syntax fall back to a precompiled
+ * {@link Pattern}. The automaton is built once and is immutable, so one
+ * instance can be shared by every scan and thread.
+ *
+ * Matching is case-sensitive and works directly on the raw UTF-8 bytes of a
+ * file, so content never has to be decoded into a String. Matches may span
+ * line breaks.
+ *
+ * A compiled matcher can be serialized with {@link #toBytes()} and restored
+ * with {@link #fromBytes(byte[])}, which skips building the automaton.
+ */
+public final class KeywordMatcher {
+    private static final int ALPHABET = 256;
+    // "ODKM" followed by the serialized format version
+    private static final int MAGIC = 0x4F444B4D;
+    private static final int FORMAT_VERSION = 1;
+    private static final int[] NO_OUTPUT = new int[0];
+
+    // Dense DFA transition table: delta[state * ALPHABET + byte] -> next state
+    private final int[] delta;
+    // Rule ids reported when a state is reached, including those of its fail chain
+    private final int[][] outputs;
+    // Regex fallback alternatives and the rule ids they report
+    private final Pattern[] fallbackPatterns;
+    private final int[] fallbackRules;
+    private final int ruleCount;
+
+    private KeywordMatcher(int[] delta, int[][] outputs, Pattern[] fallbackPatterns,
+                           int[] fallbackRules, int ruleCount) {
+        this.delta = delta;
+        this.outputs = outputs;
+        this.fallbackPatterns = fallbackPatterns;
+        this.fallbackRules = fallbackRules;
+        this.ruleCount = ruleCount;
+    }
+
+    /**
+     * Finds every rule that matches somewhere in the given content.
+     *
+     * @param data The raw file content
+     * @param length Number of valid bytes in {@code data}
+     * @return The ids of all rules that matched
+     */
+    public BitSet match(byte[] data, int length) {
+        return match(data, length, null);
+    }
+
+    /**
+     * Finds every rule that matches somewhere in the given content, together
+     * with the line of each rule's first match.
+     *
+     * @param data The raw file content
+     * @param length Number of valid bytes in {@code data}
+     * @param firstLines Receives, by rule id, the 1-based line where the rule first
+     *                   matched; entries of rules that did not match are left untouched.
+     *                   May be null when lines are not needed.
+     * @return The ids of all rules that matched
+     */
+    public BitSet match(byte[] data, int length, int[] firstLines) {
+        BitSet hits = new BitSet(ruleCount);
+        int state = 0;
+        int line = 1;
+        for (int i = 0; i < length; i++) {
+            int b = data[i] & 0xFF;
+            state = delta[(state << 8) | b];
+            int[] out = outputs[state];
+            for (int rule : out) {
+                if (!hits.get(rule)) {
+                    hits.set(rule);
+                    if (firstLines != null) {
+                        // A match spanning line breaks is reported at the line where it ends
+                        firstLines[rule] = line;
+                    }
+                }
+            }
+            if (b == '\n') {
+                line++;
+            }
+        }
+
+        if (fallbackPatterns.length > 0) {
+            CharSequence text = new ByteCharSequence(data, 0, length);
+            for (int i = 0; i < fallbackPatterns.length; i++) {
+                if (hits.get(fallbackRules[i])) {
+                    continue;
+                }
+                Matcher matcher = fallbackPatterns[i].matcher(text);
+                if (matcher.find()) {
+                    hits.set(fallbackRules[i]);
+                    if (firstLines != null) {
+                        firstLines[fallbackRules[i]] = lineAt(data, matcher.start());
+                    }
+                }
+            }
+        }
+        return hits;
+    }
+
+    /**
+     * @return The 1-based line holding the byte at {@code offset}
+     */
+    private static int lineAt(byte[] data, int offset) {
+        int line = 1;
+        for (int i = 0; i < offset; i++) {
+            if (data[i] == '\n') {
+                line++;
+            }
+        }
+        return line;
+    }
+
+    /**
+     * @return Number of rules this matcher was compiled from
+     */
+    public int getRuleCount() {
+        return ruleCount;
+    }
+
+    /**
+     * Serializes the compiled automaton.
+     *
+     * @return The matcher in the form read by {@link #fromBytes(byte[])}
+     */
+    public byte[] toBytes() {
+        List<byte[]> patterns = new ArrayList<>();
+        long size = 5L * Integer.BYTES + (long) delta.length * Integer.BYTES;
+        for (int[] out : outputs) {
+            size += (long) (out.length + 1) * Integer.BYTES;
+        }
+        for (Pattern pattern : fallbackPatterns) {
+            byte[] bytes = pattern.pattern().getBytes(StandardCharsets.UTF_8);
+            patterns.add(bytes);
+            size += 2L * Integer.BYTES + bytes.length;
+        }
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Matcher too large to serialize: " + size + " bytes");
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate((int) size);
+        buffer.putInt(MAGIC).putInt(FORMAT_VERSION).putInt(ruleCount).putInt(outputs.length);
+        buffer.asIntBuffer().put(delta);
+        buffer.position(buffer.position() + delta.length * Integer.BYTES);
+        for (int[] out : outputs) {
+            buffer.putInt(out.length);
+            for (int rule : out) {
+                buffer.putInt(rule);
+            }
+        }
+        buffer.putInt(fallbackPatterns.length);
+        for (int i = 0; i < fallbackPatterns.length; i++) {
+            buffer.putInt(fallbackRules[i]).putInt(patterns.get(i).length).put(patterns.get(i));
+        }
+        return buffer.array();
+    }
+
+    /**
+     * Restores a matcher serialized by {@link #toBytes()}.
+     *
+     * @param data The serialized matcher
+     * @return The matcher
+     * @throws IllegalArgumentException if the data is not a serialized matcher of this format
+     */
+    public static KeywordMatcher fromBytes(byte[] data) {
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(data);
+            if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION) {
+                throw new IllegalArgumentException("Not a serialized matcher of format version " + FORMAT_VERSION);
+            }
+            int ruleCount = buffer.getInt();
+            int states = buffer.getInt();
+            int[] delta = new int[states * ALPHABET];
+            buffer.asIntBuffer().get(delta);
+            buffer.position(buffer.position() + delta.length * Integer.BYTES);
+            int[][] outputs = new int[states][];
+            for (int s = 0; s < states; s++) {
+                int count = buffer.getInt();
+                outputs[s] = count == 0 ? NO_OUTPUT : new int[count];
+                for (int i = 0; i < count; i++) {
+                    outputs[s][i] = buffer.getInt();
+                }
+            }
+            int fallbacks = buffer.getInt();
+            Pattern[] fallbackPatterns = new Pattern[fallbacks];
+            int[] fallbackRules = new int[fallbacks];
+            for (int i = 0; i < fallbacks; i++) {
+                fallbackRules[i] = buffer.getInt();
+                byte[] pattern = new byte[buffer.getInt()];
+                buffer.get(pattern);
+                fallbackPatterns[i] = Pattern.compile(new String(pattern, StandardCharsets.UTF_8));
+            }
+            if (buffer.hasRemaining()) {
+                throw new IllegalArgumentException("Trailing data after serialized matcher");
+            }
+            return new KeywordMatcher(delta, outputs, fallbackPatterns, fallbackRules, ruleCount);
+        } catch (BufferUnderflowException | NegativeArraySizeException | PatternSyntaxException e) {
+            throw new IllegalArgumentException("Corrupt serialized matcher", e);
+        }
+    }
+
+    /**
+     * Builder collecting rule patterns before compiling the automaton.
+     */
+    public static class Builder {
+        private final List<byte[]> keywords = new ArrayList<>();
+        private final List<Integer> keywordRules = new ArrayList<>();
+        private final List<Pattern> fallbackPatterns = new ArrayList<>();
+        private final List<Integer> fallbackRules = new ArrayList<>();
+        private int ruleCount;
+
+        /**
+         * Adds a rule pattern. The pattern is split on top-level {@code |}; literal
+         * alternatives go into the automaton and the rest become regex fallbacks.
+         *
+         * @param ruleId The id reported when the pattern matches
+         * @param pattern The rule pattern as a regular expression
+         * @return this builder for method chaining
+         */
+        public Builder add(int ruleId, String pattern) {
+            ruleCount = Math.max(ruleCount, ruleId + 1);
+            for (String alternative : splitAlternatives(pattern)) {
+                String literal = toLiteral(alternative);
+                if (literal != null && !literal.isEmpty()) {
+                    keywords.add(literal.getBytes(StandardCharsets.UTF_8));
+                    keywordRules.add(ruleId);
+                } else if (!alternative.isEmpty()) {
+                    fallbackPatterns.add(Pattern.compile(alternative));
+                    fallbackRules.add(ruleId);
+                }
+            }
+            return this;
+        }
+
+        /**
+         * Compiles the collected patterns into an immutable matcher.
+         *
+         * @return A new KeywordMatcher
+         */
+        public KeywordMatcher build() {
+            // Build the keyword trie; state 0 is the root
+            List<int[]> gotoTable = new ArrayList<>();
+            List<List<Integer>> out = new ArrayList<>();
+            gotoTable.add(newRow());
+            out.add(new ArrayList<>());
+
+            for (int k = 0; k < keywords.size(); k++) {
+                int state = 0;
+                for (byte b : keywords.get(k)) {
+                    int c = b & 0xFF;
+                    int next = gotoTable.get(state)[c];
+                    if (next < 0) {
+                        next = gotoTable.size();
+                        gotoTable.add(newRow());
+                        out.add(new ArrayList<>());
+                        gotoTable.get(state)[c] = next;
+                    }
+                    state = next;
+                }
+                if (!out.get(state).contains(keywordRules.get(k))) {
+                    out.get(state).add(keywordRules.get(k));
+                }
+            }
+
+            // Breadth-first construction of fail links, folded into a dense DFA
+            int states = gotoTable.size();
+            int[] delta = new int[states * ALPHABET];
+            int[] fail = new int[states];
+            Queue<Integer> queue = new ArrayDeque<>();
+            for (int c = 0; c < ALPHABET; c++) {
+                int next = gotoTable.get(0)[c];
+                if (next < 0) {
+                    delta[c] = 0;
+                } else {
+                    delta[c] = next;
+                    fail[next] = 0;
+                    queue.add(next);
+                }
+            }
+            while (!queue.isEmpty()) {
+                int state = queue.poll();
+                for (int rule : out.get(fail[state])) {
+                    if (!out.get(state).contains(rule)) {
+                        out.get(state).add(rule);
+                    }
+                }
+                for (int c = 0; c < ALPHABET; c++) {
+                    int next = gotoTable.get(state)[c];
+                    if (next < 0) {
+                        delta[state * ALPHABET + c] = delta[fail[state] * ALPHABET + c];
+                    } else {
+                        delta[state * ALPHABET + c] = next;
+                        fail[next] = delta[fail[state] * ALPHABET + c];
+                        queue.add(next);
+                    }
+                }
+            }
+
+            int[][] outputs = new int[states][];
+            for (int s = 0; s < states; s++) {
+                List<Integer> rules = out.get(s);
+                outputs[s] = rules.isEmpty() ? NO_OUTPUT : rules.stream().mapToInt(Integer::intValue).toArray();
+            }
+
+            return new KeywordMatcher(delta, outputs,
+                fallbackPatterns.toArray(new Pattern[0]),
+                fallbackRules.stream().mapToInt(Integer::intValue).toArray(),
+                ruleCount);
+        }
+
+        private static int[] newRow() {
+            int[] row = new int[ALPHABET];
+            Arrays.fill(row, -1);
+            return row;
+        }
+    }
+
+    /**
+     * Splits a regex on top-level {@code |}, ignoring separators inside
+     * groups, character classes or escapes.
+     */
+    static List<String> splitAlternatives(String pattern) {
+        List<String> alternatives = new ArrayList<>();
+        int depth = 0;
+        boolean inClass = false;
+        int start = 0;
+        for (int i = 0; i < pattern.length(); i++) {
+            char c = pattern.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (inClass) {
+                if (c == ']') {
+                    inClass = false;
+                }
+            } else if (c == '[') {
+                inClass = true;
+            } else if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                depth--;
+            } else if (c == '|' && depth == 0) {
+                alternatives.add(pattern.substring(start, i));
+                start = i + 1;
+            }
+        }
+        alternatives.add(pattern.substring(start));
+        return alternatives;
+    }
+
+    /**
+     * Converts a regex alternative to the literal it matches, or returns null
+     * if it uses any regex construct beyond escaped punctuation.
+     */
+    static String toLiteral(String alternative) {
+        StringBuilder literal = new StringBuilder(alternative.length());
+        for (int i = 0; i < alternative.length(); i++) {
+            char c = alternative.charAt(i);
+            if (c == '\\') {
+                if (i + 1 >= alternative.length()) {
+                    return null;
+                }
+                char escaped = alternative.charAt(++i);
+                if (Character.isLetterOrDigit(escaped)) {
+                    return null;
+                }
+                literal.append(escaped);
+            } else if (".[]{}()*+?^$|".indexOf(c) >= 0) {
+                return null;
+            } else {
+                literal.append(c);
+            }
+        }
+        return literal.toString();
+    }
+
+    /**
+     * Zero-copy Latin-1 view of a byte range, used to run regex fallbacks
+     * without decoding the file. ASCII patterns match exactly as on UTF-8 text.
+     */
+    private static final class ByteCharSequence implements CharSequence {
+        private final byte[] data;
+        private final int offset;
+        private final int length;
+
+        ByteCharSequence(byte[] data, int offset, int length) {
+            this.data = data;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return (char) (data[offset + index] & 0xFF);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return new ByteCharSequence(data, offset + start, end - start);
+        }
+
+        @Override
+        public String toString() {
+            return new String(data, offset, length, StandardCharsets.ISO_8859_1);
+        }
+    }
+}
@@ -0,0 +1,302 @@
+package com.odin.detection;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+/**
+ * Streaming extractor of resolved dependencies from lockfiles.
+ *
+ * Supports package-lock.json (lockfile versions 1 to 3), yarn.lock (classic
+ * and Berry), pnpm-lock.yaml and Cargo.lock. Lockfiles routinely reach tens
+ * of megabytes, so they are never loaded whole: package-lock.json is walked
+ * token by token with Jackson's streaming {@link JsonParser}, and the other
+ * formats line by line. Memory use is constant in the size of the file;
+ * every resolved package is handed to a sink as soon as it is read.
+ */
+public final class LockfileParser {
+    private static final Logger logger = LoggerFactory.getLogger(LockfileParser.class);
+    private static final JsonFactory jsonFactory = new JsonFactory();
+
+    @FunctionalInterface
+    private interface Parser {
+        void parse(InputStream in, BiConsumer<String, String> sink) throws IOException;
+    }
+
+    private static final Map<String, Parser> PARSERS = Map.of(
+        "package-lock.json", LockfileParser::parsePackageLock,
+        "npm-shrinkwrap.json", LockfileParser::parsePackageLock,
+        "yarn.lock", LockfileParser::parseYarnLock,
+        "pnpm-lock.yaml", LockfileParser::parsePnpmLock,
+        "Cargo.lock", LockfileParser::parseCargoLock
+    );
+
+    private static final Set<String> PNPM_PACKAGE_SECTIONS = Set.of("packages:", "snapshots:");
+
+    private LockfileParser() {
+    }
+
+    /**
+     * @param fileName A file name
+     * @return true if the file is a supported lockfile
+     */
+    public static boolean isLockfile(String fileName) {
+        return PARSERS.containsKey(fileName);
+    }
+
+    /**
+     * Streams the resolved packages of a lockfile to a sink.
+     *
+     * @param file The lockfile
+     * @param sink Receives each resolved package name and version; may see a name more than once
+     * @return true if the lockfile was parsed
+     */
+    public static boolean parse(Path file, BiConsumer<String, String> sink) {
+        Parser parser = PARSERS.get(file.getFileName().toString());
+        if (parser == null) {
+            return false;
+        }
+        try (InputStream in = Files.newInputStream(file)) {
+            parser.parse(in, sink);
+            return true;
+        } catch (IOException e) {
+            logger.warn("Failed to parse lockfile {}: {}", file, e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Streams the resolved packages of a lockfile read from a stream, such as
+     * an archive entry. The stream is not closed.
+     *
+     * @param file Path of the lockfile, used to select the parser
+     * @param in The lockfile content
+     * @param sink Receives each resolved package name and version; may see a name more than once
+     * @return true if the lockfile was parsed
+     */
+    public static boolean parse(Path file, InputStream in, BiConsumer<String, String> sink) {
+        Parser parser = PARSERS.get(file.getFileName().toString());
+        if (parser == null) {
+            return false;
+        }
+        try {
+            parser.parse(new FilterInputStream(in) {
+                @Override
+                public void close() {
+                    // Owned by the caller
+                }
+            }, sink);
+            return true;
+        } catch (IOException e) {
+            logger.warn("Failed to parse lockfile {}: {}", file, e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Reads package-lock.json. Version 2 and 3 lockfiles list every installed
+     * package under {@code "packages"} keyed by its node_modules path; version
+     * 1 nests them under {@code "dependencies"}.
+     */
+    private static void parsePackageLock(InputStream in, BiConsumer<String, String> sink) throws IOException {
+        try (JsonParser parser = jsonFactory.createParser(in)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Expected a JSON object");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                if (value == JsonToken.START_OBJECT && field.equals("packages")) {
+                    readPackages(parser, sink);
+                } else if (value == JsonToken.START_OBJECT && field.equals("dependencies")) {
+                    readDependencies(parser, sink);
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+    }
+
+    private static void readPackages(JsonParser parser, BiConsumer<String, String> sink) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String path = parser.getCurrentName();
+            parser.nextToken();
+            String version = readVersion(parser, null);
+            int modules = path.lastIndexOf("node_modules/");
+            // The "" entry is the project itself
+            if (modules >= 0 && version != null) {
+                sink.accept(path.substring(modules + "node_modules/".length()), version);
+            }
+        }
+    }
+
+    private static void readDependencies(JsonParser parser, BiConsumer<String, String> sink) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            parser.nextToken();
+            String version = readVersion(parser, sink);
+            if (version != null) {
+                sink.accept(name, version);
+            }
+        }
+    }
+
+    /**
+     * Reads one package object, returning its version and descending into
+     * nested v1 {@code "dependencies"} when a sink is given.
+     */
+    private static String readVersion(JsonParser parser, BiConsumer<String, String> nested) throws IOException {
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return null;
+        }
+        String version = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            if (field.equals("version") && value == JsonToken.VALUE_STRING) {
+                version = parser.getText();
+            } else if (nested != null && field.equals("dependencies") && value == JsonToken.START_OBJECT) {
+                readDependencies(parser, nested);
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return version;
+    }
+
+    /**
+     * Reads yarn.lock. Entries start with an unindented list of specifiers
+     * such as {@code "@babel/core@^7.0.0", "@babel/core@^7.1.0":} followed by
+     * an indented {@code version "7.2.3"} (classic) or {@code version: 7.2.3} (Berry).
+     */
+    private static void parseYarnLock(InputStream in, BiConsumer<String, String> sink) throws IOException {
+        BufferedReader reader = reader(in);
+        String name = null;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            if (!Character.isWhitespace(line.charAt(0))) {
+                name = line.endsWith(":") ? yarnPackageName(line) : null;
+                continue;
+            }
+            String trimmed = line.trim();
+            if (name != null && trimmed.startsWith("version")) {
+                String version = unquote(trimmed.substring("version".length()).replaceFirst("^:?\\s*", ""));
+                sink.accept(name, version);
+                name = null;
+            }
+        }
+    }
+
+    private static String yarnPackageName(String header) {
+        String spec = header.substring(0, header.length() - 1).split(",")[0].trim();
+        spec = unquote(spec);
+        int at = spec.lastIndexOf('@');
+        // Berry's metadata block and malformed headers have no name@range form
+        return at > 0 ? spec.substring(0, at) : null;
+    }
+
+    /**
+     * Reads pnpm-lock.yaml. Packages are the two-space-indented keys of the
+     * {@code packages:} (and, from version 9, {@code snapshots:}) sections,
+     * written as {@code /name/1.2.3} (v5), {@code /name@1.2.3} (v6) or
+     * {@code name@1.2.3} (v9), optionally followed by peer suffixes.
+     */
+    private static void parsePnpmLock(InputStream in, BiConsumer<String, String> sink) throws IOException {
+        BufferedReader reader = reader(in);
+        boolean inPackages = false;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.isEmpty()) {
+                continue;
+            }
+            if (!Character.isWhitespace(line.charAt(0))) {
+                inPackages = PNPM_PACKAGE_SECTIONS.contains(line.trim());
+                continue;
+            }
+            if (!inPackages || !line.startsWith("  ") || Character.isWhitespace(line.charAt(2)) || !line.endsWith(":")) {
+                continue;
+            }
+            String key = unquote(line.substring(2, line.length() - 1).trim());
+            if (key.startsWith("/")) {
+                key = key.substring(1);
+            }
+            // v5 keys end in /<version>, optionally followed by _<peer suffix>
+            int end = key.indexOf('_') > 0 ? key.indexOf('_') : key.length();
+            int slash = key.lastIndexOf('/', end - 1);
+            if (slash > 0 && slash + 1 < end && Character.isDigit(key.charAt(slash + 1))
+                    && key.lastIndexOf('@', end - 1) < slash) {
+                sink.accept(key.substring(0, slash), key.substring(slash + 1, end));
+                continue;
+            }
+            int peers = key.indexOf('(');
+            if (peers > 0) {
+                key = key.substring(0, peers);
+            }
+            int at = key.lastIndexOf('@');
+            if (at > 0) {
+                sink.accept(key.substring(0, at), key.substring(at + 1));
+            }
+        }
+    }
+
+    /**
+     * Reads Cargo.lock, a sequence of {@code [[package]]} tables each with a
+     * name and version.
+     */
+    private static void parseCargoLock(InputStream in, BiConsumer<String, String> sink) throws IOException {
+        BufferedReader reader = reader(in);
+        String name = null;
+        String version = null;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            String trimmed = line.trim();
+            if (trimmed.startsWith("[")) {
+                emit(name, version, sink);
+                name = null;
+                version = null;
+            } else if (trimmed.startsWith("name = ")) {
+                name = unquote(trimmed.substring("name = ".length()));
+            } else if (trimmed.startsWith("version = ")) {
+                version = unquote(trimmed.substring("version = ".length()));
+            }
+        }
+        emit(name, version, sink);
+    }
+
+    private static void emit(String name, String version, BiConsumer<String, String> sink) {
+        if (name != null && version != null) {
+            sink.accept(name, version);
+        }
+    }
+
+    private static BufferedReader reader(InputStream in) {
+        return new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+    }
+
+    private static String unquote(String value) {
+        String trimmed = value.trim();
+        if (trimmed.length() >= 2 && (trimmed.charAt(0) == '"' || trimmed.charAt(0) == '\'')
+                && trimmed.charAt(trimmed.length() - 1) == trimmed.charAt(0)) {
+            return trimmed.substring(1, trimmed.length() - 1);
+        }
+        return trimmed;
+    }
+}
@@ -0,0 +1,397 @@
+package com.odin.detection;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.xml.sax.helpers.DefaultHandler;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import static java.util.Map.entry;
+
+/**
+ * Structured parsers for build manifests, feeding a {@link DependencyIndex}.
+ *
+ * Supported manifests: pom.xml, build.gradle(.kts), package.json,
+ * requirements.txt, pyproject.toml, go.mod, Cargo.toml, Gemfile and
+ * composer.json. Each parser extracts only dependency names and versions and
+ * tolerates malformed input by recording whatever it could read; a manifest
+ * that cannot be parsed at all is logged and skipped.
+ */
+public final class ManifestParser {
+    private static final Logger logger = LoggerFactory.getLogger(ManifestParser.class);
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    @FunctionalInterface
+    private interface Parser {
+        void parse(String content, DependencyIndex index) throws Exception;
+    }
+
+    /**
+     * A supported manifest format and the language its ecosystem implies.
+     */
+    private static final class Format {
+        final String language;
+        final Parser parser;
+
+        Format(String language, Parser parser) {
+            this.language = language;
+            this.parser = parser;
+        }
+    }
+
+    private static final Map<String, Format> FORMATS = Map.ofEntries(
+        entry("pom.xml", new Format("java", ManifestParser::parsePom)),
+        entry("build.gradle", new Format("java", ManifestParser::parseGradle)),
+        entry("build.gradle.kts", new Format("kotlin", ManifestParser::parseGradle)),
+        entry("package.json", new Format("javascript", ManifestParser::parsePackageJson)),
+        entry("requirements.txt", new Format("python", ManifestParser::parseRequirements)),
+        entry("pyproject.toml", new Format("python", ManifestParser::parsePyproject)),
+        entry("go.mod", new Format("go", ManifestParser::parseGoMod)),
+        entry("Cargo.toml", new Format("rust", ManifestParser::parseCargo)),
+        entry("Gemfile", new Format("ruby", ManifestParser::parseGemfile)),
+        entry("composer.json", new Format("php", ManifestParser::parseComposer))
+    );
+
+    private static final Pattern GRADLE_DEPENDENCY = Pattern.compile(
+        "(?m)^\\s*(?:implementation|api|compile|compileOnly|runtimeOnly|runtime|testImplementation|testCompile"
+            + "|testRuntimeOnly|annotationProcessor|kapt|developmentOnly)\\s*\\(?\\s*['\"]([^:'\"\\s]+):([^:'\"\\s]+)(?::([^'\"\\s]+))?['\"]");
+    private static final Pattern GO_REQUIRE = Pattern.compile("^\\s*(?:require\\s+)?([^\\s()]+)\\s+(v[^\\s]+)");
+    private static final Pattern GEM = Pattern.compile("^\\s*gem\\s+['\"]([^'\"]+)['\"](?:\\s*,\\s*['\"]([^'\"]+)['\"])?");
+    private static final Pattern TOML_KEY_VALUE = Pattern.compile("^\\s*(\"[^\"]+\"|[A-Za-z0-9_.\\-]+)\\s*=\\s*(.*)$");
+    private static final Pattern TOML_VERSION = Pattern.compile("version\\s*=\\s*\"([^\"]*)\"");
+    private static final Pattern QUOTED = Pattern.compile("\"([^\"]*)\"|'([^']*)'");
+
+    private ManifestParser() {
+    }
+
+    /**
+     * @param fileName A file name
+     * @return true if the file is a supported build manifest
+     */
+    public static boolean isManifest(String fileName) {
+        return FORMATS.containsKey(fileName);
+    }
+
+    /**
+     * Parses one manifest into the index.
+     *
+     * @param file Path of the manifest, used to select the parser and to rank its language
+     * @param content The manifest content
+     * @param index The index to record dependencies into
+     * @return true if the manifest was parsed
+     */
+    public static boolean parse(Path file, String content, DependencyIndex index) {
+        Format format = FORMATS.get(file.getFileName().toString());
+        if (format == null) {
+            return false;
+        }
+        try {
+            format.parser.parse(content, index);
+        } catch (Exception e) {
+            logger.warn("Failed to parse manifest {}: {}", file, e.getMessage());
+            return false;
+        }
+        index.addManifest(file, format.language);
+        return true;
+    }
+
+    private static void parsePom(String content, DependencyIndex index) throws Exception {
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
+        factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+        factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+        DocumentBuilder builder = factory.newDocumentBuilder();
+        // Fail on fatal errors without printing them to stderr
+        builder.setErrorHandler(new DefaultHandler());
+        Document document = builder.parse(new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)));
+
+        // Sibling modules refer to the project's own group by placeholder
+        Element project = document.getDocumentElement();
+        Element parent = firstChild(project, "parent");
+        String parentGroupId = parent != null ? childText(parent, "groupId") : null;
+        String projectGroupId = childText(project, "groupId");
+        Map<String, String> groups = new HashMap<>();
+        if (parentGroupId != null) {
+            groups.put("${project.parent.groupId}", parentGroupId);
+        }
+        if (projectGroupId != null || parentGroupId != null) {
+            groups.put("${project.groupId}", projectGroupId != null ? projectGroupId : parentGroupId);
+        }
+
+        for (String tag : new String[] {"parent", "dependency", "plugin"}) {
+            NodeList elements = document.getElementsByTagNameNS("*", tag);
+            for (int i = 0; i < elements.getLength(); i++) {
+                Element element = (Element) elements.item(i);
+                String groupId = childText(element, "groupId");
+                String artifactId = childText(element, "artifactId");
+                // Only plugins have an implicit group
+                if (groupId == null && tag.equals("plugin")) {
+                    groupId = "org.apache.maven.plugins";
+                }
+                if (groupId != null) {
+                    groupId = groups.getOrDefault(groupId, groupId);
+                }
+                // Coordinates left to other properties name nothing that can be matched
+                if (groupId == null || artifactId == null || groupId.contains("${") || artifactId.contains("${")) {
+                    continue;
+                }
+                String version = childText(element, "version");
+                index.add(groupId + ":" + artifactId, version != null && version.contains("${") ? null : version);
+            }
+        }
+    }
+
+    private static Element firstChild(Element element, String name) {
+        for (Node child = element.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child.getNodeType() == Node.ELEMENT_NODE && name.equals(child.getLocalName())) {
+                return (Element) child;
+            }
+        }
+        return null;
+    }
+
+    private static String childText(Element element, String name) {
+        Element child = firstChild(element, name);
+        return child != null ? child.getTextContent().trim() : null;
+    }
+
+    private static void parseGradle(String content, DependencyIndex index) {
+        Matcher matcher = GRADLE_DEPENDENCY.matcher(content);
+        while (matcher.find()) {
+            index.add(matcher.group(1) + ":" + matcher.group(2), matcher.group(3));
+        }
+    }
+
+    private static void parsePackageJson(String content, DependencyIndex index) throws IOException {
+        JsonNode root = mapper.readTree(content);
+        addJsonDependencies(root, index, "dependencies", "devDependencies", "peerDependencies", "optionalDependencies");
+    }
+
+    private static void parseComposer(String content, DependencyIndex index) throws IOException {
+        JsonNode root = mapper.readTree(content);
+        addJsonDependencies(root, index, "require", "require-dev");
+    }
+
+    private static void addJsonDependencies(JsonNode root, DependencyIndex index, String... fields) {
+        if (root == null) {
+            return;
+        }
+        for (String field : fields) {
+            JsonNode dependencies = root.get(field);
+            if (dependencies == null || !dependencies.isObject()) {
+                continue;
+            }
+            Iterator<Map.Entry<String, JsonNode>> entries = dependencies.fields();
+            while (entries.hasNext()) {
+                Map.Entry<String, JsonNode> entry = entries.next();
+                index.add(entry.getKey(), entry.getValue().asText());
+            }
+        }
+    }
+
+    private static void parseRequirements(String content, DependencyIndex index) {
+        for (String line : content.split("\\R")) {
+            int comment = line.indexOf('#');
+            String requirement = (comment >= 0 ? line.substring(0, comment) : line).trim();
+            // Options such as -r, -e and --index-url are not dependencies
+            if (!requirement.isEmpty() && !requirement.startsWith("-")) {
+                addPythonRequirement(requirement, index);
+            }
+        }
+    }
+
+    /**
+     * Adds a PEP 508 requirement such as {@code flask[async]>=2.0; python_version > "3.7"}.
+     */
+    private static void addPythonRequirement(String requirement, DependencyIndex index) {
+        int end = 0;
+        while (end < requirement.length() && isPythonNameChar(requirement.charAt(end))) {
+            end++;
+        }
+        if (end == 0) {
+            return;
+        }
+        String rest = requirement.substring(end);
+        int marker = rest.indexOf(';');
+        if (marker >= 0) {
+            rest = rest.substring(0, marker);
+        }
+        int extras = rest.indexOf(']');
+        if (rest.startsWith("[") && extras >= 0) {
+            rest = rest.substring(extras + 1);
+        }
+        index.add(normalizePythonName(requirement.substring(0, end)), rest.trim());
+    }
+
+    private static boolean isPythonNameChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '-' || c == '_' || c == '.';
+    }
+
+    /**
+     * Normalizes a Python package name as PEP 503 does.
+     */
+    private static String normalizePythonName(String name) {
+        return name.toLowerCase(Locale.ROOT).replaceAll("[-_.]+", "-");
+    }
+
+    private static void parsePyproject(String content, DependencyIndex index) {
+        forEachTomlEntry(content, (table, key, value) -> {
+            if (table.equals("project") && key.equals("dependencies")
+                    || table.equals("project.optional-dependencies")
+                    || table.equals("build-system") && key.equals("requires")) {
+                Matcher quoted = QUOTED.matcher(value);
+                while (quoted.find()) {
+                    addPythonRequirement(quoted.group(1) != null ? quoted.group(1) : quoted.group(2), index);
+                }
+            } else if (table.startsWith("tool.poetry.") && table.endsWith("dependencies") && !key.equals("python")) {
+                index.add(normalizePythonName(key), tomlVersion(value));
+            }
+        });
+    }
+
+    private static void parseCargo(String content, DependencyIndex index) {
+        forEachTomlEntry(content, (table, key, value) -> {
+            String section = table.startsWith("target.") ? table.substring(table.lastIndexOf('.') + 1) : table;
+            if (section.endsWith("dependencies")) {
+                index.add(key, tomlVersion(value));
+            } else if (section.contains("dependencies.") && key.equals("version")) {
+                // [dependencies.serde] form
+                index.add(section.substring(section.lastIndexOf('.') + 1), tomlVersion(value));
+            }
+        });
+        // Tables of the [dependencies.name] form may omit a version entirely
+        for (String line : content.split("\\R")) {
+            String header = line.trim();
+            if (header.startsWith("[") && header.endsWith("]") && header.contains("dependencies.")) {
+                String name = header.substring(header.lastIndexOf('.') + 1, header.length() - 1);
+                index.add(name, null);
+            }
+        }
+    }
+
+    /**
+     * Extracts the version of a TOML dependency value, either a plain string
+     * or an inline table with a version key.
+     */
+    private static String tomlVersion(String value) {
+        Matcher version = TOML_VERSION.matcher(value);
+        if (version.find()) {
+            return version.group(1);
+        }
+        Matcher quoted = QUOTED.matcher(value);
+        return quoted.lookingAt() ? (quoted.group(1) != null ? quoted.group(1) : quoted.group(2)) : null;
+    }
+
+    @FunctionalInterface
+    private interface TomlVisitor {
+        void visit(String table, String key, String value);
+    }
+
+    /**
+     * Walks the key/value pairs of a TOML document with just enough syntax
+     * for dependency declarations: table headers, bare and quoted keys, and
+     * values, with arrays and inline tables joined across lines.
+     */
+    private static void forEachTomlEntry(String content, TomlVisitor visitor) {
+        String table = "";
+        String[] lines = content.split("\\R");
+        for (int i = 0; i < lines.length; i++) {
+            String line = stripTomlComment(lines[i]).trim();
+            if (line.isEmpty()) {
+                continue;
+            }
+            if (line.startsWith("[")) {
+                table = line.replaceAll("^\\[+|]+$", "").replace("\"", "").trim();
+                continue;
+            }
+            Matcher keyValue = TOML_KEY_VALUE.matcher(line);
+            if (!keyValue.matches()) {
+                continue;
+            }
+            StringBuilder value = new StringBuilder(keyValue.group(2));
+            while (depth(value) > 0 && i + 1 < lines.length) {
+                value.append(' ').append(stripTomlComment(lines[++i]).trim());
+            }
+            visitor.visit(table, keyValue.group(1).replace("\"", ""), value.toString());
+        }
+    }
+
+    private static String stripTomlComment(String line) {
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '"') {
+                quoted = !quoted;
+            } else if (c == '#' && !quoted) {
+                return line.substring(0, i);
+            }
+        }
+        return line;
+    }
+
+    /**
+     * @return Number of unclosed brackets and braces outside strings
+     */
+    private static int depth(CharSequence value) {
+        int depth = 0;
+        boolean quoted = false;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                quoted = !quoted;
+            } else if (!quoted && (c == '[' || c == '{')) {
+                depth++;
+            } else if (!quoted && (c == ']' || c == '}')) {
+                depth--;
+            }
+        }
+        return depth;
+    }
+
+    private static void parseGoMod(String content, DependencyIndex index) {
+        boolean inRequire = false;
+        for (String line : content.split("\\R")) {
+            String trimmed = line.trim();
+            if (trimmed.startsWith("require (")) {
+                inRequire = true;
+                continue;
+            }
+            if (inRequire && trimmed.startsWith(")")) {
+                inRequire = false;
+                continue;
+            }
+            if (inRequire || trimmed.startsWith("require ")) {
+                Matcher require = GO_REQUIRE.matcher(trimmed);
+                if (require.find()) {
+                    index.add(require.group(1), require.group(2));
+                }
+            }
+        }
+    }
+
+    private static void parseGemfile(String content, DependencyIndex index) {
+        for (String line : content.split("\\R")) {
+            Matcher gem = GEM.matcher(line);
+            if (gem.find()) {
+                index.add(gem.group(1), gem.group(2));
+            }
+        }
+    }
+}
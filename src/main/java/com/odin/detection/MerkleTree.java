@@ -0,0 +1,179 @@
+package com.odin.detection;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Directory Merkle tree of a walked project, built from file metadata only.
+ *
+ * Every file contributes a leaf hash of its relative path and either its
+ * git blob id, when the git index vouches for it, or its size and
+ * modification time. Each directory hashes its own files together with the
+ * names and hashes of its subdirectories, so the root hash fingerprints the
+ * whole tree, and two trees can be compared top-down, descending only into
+ * the subtrees whose hashes differ.
+ *
+ * Directories are named by their path relative to the root, with '/'
+ * separators; the root itself is "".
+ */
+public final class MerkleTree {
+    // Hash of the subtree and hash of the directory's own files, by directory
+    private final Map<String, long[]> directories;
+    private final Map<String, Set<String>> children;
+    private final int files;
+
+    private MerkleTree(Map<String, long[]> directories, Map<String, Set<String>> children, int files) {
+        this.directories = directories;
+        this.children = children;
+        this.files = files;
+    }
+
+    /**
+     * Builds the tree bottom-up from the files of a walk.
+     *
+     * @param root The root directory
+     * @param files The files below the root
+     * @param leafHashes The leaf hash of each file, by index
+     * @return The Merkle tree
+     */
+    public static MerkleTree build(Path root, List<Path> files, long[] leafHashes) {
+        // Own files are combined by sum, since each leaf already hashes its full path
+        Map<String, long[]> own = new HashMap<>();
+        Map<String, Set<String>> children = new HashMap<>();
+        children.put("", new TreeSet<>());
+        for (int i = 0; i < files.size(); i++) {
+            String dir = relativeDirectory(root, files.get(i).getParent());
+            long[] sum = own.computeIfAbsent(dir, d -> new long[2]);
+            sum[0] += leafHashes[i];
+            sum[1]++;
+            // Links the directory into its parent, up to the first ancestor already linked
+            for (String d = dir; !d.isEmpty(); d = parentOf(d)) {
+                children.computeIfAbsent(d, k -> new TreeSet<>());
+                if (!children.computeIfAbsent(parentOf(d), p -> new TreeSet<>()).add(d)) {
+                    break;
+                }
+            }
+        }
+
+        List<String> deepestFirst = new ArrayList<>(children.keySet());
+        deepestFirst.sort(Comparator.comparingInt(MerkleTree::depth).reversed());
+        Map<String, long[]> directories = new HashMap<>(deepestFirst.size() * 4 / 3 + 1);
+        ByteArrayOutputStream node = new ByteArrayOutputStream();
+        for (String dir : deepestFirst) {
+            long[] sum = own.getOrDefault(dir, new long[2]);
+            long ownHash = mix(sum[0] ^ mix(sum[1]));
+            node.reset();
+            writeLong(node, ownHash);
+            for (String child : children.get(dir)) {
+                node.writeBytes(child.getBytes(StandardCharsets.UTF_8));
+                node.write(0);
+                writeLong(node, directories.get(child)[0]);
+            }
+            byte[] bytes = node.toByteArray();
+            directories.put(dir, new long[] {ContentHash.xxHash64(bytes, bytes.length, 0), ownHash});
+        }
+        return new MerkleTree(directories, children, files.size());
+    }
+
+    /**
+     * @return Fingerprint of the whole tree, from its root hash and file count
+     */
+    public String getFingerprint() {
+        return Long.toHexString(directories.get("")[0]) + "-" + Long.toHexString(files);
+    }
+
+    /**
+     * @return For each directory, the hash of its subtree and the hash of its own files; for persisting
+     */
+    public Map<String, long[]> getDirectories() {
+        return directories;
+    }
+
+    /**
+     * Compares the tree top-down with an earlier one. Subtrees whose hash is
+     * unchanged are skipped without being descended into.
+     *
+     * @param previous The directories of the earlier tree (see {@link #getDirectories()}), or null
+     * @return The directories whose own files changed, that were added, or that were removed,
+     *         sorted; "." for the root. Empty if nothing changed or there is no earlier tree.
+     */
+    public List<String> changedSince(Map<String, long[]> previous) {
+        Set<String> changed = new TreeSet<>();
+        if (previous != null) {
+            compare("", previous, changed);
+        }
+        return new ArrayList<>(changed);
+    }
+
+    private void compare(String dir, Map<String, long[]> previous, Set<String> changed) {
+        long[] now = directories.get(dir);
+        long[] before = previous.get(dir);
+        if (before != null && before.length == 2 && before[0] == now[0]) {
+            return;
+        }
+        if (before == null || before.length != 2) {
+            changed.add(dir.isEmpty() ? "." : dir);
+            return;
+        }
+        if (before[1] != now[1]) {
+            changed.add(dir.isEmpty() ? "." : dir);
+        }
+        for (String child : children.get(dir)) {
+            compare(child, previous, changed);
+        }
+        // A subdirectory that is gone only shows as a change of its parent's hash
+        for (String old : previous.keySet()) {
+            if (!old.isEmpty() && parentOf(old).equals(dir) && !directories.containsKey(old)) {
+                changed.add(old);
+            }
+        }
+    }
+
+    private static String relativeDirectory(Path root, Path dir) {
+        String relative = root.relativize(dir).toString();
+        String separator = dir.getFileSystem().getSeparator();
+        return separator.equals("/") ? relative : relative.replace(separator, "/");
+    }
+
+    private static String parentOf(String dir) {
+        int slash = dir.lastIndexOf('/');
+        return slash < 0 ? "" : dir.substring(0, slash);
+    }
+
+    private static int depth(String dir) {
+        if (dir.isEmpty()) {
+            return 0;
+        }
+        int depth = 1;
+        for (int i = 0; i < dir.length(); i++) {
+            if (dir.charAt(i) == '/') {
+                depth++;
+            }
+        }
+        return depth;
+    }
+
+    private static void writeLong(ByteArrayOutputStream out, long value) {
+        for (int shift = 0; shift < 64; shift += 8) {
+            out.write((int) (value >>> shift));
+        }
+    }
+
+    // MurmurHash3 finalizer
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,211 @@
+package com.odin.detection;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Walks a file tree in parallel on a fork-join pool.
+ * 
+ * Every directory is listed by its own task and subdirectories are forked as
+ * new tasks, so large trees are enumerated by all workers at once. Regular
+ * files are handed to the visitor as soon as they are found, on the worker
+ * thread that found them, instead of being collected into a list first.
+ * The visitor must therefore be thread-safe.
+ * 
+ * Whole subtrees are pruned according to {@link IgnoreRules}: deny-listed
+ * names are rejected before the entry is stat'ed, and paths matched by a
+ * .gitignore (at any level) or the root .dockerignore are neither read nor
+ * descended into.
+ * 
+ * A walk can be cut short by the visitor (see {@link Visitor#isDone()}):
+ * directories not yet listed are then skipped.
+ * 
+ * Symbolic links are not followed, matching {@link Files#walk(Path, java.nio.file.FileVisitOption...)}.
+ */
+public class ParallelFileWalker {
+    private static final Logger logger = LoggerFactory.getLogger(ParallelFileWalker.class);
+
+    private final ForkJoinPool pool;
+
+    /**
+     * Callback for regular files found by the walk. Called concurrently.
+     */
+    @FunctionalInterface
+    public interface Visitor {
+        /**
+         * Visits one regular file.
+         * 
+         * @param file The file
+         * @param attrs The file's attributes, read while walking
+         */
+        void visit(Path file, BasicFileAttributes attrs);
+
+        /**
+         * Visits one directory that is descended into, including the root,
+         * before any of its entries.
+         * 
+         * @param dir The directory
+         */
+        default void visitDirectory(Path dir) {
+        }
+
+        /**
+         * Checked before listing each directory and visiting each entry.
+         * 
+         * @return true to stop the walk
+         */
+        default boolean isDone() {
+            return false;
+        }
+    }
+
+    /**
+     * Creates a new ParallelFileWalker running on the common fork-join pool.
+     */
+    public ParallelFileWalker() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Creates a new ParallelFileWalker running on the given pool.
+     * 
+     * @param pool The pool to run directory tasks on
+     */
+    public ParallelFileWalker(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * @return The pool directory tasks run on
+     */
+    public ForkJoinPool getPool() {
+        return pool;
+    }
+
+    /**
+     * Walks the tree below {@code root} with the default ignore rules,
+     * calling the visitor for every regular file.
+     * 
+     * @param root The directory to walk
+     * @param visitor Callback invoked concurrently for each regular file
+     * @return Number of regular files visited
+     * @throws IOException if the root directory cannot be listed
+     */
+    public long walk(Path root, Visitor visitor) throws IOException {
+        return walk(root, IgnoreRules.defaults(), visitor);
+    }
+
+    /**
+     * Walks the tree below {@code root}, calling the visitor for every regular
+     * file that is not pruned by the ignore rules.
+     * 
+     * @param root The directory to walk
+     * @param rules The deny-list and ignore patterns to prune with
+     * @param visitor Callback invoked concurrently for each regular file
+     * @return Number of regular files visited
+     * @throws IOException if the root directory cannot be listed
+     */
+    public long walk(Path root, IgnoreRules rules, Visitor visitor) throws IOException {
+        LongAdder visited = new LongAdder();
+        try {
+            pool.invoke(new DirectoryTask(root, rules, visitor, visited, true));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return visited.sum();
+    }
+
+    /**
+     * Lists one directory, visiting its files and forking a task per subdirectory.
+     */
+    private static final class DirectoryTask extends RecursiveAction {
+        private final Path dir;
+        private final IgnoreRules rules;
+        private final Visitor visitor;
+        private final LongAdder visited;
+        private final boolean root;
+
+        DirectoryTask(Path dir, IgnoreRules rules, Visitor visitor, LongAdder visited, boolean root) {
+            this.dir = dir;
+            this.rules = rules;
+            this.visitor = visitor;
+            this.visited = visited;
+            this.root = root;
+        }
+
+        @Override
+        protected void compute() {
+            if (visitor.isDone()) {
+                return;
+            }
+            visitor.visitDirectory(dir);
+
+            // List names first so this directory's ignore files apply to all its entries
+            List<Path> entries = new ArrayList<>();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+                for (Path entry : stream) {
+                    if (!rules.isDenied(entry.getFileName().toString())) {
+                        entries.add(entry);
+                    }
+                }
+            } catch (IOException e) {
+                if (root) {
+                    throw new UncheckedIOException(e);
+                }
+                logger.warn("Failed to list directory: {}", dir);
+                return;
+            }
+
+            IgnoreRules scoped = rules;
+            for (Path entry : entries) {
+                String name = entry.getFileName().toString();
+                if (name.equals(".gitignore")) {
+                    scoped = scoped.withIgnoreFile(entry, false);
+                } else if (root && name.equals(".dockerignore")) {
+                    scoped = scoped.withIgnoreFile(entry, true);
+                }
+            }
+
+            List<DirectoryTask> subtasks = new ArrayList<>();
+            for (Path entry : entries) {
+                if (visitor.isDone()) {
+                    break;
+                }
+                BasicFileAttributes attrs;
+                try {
+                    attrs = Files.readAttributes(entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                } catch (IOException e) {
+                    logger.debug("Failed to read attributes: {}", entry);
+                    continue;
+                }
+                if (scoped.isIgnored(entry, attrs.isDirectory())) {
+                    continue;
+                }
+                if (attrs.isDirectory()) {
+                    DirectoryTask task = new DirectoryTask(entry, scoped, visitor, visited, false);
+                    task.fork();
+                    subtasks.add(task);
+                } else if (attrs.isRegularFile()) {
+                    visited.increment();
+                    visitor.visit(entry, attrs);
+                }
+            }
+            for (DirectoryTask task : subtasks) {
+                task.join();
+            }
+        }
+    }
+}
@@ -0,0 +1,372 @@
+package com.odin.detection;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+import java.util.stream.Stream;
+
+/**
+ * Detection rules loaded from JSON rule packs and compiled once.
+ *
+ * The bundled pack ({@code rules/default-rules.json} on the classpath) holds
+ * the built-in languages, build tools, content patterns, dependency rules and
+ * default ports. User packs in {@code ~/.odin/rules} are merged over it, so
+ * in-house frameworks can be added without rebuilding odin: a user rule
+ * replaces the bundled rule of the same name, and user framework dependency
+ * rules take precedence over the bundled ones.
+ *
+ * All content patterns are compiled into one {@link KeywordMatcher}. Rule ids
+ * are assigned category by category, so each category owns a contiguous id
+ * range, and by name within a category, so ids are stable across runs and can
+ * be cached. The compiled automaton is itself cached on disk, keyed by the
+ * registry id, so an unchanged rule set is never recompiled.
+ */
+public final class RuleRegistry {
+    private static final Logger logger = LoggerFactory.getLogger(RuleRegistry.class);
+    private static final String BUNDLED_PACK = "/rules/default-rules.json";
+
+    private static final ObjectMapper mapper = new ObjectMapper()
+        .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    private static volatile RuleRegistry bundled;
+
+    private final String id;
+    private final List<String> languages;
+    private final Pattern[] languagePatterns;
+    private final Map<String, Pattern> buildToolPatterns = new LinkedHashMap<>();
+    private final List<String> contentRuleNames = new ArrayList<>();
+    private final List<String> contentRulePatterns = new ArrayList<>();
+    private final int[] frameworkRules;
+    private final int[] databaseRules;
+    private final int[] cloudRules;
+    private final int[] testingFrameworkRules;
+    private final List<Map.Entry<String, List<String>>> frameworkDependencies = new ArrayList<>();
+    private final RulePack pack;
+    private KeywordMatcher matcher;
+
+    /**
+     * A rule pack as stored in JSON. Public fields for JSON serialization.
+     */
+    public static class RulePack {
+        public Map<String, String> languages = new LinkedHashMap<>();
+        public Map<String, String> buildTools = new LinkedHashMap<>();
+        public Map<String, String> frameworks = new LinkedHashMap<>();
+        public Map<String, String> databases = new LinkedHashMap<>();
+        public Map<String, String> cloudProviders = new LinkedHashMap<>();
+        public Map<String, String> testingFrameworks = new LinkedHashMap<>();
+        // Ordered by precedence: frameworks built on top of others come first
+        public List<FrameworkRule> frameworkDependencies = new ArrayList<>();
+        public Map<String, List<String>> databaseDependencies = new LinkedHashMap<>();
+        public Map<String, List<String>> cloudDependencies = new LinkedHashMap<>();
+        public Map<String, List<String>> testingFrameworkDependencies = new LinkedHashMap<>();
+        public Map<String, Integer> appPorts = new LinkedHashMap<>();
+        public Map<String, Integer> databasePorts = new LinkedHashMap<>();
+    }
+
+    /**
+     * Dependency rules identifying one framework. Public fields for JSON serialization.
+     */
+    public static class FrameworkRule {
+        public String name;
+        public List<String> dependencies = new ArrayList<>();
+    }
+
+    private RuleRegistry(RulePack pack) {
+        this.pack = pack;
+        this.languages = pack.languages.keySet().stream().sorted().toList();
+        this.languagePatterns = languages.stream()
+            .map(language -> Pattern.compile(pack.languages.get(language)))
+            .toArray(Pattern[]::new);
+        pack.buildTools.forEach((name, regex) -> buildToolPatterns.put(name, Pattern.compile(regex)));
+        this.frameworkRules = registerContentRules(pack.frameworks);
+        this.databaseRules = registerContentRules(pack.databases);
+        this.cloudRules = registerContentRules(pack.cloudProviders);
+        this.testingFrameworkRules = registerContentRules(pack.testingFrameworks);
+        pack.frameworkDependencies.forEach(rule -> frameworkDependencies.add(Map.entry(rule.name, List.copyOf(rule.dependencies))));
+        try {
+            this.id = ContentHash.sha1Hex(mapper.writeValueAsString(pack));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return The default directory of user rule packs, {@code ~/.odin/rules}
+     */
+    public static Path defaultUserDirectory() {
+        return Path.of(System.getProperty("user.home"), ".odin", "rules");
+    }
+
+    /**
+     * Returns the bundled rules alone, compiled in memory once per process.
+     *
+     * @return The bundled rule registry
+     */
+    public static RuleRegistry bundled() {
+        RuleRegistry registry = bundled;
+        if (registry == null) {
+            synchronized (RuleRegistry.class) {
+                registry = bundled;
+                if (registry == null) {
+                    registry = new RuleRegistry(readBundled());
+                    registry.compile(null);
+                    bundled = registry;
+                }
+            }
+        }
+        return registry;
+    }
+
+    /**
+     * Loads the bundled rules merged with the user rule packs, reusing the
+     * compiled automaton cached for the same rules when there is one.
+     *
+     * @param userRules A rule pack file or a directory of {@code *.json} packs; skipped if it does not exist
+     * @param cacheDir Directory holding compiled automata, or null to always compile in memory
+     * @return The rule registry
+     */
+    public static RuleRegistry load(Path userRules, Path cacheDir) {
+        RulePack pack = readBundled();
+        for (Path file : userPacks(userRules)) {
+            try {
+                merge(pack, mapper.readValue(file.toFile(), RulePack.class), file);
+                logger.info("Loaded detection rules from {}", file);
+            } catch (IOException e) {
+                logger.warn("Failed to read rule pack {}: {}", file, e.getMessage());
+            }
+        }
+        RuleRegistry registry = new RuleRegistry(pack);
+        registry.compile(cacheDir);
+        return registry;
+    }
+
+    private static RulePack readBundled() {
+        try (InputStream in = RuleRegistry.class.getResourceAsStream(BUNDLED_PACK)) {
+            if (in == null) {
+                throw new IllegalStateException("Bundled rule pack not found: " + BUNDLED_PACK);
+            }
+            return mapper.readValue(in, RulePack.class);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read bundled rule pack", e);
+        }
+    }
+
+    private static List<Path> userPacks(Path userRules) {
+        if (userRules == null) {
+            return List.of();
+        }
+        if (Files.isRegularFile(userRules)) {
+            return List.of(userRules);
+        }
+        if (!Files.isDirectory(userRules)) {
+            return List.of();
+        }
+        try (Stream<Path> files = Files.list(userRules)) {
+            return files.filter(file -> file.getFileName().toString().endsWith(".json"))
+                .sorted()
+                .toList();
+        } catch (IOException e) {
+            logger.warn("Failed to list rule packs in {}: {}", userRules, e.getMessage());
+            return List.of();
+        }
+    }
+
+    /**
+     * Merges a user pack into the rules loaded so far. Rules with invalid
+     * patterns are skipped with a warning rather than failing the whole pack.
+     */
+    private static void merge(RulePack target, RulePack user, Path source) {
+        mergePatterns(target.languages, user.languages, source);
+        mergePatterns(target.buildTools, user.buildTools, source);
+        mergePatterns(target.frameworks, user.frameworks, source);
+        mergePatterns(target.databases, user.databases, source);
+        mergePatterns(target.cloudProviders, user.cloudProviders, source);
+        mergePatterns(target.testingFrameworks, user.testingFrameworks, source);
+
+        // User frameworks are checked first, in the order they are listed
+        List<FrameworkRule> frameworks = new ArrayList<>();
+        if (user.frameworkDependencies != null) {
+            frameworks.addAll(user.frameworkDependencies.stream().filter(rule -> rule.name != null && rule.dependencies != null).toList());
+        }
+        for (FrameworkRule rule : target.frameworkDependencies) {
+            if (frameworks.stream().noneMatch(userRule -> userRule.name.equals(rule.name))) {
+                frameworks.add(rule);
+            }
+        }
+        target.frameworkDependencies = frameworks;
+
+        putAll(target.databaseDependencies, user.databaseDependencies);
+        putAll(target.cloudDependencies, user.cloudDependencies);
+        putAll(target.testingFrameworkDependencies, user.testingFrameworkDependencies);
+        putAll(target.appPorts, user.appPorts);
+        putAll(target.databasePorts, user.databasePorts);
+    }
+
+    private static void mergePatterns(Map<String, String> target, Map<String, String> user, Path source) {
+        if (user == null) {
+            return;
+        }
+        user.forEach((name, regex) -> {
+            try {
+                Pattern.compile(regex);
+                target.put(name, regex);
+            } catch (PatternSyntaxException | NullPointerException e) {
+                logger.warn("Skipping rule {} with invalid pattern in {}", name, source);
+            }
+        });
+    }
+
+    private static <V> void putAll(Map<String, V> target, Map<String, V> user) {
+        if (user != null) {
+            target.putAll(user);
+        }
+    }
+
+    /**
+     * Assigns content rule ids to every entry of a pattern table.
+     *
+     * @return Two-element array holding the first rule id and the end (exclusive) of the range
+     */
+    private int[] registerContentRules(Map<String, String> patterns) {
+        int start = contentRuleNames.size();
+        new TreeMap<>(patterns).forEach((name, pattern) -> {
+            contentRuleNames.add(name);
+            contentRulePatterns.add(pattern);
+        });
+        return new int[] {start, contentRuleNames.size()};
+    }
+
+    /**
+     * Compiles every content rule into one matcher, or restores it from the
+     * cache directory when it was compiled before for the same rules.
+     */
+    private void compile(Path cacheDir) {
+        Path cached = cacheDir != null ? cacheDir.resolve("matcher-" + id + ".bin") : null;
+        if (cached != null && Files.isRegularFile(cached)) {
+            try {
+                matcher = KeywordMatcher.fromBytes(Files.readAllBytes(cached));
+                logger.debug("Loaded compiled detection rules from {}", cached);
+                return;
+            } catch (IOException | IllegalArgumentException e) {
+                logger.warn("Ignoring unreadable compiled rules {}: {}", cached, e.getMessage());
+            }
+        }
+
+        KeywordMatcher.Builder builder = new KeywordMatcher.Builder();
+        for (int ruleId = 0; ruleId < contentRulePatterns.size(); ruleId++) {
+            builder.add(ruleId, contentRulePatterns.get(ruleId));
+        }
+        matcher = builder.build();
+
+        if (cached != null) {
+            try {
+                Files.createDirectories(cacheDir);
+                Path temp = Files.createTempFile(cacheDir, "matcher", ".tmp");
+                Files.write(temp, matcher.toBytes());
+                Files.move(temp, cached, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                logger.warn("Failed to cache compiled detection rules {}: {}", cached, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * @return Identifier of the merged rules; changes whenever any rule changes
+     */
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * @return The matcher compiled from every content rule
+     */
+    public KeywordMatcher getMatcher() {
+        return matcher;
+    }
+
+    /**
+     * @return Language names by language id, sorted by name
+     */
+    public List<String> getLanguages() {
+        return languages;
+    }
+
+    /**
+     * @return File name patterns by language id
+     */
+    Pattern[] getLanguagePatterns() {
+        return languagePatterns;
+    }
+
+    /**
+     * @return File name patterns of build tools, in rule pack order
+     */
+    public Map<String, Pattern> getBuildToolPatterns() {
+        return buildToolPatterns;
+    }
+
+    /**
+     * @return Technology names by content rule id
+     */
+    public List<String> getContentRuleNames() {
+        return contentRuleNames;
+    }
+
+    int[] getFrameworkRules() {
+        return frameworkRules;
+    }
+
+    int[] getDatabaseRules() {
+        return databaseRules;
+    }
+
+    int[] getCloudRules() {
+        return cloudRules;
+    }
+
+    int[] getTestingFrameworkRules() {
+        return testingFrameworkRules;
+    }
+
+    /**
+     * @return Framework dependency rules in order of precedence
+     */
+    public List<Map.Entry<String, List<String>>> getFrameworkDependencies() {
+        return frameworkDependencies;
+    }
+
+    public Map<String, List<String>> getDatabaseDependencies() {
+        return pack.databaseDependencies;
+    }
+
+    public Map<String, List<String>> getCloudDependencies() {
+        return pack.cloudDependencies;
+    }
+
+    public Map<String, List<String>> getTestingFrameworkDependencies() {
+        return pack.testingFrameworkDependencies;
+    }
+
+    public Map<String, Integer> getAppPorts() {
+        return pack.appPorts;
+    }
+
+    public Map<String, Integer> getDatabasePorts() {
+        return pack.databasePorts;
+    }
+}
@@ -0,0 +1,92 @@
+package com.odin.detection;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Time and file limits of one detection run.
+ *
+ * A budget is started when detection begins. Every file whose content is
+ * read takes one unit of the file budget, and every step checks the deadline
+ * before doing more work. Once either limit is reached the budget is marked
+ * truncated and detection finishes with what it has found so far.
+ *
+ * Budgets are shared by every thread of a run, so all state is atomic.
+ */
+public final class ScanBudget {
+    private final long deadlineNanos;
+    private final int maxFiles;
+    private final AtomicInteger files = new AtomicInteger();
+    private volatile boolean truncated;
+
+    private ScanBudget(long deadlineNanos, int maxFiles) {
+        this.deadlineNanos = deadlineNanos;
+        this.maxFiles = maxFiles;
+    }
+
+    /**
+     * @return A budget that never runs out
+     */
+    public static ScanBudget unlimited() {
+        return new ScanBudget(Long.MAX_VALUE, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Starts a budget now.
+     *
+     * @param maxScanTime Maximum wall-clock time of the run, or null for no limit
+     * @param maxFiles Maximum number of files read, or 0 for no limit
+     * @return The running budget
+     */
+    public static ScanBudget start(Duration maxScanTime, int maxFiles) {
+        long deadline = maxScanTime != null ? System.nanoTime() + maxScanTime.toNanos() : Long.MAX_VALUE;
+        return new ScanBudget(deadline, maxFiles > 0 ? maxFiles : Integer.MAX_VALUE);
+    }
+
+    /**
+     * Checks the deadline, marking the run truncated once it has passed.
+     *
+     * @return true if no more work may be done, because time is up or the file budget is spent
+     */
+    public boolean isExpired() {
+        return isPastDeadline() || truncated;
+    }
+
+    /**
+     * Checks only the deadline, marking the run truncated once it has
+     * passed. Work that reads nothing, such as serving a file from the cache,
+     * may go on after the file budget is spent.
+     *
+     * @return true if time is up
+     */
+    public boolean isPastDeadline() {
+        if (deadlineNanos != Long.MAX_VALUE && System.nanoTime() - deadlineNanos >= 0) {
+            truncated = true;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Takes one file from the budget before reading it.
+     *
+     * @return true if the file may be read; false once either limit is reached
+     */
+    public boolean tryAcquireFile() {
+        if (isExpired()) {
+            return false;
+        }
+        if (files.incrementAndGet() > maxFiles) {
+            truncated = true;
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return true if any work was skipped because a limit was reached
+     */
+    public boolean isTruncated() {
+        return truncated;
+    }
+}
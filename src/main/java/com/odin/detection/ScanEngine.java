@@ -0,0 +1,758 @@
+package com.odin.detection;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
+
+/**
+ * Single-pass scan engine for stack detection.
+ *
+ * Every file is read from disk exactly once and run through the shared
+ * {@link KeywordMatcher} in one linear pass. Files are read through a
+ * {@link ContentReader}, so binaries are skipped and only a bounded prefix of
+ * large text files is ever loaded. The resulting rule hits are then
+ * handed to all registered detectors in turn. Detectors write their findings
+ * into a shared {@link ScanResult}, so adding a detector never adds another
+ * pass over the project tree or over the file content.
+ *
+ * Project trees are enumerated by a {@link ParallelFileWalker}, reading only
+ * metadata, and the files are then scanned in parallel on the walker's pool,
+ * so detectors and the result must be thread-safe. Walking first lets callers
+ * decide from the tree (its fingerprint, its manifests) which files are worth
+ * reading at all. With a {@link DetectionCache}, files whose size and
+ * modification time are unchanged are resolved from the cache without being
+ * opened, and only changed files are read again.
+ *
+ * Within a scan, content is keyed by its xxHash (see
+ * {@link ContentHash#xxHash64(byte[], int, long)}), so byte-identical copies,
+ * such as vendored files or generated clients repeated across a monorepo,
+ * are matched once and the hits only attributed to every copy.
+ *
+ * In a git checkout, tracked files that are unchanged since they were staged
+ * take their content hash from the git index (see {@link GitIndex}), so a
+ * file whose content is already in the cache is resolved without being
+ * opened even when its path or modification time is new to the cache.
+ */
+public class ScanEngine {
+    private static final Logger logger = LoggerFactory.getLogger(ScanEngine.class);
+
+    /**
+     * A detector that inspects one file at a time. May be called concurrently.
+     */
+    @FunctionalInterface
+    public interface FileDetector {
+        /**
+         * Inspects a single file.
+         *
+         * @param file The file being scanned
+         * @param attrs The file's attributes, read while walking
+         * @param hits Ids of the content rules matched in the file, or null if the file could not be read as text
+         * @param result The result to record findings into
+         */
+        void detect(Path file, BasicFileAttributes attrs, BitSet hits, ScanResult result);
+    }
+
+    /**
+     * Consumes archive entries that are read whole rather than matched, such
+     * as manifests, lockfiles and nested archives. Called sequentially.
+     */
+    @FunctionalInterface
+    public interface EntryHandler {
+        /**
+         * Offers one archive entry before its content is matched.
+         *
+         * @param file The entry, as a path below the archive
+         * @param content The entry's content; must not be closed
+         * @return true if the entry was consumed, so its content is not matched
+         * @throws IOException if reading the entry fails
+         */
+        boolean handle(Path file, InputStream content) throws IOException;
+    }
+
+    private final KeywordMatcher matcher;
+    private final List<String> languages;
+    private final List<FileDetector> detectors;
+    private final ParallelFileWalker walker;
+    private final ContentReader reader;
+
+    /**
+     * Creates a new ScanEngine feeding the given detectors.
+     *
+     * @param matcher The compiled content rules to match against every file
+     * @param languages Language names by language id, for the language statistics of each result
+     * @param detectors Detectors to run against every file, in order
+     */
+    public ScanEngine(KeywordMatcher matcher, List<String> languages, List<FileDetector> detectors) {
+        this(matcher, languages, detectors, new ParallelFileWalker(), new ContentReader());
+    }
+
+    /**
+     * Creates a new ScanEngine feeding the given detectors.
+     *
+     * @param matcher The compiled content rules to match against every file
+     * @param languages Language names by language id, for the language statistics of each result
+     * @param detectors Detectors to run against every file, in order
+     * @param walker The walker used to enumerate project trees
+     * @param reader The reader used to load file content
+     */
+    public ScanEngine(KeywordMatcher matcher, List<String> languages, List<FileDetector> detectors,
+                      ParallelFileWalker walker, ContentReader reader) {
+        this.matcher = matcher;
+        this.languages = List.copyOf(languages);
+        this.detectors = List.copyOf(detectors);
+        this.walker = walker;
+        this.reader = reader;
+    }
+
+    /**
+     * @return The pool files are walked and scanned on
+     */
+    public ForkJoinPool getPool() {
+        return walker.getPool();
+    }
+
+    /**
+     * A walked project tree: every file that survived the ignore rules, with
+     * the attributes read while walking, the blob ids of files unchanged in
+     * the git index, and a fingerprint of the whole tree.
+     */
+    public static final class ProjectTree {
+        private final Path root;
+        private final List<Path> files;
+        private final List<BasicFileAttributes> attributes;
+        private final String[] blobIds;
+        private final long[] hashes;
+        private final long walkNanos;
+        private volatile MerkleTree merkleTree;
+
+        ProjectTree(Path root, List<Path> files, List<BasicFileAttributes> attributes,
+                    String[] blobIds, long[] hashes, long walkNanos) {
+            this.root = root;
+            this.files = files;
+            this.attributes = attributes;
+            this.blobIds = blobIds;
+            this.hashes = hashes;
+            this.walkNanos = walkNanos;
+        }
+
+        public Path getRoot() {
+            return root;
+        }
+
+        public List<Path> getFiles() {
+            return files;
+        }
+
+        public BasicFileAttributes getAttributes(int i) {
+            return attributes.get(i);
+        }
+
+        /**
+         * @param i Index of a file
+         * @return The file's blob id from the git index, or null if it is untracked or may have changed
+         */
+        public String getBlobId(int i) {
+            return blobIds[i];
+        }
+
+        public int size() {
+            return files.size();
+        }
+
+        /**
+         * @return Fingerprint of all files of the tree: the root hash of its {@link MerkleTree}
+         */
+        public String getFingerprint() {
+            return getMerkleTree().getFingerprint();
+        }
+
+        /**
+         * Builds the directory Merkle tree of the files on first use. It does
+         * not depend on walk order, and needs no file to be read.
+         *
+         * @return The Merkle tree of the tree's files
+         */
+        public MerkleTree getMerkleTree() {
+            MerkleTree tree = merkleTree;
+            if (tree == null) {
+                tree = MerkleTree.build(root, files, hashes);
+                merkleTree = tree;
+            }
+            return tree;
+        }
+
+        public long getWalkNanos() {
+            return walkNanos;
+        }
+
+        /**
+         * Selects part of the tree, such as one service of a monorepo, without walking it again.
+         *
+         * @param subRoot The root directory of the part
+         * @param indices Indices of the files that belong to the part
+         * @return The part as a tree of its own
+         */
+        public ProjectTree subtree(Path subRoot, List<Integer> indices) {
+            List<Path> subFiles = new ArrayList<>(indices.size());
+            List<BasicFileAttributes> subAttributes = new ArrayList<>(indices.size());
+            String[] subBlobIds = new String[indices.size()];
+            long[] subHashes = new long[indices.size()];
+            for (int i = 0; i < indices.size(); i++) {
+                int index = indices.get(i);
+                subFiles.add(files.get(index));
+                subAttributes.add(attributes.get(index));
+                subBlobIds[i] = blobIds[index];
+                subHashes[i] = hashes[index];
+            }
+            return new ProjectTree(subRoot, subFiles, subAttributes, subBlobIds, subHashes, 0);
+        }
+    }
+
+    /**
+     * The outcome of scanning an archive: its entries as a tree, and the findings.
+     */
+    public static final class ArchiveScan {
+        private final ProjectTree tree;
+        private final ScanResult result;
+
+        ArchiveScan(ProjectTree tree, ScanResult result) {
+            this.tree = tree;
+            this.result = result;
+        }
+
+        /**
+         * @return The scanned entries, as paths below the archive, which is the tree's root
+         */
+        public ProjectTree getTree() {
+            return tree;
+        }
+
+        public ScanResult getResult() {
+            return result;
+        }
+    }
+
+    /**
+     * Content rule hits of every content matched in one scan, keyed by the
+     * xxHash of the scanned prefix seeded with the file size.
+     */
+    private static final class ContentMemo {
+        private final Map<Long, Match> matches = new ConcurrentHashMap<>();
+        private final LongAdder duplicates = new LongAdder();
+
+        Match get(long key) {
+            Match match = matches.get(key);
+            if (match != null) {
+                duplicates.increment();
+            }
+            return match;
+        }
+
+        void put(long key, Match match) {
+            matches.putIfAbsent(key, match);
+        }
+
+        long getDuplicates() {
+            return duplicates.sum();
+        }
+    }
+
+    /**
+     * The outcome of matching one content, shared by all its copies.
+     */
+    private static final class Match {
+        final BitSet hits;
+        final int[] firstLines;
+        // Cache key of the content, computed on first use
+        volatile String hash;
+
+        Match(BitSet hits, int[] firstLines, String hash) {
+            this.hits = hits;
+            this.firstLines = firstLines;
+            this.hash = hash;
+        }
+    }
+
+    /**
+     * One file found by the walk.
+     */
+    private static final class Found {
+        final Path file;
+        final BasicFileAttributes attrs;
+        final String blobId;
+        final long hash;
+
+        Found(Path file, BasicFileAttributes attrs, String blobId, long hash) {
+            this.file = file;
+            this.attrs = attrs;
+            this.blobId = blobId;
+            this.hash = hash;
+        }
+    }
+
+    /**
+     * Walks the project tree in parallel, reading only file metadata.
+     *
+     * @param root The project root directory
+     * @param rules The ignore rules used to prune the walk
+     * @return The files of the tree and its fingerprint
+     * @throws IOException if the root directory cannot be listed
+     */
+    public ProjectTree walk(Path root, IgnoreRules rules) throws IOException {
+        return walk(root, rules, ScanBudget.unlimited());
+    }
+
+    /**
+     * Walks the project tree in parallel, reading only file metadata, until
+     * the budget's deadline passes. If the tree is in a git checkout, its
+     * index is read once up front and every walked file is checked against it.
+     *
+     * @param root The project root directory
+     * @param rules The ignore rules used to prune the walk
+     * @param budget The budget of the run; the walk stops once it expires
+     * @return The files found and their fingerprint
+     * @throws IOException if the root directory cannot be listed
+     */
+    public ProjectTree walk(Path root, IgnoreRules rules, ScanBudget budget) throws IOException {
+        Queue<Found> found = new ConcurrentLinkedQueue<>();
+        long start = System.nanoTime();
+        GitIndex index = GitIndex.open(root);
+
+        walker.walk(root, rules, new ParallelFileWalker.Visitor() {
+            @Override
+            public void visit(Path file, BasicFileAttributes attrs) {
+                String blobId = index != null ? index.blobId(file, attrs) : null;
+                found.add(new Found(file, attrs, blobId, fingerprintOf(root.relativize(file).toString(), attrs, blobId)));
+            }
+
+            @Override
+            public boolean isDone() {
+                return budget.isExpired();
+            }
+        });
+
+        List<Path> files = new ArrayList<>(found.size());
+        List<BasicFileAttributes> attributes = new ArrayList<>(found.size());
+        String[] blobIds = new String[found.size()];
+        long[] hashes = new long[found.size()];
+        int tracked = 0;
+        for (Found entry : found) {
+            blobIds[files.size()] = entry.blobId;
+            hashes[files.size()] = entry.hash;
+            files.add(entry.file);
+            attributes.add(entry.attrs);
+            tracked += entry.blobId != null ? 1 : 0;
+        }
+        if (index != null) {
+            logger.debug("{} of {} files hashed by the git index", tracked, files.size());
+        }
+        return new ProjectTree(root, files, attributes, blobIds, hashes, System.nanoTime() - start);
+    }
+
+    /**
+     * Walks the project tree and scans every file in parallel.
+     *
+     * @param root The project root directory
+     * @param rules The ignore rules used to prune the walk
+     * @return The accumulated detector findings and scan statistics
+     * @throws IOException if the root directory cannot be listed
+     */
+    public ScanResult scan(Path root, IgnoreRules rules) throws IOException {
+        return scan(walk(root, rules), null, file -> true);
+    }
+
+    /**
+     * Runs every detector over a walked tree in parallel. Content is read and
+     * matched only for the files selected by {@code readContent}, resolving
+     * unchanged files from the cache; the other files reach the detectors
+     * with no content hits, so name-based detectors still see them.
+     *
+     * @param tree The walked project tree
+     * @param cache The detection cache, or null to read every selected file
+     * @param readContent Selects the files whose content is scanned
+     * @return The accumulated detector findings, tree fingerprint and scan statistics
+     */
+    public ScanResult scan(ProjectTree tree, DetectionCache cache, Predicate<Path> readContent) {
+        return scan(tree, cache, readContent, null, ScanBudget.unlimited());
+    }
+
+    /**
+     * Runs every detector over a walked tree in parallel, in priority order,
+     * within a budget. Workers take files from a shared cursor over the
+     * prioritized order, so the most telling files are scanned first and,
+     * when the budget runs out, the files left unscanned are the least
+     * important ones. Each file whose content is read takes one file from
+     * the budget; files served from the cache take nothing, so once the file
+     * budget is spent cached files are still resolved until time runs out.
+     * The cache then keeps the entries of the files this scan did not reach.
+     *
+     * @param tree The walked project tree
+     * @param cache The detection cache, or null to read every selected file
+     * @param readContent Selects the files whose content is scanned
+     * @param priority Orders the files from most to least important, or null to keep walk order
+     * @param budget The budget of the run
+     * @return The accumulated detector findings, tree fingerprint and scan statistics
+     */
+    public ScanResult scan(ProjectTree tree, DetectionCache cache, Predicate<Path> readContent,
+                           Comparator<Path> priority, ScanBudget budget) {
+        ScanResult result = new ScanResult(languages, tree.getFiles());
+        ContentMemo memo = new ContentMemo();
+        LongAdder bytes = new LongAdder();
+        LongAdder scanned = new LongAdder();
+        long start = System.nanoTime() - tree.getWalkNanos();
+        if (cache != null) {
+            cache.beginScan();
+        }
+
+        int[] order = IntStream.range(0, tree.size()).toArray();
+        if (priority != null) {
+            order = IntStream.range(0, tree.size()).boxed()
+                .sorted(Comparator.comparing(tree.getFiles()::get, priority))
+                .mapToInt(Integer::intValue)
+                .toArray();
+        }
+        int[] queue = order;
+        AtomicInteger cursor = new AtomicInteger();
+        int workers = Math.max(1, walker.getPool().getParallelism());
+
+        walker.getPool().invoke(ForkJoinTask.adapt(() ->
+            IntStream.range(0, workers).parallel().forEach(worker -> {
+                for (int next = cursor.getAndIncrement(); next < queue.length; next = cursor.getAndIncrement()) {
+                    int i = queue[next];
+                    Path file = tree.getFiles().get(i);
+                    if (budget.isPastDeadline()) {
+                        return;
+                    }
+                    if (!readContent.test(file)) {
+                        runDetectors(file, tree.getAttributes(i), null, result);
+                    } else {
+                        long read = scanFile(i, file, tree.getAttributes(i), tree.getBlobId(i), result, cache, memo, budget);
+                        if (read < 0) {
+                            // Not cached and over the file budget
+                            continue;
+                        }
+                        bytes.add(read);
+                    }
+                    scanned.increment();
+                }
+            })));
+
+        if (budget.isTruncated()) {
+            logger.warn("Scan budget exhausted after {} of {} files", scanned.sum(), tree.size());
+            if (cache != null) {
+                cache.keepUnseen();
+            }
+        }
+        result.setTreeFingerprint(tree.getFingerprint());
+        return finish(result, scanned.sum(), bytes.sum(), memo.getDuplicates(), start);
+    }
+
+    /**
+     * Scans the given files in a single pass on the calling thread.
+     *
+     * @param files The files to scan
+     * @return The accumulated detector findings and scan statistics
+     */
+    public ScanResult scan(List<Path> files) {
+        ScanResult result = new ScanResult(languages, files);
+        ContentMemo memo = new ContentMemo();
+        long bytes = 0;
+        long start = System.nanoTime();
+
+        for (int i = 0; i < files.size(); i++) {
+            Path file = files.get(i);
+            BasicFileAttributes attrs = null;
+            try {
+                attrs = Files.readAttributes(file, BasicFileAttributes.class);
+            } catch (IOException e) {
+                logger.warn("Failed to read attributes of {}: {}", file, e.getMessage());
+            }
+            bytes += scanFile(i, file, attrs, null, result, null, memo, ScanBudget.unlimited());
+        }
+
+        return finish(result, files.size(), bytes, memo.getDuplicates(), start);
+    }
+
+    /**
+     * Scans the entries of an archive in one sequential pass, with no
+     * extraction. Each entry is offered to the handler first; entries it does
+     * not consume are matched and, like every entry, run through the
+     * detectors. Entries are addressed as paths below the archive, which are
+     * names only and must not be opened. Entries with a binary extension are
+     * detected by name alone and take nothing from the budget; every other
+     * entry takes one file. Archive order is the only order a compressed
+     * stream offers, so the scan stops at the first entry over budget.
+     *
+     * @param archive The archive file (see {@link ArchiveReader})
+     * @param rules The ignore rules; entries below a deny-listed directory are skipped
+     * @param handler Consumes entries that are not content-matched
+     * @param budget The budget of the run
+     * @return The scanned entries and the accumulated detector findings
+     * @throws IOException if the archive cannot be read or is corrupt
+     */
+    public ArchiveScan scanArchive(Path archive, IgnoreRules rules, EntryHandler handler, ScanBudget budget)
+            throws IOException {
+        long start = System.nanoTime();
+        List<Path> files = new ArrayList<>();
+        List<BasicFileAttributes> attributes = new ArrayList<>();
+        List<Long> hashes = new ArrayList<>();
+        ScanResult result = new ScanResult(languages, files);
+        ContentMemo memo = new ContentMemo();
+
+        ArchiveReader.read(archive, (name, attrs, in) -> {
+            if (budget.isExpired()) {
+                return false;
+            }
+            for (String segment : name.split("/")) {
+                if (rules.isDenied(segment)) {
+                    return true;
+                }
+            }
+            Path file = archive.resolve(name);
+            String fileName = file.getFileName().toString();
+            boolean nameOnly = ContentReader.hasBinaryExtension(fileName) && !ArchiveReader.isArchive(fileName);
+            if (!nameOnly && !budget.tryAcquireFile()) {
+                return false;
+            }
+
+            CountingInputStream counted = new CountingInputStream(in);
+            BitSet hits = null;
+            int[] firstLines = null;
+            if (!nameOnly && !handler.handle(file, counted)) {
+                ContentReader.Content content = reader.read(counted, fileName);
+                if (content != null) {
+                    long key = ContentHash.xxHash64(content.getData(), content.getLength(), attrs.size());
+                    Match match = memo.get(key);
+                    if (match == null) {
+                        int[] lines = new int[matcher.getRuleCount()];
+                        match = new Match(matcher.match(content.getData(), content.getLength(), lines), lines, null);
+                        memo.put(key, match);
+                    }
+                    hits = match.hits;
+                    firstLines = match.firstLines;
+                }
+            }
+            long size = attrs.size();
+            if (size < 0) {
+                // Streamed zip entries may not record their size up front
+                counted.transferTo(OutputStream.nullOutputStream());
+                size = counted.count;
+            }
+            BasicFileAttributes entryAttrs = new ArchiveReader.EntryAttributes(size, attrs.lastModifiedTime());
+
+            int fileId = files.size();
+            files.add(file);
+            attributes.add(entryAttrs);
+            hashes.add(fingerprintOf(name, entryAttrs, null));
+            if (hits != null) {
+                result.getEvidence().add(fileId, hits, firstLines);
+            }
+            runDetectors(file, entryAttrs, hits, result);
+            return true;
+        });
+
+        if (budget.isTruncated()) {
+            logger.warn("Scan budget exhausted after {} entries of {}", files.size(), archive);
+        }
+        ProjectTree tree = new ProjectTree(archive, files, attributes, new String[files.size()],
+            hashes.stream().mapToLong(Long::longValue).toArray(), 0);
+        result.setTreeFingerprint(tree.getFingerprint());
+        finish(result, files.size(), Files.size(archive), memo.getDuplicates(), start);
+        return new ArchiveScan(tree, result);
+    }
+
+    /**
+     * Counts the bytes read through it.
+     */
+    private static final class CountingInputStream extends FilterInputStream {
+        long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int n = in.read(buffer, offset, length);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = in.skip(n);
+            count += skipped;
+            return skipped;
+        }
+
+        @Override
+        public void close() {
+            // The archive stream stays open for the next entry
+        }
+    }
+
+    /**
+     * Resolves one file's content rule hits, from the cache when its metadata
+     * is unchanged or its blob id is already cached, from the memo when the
+     * same content was already matched in this scan, and by matching it
+     * otherwise, records them as evidence, then runs every detector on it.
+     *
+     * @param blobId The file's blob id from the git index, or null if unknown
+     * @param memo The content matched so far in this scan
+     * @param budget The budget, from which a file is taken only if its content must be read
+     * @return Number of bytes read, or -1 if the file was neither cached nor within the budget
+     */
+    private long scanFile(int fileId, Path file, BasicFileAttributes attrs, String blobId,
+                          ScanResult result, DetectionCache cache, ContentMemo memo, ScanBudget budget) {
+        boolean cacheable = cache != null && attrs != null;
+        long size = attrs != null ? attrs.size() : -1;
+        long modified = attrs != null ? attrs.lastModifiedTime().toMillis() : -1;
+
+        DetectionCache.FileEntry entry = cacheable ? cache.lookupFile(file, size, modified) : null;
+        if (entry != null) {
+            BitSet hits = entry.binary ? null : cache.lookupContent(entry.hash);
+            if (hits != null) {
+                result.getEvidence().add(fileId, hits, cache.lookupLines(entry.hash));
+            }
+            runDetectors(file, attrs, hits, result);
+            return 0;
+        }
+        if (cacheable && blobId != null) {
+            BitSet hits = cache.lookupContent(blobId);
+            if (hits != null) {
+                int[] firstLines = cache.lookupLines(blobId);
+                cache.storeFile(file, size, modified, blobId, hits, firstLines);
+                result.getEvidence().add(fileId, hits, firstLines);
+                runDetectors(file, attrs, hits, result);
+                return 0;
+            }
+        }
+
+        if (!budget.tryAcquireFile()) {
+            return -1;
+        }
+        BitSet hits = null;
+        int[] firstLines = null;
+        long bytes = 0;
+        try {
+            ContentReader.Content content = reader.read(file);
+            if (content != null) {
+                bytes = content.getLength();
+                long key = ContentHash.xxHash64(content.getData(), content.getLength(), size);
+                Match match = memo.get(key);
+                String hash = null;
+                if (match != null) {
+                    // A byte-identical copy was matched earlier in this scan; only attribute its hits
+                    hits = match.hits;
+                    firstLines = match.firstLines;
+                    if (cacheable) {
+                        hash = blobId != null ? blobId : match.hash;
+                        if (hash == null) {
+                            hash = ContentHash.blobId(content.getData(), content.getLength(), size);
+                            match.hash = hash;
+                        }
+                    }
+                } else {
+                    if (cacheable) {
+                        // The index id names the whole content, and so also the scanned prefix
+                        hash = blobId != null ? blobId : ContentHash.blobId(content.getData(), content.getLength(), size);
+                        hits = cache.lookupContent(hash);
+                        firstLines = hits != null ? cache.lookupLines(hash) : null;
+                    }
+                    if (hits == null) {
+                        firstLines = new int[matcher.getRuleCount()];
+                        hits = matcher.match(content.getData(), content.getLength(), firstLines);
+                    }
+                    memo.put(key, new Match(hits, firstLines, blobId == null ? hash : null));
+                }
+                if (cacheable) {
+                    cache.storeFile(file, size, modified, hash, hits, firstLines);
+                }
+            } else {
+                logger.debug("Skipping content of binary file: {}", file);
+                if (cacheable) {
+                    cache.storeFile(file, size, modified, null, null, null);
+                }
+            }
+        } catch (IOException e) {
+            logger.warn("Failed to read file {}: {}", file, e.getMessage());
+        }
+
+        if (hits != null) {
+            result.getEvidence().add(fileId, hits, firstLines);
+        }
+        runDetectors(file, attrs, hits, result);
+        return bytes;
+    }
+
+    private void runDetectors(Path file, BasicFileAttributes attrs, BitSet hits, ScanResult result) {
+        for (FileDetector detector : detectors) {
+            detector.detect(file, attrs, hits, result);
+        }
+    }
+
+    /**
+     * Hashes a file's relative path with its blob id if the git index vouches
+     * for its content, or else with its size and modification time. Hashing
+     * content identity where it is known keeps the fingerprint of an unchanged
+     * tree stable across fresh checkouts, which give every file a new time.
+     */
+    private static long fingerprintOf(String relativePath, BasicFileAttributes attrs, String blobId) {
+        long h = relativePath.hashCode() * 0x9E3779B97F4A7C15L;
+        if (blobId != null) {
+            // The first 64 bits of a SHA-1 are as good a hash as any
+            h ^= Long.parseUnsignedLong(blobId, 0, 16, 16);
+        } else {
+            h ^= attrs.size() * 0xC2B2AE3D27D4EB4FL;
+            h ^= attrs.lastModifiedTime().toMillis() * 0x165667B19E3779F9L;
+        }
+        // MurmurHash3 finalizer
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private ScanResult finish(ScanResult result, long files, long bytes, long duplicates, long start) {
+        ScanStats stats = new ScanStats(files, bytes, duplicates, System.nanoTime() - start);
+        result.setStats(stats);
+        logger.info("Scanned {} files ({} bytes, {} duplicates) in {} ms: {} files/s, {} bytes/s",
+            stats.getFiles(), stats.getBytes(), stats.getDuplicates(), String.format("%.1f", stats.getElapsedMillis()),
+            String.format("%.0f", stats.getFilesPerSecond()), String.format("%.0f", stats.getBytesPerSecond()));
+        return result;
+    }
+}
@@ -0,0 +1,287 @@
+package com.odin.detection;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Accumulates the findings of every detector during a single scan pass.
+ *
+ * Detectors may run concurrently on many threads, so all state is merged with
+ * lock-free accumulators. Languages are weighted: every source file adds to
+ * its language's file count and byte total, kept in primitive atomic arrays
+ * indexed by language id, and the primary language is the one with the most
+ * bytes. Other single-valued findings (framework, build tool) keep the value
+ * offered by the highest-priority file: the shallowest one, with ties broken
+ * by path. This makes results independent of thread scheduling. Multi-valued
+ * findings (databases, cloud providers, testing frameworks) collect every
+ * distinct value and are returned sorted.
+ */
+public class ScanResult {
+    private static final String UNKNOWN = "unknown";
+
+    private final List<String> languages;
+    private final AtomicLongArray languageFiles;
+    private final AtomicLongArray languageBytes;
+    private final EvidenceIndex evidence;
+    private final AtomicReference<Finding> framework = new AtomicReference<>();
+    private final AtomicReference<Finding> buildTool = new AtomicReference<>();
+    private final Set<String> databases = ConcurrentHashMap.newKeySet();
+    private final Set<String> cloudProviders = ConcurrentHashMap.newKeySet();
+    private final Set<String> testingFrameworks = ConcurrentHashMap.newKeySet();
+    private volatile ScanStats stats = new ScanStats(0, 0, 0);
+    private volatile String treeFingerprint;
+
+    /**
+     * Creates a result without language statistics.
+     */
+    public ScanResult() {
+        this(List.of());
+    }
+
+    /**
+     * Creates a result keeping statistics for the given languages.
+     *
+     * @param languages Language names, indexed by language id
+     */
+    public ScanResult(List<String> languages) {
+        this(languages, List.of());
+    }
+
+    /**
+     * Creates a result keeping language statistics and rule evidence.
+     *
+     * @param languages Language names, indexed by language id
+     * @param files The scanned files, indexed by file id
+     */
+    public ScanResult(List<String> languages, List<Path> files) {
+        this.evidence = new EvidenceIndex(files);
+        this.languages = List.copyOf(languages);
+        this.languageFiles = new AtomicLongArray(languages.size());
+        this.languageBytes = new AtomicLongArray(languages.size());
+    }
+
+    /**
+     * A single-valued finding together with the file it came from.
+     */
+    private static final class Finding {
+        final String value;
+        final int depth;
+        final String path;
+
+        Finding(String value, Path file) {
+            this.value = value;
+            this.depth = file.getNameCount();
+            this.path = file.toString();
+        }
+
+        boolean outranks(Finding other) {
+            if (depth != other.depth) {
+                return depth < other.depth;
+            }
+            return path.compareTo(other.path) < 0;
+        }
+    }
+
+    /**
+     * Offers a value for a single-valued finding, keeping it only if it comes
+     * from a higher-priority file than the current one.
+     */
+    private static void offer(AtomicReference<Finding> slot, String value, Path file) {
+        Finding candidate = new Finding(value, file);
+        Finding current = slot.get();
+        while (current == null || candidate.outranks(current)) {
+            if (slot.compareAndSet(current, candidate)) {
+                return;
+            }
+            current = slot.get();
+        }
+    }
+
+    private static String valueOf(AtomicReference<Finding> slot) {
+        Finding finding = slot.get();
+        return finding != null ? finding.value : UNKNOWN;
+    }
+
+    private static List<String> sorted(Set<String> values) {
+        List<String> list = new ArrayList<>(values);
+        Collections.sort(list);
+        return list;
+    }
+
+    public boolean hasLanguage() {
+        return primaryLanguage() >= 0;
+    }
+
+    public boolean hasFramework() {
+        return framework.get() != null;
+    }
+
+    public boolean hasBuildTool() {
+        return buildTool.get() != null;
+    }
+
+    /**
+     * @return Where each content rule matched
+     */
+    public EvidenceIndex getEvidence() {
+        return evidence;
+    }
+
+    /**
+     * Counts one source file towards a language.
+     *
+     * @param languageId Id of the language
+     * @param bytes Size of the file
+     */
+    public void recordLanguage(int languageId, long bytes) {
+        languageFiles.incrementAndGet(languageId);
+        languageBytes.addAndGet(languageId, bytes);
+    }
+
+    public void offerFramework(String framework, Path file) {
+        offer(this.framework, framework, file);
+    }
+
+    public void offerBuildTool(String buildTool, Path file) {
+        offer(this.buildTool, buildTool, file);
+    }
+
+    public void addDatabase(String database) {
+        databases.add(database);
+    }
+
+    public void addCloudProvider(String provider) {
+        cloudProviders.add(provider);
+    }
+
+    public void addTestingFramework(String testingFramework) {
+        testingFrameworks.add(testingFramework);
+    }
+
+    /**
+     * @return The language with the most bytes, ties broken by file count then name, or "unknown"
+     */
+    public String getLanguage() {
+        int primary = primaryLanguage();
+        return primary >= 0 ? languages.get(primary) : UNKNOWN;
+    }
+
+    /**
+     * @return Share of the primary language in the bytes of all source files, between 0 and 1
+     */
+    public double getLanguageConfidence() {
+        int primary = primaryLanguage();
+        if (primary < 0) {
+            return 0;
+        }
+        long total = 0;
+        for (int i = 0; i < languages.size(); i++) {
+            total += languageBytes.get(i);
+        }
+        // Only empty files were found: fall back to their share of the file count
+        if (total == 0) {
+            long files = 0;
+            for (int i = 0; i < languages.size(); i++) {
+                files += languageFiles.get(i);
+            }
+            return (double) languageFiles.get(primary) / files;
+        }
+        return (double) languageBytes.get(primary) / total;
+    }
+
+    /**
+     * @return Bytes of source per language, ranked from the primary language down
+     */
+    public Map<String, Long> getLanguageBreakdown() {
+        List<Integer> ids = new ArrayList<>();
+        for (int i = 0; i < languages.size(); i++) {
+            if (languageFiles.get(i) > 0) {
+                ids.add(i);
+            }
+        }
+        ids.sort(this::compareLanguages);
+        Map<String, Long> breakdown = new LinkedHashMap<>();
+        for (int id : ids) {
+            breakdown.put(languages.get(id), languageBytes.get(id));
+        }
+        return breakdown;
+    }
+
+    /**
+     * @return Number of files counted towards the language, or 0 if it is unknown
+     */
+    public long getLanguageFiles(String language) {
+        int id = languages.indexOf(language);
+        return id >= 0 ? languageFiles.get(id) : 0;
+    }
+
+    private int primaryLanguage() {
+        int primary = -1;
+        for (int i = 0; i < languages.size(); i++) {
+            if (languageFiles.get(i) > 0 && (primary < 0 || compareLanguages(i, primary) < 0)) {
+                primary = i;
+            }
+        }
+        return primary;
+    }
+
+    /**
+     * Orders languages by bytes, then files, descending, then by name.
+     */
+    private int compareLanguages(int a, int b) {
+        int byBytes = Long.compare(languageBytes.get(b), languageBytes.get(a));
+        if (byBytes != 0) {
+            return byBytes;
+        }
+        int byFiles = Long.compare(languageFiles.get(b), languageFiles.get(a));
+        return byFiles != 0 ? byFiles : languages.get(a).compareTo(languages.get(b));
+    }
+
+    public String getFramework() {
+        return valueOf(framework);
+    }
+
+    public String getBuildTool() {
+        return valueOf(buildTool);
+    }
+
+    public List<String> getDatabases() {
+        return sorted(databases);
+    }
+
+    public List<String> getCloudProviders() {
+        return sorted(cloudProviders);
+    }
+
+    public List<String> getTestingFrameworks() {
+        return sorted(testingFrameworks);
+    }
+
+    public ScanStats getStats() {
+        return stats;
+    }
+
+    void setStats(ScanStats stats) {
+        this.stats = stats;
+    }
+
+    /**
+     * @return Fingerprint of the paths, sizes and modification times scanned,
+     *         or null if the scan did not walk a tree
+     */
+    public String getTreeFingerprint() {
+        return treeFingerprint;
+    }
+
+    void setTreeFingerprint(String treeFingerprint) {
+        this.treeFingerprint = treeFingerprint;
+    }
+}
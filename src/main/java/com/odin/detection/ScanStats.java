@@ -0,0 +1,84 @@
+package com.odin.detection;
+
+/**
+ * Throughput statistics for a single detection scan.
+ * 
+ * Captures how many files and bytes were read, how many files were
+ * byte-identical copies of one already matched, and how long the pass took,
+ * so the cost of stack detection can be compared between runs and repositories.
+ */
+public class ScanStats {
+    private final long files;
+    private final long bytes;
+    private final long duplicates;
+    private final long elapsedNanos;
+
+    /**
+     * Creates a new ScanStats snapshot.
+     * 
+     * @param files Number of files visited by the scan
+     * @param bytes Number of bytes read from disk
+     * @param elapsedNanos Wall-clock duration of the scan in nanoseconds
+     */
+    public ScanStats(long files, long bytes, long elapsedNanos) {
+        this(files, bytes, 0, elapsedNanos);
+    }
+
+    /**
+     * Creates a new ScanStats snapshot.
+     * 
+     * @param files Number of files visited by the scan
+     * @param bytes Number of bytes read from disk
+     * @param duplicates Number of files whose content was already matched elsewhere in the scan
+     * @param elapsedNanos Wall-clock duration of the scan in nanoseconds
+     */
+    public ScanStats(long files, long bytes, long duplicates, long elapsedNanos) {
+        this.files = files;
+        this.bytes = bytes;
+        this.duplicates = duplicates;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public long getFiles() {
+        return files;
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * @return Number of files resolved from identical content matched earlier in the same scan
+     */
+    public long getDuplicates() {
+        return duplicates;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    public double getElapsedMillis() {
+        return elapsedNanos / 1_000_000.0;
+    }
+
+    /**
+     * @return Files scanned per second, or 0 if the scan took no measurable time
+     */
+    public double getFilesPerSecond() {
+        return elapsedNanos > 0 ? files * 1_000_000_000.0 / elapsedNanos : 0;
+    }
+
+    /**
+     * @return Bytes read per second, or 0 if the scan took no measurable time
+     */
+    public double getBytesPerSecond() {
+        return elapsedNanos > 0 ? bytes * 1_000_000_000.0 / elapsedNanos : 0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ScanStats{files=%d, bytes=%d, duplicates=%d, elapsed=%.1f ms, files/s=%.0f, bytes/s=%.0f}",
+            files, bytes, duplicates, getElapsedMillis(), getFilesPerSecond(), getBytesPerSecond());
+    }
+}
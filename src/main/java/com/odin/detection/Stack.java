@@ -1,11 +1,47 @@
 package com.odin.detection;
 
+import java.util.EnumSet;
 import java.util.List;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.ArrayList;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
 
 public class Stack {
+    // Detections below this confidence are reported but not acted upon by generators
+    public static final double MIN_CONFIDENCE = 0.4;
+
+    /**
+     * A part of the stack computed by its own detectors. A stack may be
+     * detected with only some aspects up front; the others are detected
+     * when first read.
+     */
+    public enum Aspect {
+        LANGUAGE,
+        FRAMEWORK,
+        BUILD_TOOL,
+        DATABASES,
+        // Derived from the framework and databases
+        PORTS,
+        CLOUD_PROVIDERS,
+        TESTING_FRAMEWORKS
+    }
+
+    /**
+     * Detects the aspects of a stack that were deferred.
+     */
+    @FunctionalInterface
+    interface Loader {
+        /**
+         * @param stack The stack to fill in
+         * @param aspects The aspects to detect, all of them in one pass
+         */
+        void load(Stack stack, Set<Aspect> aspects);
+    }
+
     private String language;
     private String framework;
     private String buildTool;
@@ -13,6 +49,24 @@ public class Stack {
     private Map<String, Integer> ports;
     private List<String> cloudProviders;
     private List<String> testingFrameworks;
+    // Path of the service relative to the project root, "." for a single-service project
+    private String path = ".";
+    // Share of the source bytes written in the primary language, between 0 and 1;
+    // a stack built by hand is taken at its word
+    private double languageConfidence = 1.0;
+    // Bytes of source per language, ranked from the primary language down
+    private Map<String, Long> languageBreakdown = new LinkedHashMap<>();
+    // Set when a scan budget ran out and the stack is the best found so far
+    private boolean truncated;
+    // Confidence of each detection, keyed by "category:name" (e.g. "database:redis")
+    private Map<String, Double> confidences = new TreeMap<>();
+    // Where each detection came from, as "file:line" or "dependency name", keyed like confidences
+    private Map<String, List<String>> evidence = new TreeMap<>();
+    // Aspects not detected yet, and what detects them on first read
+    private final Set<Aspect> pending = EnumSet.noneOf(Aspect.class);
+    private Loader loader;
+    // Set while the loader runs, so that what it reads back of the stack does not load it again
+    private boolean loading;
 
     public Stack() {
         this.databases = new ArrayList<>();
@@ -33,72 +87,298 @@ public class Stack {
     }
 
     public String getLanguage() {
+        require(Aspect.LANGUAGE);
         return language;
     }
 
     public void setLanguage(String language) {
+        resolve(Aspect.LANGUAGE);
         this.language = language;
     }
 
     public String getFramework() {
+        require(Aspect.FRAMEWORK);
         return framework;
     }
 
     public void setFramework(String framework) {
+        resolve(Aspect.FRAMEWORK);
         this.framework = framework;
     }
 
     public String getBuildTool() {
+        require(Aspect.BUILD_TOOL);
         return buildTool;
     }
 
     public void setBuildTool(String buildTool) {
+        resolve(Aspect.BUILD_TOOL);
         this.buildTool = buildTool;
     }
 
     public List<String> getDatabases() {
+        require(Aspect.DATABASES);
         return databases;
     }
 
     public void setDatabases(List<String> databases) {
+        resolve(Aspect.DATABASES);
         this.databases = databases != null ? databases : new ArrayList<>();
     }
 
     public Map<String, Integer> getPorts() {
+        require(Aspect.PORTS);
         return ports;
     }
 
     public void setPorts(Map<String, Integer> ports) {
+        resolve(Aspect.PORTS);
         this.ports = ports != null ? ports : new HashMap<>();
     }
 
     public int getAppPort() {
+        require(Aspect.PORTS);
         return ports.getOrDefault("app", 8080);
     }
 
     public int getDatabasePort(String database) {
+        require(Aspect.PORTS);
         return ports.getOrDefault(database, 0);
     }
 
     public List<String> getCloudProviders() {
+        require(Aspect.CLOUD_PROVIDERS);
         return cloudProviders;
     }
 
     public void setCloudProviders(List<String> cloudProviders) {
+        resolve(Aspect.CLOUD_PROVIDERS);
         this.cloudProviders = cloudProviders != null ? cloudProviders : new ArrayList<>();
     }
 
     public List<String> getTestingFrameworks() {
+        require(Aspect.TESTING_FRAMEWORKS);
         return testingFrameworks;
     }
 
     public void setTestingFrameworks(List<String> testingFrameworks) {
+        resolve(Aspect.TESTING_FRAMEWORKS);
         this.testingFrameworks = testingFrameworks != null ? testingFrameworks : new ArrayList<>();
     }
 
+    public double getLanguageConfidence() {
+        require(Aspect.LANGUAGE);
+        return languageConfidence;
+    }
+
+    public void setLanguageConfidence(double languageConfidence) {
+        this.languageConfidence = languageConfidence;
+    }
+
+    public Map<String, Long> getLanguageBreakdown() {
+        require(Aspect.LANGUAGE);
+        return languageBreakdown;
+    }
+
+    public void setLanguageBreakdown(Map<String, Long> languageBreakdown) {
+        this.languageBreakdown = languageBreakdown != null ? languageBreakdown : new LinkedHashMap<>();
+    }
+
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+    public void setTruncated(boolean truncated) {
+        this.truncated = truncated;
+    }
+
+    public Map<String, Double> getConfidences() {
+        requireAll();
+        return confidences;
+    }
+
+    public void setConfidences(Map<String, Double> confidences) {
+        this.confidences = confidences != null ? confidences : new TreeMap<>();
+    }
+
+    public Map<String, List<String>> getEvidence() {
+        requireAll();
+        return evidence;
+    }
+
+    public void setEvidence(Map<String, List<String>> evidence) {
+        this.evidence = evidence != null ? evidence : new TreeMap<>();
+    }
+
+    /**
+     * @param category One of "framework", "database", "cloud" or "testing"
+     * @param name The detected technology
+     * @return Confidence of the detection between 0 and 1; detections without a score are trusted
+     */
+    public double getConfidence(String category, String name) {
+        require(switch (category) {
+            case "framework" -> Aspect.FRAMEWORK;
+            case "database" -> Aspect.DATABASES;
+            case "cloud" -> Aspect.CLOUD_PROVIDERS;
+            default -> Aspect.TESTING_FRAMEWORKS;
+        });
+        return confidences.getOrDefault(category + ":" + name, 1.0);
+    }
+
+    /**
+     * @return The databases detected with at least {@link #MIN_CONFIDENCE}
+     */
+    public List<String> getConfidentDatabases() {
+        require(Aspect.DATABASES);
+        List<String> confident = new ArrayList<>();
+        for (String database : databases) {
+            if (getConfidence("database", database) >= MIN_CONFIDENCE) {
+                confident.add(database);
+            }
+        }
+        return confident;
+    }
+
+    /**
+     * @return Keys of the detections scored below {@link #MIN_CONFIDENCE}, sorted
+     */
+    public List<String> getWeakDetections() {
+        requireAll();
+        List<String> weak = new ArrayList<>();
+        confidences.forEach((key, confidence) -> {
+            if (confidence < MIN_CONFIDENCE) {
+                weak.add(key);
+            }
+        });
+        return weak;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public void setPath(String path) {
+        this.path = path != null ? path : ".";
+    }
+
+    /**
+     * @param aspect An aspect of the stack
+     * @return true if the aspect has been detected, false if it is deferred until first read
+     */
+    public boolean isDetected(Aspect aspect) {
+        synchronized (pending) {
+            return !pending.contains(aspect);
+        }
+    }
+
+    /**
+     * Defers the detection of some aspects until one of them is first read.
+     *
+     * @param aspects The aspects left undetected
+     * @param loader Detects them
+     */
+    void defer(Set<Aspect> aspects, Loader loader) {
+        synchronized (pending) {
+            pending.addAll(aspects);
+            this.loader = loader;
+        }
+    }
+
+    /**
+     * @return true if some aspects are still deferred
+     */
+    boolean hasDeferred() {
+        synchronized (pending) {
+            return !pending.isEmpty();
+        }
+    }
+
+    private void require(Aspect aspect) {
+        synchronized (pending) {
+            if (pending.contains(aspect)) {
+                loadDeferred();
+            }
+        }
+    }
+
+    private void requireAll() {
+        synchronized (pending) {
+            if (!pending.isEmpty()) {
+                loadDeferred();
+            }
+        }
+    }
+
+    // Every deferred aspect is detected together, sharing one pass over the project.
+    // The aspects stay pending until the load succeeds, so a failed load is retried on the next read.
+    private void loadDeferred() {
+        if (loading) {
+            return;
+        }
+        Set<Aspect> aspects = EnumSet.copyOf(pending);
+        loading = true;
+        try {
+            loader.load(this, aspects);
+            pending.removeAll(aspects);
+            if (pending.isEmpty()) {
+                loader = null;
+            }
+        } finally {
+            loading = false;
+        }
+    }
+
+    // A value set explicitly is never overwritten by a deferred detection
+    private void resolve(Aspect aspect) {
+        synchronized (pending) {
+            pending.remove(aspect);
+        }
+    }
+
+    // Language statistics, scores and the truncated flag are left out: they describe the evidence, not the stack.
+    // Only what is detected is compared, so that comparing stacks never starts a deferred detection.
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Stack)) {
+            return false;
+        }
+        Stack other = (Stack) o;
+        return Objects.equals(path, other.path)
+            && Objects.equals(pendingAspects(), other.pendingAspects())
+            && Objects.equals(language, other.language)
+            && Objects.equals(framework, other.framework)
+            && Objects.equals(buildTool, other.buildTool)
+            && Objects.equals(databases, other.databases)
+            && Objects.equals(ports, other.ports)
+            && Objects.equals(cloudProviders, other.cloudProviders)
+            && Objects.equals(testingFrameworks, other.testingFrameworks);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(path, pendingAspects(), language, framework, buildTool, databases, ports,
+            cloudProviders, testingFrameworks);
+    }
+
+    private Set<Aspect> pendingAspects() {
+        synchronized (pending) {
+            return EnumSet.copyOf(pending);
+        }
+    }
+
+    // Deferred aspects are shown as such rather than detected for a log line
     @Override
     public String toString() {
         return String.format("Stack{language='%s', framework='%s', buildTool='%s', databases=%s, ports=%s, cloudProviders=%s, testingFrameworks=%s}",
-            language, framework, buildTool, databases, ports, cloudProviders, testingFrameworks);
+            shown(Aspect.LANGUAGE, language), shown(Aspect.FRAMEWORK, framework), shown(Aspect.BUILD_TOOL, buildTool),
+            shown(Aspect.DATABASES, databases), shown(Aspect.PORTS, ports),
+            shown(Aspect.CLOUD_PROVIDERS, cloudProviders), shown(Aspect.TESTING_FRAMEWORKS, testingFrameworks));
+    }
+
+    private Object shown(Aspect aspect, Object value) {
+        return isDetected(aspect) ? value : "(deferred)";
     }
-}
\ No newline at end of file
+}
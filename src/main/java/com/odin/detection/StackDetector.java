@@ -5,16 +5,22 @@ import com.odin.llm.LLMClientFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.Predicate;
 import java.util.regex.Pattern;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
 import java.util.stream.IntStream;
-import static java.util.Map.entry;
 
 /**
  * Detects and analyzes the technology stack of a software project.
@@ -23,7 +29,7 @@ import static java.util.Map.entry;
  * 1. Scanning project files to identify programming languages, frameworks, and tools
  * 2. Using pattern matching to detect common technologies
  * 3. Leveraging AI to analyze project structure and dependencies
- * 4. Caching results to improve performance
+ * 4. Caching results across runs to improve performance
  * 
  * The detector uses a combination of static analysis and AI-powered
  * analysis to provide accurate stack detection.
@@ -31,16 +37,33 @@ import static java.util.Map.entry;
 public class StackDetector {
     private static final Logger logger = LoggerFactory.getLogger(StackDetector.class);
     
-    // Cache for storing detected stacks to avoid redundant analysis
-    private static final Map<String, Stack> stackCache = new ConcurrentHashMap<>();
+    // Directory of the persistent detection cache, or null when caching is disabled
+    private Path cacheDirectory;
     
     // LLM client for AI-powered analysis
     private final LLMClient llmClient;
     
-    // Stack detection results
-    private String framework;
-    private List<String> databases;
-    private int runtimePort;
+    // Detection rules, bundled and user-supplied, with the compiled content matcher
+    private final RuleRegistry rules;
+    
+    // Single-pass scan engine feeding all file detectors
+    private final ScanEngine scanEngine;
+    
+    // Throughput statistics of the most recent scan
+    private ScanStats lastScanStats;
+    
+    // Deny-list and ignore-file handling used to prune the project walk
+    private IgnoreRules ignoreRules = IgnoreRules.defaults();
+    
+    // Budget of each detection run: null and 0 mean unlimited
+    private Duration maxScanTime;
+    private int maxFiles;
+    
+    // Confidence below which the LLM is asked for a second opinion; 0 disables it
+    private double aiFallbackThreshold;
+    
+    // Approximate number of prompt tokens spent on project files per LLM call
+    private int aiTokenBudget = DEFAULT_AI_TOKEN_BUDGET;
     
     /**
      * Creates a new StackDetector with default LLM client.
@@ -55,458 +78,1253 @@ public class StackDetector {
      * @param llmClient The LLM client to use for AI analysis
      */
     public StackDetector(LLMClient llmClient) {
+        this(llmClient, RuleRegistry.bundled());
+    }
+    
+    /**
+     * Creates a new StackDetector with specified LLM client and detection rules.
+     * 
+     * @param llmClient The LLM client to use for AI analysis
+     * @param rules The detection rules, e.g. from {@link RuleRegistry#load(Path, Path)}
+     */
+    public StackDetector(LLMClient llmClient, RuleRegistry rules) {
         this.llmClient = llmClient;
-        this.databases = new ArrayList<>();
-        this.framework = "unknown";
-        this.runtimePort = 8080;
-    }
-
-    // Pattern maps for detecting various technologies
-    private static final Map<String, String> LANGUAGE_PATTERNS = Map.ofEntries(
-        entry("java", ".*\\.java$"),
-        entry("python", ".*\\.py$"),
-        entry("javascript", ".*\\.js$|package\\.json$"),
-        entry("typescript", ".*\\.ts$"),
-        entry("go", ".*\\.go$"),
-        entry("rust", ".*\\.rs$"),
-        entry("php", ".*\\.php$"),
-        entry("ruby", ".*\\.rb$"),
-        entry("kotlin", ".*\\.kt$"),
-        entry("scala", ".*\\.scala$"),
-        entry("swift", ".*\\.swift$"),
-        entry("csharp", ".*\\.cs$")
-    );
-
-    private static final Map<String, String> BUILD_TOOL_PATTERNS = Map.ofEntries(
-        entry("maven", "pom\\.xml$"),
-        entry("gradle", "build\\.gradle(\\.kts)?$"),
-        entry("npm", "package\\.json$"),
-        entry("yarn", "yarn\\.lock$"),
-        entry("cargo", "Cargo\\.toml$"),
-        entry("pip", "requirements\\.txt$|setup\\.py$|pyproject\\.toml$"),
-        entry("composer", "composer\\.json$"),
-        entry("bundler", "Gemfile$"),
-        entry("sbt", "build\\.sbt$"),
-        entry("dotnet", "\\.csproj$|\\.sln$")
-    );
-
-    private static final Map<String, String> FRAMEWORK_PATTERNS = Map.ofEntries(
-        entry("spring", "org\\.springframework|@SpringBootApplication"),
-        entry("django", "django|DJANGO_SETTINGS_MODULE"),
-        entry("flask", "flask|Flask\\(|from flask"),
-        entry("nodejs", "express|Express\\(|require\\('express'\\)|import express"),
-        entry("rails", "Rails|rails"),
-        entry("laravel", "laravel|Laravel"),
-        entry("actix", "actix_web|actix-web|HttpServer|use actix"),
-        entry("gin", "gin|gin\\.Default\\(\\)"),
-        entry("nextjs", "next|Next|getStaticProps"),
-        entry("nestjs", "@nestjs|@Injectable"),
-        entry("fastapi", "fastapi|FastAPI"),
-        entry("rocket", "rocket|Rocket::build")
-    );
-
-    private static final Map<String, String> DATABASE_PATTERNS = Map.ofEntries(
-        entry("postgresql", "postgresql|postgres|psycopg2|pg|POSTGRES|DB_HOST|DATABASE_URL"),
-        entry("mysql", "mysql|mariadb|MySQL|MYSQL"),
-        entry("mongodb", "mongodb|mongo|Mongo|MONGO"),
-        entry("redis", "redis|Redis|REDIS"),
-        entry("elasticsearch", "elasticsearch|elastic"),
-        entry("cassandra", "cassandra|Cassandra"),
-        entry("dynamodb", "dynamodb|DynamoDB"),
-        entry("sqlalchemy", "sqlalchemy|SQLAlchemy"),
-        entry("cockroachdb", "cockroach|CockroachDB"),
-        entry("neo4j", "neo4j|Neo4j")
-    );
-
-    private static final Map<String, String> CLOUD_PATTERNS = Map.of(
-        "aws", "aws|AWS|amazon|s3|dynamodb|lambda",
-        "gcp", "google|gcp|GCP|firebase|datastore",
-        "azure", "azure|Azure|microsoft",
-        "digitalocean", "digitalocean|DigitalOcean",
-        "heroku", "heroku|Heroku"
-    );
-
-    private static final Map<String, String> TESTING_FRAMEWORK_PATTERNS = Map.of(
-        "junit", "junit|@Test|Assert",
-        "pytest", "pytest|@pytest",
-        "jest", "jest|test\\(",
-        "mocha", "mocha|describe\\(",
-        "rspec", "rspec|describe",
-        "phpunit", "phpunit|@test",
-        "xunit", "xunit|[Test]",
-        "testng", "testng|@Test"
-    );
-
-    private static final Map<String, Integer> DEFAULT_DB_PORTS = Map.ofEntries(
-        entry("postgresql", 5432),
-        entry("redis", 6379),
-        entry("mongodb", 27017),
-        entry("mysql", 3306),
-        entry("elasticsearch", 9200),
-        entry("cassandra", 9042),
-        entry("dynamodb", 8000),
-        entry("sqlite", 0), // SQLite doesn't use network ports
-        entry("cockroachdb", 26257),
-        entry("neo4j", 7687)
-    );
-
-    private static final Map<String, Integer> DEFAULT_APP_PORTS = Map.ofEntries(
-        entry("flask", 5000),
-        entry("express", 3000),
-        entry("spring", 8080),
-        entry("django", 8000),
-        entry("rails", 3000),
-        entry("laravel", 8000),
-        entry("actix", 8080),
-        entry("gin", 8080),
-        entry("nextjs", 3000),
-        entry("nestjs", 3000),
-        entry("fastapi", 8000),
-        entry("rocket", 8000)
-    );
+        this.rules = rules;
+        this.scanEngine = createScanEngine();
+    }
+
+    /** Confidence below which the command line asks the LLM for a second opinion */
+    public static final double DEFAULT_AI_FALLBACK_THRESHOLD = 0.6;
+
+    /** Prompt tokens spent on project files per LLM call */
+    public static final int DEFAULT_AI_TOKEN_BUDGET = 2000;
+
+    // Rough size of one token in characters of source text
+    private static final int CHARS_PER_TOKEN = 4;
+    // No single file takes more than this fraction of the prompt budget
+    private static final int AI_FILE_SHARE = 4;
+    // Lines of context shown before a weak detection's first match
+    private static final int AI_CONTEXT_LINES = 5;
+    // An LLM finding counts like one mention in code
+    private static final double AI_EVIDENCE_WEIGHT = 0.5;
+    private static final String AI_EVIDENCE = "llm analysis";
+
+    // Aspects the LLM is asked about, and those resolved from dependencies
+    private static final Set<Stack.Aspect> AI_ASPECTS = EnumSet.of(
+        Stack.Aspect.LANGUAGE, Stack.Aspect.FRAMEWORK, Stack.Aspect.DATABASES, Stack.Aspect.PORTS);
+    private static final Set<Stack.Aspect> DEPENDENCY_ASPECTS = EnumSet.of(
+        Stack.Aspect.FRAMEWORK, Stack.Aspect.DATABASES, Stack.Aspect.PORTS,
+        Stack.Aspect.CLOUD_PROVIDERS, Stack.Aspect.TESTING_FRAMEWORKS);
+
+    // Changed directories named in the log before the list is cut short
+    private static final int MAX_LOGGED_CHANGES = 5;
+
+    // Manifests larger than this are not real-world build files and are skipped
+    private static final int MAX_MANIFEST_BYTES = 4 * 1024 * 1024;
+
+    // Weight of one file's content evidence towards a detection's confidence.
+    // Mentions in documentation are much weaker than mentions in code or configuration.
+    private static final double CONTENT_EVIDENCE_WEIGHT = 0.5;
+    private static final double DOCUMENTATION_EVIDENCE_WEIGHT = 0.2;
+    private static final Pattern DOCUMENTATION_FILES = Pattern.compile(".*\\.(md|markdown|rst|adoc|txt)$|README|CHANGELOG");
+    // Evidence locations kept on the Stack per detection
+    private static final int MAX_EVIDENCE = 5;
+
+    // Files that usually start an application, scanned first when the scan is budgeted
+    private static final Pattern ENTRYPOINT_FILES = Pattern.compile(
+        "(?i)(main|app|index|server|application|program|manage|wsgi|asgi|startup)\\.[a-z]+|.*Application\\.(java|kt)");
 
     /**
      * Detects the complete technology stack of a project.
      * 
-     * @param projectDir The root directory of the project to analyze
+     * Build manifests are parsed first into a {@link DependencyIndex}, then,
+     * if they do not name the framework, lockfiles are streamed into it. When
+     * the dependencies identify the framework, databases, cloud SDKs and
+     * testing frameworks are taken from them too and no source file is opened.
+     * Otherwise all detectors are fed from a single pass over the project files,
+     * so each file is read at most once regardless of how many technologies are
+     * detected. The tree is walked in parallel, and deny-listed directories and
+     * paths matched by .gitignore or .dockerignore are pruned without being read.
+     * 
+     * The project may also be given as an archive, such as a release tarball
+     * or a fat jar, which is streamed once without extraction.
+     * 
+     * @param projectDir The root directory of the project to analyze, or an archive of it
      * @return A Stack object containing all detected technologies
      * @throws IOException if there are file system access issues
      */
     public Stack detectStack(Path projectDir) throws IOException {
+        return detectStack(projectDir, EnumSet.allOf(Stack.Aspect.class));
+    }
+
+    /**
+     * Detects the given aspects of a project's stack, deferring the others.
+     * 
+     * Only the detectors of the demanded aspects run, and they read only what
+     * those aspects need: the language and build tool come from file names
+     * alone, and source files are opened only if the dependencies leave a
+     * demanded framework, database, cloud SDK or testing framework unresolved.
+     * The deferred aspects are detected together, in one more pass, when the
+     * stack is first asked for any of them. Archives are always detected whole,
+     * since they are read in one sequential pass anyway.
+     * 
+     * @param projectDir The root directory of the project to analyze, or an archive of it
+     * @param aspects The aspects needed up front; ports imply the framework and databases
+     * @return The stack, detecting deferred aspects on first read
+     * @throws IOException if there are file system access issues
+     */
+    public Stack detectStack(Path projectDir, Set<Stack.Aspect> aspects) throws IOException {
+        if (Files.isRegularFile(projectDir) && ArchiveReader.isArchive(projectDir.getFileName().toString())) {
+            return detectArchive(projectDir);
+        }
         if (!Files.isDirectory(projectDir)) {
             throw new IllegalArgumentException("Invalid project directory: " + projectDir);
         }
 
-        try {
-            List<Path> files = listFiles(projectDir);
-            if (files.isEmpty()) {
-                throw new IllegalArgumentException("Empty project directory: " + projectDir);
-            }
+        DetectionCache cache = cacheDirectory != null
+            ? DetectionCache.open(cacheDirectory, projectDir, rules.getId())
+            : null;
+        return detectStack(projectDir, cache, aspects);
+    }
 
-            String language = detectLanguage(files);
-            String framework = detectFramework(files);
-            String buildTool = detectBuildTool(files);
-            List<String> databases = detectDatabases(files);
-            Map<String, Integer> ports = detectPorts(files);
-            List<String> cloudProviders = detectCloudProviders(files);
-            List<String> testingFrameworks = detectTestingFrameworks(files);
+    /**
+     * Detects the stack using the given detection cache, which may be a
+     * persistent one or the in-memory state of a {@link StackWatcher}.
+     * 
+     * @param projectDir Path to the project root directory
+     * @param cache The detection cache, or null to read every file
+     * @return Detected stack information
+     * @throws IOException if there are issues reading project files
+     */
+    Stack detectStack(Path projectDir, DetectionCache cache) throws IOException {
+        return detectStack(projectDir, cache, EnumSet.allOf(Stack.Aspect.class));
+    }
 
-            return new Stack(language, framework, buildTool, databases, ports, cloudProviders, testingFrameworks);
-        } catch (IOException e) {
-            throw new RuntimeException("Failed to detect stack", e);
+    private Stack detectStack(Path projectDir, DetectionCache cache, Set<Stack.Aspect> aspects) throws IOException {
+        long start = System.nanoTime();
+        ScanBudget budget = ScanBudget.start(maxScanTime, maxFiles);
+        ScanEngine.ProjectTree tree = scanEngine.walk(projectDir, ignoreRules, budget);
+        if (tree.size() == 0 && !budget.isTruncated()) {
+            throw new IllegalArgumentException("Empty project directory: " + projectDir);
         }
+
+        LongAdder bytes = new LongAdder();
+        LongAdder duplicates = new LongAdder();
+        Stack stack = detect(tree, cache, bytes, duplicates, budget, aspects);
+        lastScanStats = new ScanStats(tree.size(), bytes.sum(), duplicates.sum(), System.nanoTime() - start);
+        return stack;
     }
 
     /**
-     * Lists all files in a directory recursively.
+     * Detects the stack of every service in a monorepo.
      * 
-     * @param dir The directory to scan
-     * @return List of file paths
+     * The tree is walked once. Every directory holding its own build manifest
+     * is a service root; the project root itself only counts when no other
+     * service is found, since in a monorepo it usually holds workspace tooling.
+     * Each file belongs to its nearest service root, and the services are then
+     * detected in parallel on the shared pool.
+     * 
+     * @param projectDir The root directory of the monorepo
+     * @return One stack per service, each with its path relative to the project root, sorted by path
      * @throws IOException if there are file system access issues
      */
-    private List<Path> listFiles(Path dir) throws IOException {
-        try (Stream<Path> stream = Files.walk(dir)) {
-            return stream
-                .filter(Files::isRegularFile)
-                .collect(Collectors.toList());
+    public List<Stack> detectServices(Path projectDir) throws IOException {
+        if (!Files.isDirectory(projectDir)) {
+            throw new IllegalArgumentException("Invalid project directory: " + projectDir);
+        }
+        long start = System.nanoTime();
+        ScanBudget budget = ScanBudget.start(maxScanTime, maxFiles);
+        ScanEngine.ProjectTree tree = scanEngine.walk(projectDir, ignoreRules, budget);
+        if (tree.size() == 0 && !budget.isTruncated()) {
+            throw new IllegalArgumentException("Empty project directory: " + projectDir);
         }
+
+        Map<Path, List<Integer>> services = partitionServices(tree);
+        logger.info("Found {} services in {}", services.size(), projectDir);
+
+        LongAdder bytes = new LongAdder();
+        LongAdder duplicates = new LongAdder();
+        List<Path> roots = new ArrayList<>(services.keySet());
+        Stack[] stacks = new Stack[roots.size()];
+        scanEngine.getPool().invoke(ForkJoinTask.adapt(() ->
+            IntStream.range(0, roots.size()).parallel().forEach(i -> {
+                Path root = roots.get(i);
+                DetectionCache cache = cacheDirectory != null
+                    ? DetectionCache.open(cacheDirectory, root, rules.getId())
+                    : null;
+                Stack stack = detect(tree.subtree(root, services.get(root)), cache, bytes, duplicates, budget,
+                    EnumSet.allOf(Stack.Aspect.class));
+                String relative = projectDir.relativize(root).toString();
+                stack.setPath(relative.isEmpty() ? "." : relative);
+                stacks[i] = stack;
+            })));
+
+        lastScanStats = new ScanStats(tree.size(), bytes.sum(), duplicates.sum(), System.nanoTime() - start);
+        List<Stack> result = new ArrayList<>(Arrays.asList(stacks));
+        result.sort(Comparator.comparing(Stack::getPath));
+        return result;
     }
 
     /**
-     * Detects the primary programming language used in the project.
-     * Uses file extensions and content analysis.
+     * Assigns every file of the tree to its nearest service root.
      * 
-     * @param files List of project files
-     * @return The detected programming language
+     * @return File indices by service root; the project root when no service is found
      */
-    private String detectLanguage(List<Path> files) {
-        for (Path file : files) {
-            String fileName = file.getFileName().toString();
-            for (Map.Entry<String, String> entry : LANGUAGE_PATTERNS.entrySet()) {
-                if (fileName.matches(entry.getValue())) {
-                    return entry.getKey();
+    private Map<Path, List<Integer>> partitionServices(ScanEngine.ProjectTree tree) {
+        Set<Path> roots = new HashSet<>();
+        for (Path file : tree.getFiles()) {
+            if (ManifestParser.isManifest(file.getFileName().toString())
+                    || rules.getBuildToolPatterns().values().stream().anyMatch(p -> p.matcher(file.getFileName().toString()).matches())) {
+                roots.add(file.getParent());
+            }
+        }
+        if (roots.size() > 1) {
+            roots.remove(tree.getRoot());
+        }
+        if (roots.isEmpty()) {
+            roots.add(tree.getRoot());
+        }
+
+        Map<Path, List<Integer>> services = new HashMap<>();
+        for (int i = 0; i < tree.size(); i++) {
+            for (Path dir = tree.getFiles().get(i).getParent(); dir != null; dir = dir.getParent()) {
+                if (roots.contains(dir)) {
+                    services.computeIfAbsent(dir, root -> new ArrayList<>()).add(i);
+                    break;
+                }
+                if (dir.equals(tree.getRoot())) {
+                    break;
                 }
             }
         }
-        return "unknown";
+        return services;
     }
 
     /**
-     * Detects the web framework used in the project.
-     * Analyzes project structure and configuration files.
+     * Detects the stack of a walked tree.
      * 
-     * @param files List of project files
-     * @return The detected framework name
+     * @param tree The walked project or service tree
+     * @param cache The detection cache, or null to read every file
+     * @param bytes Accumulates the number of bytes read
+     * @param duplicates Accumulates the number of files whose content was matched as another file's copy
+     * @param budget The budget of the run, shared by every service
+     * @param aspects The aspects to detect now; the others are detected on first read
+     * @return Detected stack information, flagged truncated if the budget ran out
      */
-    private String detectFramework(List<Path> files) {
-        for (Path file : files) {
+    private Stack detect(ScanEngine.ProjectTree tree, DetectionCache cache, LongAdder bytes,
+                         LongAdder duplicates, ScanBudget budget, Set<Stack.Aspect> aspects) {
+        // A partial walk must not be mistaken for the whole tree
+        if (cache != null && !budget.isTruncated()) {
+            Stack cached = cache.lookupStack(tree.getFingerprint());
+            // A stack stored without the LLM's opinion is not the answer of a run that would ask for it
+            if (cached != null && !needsAIAnalysis(cached, aspects)) {
+                logger.info("Project unchanged since last detection, using cached stack");
+                return cached;
+            }
+            List<String> changed = cache.changedDirectories(tree.getMerkleTree());
+            if (!changed.isEmpty()) {
+                logger.info("Project changed since last detection in {} directories: {}{}", changed.size(),
+                    changed.subList(0, Math.min(changed.size(), MAX_LOGGED_CHANGES)),
+                    changed.size() > MAX_LOGGED_CHANGES ? " and more" : "");
+            }
+        }
+
+        Set<Stack.Aspect> demanded = EnumSet.copyOf(aspects);
+        if (demanded.contains(Stack.Aspect.PORTS)) {
+            demanded.add(Stack.Aspect.FRAMEWORK);
+            demanded.add(Stack.Aspect.DATABASES);
+        }
+        Set<Stack.Aspect> deferred = EnumSet.complementOf(EnumSet.copyOf(demanded));
+
+        Detection detection = new Detection(tree, cache, bytes, duplicates);
+        Stack stack = new Stack();
+        detection.run(stack, demanded, deferred, budget);
+        if (!deferred.isEmpty()) {
+            logger.debug("Deferring detection of {}", deferred);
+            stack.defer(deferred, detection);
+        }
+        return stack;
+    }
+
+    /**
+     * One detection of a walked tree, run in as many passes as the stack's
+     * aspects are demanded in.
+     * 
+     * Each pass runs the detectors of its aspects only, reading no more than
+     * they need: manifests first, then lockfiles, then, if the dependencies
+     * leave a demanded aspect unresolved, the source files. What one pass has
+     * read is kept for the next, so a deferred pass reads only what is new to it.
+     */
+    private final class Detection implements Stack.Loader {
+        private final ScanEngine.ProjectTree tree;
+        private final DetectionCache cache;
+        private final LongAdder bytes;
+        private final LongAdder duplicates;
+        private final DependencyIndex dependencies;
+        private boolean manifestsIndexed;
+        private boolean lockfilesIndexed;
+        private boolean sourcesScanned;
+        // The aspects of every pass so far, those a weak detection must feed to be worth an LLM call
+        private final Set<Stack.Aspect> demanded = EnumSet.noneOf(Stack.Aspect.class);
+        private boolean answeredByAI;
+        // Findings of the latest pass over the tree; by file name only until sources are scanned
+        private ScanResult result;
+        // The framework identified by the dependencies, or null
+        private String framework;
+
+        Detection(ScanEngine.ProjectTree tree, DetectionCache cache, LongAdder bytes, LongAdder duplicates) {
+            this.tree = tree;
+            this.cache = cache;
+            this.bytes = bytes;
+            this.duplicates = duplicates;
+            this.dependencies = new DependencyIndex();
+        }
+
+        /**
+         * Takes the dependencies and findings of a scan that read everything
+         * already, such as that of an archive.
+         */
+        Detection(ScanEngine.ProjectTree tree, DependencyIndex dependencies, ScanResult result) {
+            this.tree = tree;
+            this.cache = null;
+            this.bytes = new LongAdder();
+            this.duplicates = new LongAdder();
+            this.dependencies = dependencies;
+            this.result = result;
+            this.framework = frameworkFromDependencies(dependencies);
+            this.manifestsIndexed = true;
+            this.lockfilesIndexed = true;
+            this.sourcesScanned = true;
+        }
+
+        /**
+         * Detects some aspects of the stack, asking the LLM once the aspects
+         * it answers for are all detected and static detection is unsure.
+         * 
+         * @param stack The stack to fill in
+         * @param aspects The aspects to detect
+         * @param deferred The aspects left for a later pass
+         * @param budget The budget of this pass
+         */
+        void run(Stack stack, Set<Stack.Aspect> aspects, Set<Stack.Aspect> deferred, ScanBudget budget) {
+            demanded.addAll(aspects);
+            read(aspects, budget);
+            fill(stack, aspects);
+
+            // Only the hard cases pay for an LLM call, and never once the budget is spent
+            if (!Collections.disjoint(aspects, AI_ASPECTS) && Collections.disjoint(deferred, AI_ASPECTS)
+                    && needsAIAnalysis(stack, demanded) && !budget.isExpired()) {
+                answeredByAI |= analyzeWithAI(stack, tree, dependencies);
+            }
+            stack.setTruncated(stack.isTruncated() || budget.isTruncated());
+
+            // A pass that read no sources has nothing to save but the whole stack; the cache drops
+            // file entries only after a scan, so those of earlier runs survive it
+            if (cache != null && (deferred.isEmpty() || sourcesScanned)) {
+                // A best-so-far, partly detected or LLM-amended stack must not be served as the
+                // final answer on the next run, which may not ask the LLM
+                if (deferred.isEmpty() && !stack.isTruncated() && !answeredByAI) {
+                    cache.storeStack(tree.getMerkleTree(), stack);
+                }
+                cache.save();
+            }
+        }
+
+        /**
+         * @return true if the LLM's answer was merged into the stack
+         */
+        boolean isAnsweredByAI() {
+            return answeredByAI;
+        }
+
+        @Override
+        public void load(Stack stack, Set<Stack.Aspect> aspects) {
+            logger.debug("Detecting deferred {}", aspects);
+            long start = System.nanoTime();
+            long readBefore = bytes.sum();
+            long duplicatesBefore = duplicates.sum();
+            run(stack, aspects, EnumSet.noneOf(Stack.Aspect.class), ScanBudget.start(maxScanTime, maxFiles));
+            lastScanStats = new ScanStats(tree.size(), bytes.sum() - readBefore,
+                duplicates.sum() - duplicatesBefore, System.nanoTime() - start);
+        }
+
+        /**
+         * Reads what the aspects need and has not been read yet.
+         */
+        private void read(Set<Stack.Aspect> aspects, ScanBudget budget) {
+            // Manifests first, then lockfiles: when either identifies the framework,
+            // source files are never opened
+            boolean fromDependencies = !Collections.disjoint(aspects, DEPENDENCY_ASPECTS);
+            if (fromDependencies && !manifestsIndexed) {
+                indexManifests(budget);
+            }
+            if (fromDependencies && framework == null && !lockfilesIndexed) {
+                bytes.add(StackDetector.indexLockfiles(tree, dependencies, budget));
+                lockfilesIndexed = true;
+                framework = frameworkFromDependencies(dependencies);
+            }
+            if (fromDependencies && framework != null && !sourcesScanned) {
+                logger.debug("Framework {} resolved from {} manifests and {} locked packages, skipping source scan",
+                    framework, dependencies.getManifests().size(), dependencies.getResolvedCount());
+            }
+
+            boolean scanSources = !sourcesScanned && needsSources(aspects);
+            if (result == null || scanSources) {
+                // A pass by file name looks nothing up, so it must not begin a scan of the cache,
+                // whose save would then drop every file entry
+                result = scanEngine.scan(tree, scanSources ? cache : null, file -> scanSources
+                    && !dependencies.getManifests().contains(file)
+                    && !LockfileParser.isLockfile(file.getFileName().toString()), StackDetector.this::compareScanPriority, budget);
+                bytes.add(result.getStats().getBytes());
+                duplicates.add(result.getStats().getDuplicates());
+                sourcesScanned = scanSources;
+            }
+
+            // Without source files, the language is that of the shallowest manifest
+            if (aspects.contains(Stack.Aspect.LANGUAGE) && !result.hasLanguage() && !manifestsIndexed) {
+                indexManifests(budget);
+            }
+        }
+
+        private void indexManifests(ScanBudget budget) {
+            bytes.add(StackDetector.indexManifests(tree, dependencies, budget));
+            manifestsIndexed = true;
+            framework = frameworkFromDependencies(dependencies);
+        }
+
+        /**
+         * @return true if the dependencies leave a demanded aspect to be found in the sources
+         */
+        private boolean needsSources(Set<Stack.Aspect> aspects) {
+            if (framework != null) {
+                return false;
+            }
+            return aspects.contains(Stack.Aspect.FRAMEWORK)
+                || aspects.contains(Stack.Aspect.DATABASES) && !declaresAny(rules.getDatabaseDependencies())
+                || aspects.contains(Stack.Aspect.CLOUD_PROVIDERS) && !declaresAny(rules.getCloudDependencies())
+                || aspects.contains(Stack.Aspect.TESTING_FRAMEWORKS) && !declaresAny(rules.getTestingFrameworkDependencies());
+        }
+
+        private boolean declaresAny(Map<String, List<String>> dependencyRules) {
+            return dependencyRules.values().stream().flatMap(List::stream).anyMatch(dependencies::matches);
+        }
+
+        /**
+         * Combines the dependency and content findings of the aspects into the stack and scores them.
+         */
+        private void fill(Stack stack, Set<Stack.Aspect> aspects) {
+            if (aspects.contains(Stack.Aspect.LANGUAGE)) {
+                // Source files outweigh manifests; a project with manifests only is
+                // fully attributed to the language of its shallowest manifest
+                boolean fromSources = result.hasLanguage() || dependencies.getLanguage() == null;
+                stack.setLanguage(fromSources ? result.getLanguage() : dependencies.getLanguage());
+                if (fromSources) {
+                    stack.setLanguageConfidence(result.getLanguageConfidence());
+                    stack.setLanguageBreakdown(result.getLanguageBreakdown());
+                } else {
+                    stack.setLanguageConfidence(1.0);
+                }
+            }
+            if (aspects.contains(Stack.Aspect.BUILD_TOOL)) {
+                stack.setBuildTool(result.getBuildTool());
+            }
+            if (aspects.contains(Stack.Aspect.FRAMEWORK)) {
+                stack.setFramework(framework != null ? framework : result.getFramework());
+            }
+            if (aspects.contains(Stack.Aspect.DATABASES)) {
+                stack.setDatabases(union(result.getDatabases(), dependencies, rules.getDatabaseDependencies()));
+            }
+            if (aspects.contains(Stack.Aspect.PORTS)) {
+                stack.setPorts(detectPorts(stack.getFramework(), stack.getDatabases()));
+            }
+            if (aspects.contains(Stack.Aspect.CLOUD_PROVIDERS)) {
+                stack.setCloudProviders(union(result.getCloudProviders(), dependencies, rules.getCloudDependencies()));
+            }
+            if (aspects.contains(Stack.Aspect.TESTING_FRAMEWORKS)) {
+                stack.setTestingFrameworks(union(result.getTestingFrameworks(), dependencies, rules.getTestingFrameworkDependencies()));
+            }
+            scoreDetections(stack, aspects, tree, result.getEvidence(), dependencies);
+        }
+    }
+
+    /**
+     * Detects the stack of a release archive or built artifact in one
+     * sequential read, without extracting it.
+     * 
+     * Manifests and lockfiles inside the archive feed the dependency index,
+     * libraries bundled in a fat jar or war contribute the Maven coordinates
+     * they carry, and every other entry is matched and detected like a file
+     * of a project tree.
+     * 
+     * @param archive A .zip, .jar, .war, .ear, .tar, .tar.gz or .tgz file
+     * @return Detected stack information
+     * @throws IOException if the archive cannot be read or is corrupt
+     */
+    private Stack detectArchive(Path archive) throws IOException {
+        long start = System.nanoTime();
+        BasicFileAttributes attrs = Files.readAttributes(archive, BasicFileAttributes.class);
+        String fingerprint = Long.toHexString(attrs.size()) + "-" + Long.toHexString(attrs.lastModifiedTime().toMillis());
+        DetectionCache cache = cacheDirectory != null
+            ? DetectionCache.open(cacheDirectory, archive, rules.getId())
+            : null;
+        if (cache != null) {
+            Stack cached = cache.lookupStack(fingerprint);
+            if (cached != null && !needsAIAnalysis(cached, EnumSet.allOf(Stack.Aspect.class))) {
+                logger.info("Archive unchanged since last detection, using cached stack");
+                lastScanStats = new ScanStats(0, 0, System.nanoTime() - start);
+                return cached;
+            }
+        }
+
+        ScanBudget budget = ScanBudget.start(maxScanTime, maxFiles);
+        DependencyIndex dependencies = new DependencyIndex();
+        ScanEngine.ArchiveScan scan = scanEngine.scanArchive(archive, ignoreRules,
+            (file, content) -> indexArchiveEntry(file, content, dependencies), budget);
+        Stack stack = new Stack();
+        Detection detection = new Detection(scan.getTree(), dependencies, scan.getResult());
+        detection.run(stack, EnumSet.allOf(Stack.Aspect.class), EnumSet.noneOf(Stack.Aspect.class), budget);
+        lastScanStats = new ScanStats(scan.getTree().size(), scan.getResult().getStats().getBytes(),
+            scan.getResult().getStats().getDuplicates(), System.nanoTime() - start);
+
+        if (cache != null) {
+            if (!stack.isTruncated() && !detection.isAnsweredByAI()) {
+                cache.storeStack(fingerprint, stack);
+            }
+            cache.save();
+        }
+        return stack;
+    }
+
+    /**
+     * Feeds a manifest, lockfile or bundled library from an archive into the dependency index.
+     * 
+     * @return true if the entry was consumed
+     */
+    private static boolean indexArchiveEntry(Path file, InputStream content, DependencyIndex dependencies) {
+        String fileName = file.getFileName().toString();
+        if (ManifestParser.isManifest(fileName)) {
             try {
-                String content = Files.readString(file);
-                for (Map.Entry<String, String> entry : FRAMEWORK_PATTERNS.entrySet()) {
-                    if (content.matches(".*" + entry.getValue() + ".*")) {
-                        return entry.getKey();
-                    }
+                byte[] manifest = content.readNBytes(MAX_MANIFEST_BYTES + 1);
+                if (manifest.length > MAX_MANIFEST_BYTES) {
+                    logger.warn("Skipping oversized manifest: {}", file);
+                } else {
+                    ManifestParser.parse(file, new String(manifest, StandardCharsets.UTF_8), dependencies);
                 }
             } catch (IOException e) {
-                logger.warn("Failed to read file: {}", file, e);
+                logger.warn("Failed to read manifest {}: {}", file, e.getMessage());
             }
+            return true;
         }
-        return "unknown";
+        if (LockfileParser.isLockfile(fileName)) {
+            LockfileParser.parse(file, content, dependencies::addResolved);
+            return true;
+        }
+        if (ArchiveReader.isArchive(fileName)) {
+            // A bundled library names itself in its Maven metadata; its own
+            // manifests and sources describe the library, not the application
+            try {
+                ArchiveReader.read(content, fileName, (name, attrs, entry) -> {
+                    if (name.startsWith("META-INF/maven/") && name.endsWith("/pom.properties")) {
+                        Properties coordinates = new Properties();
+                        coordinates.load(entry);
+                        String groupId = coordinates.getProperty("groupId");
+                        String artifactId = coordinates.getProperty("artifactId");
+                        if (groupId != null && artifactId != null) {
+                            dependencies.addResolved(groupId + ":" + artifactId, coordinates.getProperty("version"));
+                        }
+                    }
+                    return true;
+                });
+            } catch (IOException e) {
+                logger.warn("Failed to read bundled archive {}: {}", file, e.getMessage());
+            }
+            return true;
+        }
+        return false;
     }
 
     /**
-     * Detects build tools used in the project.
-     * Looks for common build configuration files like pom.xml, build.gradle, etc.
+     * Scores the detections of the given aspects and records where they came from.
      * 
-     * @param files List of project files
-     * @return The detected build tool name
+     * A detection backed by a declared or resolved dependency is certain.
+     * Otherwise each file whose content matched the detection's rule adds
+     * independent evidence: confidence is {@code 1 - prod(1 - weight)} over
+     * those files, so one mention in code scores 0.5, two score 0.75, and a
+     * mention in a README alone stays below {@link Stack#MIN_CONFIDENCE}.
      */
-    private String detectBuildTool(List<Path> files) {
-        for (Path file : files) {
-            String fileName = file.getFileName().toString();
-            for (Map.Entry<String, String> entry : BUILD_TOOL_PATTERNS.entrySet()) {
-                if (fileName.matches(entry.getValue())) {
-                    return entry.getKey();
+    private void scoreDetections(Stack stack, Set<Stack.Aspect> aspects, ScanEngine.ProjectTree tree,
+                                 EvidenceIndex evidence, DependencyIndex dependencies) {
+        Map<String, Double> confidences = stack.getConfidences();
+        Map<String, List<String>> locations = stack.getEvidence();
+        Map<String, List<String>> frameworkDependencies = new HashMap<>();
+        rules.getFrameworkDependencies().forEach(entry -> frameworkDependencies.put(entry.getKey(), entry.getValue()));
+
+        BiConsumer<String, String> score = (category, name) -> {
+            int[] range = switch (category) {
+                case "framework" -> rules.getFrameworkRules();
+                case "database" -> rules.getDatabaseRules();
+                case "cloud" -> rules.getCloudRules();
+                default -> rules.getTestingFrameworkRules();
+            };
+            Map<String, List<String>> dependencyRules = switch (category) {
+                case "framework" -> frameworkDependencies;
+                case "database" -> rules.getDatabaseDependencies();
+                case "cloud" -> rules.getCloudDependencies();
+                default -> rules.getTestingFrameworkDependencies();
+            };
+            String key = category + ":" + name;
+            List<String> found = new ArrayList<>();
+            for (String rule : dependencyRules.getOrDefault(name, List.of())) {
+                String dependency = dependencies.findMatch(rule);
+                if (dependency != null) {
+                    found.add("dependency " + dependency);
+                    confidences.put(key, 1.0);
+                    locations.put(key, found);
+                    return;
+                }
+            }
+
+            int rule = rules.getContentRuleNames().subList(range[0], range[1]).indexOf(name);
+            if (rule < 0) {
+                return;
+            }
+            double missing = 1.0;
+            for (int entry : evidence.entriesOf(range[0] + rule)) {
+                Path file = evidence.getFile(evidence.getFileId(entry));
+                missing *= 1 - (DOCUMENTATION_FILES.matcher(file.getFileName().toString()).matches()
+                    ? DOCUMENTATION_EVIDENCE_WEIGHT
+                    : CONTENT_EVIDENCE_WEIGHT);
+                if (found.size() < MAX_EVIDENCE) {
+                    found.add(tree.getRoot().relativize(file) + ":" + evidence.getLine(entry));
                 }
             }
+            if (!found.isEmpty()) {
+                confidences.put(key, 1 - missing);
+                locations.put(key, found);
+            }
+        };
+
+        if (aspects.contains(Stack.Aspect.FRAMEWORK) && !"unknown".equals(stack.getFramework())) {
+            score.accept("framework", stack.getFramework());
+        }
+        if (aspects.contains(Stack.Aspect.DATABASES)) {
+            stack.getDatabases().forEach(name -> score.accept("database", name));
+        }
+        if (aspects.contains(Stack.Aspect.CLOUD_PROVIDERS)) {
+            stack.getCloudProviders().forEach(name -> score.accept("cloud", name));
+        }
+        if (aspects.contains(Stack.Aspect.TESTING_FRAMEWORKS)) {
+            stack.getTestingFrameworks().forEach(name -> score.accept("testing", name));
         }
-        return "unknown";
     }
 
     /**
-     * Detects databases referenced in the project.
-     * Analyzes configuration files and code for database connection strings and dependencies.
+     * Parses every build manifest of the tree into the dependency index, in parallel.
      * 
-     * @param files List of project files
-     * @return List of detected database names
+     * @return Number of manifest bytes read
      */
-    private List<String> detectDatabases(List<Path> files) {
-        Set<String> detectedDatabases = new HashSet<>();
-        for (Path file : files) {
+    private static long indexManifests(ScanEngine.ProjectTree tree, DependencyIndex index, ScanBudget budget) {
+        LongAdder bytes = new LongAdder();
+        Arrays.stream(acquire(tree, ManifestParser::isManifest, budget)).parallel().forEach(i -> {
+            Path file = tree.getFiles().get(i);
+            if (tree.getAttributes(i).size() > MAX_MANIFEST_BYTES) {
+                logger.warn("Skipping oversized manifest: {}", file);
+                return;
+            }
             try {
-                String content = Files.readString(file);
-                for (Map.Entry<String, String> entry : DATABASE_PATTERNS.entrySet()) {
-                    if (content.matches(".*" + entry.getValue() + ".*")) {
-                        detectedDatabases.add(entry.getKey());
-                    }
-                }
+                byte[] content = Files.readAllBytes(file);
+                bytes.add(content.length);
+                ManifestParser.parse(file, new String(content, StandardCharsets.UTF_8), index);
             } catch (IOException e) {
-                logger.warn("Failed to read file: {}", file, e);
+                logger.warn("Failed to read manifest {}: {}", file, e.getMessage());
             }
+        });
+        return bytes.sum();
+    }
+
+    /**
+     * Streams every lockfile of the tree into the dependency index, in parallel.
+     * Lockfiles are never loaded whole, however large they are.
+     * 
+     * @return Number of lockfile bytes read
+     */
+    private static long indexLockfiles(ScanEngine.ProjectTree tree, DependencyIndex index, ScanBudget budget) {
+        LongAdder bytes = new LongAdder();
+        Arrays.stream(acquire(tree, LockfileParser::isLockfile, budget)).parallel().forEach(i -> {
+            if (LockfileParser.parse(tree.getFiles().get(i), index::addResolved)) {
+                bytes.add(tree.getAttributes(i).size());
+            }
+        });
+        return bytes.sum();
+    }
+
+    /**
+     * Selects the files with matching names, shallowest first, taking each
+     * from the budget until it runs out.
+     * 
+     * @return Indices of the selected files
+     */
+    private static int[] acquire(ScanEngine.ProjectTree tree, Predicate<String> fileName, ScanBudget budget) {
+        return IntStream.range(0, tree.size())
+            .filter(i -> fileName.test(tree.getFiles().get(i).getFileName().toString()))
+            .boxed()
+            .sorted(Comparator.comparing(i -> tree.getFiles().get(i), StackDetector::compareDepth))
+            .mapToInt(Integer::intValue)
+            .takeWhile(i -> budget.tryAcquireFile())
+            .toArray();
+    }
+
+    /**
+     * Orders files for the source scan: entrypoints first, then build and
+     * configuration files, then everything else, each shallowest first.
+     */
+    private int compareScanPriority(Path a, Path b) {
+        int byRank = Integer.compare(scanRank(a), scanRank(b));
+        return byRank != 0 ? byRank : compareDepth(a, b);
+    }
+
+    private int scanRank(Path file) {
+        String fileName = file.getFileName().toString();
+        if (ENTRYPOINT_FILES.matcher(fileName).matches()) {
+            return 0;
+        }
+        for (Pattern pattern : rules.getBuildToolPatterns().values()) {
+            if (pattern.matcher(fileName).matches()) {
+                return 1;
+            }
+        }
+        return 2;
+    }
+
+    private static int compareDepth(Path a, Path b) {
+        int byDepth = Integer.compare(a.getNameCount(), b.getNameCount());
+        return byDepth != 0 ? byDepth : a.compareTo(b);
+    }
+
+    /**
+     * @return The highest-precedence framework among the dependencies, or null if none
+     */
+    private String frameworkFromDependencies(DependencyIndex index) {
+        for (Map.Entry<String, List<String>> framework : rules.getFrameworkDependencies()) {
+            if (framework.getValue().stream().anyMatch(index::matches)) {
+                return framework.getKey();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Merges the technologies found in file content with those declared as dependencies.
+     * 
+     * @return The sorted union of both
+     */
+    private List<String> union(List<String> found, DependencyIndex index, Map<String, List<String>> rules) {
+        Set<String> merged = new TreeSet<>(found);
+        rules.forEach((name, dependencyRules) -> {
+            if (dependencyRules.stream().anyMatch(index::matches)) {
+                merged.add(name);
+            }
+        });
+        return new ArrayList<>(merged);
+    }
+
+    /**
+     * @return A new in-memory detection cache for the current content rules
+     */
+    DetectionCache newInMemoryCache() {
+        return DetectionCache.inMemory(rules.getId());
+    }
+
+    /**
+     * @return The ignore rules used to prune the project walk
+     */
+    IgnoreRules getIgnoreRules() {
+        return ignoreRules;
+    }
+
+    /**
+     * Enables the persistent detection cache. Unchanged files are then resolved
+     * from the cache without being read, and an unchanged tree returns the
+     * previously detected stack.
+     * 
+     * @param cacheDirectory The cache directory, usually {@link DetectionCache#defaultDirectory()},
+     *                       or null to disable caching
+     */
+    public void setCacheDirectory(Path cacheDirectory) {
+        this.cacheDirectory = cacheDirectory;
+    }
+
+    /**
+     * Asks the LLM for a second opinion whenever static detection is unsure:
+     * the language or framework is unknown, or the language or any detection
+     * scored below the threshold.
+     * 
+     * @param threshold The confidence threshold, or 0 to never call the LLM
+     */
+    public void setAiFallbackThreshold(double threshold) {
+        this.aiFallbackThreshold = threshold;
+    }
+
+    /**
+     * Limits how much project content is sent with each LLM call.
+     * 
+     * @param tokens Approximate number of prompt tokens spent on project files
+     */
+    public void setAiTokenBudget(int tokens) {
+        this.aiTokenBudget = tokens;
+    }
+
+    /**
+     * Limits the wall-clock time of each detection run. When it runs out, the
+     * best stack found so far is returned, flagged with {@link Stack#isTruncated()}.
+     * 
+     * @param maxScanTime The time limit, or null for none
+     */
+    public void setMaxScanTime(Duration maxScanTime) {
+        this.maxScanTime = maxScanTime;
+    }
+
+    /**
+     * Limits the number of files read by each detection run. Manifests,
+     * lockfiles and entrypoints are read first. When the limit is reached,
+     * the best stack found so far is returned, flagged with {@link Stack#isTruncated()}.
+     * 
+     * @param maxFiles The file limit, or 0 for none
+     */
+    public void setMaxFiles(int maxFiles) {
+        this.maxFiles = maxFiles;
+    }
+
+    /**
+     * Replaces the deny-list of file and directory names skipped during detection.
+     * Defaults to {@link IgnoreRules#DEFAULT_DENY_LIST}.
+     * 
+     * @param denyList Names of files and directories to skip
+     */
+    public void setDenyList(Collection<String> denyList) {
+        this.ignoreRules = IgnoreRules.withDenyList(denyList);
+    }
+
+    /**
+     * Returns throughput statistics for the most recent scan.
+     * 
+     * @return Statistics of the last scan, or null if no scan has run yet
+     */
+    public ScanStats getLastScanStats() {
+        return lastScanStats;
+    }
+
+    /**
+     * Builds the scan engine with every per-file detector, in the order
+     * their findings are recorded.
+     * 
+     * @return The scan engine used by this detector
+     */
+    private ScanEngine createScanEngine() {
+        return new ScanEngine(rules.getMatcher(), rules.getLanguages(), List.of(
+            this::detectLanguage,
+            this::detectBuildTool,
+            this::detectFramework,
+            this::detectDatabases,
+            this::detectCloudProviders,
+            this::detectTestingFrameworks
+        ));
+    }
+
+    /**
+     * Counts a source file towards its language by file name. The primary
+     * language is the one with the most bytes of source across the tree.
+     * 
+     * @param file The file being scanned
+     * @param attrs The file's attributes, or null if they could not be read
+     * @param hits The content rule hits (unused)
+     * @param result The scan result to record into
+     */
+    private void detectLanguage(Path file, BasicFileAttributes attrs, BitSet hits, ScanResult result) {
+        String fileName = file.getFileName().toString();
+        Pattern[] languagePatterns = rules.getLanguagePatterns();
+        for (int id = 0; id < languagePatterns.length; id++) {
+            if (languagePatterns[id].matcher(fileName).matches()) {
+                result.recordLanguage(id, attrs != null ? attrs.size() : 0);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Detects the build tool from common build configuration file names
+     * like pom.xml, build.gradle, etc.
+     * 
+     * @param file The file being scanned
+     * @param attrs The file's attributes (unused)
+     * @param hits The content rule hits (unused)
+     * @param result The scan result to record into
+     */
+    private void detectBuildTool(Path file, BasicFileAttributes attrs, BitSet hits, ScanResult result) {
+        String fileName = file.getFileName().toString();
+        for (Map.Entry<String, Pattern> entry : rules.getBuildToolPatterns().entrySet()) {
+            if (entry.getValue().matcher(fileName).matches()) {
+                result.offerBuildTool(entry.getKey(), file);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Detects the web framework from file content.
+     * 
+     * @param file The file being scanned
+     * @param attrs The file's attributes (unused)
+     * @param hits The content rule hits, or null if unreadable
+     * @param result The scan result to record into
+     */
+    private void detectFramework(Path file, BasicFileAttributes attrs, BitSet hits, ScanResult result) {
+        if (hits == null) {
+            return;
+        }
+        int rule = firstHit(hits, rules.getFrameworkRules());
+        if (rule >= 0) {
+            result.offerFramework(rules.getContentRuleNames().get(rule), file);
         }
-        return new ArrayList<>(detectedDatabases);
     }
 
     /**
-     * Detects ports used in the project configuration.
-     * Analyzes configuration files for port definitions and defaults.
+     * Detects databases referenced in configuration files and code
+     * through connection strings and dependencies.
      * 
-     * @param files List of project files
+     * @param file The file being scanned
+     * @param attrs The file's attributes (unused)
+     * @param hits The content rule hits, or null if unreadable
+     * @param result The scan result to record into
+     */
+    private void detectDatabases(Path file, BasicFileAttributes attrs, BitSet hits, ScanResult result) {
+        if (hits == null) {
+            return;
+        }
+        for (int rule = firstHit(hits, rules.getDatabaseRules()); rule >= 0; rule = nextHit(hits, rules.getDatabaseRules(), rule)) {
+            result.addDatabase(rules.getContentRuleNames().get(rule));
+        }
+    }
+
+    /**
+     * Derives the ports used by the project from the detected framework and
+     * databases. Works purely on earlier findings and never touches the file system.
+     * 
+     * @param framework The detected framework
+     * @param databases The detected databases
      * @return Map of service names to their detected ports
      */
-    private Map<String, Integer> detectPorts(List<Path> files) {
+    private Map<String, Integer> detectPorts(String framework, List<String> databases) {
         Map<String, Integer> ports = new HashMap<>();
-        String framework = detectFramework(files);
-        List<String> databases = detectDatabases(files);
 
         // Add framework port
-        DEFAULT_APP_PORTS.entrySet().stream()
-            .filter(e -> e.getKey().equals(framework))
-            .findFirst()
-            .ifPresent(e -> ports.put("app", e.getValue()));
+        Integer appPort = rules.getAppPorts().get(framework);
+        if (appPort != null) {
+            ports.put("app", appPort);
+        }
 
         // Add database ports
-        databases.forEach(db -> 
-            DEFAULT_DB_PORTS.entrySet().stream()
-                .filter(e -> e.getKey().equals(db))
-                .findFirst()
-                .ifPresent(e -> ports.put(db, e.getValue()))
-        );
+        for (String db : databases) {
+            Integer dbPort = rules.getDatabasePorts().get(db);
+            if (dbPort != null) {
+                ports.put(db, dbPort);
+            }
+        }
 
         return ports;
     }
 
     /**
-     * Detects cloud providers referenced in the project.
-     * Analyzes configuration files and code for cloud service integrations.
+     * Detects cloud providers referenced in configuration files and code.
      * 
-     * @param files List of project files
-     * @return List of detected cloud provider names
+     * @param file The file being scanned
+     * @param attrs The file's attributes (unused)
+     * @param hits The content rule hits, or null if unreadable
+     * @param result The scan result to record into
      */
-    private List<String> detectCloudProviders(List<Path> files) {
-        Set<String> providers = new HashSet<>();
-        for (Path file : files) {
-            try {
-                String content = Files.readString(file);
-                for (Map.Entry<String, String> entry : CLOUD_PATTERNS.entrySet()) {
-                    if (content.matches(".*" + entry.getValue() + ".*")) {
-                        providers.add(entry.getKey());
-                    }
-                }
-            } catch (IOException e) {
-                logger.warn("Failed to read file: {}", file, e);
-            }
+    private void detectCloudProviders(Path file, BasicFileAttributes attrs, BitSet hits, ScanResult result) {
+        if (hits == null) {
+            return;
+        }
+        for (int rule = firstHit(hits, rules.getCloudRules()); rule >= 0; rule = nextHit(hits, rules.getCloudRules(), rule)) {
+            result.addCloudProvider(rules.getContentRuleNames().get(rule));
         }
-        return new ArrayList<>(providers);
     }
 
     /**
-     * Detects testing frameworks used in the project.
-     * Analyzes test files and build configurations for testing dependencies.
+     * Detects testing frameworks from test files and build configurations.
      * 
-     * @param files List of project files
-     * @return List of detected testing framework names
+     * @param file The file being scanned
+     * @param attrs The file's attributes (unused)
+     * @param hits The content rule hits, or null if unreadable
+     * @param result The scan result to record into
      */
-    private List<String> detectTestingFrameworks(List<Path> files) {
-        Set<String> frameworks = new HashSet<>();
-        for (Path file : files) {
-            try {
-                String content = Files.readString(file);
-                for (Map.Entry<String, String> entry : TESTING_FRAMEWORK_PATTERNS.entrySet()) {
-                    if (content.matches(".*" + entry.getValue() + ".*")) {
-                        frameworks.add(entry.getKey());
-                    }
-                }
-            } catch (IOException e) {
-                logger.warn("Failed to read file: {}", file, e);
-            }
+    private void detectTestingFrameworks(Path file, BasicFileAttributes attrs, BitSet hits, ScanResult result) {
+        if (hits == null) {
+            return;
+        }
+        for (int rule = firstHit(hits, rules.getTestingFrameworkRules()); rule >= 0; rule = nextHit(hits, rules.getTestingFrameworkRules(), rule)) {
+            result.addTestingFramework(rules.getContentRuleNames().get(rule));
         }
-        return new ArrayList<>(frameworks);
     }
 
     /**
-     * Uses AI to analyze project files for additional insights.
-     * Sends project structure and key files to LLM for analysis.
-     * 
-     * @param files Set of files to analyze
-     * @param language Detected programming language
-     * @param projectDir Project root directory
+     * @return The lowest rule id hit within the range, or -1 if none
      */
-    private void analyzeWithAI(Set<Path> files, String language, Path projectDir) {
-        try {
-            // Build project context for AI
-            StringBuilder context = new StringBuilder();
-            context.append("Analyze this ").append(language).append(" project:\n\n");
-
-            // Add main application files
-            files.stream()
-                .filter(this::isMainApplicationFile)
-                .forEach(file -> {
-                    try {
-                        context.append("File: ").append(projectDir.relativize(file)).append("\n");
-                        context.append(Files.readString(file)).append("\n\n");
-                    } catch (IOException e) {
-                        logger.warn("Failed to read file: {}", file, e);
-                    }
-                });
+    private static int firstHit(BitSet hits, int[] range) {
+        int rule = hits.nextSetBit(range[0]);
+        return rule >= 0 && rule < range[1] ? rule : -1;
+    }
 
-            // Add dependency files
-            files.stream()
-                .filter(this::isDependencyFile)
-                .forEach(file -> {
-                    try {
-                        context.append("File: ").append(projectDir.relativize(file)).append("\n");
-                        context.append(Files.readString(file)).append("\n\n");
-                    } catch (IOException e) {
-                        logger.warn("Failed to read file: {}", file, e);
-                    }
-                });
+    /**
+     * @return The next rule id hit within the range after {@code rule}, or -1 if none
+     */
+    private static int nextHit(BitSet hits, int[] range, int rule) {
+        int next = hits.nextSetBit(rule + 1);
+        return next >= 0 && next < range[1] ? next : -1;
+    }
 
-            String prompt = context.toString() + "\nAnalyze the code and identify:\n" +
-                "1. Framework used\n" +
-                "2. Database technologies used\n" +
-                "3. Runtime port\n" +
-                "4. API endpoints\n" +
-                "5. Environment variables\n" +
-                "Provide the response in a structured format.";
+    /**
+     * Decides whether the stack is uncertain enough to be worth an LLM call.
+     * Only what the caller demanded counts: a weak detection, such as a
+     * single mention of a database in code, is a reason to ask only if it
+     * feeds a demanded aspect the LLM answers for.
+     * 
+     * @param stack The statically detected stack
+     * @param aspects The demanded aspects
+     * @return true if the stack is uncertain enough to be worth an LLM call
+     */
+    private boolean needsAIAnalysis(Stack stack, Set<Stack.Aspect> aspects) {
+        if (aiFallbackThreshold <= 0) {
+            return false;
+        }
+        boolean language = aspects.contains(Stack.Aspect.LANGUAGE);
+        boolean framework = aspects.contains(Stack.Aspect.FRAMEWORK) || aspects.contains(Stack.Aspect.PORTS);
+        boolean databases = aspects.contains(Stack.Aspect.DATABASES) || aspects.contains(Stack.Aspect.PORTS);
+        if (language && ("unknown".equals(stack.getLanguage()) || stack.getLanguageConfidence() < aiFallbackThreshold)) {
+            return true;
+        }
+        if (framework && "unknown".equals(stack.getFramework())) {
+            return true;
+        }
+        return stack.getConfidences().entrySet().stream()
+            .filter(entry -> entry.getValue() < aiFallbackThreshold)
+            .anyMatch(entry -> framework && entry.getKey().startsWith("framework:")
+                || databases && entry.getKey().startsWith("database:"));
+    }
 
+    /**
+     * Uses AI to resolve what static detection is unsure about.
+     * Sends the static findings and the most informative project files,
+     * within the token budget, to the LLM and merges its answer into the stack.
+     * A failed call leaves the stack as statically detected.
+     * 
+     * @param stack The statically detected stack, updated in place
+     * @param tree The walked project tree
+     * @param dependencies The parsed manifests and lockfiles
+     * @return true if the LLM answered and its answer was merged
+     */
+    private boolean analyzeWithAI(Stack stack, ScanEngine.ProjectTree tree, DependencyIndex dependencies) {
+        try {
+            String prompt = buildAIContext(stack, tree, dependencies) + "\nAnalyze the project and answer with exactly these lines:\n" +
+                "Framework: <web framework, or unknown>\n" +
+                "Databases: <comma-separated databases, or none>\n" +
+                "Port: <port the application listens on, or unknown>\n";
+
+            logger.info("Static detection is uncertain, asking the LLM ({} prompt characters)", prompt.length());
             String analysis = llmClient.generateText(prompt);
-            logger.info("AI Analysis result: {}", analysis);
-            updateStackFromAIAnalysis(analysis);
+            logger.debug("AI Analysis result: {}", analysis);
+            if (analysis != null) {
+                mergeAIAnalysis(stack, parseAIResponse(analysis));
+                return true;
+            }
         } catch (Exception e) {
             logger.error("Failed to perform AI analysis", e);
         }
+        return false;
     }
 
     /**
-     * Determines if a file is likely the main application file.
+     * Builds the project context of the LLM prompt.
      * 
-     * @param file The file to check
-     * @return true if the file appears to be the main application file
+     * Files are sampled most informative first: build manifests, then the
+     * places where weak detections matched, then entrypoints and build files,
+     * then everything else in scan order. Each file contributes an excerpt of
+     * at most a quarter of the budget, and sampling stops once the budget is spent.
      */
-    private boolean isMainApplicationFile(Path file) {
-        String fileName = file.getFileName().toString().toLowerCase();
-        return fileName.equals("app.py") ||
-               fileName.equals("main.py") ||
-               fileName.equals("application.py") ||
-               fileName.equals("server.py") ||
-               fileName.equals("index.js") ||
-               fileName.equals("app.js") ||
-               fileName.equals("main.rs") ||
-               fileName.equals("main.go") ||
-               fileName.startsWith("application") && fileName.endsWith(".java");
+    private String buildAIContext(Stack stack, ScanEngine.ProjectTree tree, DependencyIndex dependencies) {
+        StringBuilder context = new StringBuilder();
+        context.append("Analyze this ").append(stack.getLanguage()).append(" project.\n");
+        context.append("Static detection found framework ").append(stack.getFramework())
+            .append(", databases ").append(stack.getDatabases()).append('\n');
+        List<String> uncertain = new ArrayList<>();
+        stack.getConfidences().forEach((key, confidence) -> {
+            if (confidence < aiFallbackThreshold) {
+                uncertain.add(key + String.format(" (%.2f)", confidence));
+            }
+        });
+        if (!uncertain.isEmpty()) {
+            context.append("Uncertain detections: ").append(String.join(", ", uncertain)).append('\n');
+        }
+        context.append('\n');
+
+        // File to the line of interest in it, in sampling order
+        Map<Path, Integer> samples = new LinkedHashMap<>();
+        dependencies.getManifests().stream()
+            .sorted(StackDetector::compareDepth)
+            .forEach(manifest -> samples.put(manifest, 1));
+        stack.getEvidence().forEach((key, locations) -> {
+            if (stack.getConfidences().getOrDefault(key, 1.0) >= aiFallbackThreshold) {
+                return;
+            }
+            for (String location : locations) {
+                int colon = location.lastIndexOf(':');
+                if (colon > 0 && !location.startsWith("dependency ")) {
+                    samples.putIfAbsent(tree.getRoot().resolve(location.substring(0, colon)),
+                        Integer.parseInt(location.substring(colon + 1)));
+                }
+            }
+        });
+        tree.getFiles().stream()
+            .filter(file -> !LockfileParser.isLockfile(file.getFileName().toString()))
+            .sorted(this::compareScanPriority)
+            .forEach(file -> samples.putIfAbsent(file, 1));
+
+        int budget = aiTokenBudget * CHARS_PER_TOKEN;
+        int maxExcerpt = budget / AI_FILE_SHARE;
+        for (Map.Entry<Path, Integer> sample : samples.entrySet()) {
+            if (budget <= 0) {
+                break;
+            }
+            String excerpt = readExcerpt(sample.getKey(), sample.getValue(), Math.min(budget, maxExcerpt));
+            if (excerpt.isBlank()) {
+                continue;
+            }
+            String header = "File: " + tree.getRoot().relativize(sample.getKey())
+                + (sample.getValue() > 1 ? " (from line " + Math.max(1, sample.getValue() - AI_CONTEXT_LINES) + ")" : "") + "\n";
+            context.append(header).append(excerpt).append("\n\n");
+            budget -= header.length() + excerpt.length();
+        }
+        return context.toString();
     }
 
     /**
-     * Determines if a file is a dependency configuration file.
+     * Reads whole lines of a file, starting a few lines before the line of
+     * interest, up to the given number of characters.
      * 
-     * @param file The file to check
-     * @return true if the file is a dependency configuration file
+     * @return The excerpt, or an empty string if the file is binary or unreadable
      */
-    private boolean isDependencyFile(Path file) {
-        String fileName = file.getFileName().toString().toLowerCase();
-        return fileName.equals("requirements.txt") ||
-               fileName.equals("package.json") ||
-               fileName.equals("cargo.toml") ||
-               fileName.equals("go.mod") ||
-               fileName.equals("build.gradle") ||
-               fileName.equals("pom.xml");
+    private static String readExcerpt(Path file, int line, int maxChars) {
+        StringBuilder excerpt = new StringBuilder();
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            int first = Math.max(1, line - AI_CONTEXT_LINES);
+            String text;
+            for (int number = 1; (text = reader.readLine()) != null; number++) {
+                if (number < first) {
+                    continue;
+                }
+                if (text.indexOf('\0') >= 0) {
+                    return "";
+                }
+                if (excerpt.length() + text.length() + 1 > maxChars) {
+                    break;
+                }
+                excerpt.append(text).append('\n');
+            }
+        } catch (IOException | UncheckedIOException e) {
+            logger.debug("Skipping unreadable file for AI analysis: {}", file);
+            return "";
+        }
+        return excerpt.toString();
     }
 
     /**
-     * Updates stack information based on AI analysis results.
+     * Merges the LLM's answer into the stack. The LLM fills in an unknown or
+     * weak framework, adds databases the rules know of, and supplies the
+     * application port when the framework has none. Each finding counts as one
+     * more piece of evidence, so it raises the confidence of a matching static
+     * detection and gives a new detection the weight of one mention in code.
      * 
-     * @param analysis The AI analysis response
+     * @param stack The stack, updated in place
+     * @param sections The parsed LLM response
      */
-    private void updateStackFromAIAnalysis(String analysis) {
-        try {
-            // Extract sections from the AI's response
-            Map<String, String> sections = parseAIResponse(analysis);
-            
-            // Update framework if it was unknown
-            String detectedFramework = sections.get("framework");
-            if (detectedFramework != null && !"unknown".equals(detectedFramework)) {
-                this.framework = detectedFramework.toLowerCase();
-            }
-            
-            // Update databases
-            String dbSection = sections.get("databases");
-            if (dbSection != null) {
-                Arrays.stream(dbSection.split(","))
-                    .map(String::trim)
-                    .map(String::toLowerCase)
-                    .filter(db -> !this.databases.contains(db))
-                    .forEach(this.databases::add);
-            }
-            
-            // Update runtime port if it was default
-            String portStr = sections.get("port");
-            if (portStr != null && this.runtimePort == 8080) {
-                try {
-                    int port = Integer.parseInt(portStr.trim());
-                    if (port > 0 && port < 65536) {
-                        this.runtimePort = port;
-                    }
-                } catch (NumberFormatException e) {
-                    logger.warn("Failed to parse port number from AI analysis: {}", portStr);
+    private void mergeAIAnalysis(Stack stack, Map<String, String> sections) {
+        Map<String, Double> confidences = new TreeMap<>(stack.getConfidences());
+        Map<String, List<String>> evidence = new TreeMap<>(stack.getEvidence());
+        BiConsumer<String, String> confirm = (category, name) -> {
+            String key = category + ":" + name;
+            confidences.put(key, 1 - (1 - confidences.getOrDefault(key, 0.0)) * (1 - AI_EVIDENCE_WEIGHT));
+            List<String> found = new ArrayList<>(evidence.getOrDefault(key, List.of()));
+            found.add(AI_EVIDENCE);
+            evidence.put(key, found);
+        };
+
+        String framework = firstWord(sections.get("framework"));
+        if (framework != null) {
+            String current = stack.getFramework();
+            if (framework.equals(current)) {
+                // Detections without a score are already trusted
+                if (confidences.containsKey("framework:" + framework)) {
+                    confirm.accept("framework", framework);
                 }
+            } else if ("unknown".equals(current) || stack.getConfidence("framework", current) < Stack.MIN_CONFIDENCE) {
+                confidences.remove("framework:" + current);
+                evidence.remove("framework:" + current);
+                stack.setFramework(framework);
+                confirm.accept("framework", framework);
+            } else {
+                logger.debug("Keeping statically detected framework {} over LLM answer {}", current, framework);
             }
-            
-            logger.info("Updated stack information from AI analysis: framework={}, databases={}, port={}",
-                this.framework, this.databases, this.runtimePort);
-        } catch (Exception e) {
-            logger.error("Failed to update stack from AI analysis", e);
         }
+
+        List<String> databases = new ArrayList<>(stack.getDatabases());
+        String databaseSection = sections.get("databases");
+        if (databaseSection != null) {
+            for (String entry : databaseSection.split("[,\n]")) {
+                String database = firstWord(entry);
+                if (database == null || !rules.getDatabasePorts().containsKey(database)
+                        && !rules.getDatabaseDependencies().containsKey(database)) {
+                    continue;
+                }
+                if (!databases.contains(database)) {
+                    databases.add(database);
+                    confirm.accept("database", database);
+                } else if (confidences.containsKey("database:" + database)) {
+                    confirm.accept("database", database);
+                }
+            }
+        }
+        stack.setDatabases(databases);
+
+        Map<String, Integer> ports = detectPorts(stack.getFramework(), databases);
+        String port = firstWord(sections.get("port"));
+        if (!ports.containsKey("app") && port != null) {
+            try {
+                int appPort = Integer.parseInt(port);
+                if (appPort > 0 && appPort < 65536) {
+                    ports.put("app", appPort);
+                }
+            } catch (NumberFormatException e) {
+                logger.warn("Failed to parse port number from AI analysis: {}", port);
+            }
+        }
+        stack.setPorts(ports);
+        stack.setConfidences(confidences);
+        stack.setEvidence(evidence);
+
+        logger.info("Updated stack information from AI analysis: framework={}, databases={}, port={}",
+            stack.getFramework(), stack.getDatabases(), stack.getAppPort());
+    }
+
+    /**
+     * @return The first word of an LLM answer, lower-cased, or null if it names nothing
+     */
+    private static String firstWord(String answer) {
+        if (answer == null) {
+            return null;
+        }
+        String word = answer.trim().split("[\\s,(]+", 2)[0].toLowerCase(Locale.ROOT).replaceAll("[^a-z0-9._-]", "");
+        return word.isEmpty() || word.equals("unknown") || word.equals("none") || word.equals("n/a") ? null : word;
     }
 
     /**
@@ -515,7 +1333,7 @@ public class StackDetector {
      * @param response The raw AI response
      * @return Map of detected technologies and their details
      */
-    private Map<String, String> parseAIResponse(String response) {
+    private static Map<String, String> parseAIResponse(String response) {
         Map<String, String> sections = new HashMap<>();
         String[] lines = response.split("\n");
         String currentSection = null;
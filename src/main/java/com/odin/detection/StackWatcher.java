@@ -0,0 +1,292 @@
+package com.odin.detection;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Watches a project and re-detects its stack incrementally as files change.
+ *
+ * Detection state is kept in an in-memory {@link DetectionCache}, so a
+ * re-detection walks only file metadata and re-reads and re-matches only the
+ * files whose size or modification time changed; the detectors then run over
+ * the cached rule hits of every other file without touching the disk.
+ *
+ * Events are filtered with the same ignore rules as the detection walk,
+ * including every .gitignore above the changed path, so churn in ignored
+ * build output or dependency directories never triggers a re-detection. When
+ * an ignore file changes, directories it newly un-ignores are registered and
+ * those it newly ignores stop being watched.
+ *
+ * Events are debounced: a re-detection starts once the tree has been quiet
+ * for the debounce interval, so event storms such as {@code git checkout} or
+ * {@code npm install} cost one re-detection instead of thousands. Listeners
+ * are only notified when the detected {@link Stack} actually changes.
+ */
+public class StackWatcher implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(StackWatcher.class);
+
+    /**
+     * Default quiet period before re-detecting after a change.
+     */
+    public static final Duration DEFAULT_DEBOUNCE = Duration.ofMillis(500);
+
+    // Upper bound on how long a continuous event storm can defer re-detection
+    private static final int MAX_DEBOUNCE_ROUNDS = 20;
+
+    private final StackDetector detector;
+    private final Path projectDir;
+    private final Duration debounce;
+    private final DetectionCache state;
+    private final ParallelFileWalker walker = new ParallelFileWalker();
+    private final WatchService watchService;
+    // Watched directories, by their key
+    private final Map<Path, WatchKey> watched = new ConcurrentHashMap<>();
+    // Ignore rules applying to the entries of each directory, as the walk scopes them
+    private final Map<Path, IgnoreRules> scopes = new ConcurrentHashMap<>();
+    private Stack current;
+
+    /**
+     * Creates a new StackWatcher.
+     *
+     * @param detector The detector whose rules and ignore settings are used
+     * @param projectDir The project root directory
+     * @param debounce Quiet period before re-detecting after a change
+     * @throws IOException if the watch service cannot be created
+     */
+    public StackWatcher(StackDetector detector, Path projectDir, Duration debounce) throws IOException {
+        if (!Files.isDirectory(projectDir)) {
+            throw new IllegalArgumentException("Invalid project directory: " + projectDir);
+        }
+        this.detector = detector;
+        this.projectDir = projectDir;
+        this.debounce = debounce;
+        this.state = detector.newInMemoryCache();
+        this.watchService = projectDir.getFileSystem().newWatchService();
+    }
+
+    /**
+     * Registers the project tree for change events and detects its stack.
+     *
+     * @return The detected stack
+     * @throws IOException if there are issues reading project files
+     */
+    public Stack start() throws IOException {
+        register(projectDir);
+        current = detector.detectStack(projectDir, state);
+        return current;
+    }
+
+    /**
+     * @return The most recently detected stack, or null before {@link #start()}
+     */
+    public Stack getCurrent() {
+        return current;
+    }
+
+    /**
+     * Blocks, re-detecting the stack after each burst of changes and passing
+     * it to the listener whenever it differs from the previous one. Returns
+     * when the watcher is closed.
+     *
+     * @param listener Callback receiving each changed stack
+     * @throws InterruptedException if the calling thread is interrupted
+     */
+    public void watch(Consumer<Stack> listener) throws InterruptedException {
+        try {
+            while (true) {
+                boolean relevant = drain(watchService.take());
+
+                // Debounce: keep collecting until the tree has been quiet for a full interval
+                WatchKey key;
+                int rounds = 0;
+                while (rounds++ < MAX_DEBOUNCE_ROUNDS
+                        && (key = watchService.poll(debounce.toMillis(), TimeUnit.MILLISECONDS)) != null) {
+                    relevant |= drain(key);
+                }
+                if (!relevant) {
+                    continue;
+                }
+
+                Stack stack = redetect();
+                if (stack != null && !stack.equals(current)) {
+                    current = stack;
+                    listener.accept(stack);
+                }
+            }
+        } catch (ClosedWatchServiceException e) {
+            logger.debug("Stopped watching {}", projectDir);
+        }
+    }
+
+    private Stack redetect() {
+        try {
+            Stack stack = detector.detectStack(projectDir, state);
+            logger.debug("Re-detected stack: {}", detector.getLastScanStats());
+            return stack;
+        } catch (IOException | IllegalArgumentException e) {
+            logger.warn("Failed to re-detect stack in {}: {}", projectDir, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Consumes the events of one key, registering newly created directories
+     * and re-scoping the watch when an ignore file changed.
+     *
+     * @return true if any event concerns a path that is not ignored
+     */
+    private boolean drain(WatchKey key) {
+        Path dir = (Path) key.watchable();
+        boolean relevant = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                relevant = true;
+                continue;
+            }
+            Path child = dir.resolve((Path) event.context());
+            if (isIgnoreFile(child)) {
+                rescope(dir);
+                relevant = true;
+                continue;
+            }
+            boolean directory = watched.containsKey(child) || Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS);
+            if (isIgnored(child, directory)) {
+                continue;
+            }
+            relevant = true;
+            if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && directory) {
+                try {
+                    register(child);
+                } catch (IOException e) {
+                    logger.warn("Failed to watch directory {}: {}", child, e.getMessage());
+                }
+            }
+        }
+        if (!key.reset()) {
+            watched.remove(dir);
+        }
+        return relevant;
+    }
+
+    private boolean isIgnoreFile(Path path) {
+        String name = path.getFileName().toString();
+        return name.equals(".gitignore") || (name.equals(".dockerignore") && projectDir.equals(path.getParent()));
+    }
+
+    /**
+     * Checks a path the way the detection walk would reach it: it is ignored
+     * if it or any directory above it is deny-listed or matched by the ignore
+     * files in scope there.
+     */
+    private boolean isIgnored(Path path, boolean directory) {
+        if (!path.startsWith(projectDir) || path.equals(projectDir)) {
+            return false;
+        }
+        Path current = projectDir;
+        for (Path segment : projectDir.relativize(path)) {
+            Path parent = current;
+            current = current.resolve(segment);
+            IgnoreRules rules = scope(parent);
+            boolean isDirectory = !current.equals(path) || directory;
+            if (rules.isDenied(segment.toString()) || rules.isIgnored(current, isDirectory)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return The rules applying to the entries of a directory: those of its
+     *         parent extended with its own .gitignore, and at the root the .dockerignore
+     */
+    private IgnoreRules scope(Path dir) {
+        IgnoreRules rules = scopes.get(dir);
+        if (rules != null) {
+            return rules;
+        }
+        rules = dir.equals(projectDir) || !dir.startsWith(projectDir)
+            ? detector.getIgnoreRules()
+            : scope(dir.getParent());
+        Path gitignore = dir.resolve(".gitignore");
+        if (Files.isRegularFile(gitignore)) {
+            rules = rules.withIgnoreFile(gitignore, false);
+        }
+        Path dockerignore = dir.resolve(".dockerignore");
+        if (dir.equals(projectDir) && Files.isRegularFile(dockerignore)) {
+            rules = rules.withIgnoreFile(dockerignore, true);
+        }
+        scopes.put(dir, rules);
+        return rules;
+    }
+
+    /**
+     * Applies a changed ignore file: stops watching the directories it now
+     * ignores and starts watching those it no longer ignores.
+     */
+    private void rescope(Path dir) {
+        scopes.keySet().removeIf(scoped -> scoped.startsWith(dir));
+        watched.entrySet().removeIf(entry -> {
+            if (entry.getKey().startsWith(dir) && isIgnored(entry.getKey(), true)) {
+                entry.getValue().cancel();
+                return true;
+            }
+            return false;
+        });
+        if (isIgnored(dir, true)) {
+            return;
+        }
+        try {
+            register(dir);
+        } catch (IOException e) {
+            logger.warn("Failed to watch directory {}: {}", dir, e.getMessage());
+        }
+    }
+
+    /**
+     * Registers every directory of a subtree that the detection walk would
+     * descend into, skipping those already watched.
+     */
+    private void register(Path root) throws IOException {
+        IgnoreRules rules = root.equals(projectDir) ? detector.getIgnoreRules() : scope(root.getParent());
+        walker.walk(root, rules, new ParallelFileWalker.Visitor() {
+            @Override
+            public void visit(Path file, BasicFileAttributes attrs) {
+            }
+
+            @Override
+            public void visitDirectory(Path dir) {
+                watched.computeIfAbsent(dir, unwatched -> {
+                    try {
+                        return dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                            StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+                    } catch (IOException e) {
+                        logger.warn("Failed to watch directory {}: {}", dir, e.getMessage());
+                        return null;
+                    }
+                });
+            }
+        });
+    }
+
+    @Override
+    public void close() throws IOException {
+        watchService.close();
+    }
+}
@@ -24,6 +24,10 @@ public class Explainer {
         this.llmClient = LLMClientFactory.createClient(provider);
     }
 
+    public Explainer(LLMClient llmClient) {
+        this.llmClient = llmClient;
+    }
+
     public Map<String, String> explainInfrastructure(Path directory) throws IOException {
         logger.info("Explaining infrastructure code in: {}", directory);
         Map<String, String> explanations = new HashMap<>();
@@ -3,26 +3,38 @@ package com.odin.generators;
 import com.odin.detection.Stack;
 import com.odin.llm.LLMClient;
 import com.odin.llm.LLMClientFactory;
+import com.odin.llm.ResponseCache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.CompletionException;
 
 /**
- * The type Concurrent generator.
+ * Generates every infrastructure file of a stack at once.
+ *
+ * The generators send their requests asynchronously, so all of them are in
+ * flight together without a thread each; the LLM transport's dispatcher
+ * queues whatever exceeds the endpoint's limit.
  */
 public class ConcurrentGenerator {
     private static final Logger logger = LoggerFactory.getLogger(ConcurrentGenerator.class);
-    private final ExecutorService executorService;
     private final List<LLMClient> llmClients;
 
+    /**
+     * Starts one generation, which may fail before it is under way.
+     */
+    @FunctionalInterface
+    private interface Generation {
+        CompletableFuture<Void> start() throws IOException;
+    }
+
     /**
      * Instantiates a new Concurrent generator.
      *
@@ -30,12 +42,22 @@ public class ConcurrentGenerator {
      * @param numInstances the num instances
      */
     public ConcurrentGenerator(String provider, int numInstances) {
-        this.executorService = Executors.newFixedThreadPool(numInstances);
+        this(provider, numInstances, ResponseCache.Mode.configured());
+    }
+
+    /**
+     * Instantiates a new Concurrent generator whose clients use the response cache as told.
+     *
+     * @param provider     the provider
+     * @param numInstances the num instances
+     * @param cacheMode    how the LLM response cache is used
+     */
+    public ConcurrentGenerator(String provider, int numInstances, ResponseCache.Mode cacheMode) {
         this.llmClients = new ArrayList<>();
         
         // Create multiple LLM clients
         for (int i = 0; i < numInstances; i++) {
-            llmClients.add(LLMClientFactory.createClient(provider));
+            llmClients.add(LLMClientFactory.createClient(provider, cacheMode));
         }
     }
 
@@ -47,63 +69,62 @@ public class ConcurrentGenerator {
      * @throws IOException the io exception
      */
     public void generateAll(Stack stack, Path outputPath) throws IOException {
+        generateAllAsync(stack, outputPath).join();
+        logger.info("All infrastructure files generated successfully in: {}", outputPath);
+    }
+
+    /**
+     * Generate all without blocking. A generator that fails to write its
+     * files is logged and does not fail the others.
+     *
+     * @param stack      the stack
+     * @param outputPath the output path
+     * @return completes once every generator is done
+     * @throws IOException if the output directories cannot be created
+     */
+    public CompletableFuture<Void> generateAllAsync(Stack stack, Path outputPath) throws IOException {
         // Create all necessary directories upfront
         logger.info("Creating output directories");
         Files.createDirectories(outputPath);
         Files.createDirectories(outputPath.resolve(".github/workflows"));
         Files.createDirectories(outputPath.resolve("terraform"));
-        
-        List<CompletableFuture<Void>> futures = new ArrayList<>();
 
-        // Generate Dockerfile using first client
-        futures.add(CompletableFuture.runAsync(() -> {
-            try {
-                DockerfileGenerator dockerfileGenerator = new DockerfileGenerator(llmClients.get(0));
-                dockerfileGenerator.generateDockerfile(stack, outputPath);
-            } catch (IOException e) {
-                logger.error("Error generating Dockerfile", e);
-            }
-        }, executorService));
-
-        // Generate Docker Compose using second client
-        futures.add(CompletableFuture.runAsync(() -> {
-            try {
-                DockerComposeGenerator composeGenerator = new DockerComposeGenerator(llmClients.get(1));
-                composeGenerator.generateDockerCompose(stack, outputPath);
-            } catch (IOException e) {
-                logger.error("Error generating Docker Compose", e);
-            }
-        }, executorService));
-
-        // Generate GitHub Actions using third client
-        futures.add(CompletableFuture.runAsync(() -> {
-            try {
-                GitHubActionsGenerator actionsGenerator = new GitHubActionsGenerator(llmClients.get(2));
-                actionsGenerator.generateWorkflows(stack, outputPath.resolve(".github/workflows"));
-            } catch (IOException e) {
-                logger.error("Error generating GitHub Actions", e);
-            }
-        }, executorService));
-
-        // Generate Terraform using fourth client
-        futures.add(CompletableFuture.runAsync(() -> {
-            try {
-                TerraformGenerator terraformGenerator = new TerraformGenerator(llmClients.get(3), stack.getCloudProviders().get(0));
-                terraformGenerator.generateTerraform(stack, outputPath.resolve("terraform"));
-            } catch (IOException e) {
-                logger.error("Error generating Terraform", e);
-            }
-        }, executorService));
+        return CompletableFuture.allOf(
+            // Generate Dockerfile using first client
+            run("Dockerfile", () -> new DockerfileGenerator(llmClients.get(0))
+                .generateDockerfileAsync(stack, outputPath)),
+            // Generate Docker Compose using second client
+            run("Docker Compose", () -> new DockerComposeGenerator(llmClients.get(1))
+                .generateDockerComposeAsync(stack, outputPath)),
+            // Generate GitHub Actions using third client
+            run("GitHub Actions", () -> new GitHubActionsGenerator(llmClients.get(2))
+                .generateWorkflowsAsync(stack, outputPath.resolve(".github/workflows"))),
+            // Generate Terraform using fourth client
+            run("Terraform", () -> new TerraformGenerator(llmClients.get(3), stack.getCloudProviders().get(0))
+                .generateTerraformAsync(stack, outputPath.resolve("terraform")))
+        );
+    }
 
-        // Wait for all generations to complete
-        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
-        logger.info("All infrastructure files generated successfully in: {}", outputPath);
+    private static CompletableFuture<Void> run(String name, Generation generation) {
+        try {
+            return generation.start().exceptionally(e -> {
+                Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                if (cause instanceof UncheckedIOException io) {
+                    logger.error("Error generating {}", name, io.getCause());
+                    return null;
+                }
+                throw e instanceof CompletionException completion ? completion : new CompletionException(cause);
+            });
+        } catch (IOException e) {
+            logger.error("Error generating {}", name, e);
+            return CompletableFuture.completedFuture(null);
+        }
     }
 
     /**
-     * Shutdown.
+     * Shutdown. Requests run on the shared LLM transport, whose threads are
+     * daemons, so there is nothing left to release.
      */
     public void shutdown() {
-        executorService.shutdown();
     }
-} 
\ No newline at end of file
+}
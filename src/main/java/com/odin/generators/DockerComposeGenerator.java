@@ -7,9 +7,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Generates Docker Compose configurations for multi-container applications.
@@ -53,6 +53,17 @@ public class DockerComposeGenerator {
      * @throws IOException if there are file system access issues
      */
     public void generateDockerCompose(Stack stack, Path outputPath) throws IOException {
+        GeneratedFiles.await(generateDockerComposeAsync(stack, outputPath));
+    }
+
+    /**
+     * Generates a docker-compose.yml file for the specified stack without blocking.
+     * 
+     * @param stack The detected technology stack
+     * @param outputPath Where to save the generated docker-compose.yml
+     * @return Completes once the file is written
+     */
+    public CompletableFuture<Void> generateDockerComposeAsync(Stack stack, Path outputPath) {
         logger.info("Generating docker-compose.yml for stack: {}", stack);
         
         // Build the prompt for the LLM
@@ -62,13 +73,13 @@ public class DockerComposeGenerator {
               .append(" framework running on port ").append(stack.getAppPort());
 
         // Add database configuration if present
-        if (!stack.getDatabases().isEmpty()) {
+        if (!stack.getConfidentDatabases().isEmpty()) {
             prompt.append(" with the following databases: ");
-            prompt.append(String.join(", ", stack.getDatabases()));
+            prompt.append(String.join(", ", stack.getConfidentDatabases()));
             
             // Add port information for each database
             prompt.append("\nDatabase ports: ");
-            for (String db : stack.getDatabases()) {
+            for (String db : stack.getConfidentDatabases()) {
                 prompt.append(db).append("=").append(stack.getDatabasePort(db)).append(", ");
             }
         }
@@ -80,10 +91,11 @@ public class DockerComposeGenerator {
         prompt.append("IMPORTANT: Do not include any Dockerfile content in the output. The Dockerfile should be a separate file.\n");
         prompt.append("The output should only contain the docker-compose.yml configuration.\n");
 
-        String composeContent = client.generateInfrastructureCode(prompt.toString(), "docker-compose");
         Path composePath = outputPath.resolve("docker-compose.yml");
-        Files.writeString(composePath, composeContent);
-        logger.info("Generated docker-compose.yml at: {}", composePath);
+        return client.generateInfrastructureCodeAsync(prompt.toString(), "docker-compose").thenAccept(composeContent -> {
+            GeneratedFiles.write(composePath, composeContent);
+            logger.info("Generated docker-compose.yml at: {}", composePath);
+        });
     }
 
     /**
@@ -108,9 +120,9 @@ public class DockerComposeGenerator {
             """);
 
         // Add database services
-        if (!stack.getDatabases().isEmpty()) {
+        if (!stack.getConfidentDatabases().isEmpty()) {
             template.append("\n  # Database Services\n");
-            for (String db : stack.getDatabases()) {
+            for (String db : stack.getConfidentDatabases()) {
                 template.append(generateDatabaseService(db));
             }
         }
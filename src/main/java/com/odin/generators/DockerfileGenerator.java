@@ -7,8 +7,10 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Generates Dockerfile configurations for different application stacks.
@@ -23,6 +25,8 @@ import java.nio.file.Path;
  */
 public class DockerfileGenerator {
     private static final Logger logger = LoggerFactory.getLogger(DockerfileGenerator.class);
+    // Below this share of source bytes, the primary language is not trusted to pick the port and base image
+    private static final double MIN_LANGUAGE_CONFIDENCE = 0.6;
     private final LLMClient client;
 
     /**
@@ -51,10 +55,21 @@ public class DockerfileGenerator {
      * @throws IOException if there are file system access issues
      */
     public void generateDockerfile(Stack stack, Path outputPath) throws IOException {
+        GeneratedFiles.await(generateDockerfileAsync(stack, outputPath));
+    }
+
+    /**
+     * Generates a Dockerfile for the specified stack without blocking.
+     * 
+     * @param stack The detected technology stack
+     * @param outputPath Where to save the generated Dockerfile
+     * @return Completes once the Dockerfile and .dockerignore are written
+     */
+    public CompletableFuture<Void> generateDockerfileAsync(Stack stack, Path outputPath) {
         logger.info("Generating Dockerfile for {} {} application", stack.getLanguage(), stack.getFramework());
         
         // Determine the correct port based on the language
-        int port = determinePort(stack.getLanguage());
+        int port = determinePort(stack);
         
         // Build the prompt for the LLM
         StringBuilder prompt = new StringBuilder();
@@ -66,16 +81,16 @@ public class DockerfileGenerator {
               .append(port);
 
         // Add database information if present
-        if (!stack.getDatabases().isEmpty()) {
+        if (!stack.getConfidentDatabases().isEmpty()) {
             prompt.append(" with the following databases: ");
-            prompt.append(String.join(", ", stack.getDatabases()));
+            prompt.append(String.join(", ", stack.getConfidentDatabases()));
         }
 
         // Add requirements for the Dockerfile
         prompt.append("\n\nRequirements:\n");
         prompt.append("1. Use a multi-stage build for smaller final image\n");
         prompt.append("2. Include all necessary dependencies and build steps\n");
-        prompt.append(getLanguageSpecificRequirements(stack.getLanguage()));
+        prompt.append(getLanguageSpecificRequirements(stack));
         prompt.append("4. Set up proper working directory and environment variables\n");
         prompt.append("5. Include healthcheck and proper CMD/ENTRYPOINT\n");
         prompt.append("6. Follow security best practices:\n");
@@ -89,14 +104,14 @@ public class DockerfileGenerator {
         prompt.append("   - Use .dockerignore for unnecessary files\n");
         prompt.append("8. Copy only necessary files from builder stage\n");
         prompt.append("9. Set appropriate environment variables:\n");
-        if (stack.getDatabases().contains("postgresql")) {
+        if (stack.getConfidentDatabases().contains("postgresql")) {
             prompt.append("   - POSTGRES_HOST=postgres\n");
             prompt.append("   - POSTGRES_PORT=5432\n");
             prompt.append("   - POSTGRES_DB=app\n");
             prompt.append("   - POSTGRES_USER=postgres\n");
             prompt.append("   - POSTGRES_PASSWORD=postgres\n");
         }
-        if (stack.getDatabases().contains("redis")) {
+        if (stack.getConfidentDatabases().contains("redis")) {
             prompt.append("   - REDIS_HOST=redis\n");
             prompt.append("   - REDIS_PORT=6379\n");
         }
@@ -106,7 +121,16 @@ public class DockerfileGenerator {
         prompt.append("IMPORTANT: Return ONLY the raw code without any explanations, comments, markdown formatting, or code block markers.\n");
         prompt.append("The code should be immediately executable without any modifications.");
 
-        String dockerfileContent = client.generateInfrastructureCode(prompt.toString(), "dockerfile");
+        return client.generateInfrastructureCodeAsync(prompt.toString(), "dockerfile").thenAccept(dockerfileContent -> {
+            try {
+                writeDockerfile(stack, outputPath, dockerfileContent);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    private void writeDockerfile(Stack stack, Path outputPath, String dockerfileContent) throws IOException {
         logger.info("Generated Dockerfile content length: {}", dockerfileContent.length());
         logger.info("Generated Dockerfile content: \n{}", dockerfileContent);
         
@@ -132,13 +156,19 @@ public class DockerfileGenerator {
     }
     
     /**
-     * Determines the default port for a given programming language.
+     * Determines the default port for the stack's primary language. A
+     * language detected with low confidence falls back to the generic default.
      * 
-     * @param language The programming language
+     * @param stack The detected technology stack
      * @return The default port number for the language
      */
-    private int determinePort(String language) {
-        switch (language.toLowerCase()) {
+    private int determinePort(Stack stack) {
+        if (stack.getLanguageConfidence() < MIN_LANGUAGE_CONFIDENCE) {
+            logger.info("Primary language {} covers only {}% of the sources, using the default port",
+                stack.getLanguage(), Math.round(stack.getLanguageConfidence() * 100));
+            return 3000;
+        }
+        switch (stack.getLanguage().toLowerCase()) {
             case "python":
                 return 5000;
             case "node":
@@ -154,13 +184,29 @@ public class DockerfileGenerator {
     }
     
     /**
-     * Gets language-specific requirements for the Dockerfile.
+     * Gets language-specific requirements for the Dockerfile. A project with
+     * no clearly dominant language gets a base image requirement naming the mix.
      * 
-     * @param language The programming language
+     * @param stack The detected technology stack
      * @return String containing language-specific requirements
      */
-    private String getLanguageSpecificRequirements(String language) {
-        switch (language.toLowerCase()) {
+    private String getLanguageSpecificRequirements(Stack stack) {
+        if (stack.getLanguageConfidence() < MIN_LANGUAGE_CONFIDENCE) {
+            long total = stack.getLanguageBreakdown().values().stream().mapToLong(Long::longValue).sum();
+            StringBuilder mix = new StringBuilder();
+            stack.getLanguageBreakdown().forEach((language, bytes) -> {
+                if (mix.length() > 0) {
+                    mix.append(", ");
+                }
+                mix.append(language);
+                if (total > 0) {
+                    mix.append(' ').append(Math.round(bytes * 100.0 / total)).append('%');
+                }
+            });
+            return "3. Use a slim base image able to build and run every language of the project ("
+                + mix + ")\n";
+        }
+        switch (stack.getLanguage().toLowerCase()) {
             case "python":
                 return "3. Use Python 3.9-slim as the base image (not Alpine)\n";
             case "node":
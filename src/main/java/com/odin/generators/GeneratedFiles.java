@@ -0,0 +1,54 @@
+package com.odin.generators;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Helpers for generators that write files once their LLM responses arrive.
+ */
+final class GeneratedFiles {
+
+    private GeneratedFiles() {
+    }
+
+    /**
+     * Writes a generated file from within a completion stage, which cannot
+     * throw checked exceptions.
+     *
+     * @param path The file
+     * @param content The generated content
+     * @throws UncheckedIOException if the file cannot be written
+     */
+    static void write(Path path, String content) {
+        try {
+            Files.writeString(path, content);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Waits for an asynchronous generation, rethrowing the failure a
+     * blocking generator would have thrown.
+     *
+     * @param generation The generation
+     * @throws IOException if a file could not be written
+     */
+    static void await(CompletableFuture<?> generation) throws IOException {
+        try {
+            generation.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof UncheckedIOException io) {
+                throw io.getCause();
+            }
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw e;
+        }
+    }
+}
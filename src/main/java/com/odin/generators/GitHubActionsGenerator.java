@@ -11,6 +11,7 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 public class GitHubActionsGenerator {
     private static final Logger logger = LoggerFactory.getLogger(GitHubActionsGenerator.class);
@@ -61,32 +62,34 @@ public class GitHubActionsGenerator {
     }
 
     public void generateWorkflows(Stack stack, Path outputDir) throws IOException {
+        GeneratedFiles.await(generateWorkflowsAsync(stack, outputDir));
+    }
+
+    /**
+     * Generates the workflows without blocking. All four are requested at
+     * once and each is written as its response arrives.
+     *
+     * @param stack     the stack
+     * @param outputDir the output dir
+     * @return completes once every workflow is written
+     * @throws IOException if the output dir cannot be created
+     */
+    public CompletableFuture<Void> generateWorkflowsAsync(Stack stack, Path outputDir) throws IOException {
         logger.info("Generating GitHub Actions workflows for {} {} application on {}", 
                    stack.getLanguage(), stack.getFramework(), cloudProvider);
         
         // Create output directory if it doesn't exist
         Files.createDirectories(outputDir);
         
-        // Generate CI workflow
-        Path ciWorkflowPath = outputDir.resolve("ci.yml");
-        generateCIWorkflow(stack, ciWorkflowPath);
-        
-        // Generate CD workflow
-        Path cdWorkflowPath = outputDir.resolve("cd.yml");
-        generateCDWorkflow(stack, cdWorkflowPath);
-        
-        // Generate test workflow
-        Path testWorkflowPath = outputDir.resolve("test.yml");
-        generateTestWorkflow(stack, testWorkflowPath);
-        
-        // Generate security workflow
-        Path securityWorkflowPath = outputDir.resolve("security.yml");
-        generateSecurityWorkflow(stack, securityWorkflowPath);
-        
-        logger.info("Generated GitHub Actions workflows in: {}", outputDir);
+        return CompletableFuture.allOf(
+            generateCIWorkflow(stack, outputDir.resolve("ci.yml")),
+            generateCDWorkflow(stack, outputDir.resolve("cd.yml")),
+            generateTestWorkflow(stack, outputDir.resolve("test.yml")),
+            generateSecurityWorkflow(stack, outputDir.resolve("security.yml"))
+        ).thenRun(() -> logger.info("Generated GitHub Actions workflows in: {}", outputDir));
     }
     
-    private void generateCIWorkflow(Stack stack, Path outputPath) throws IOException {
+    private CompletableFuture<Void> generateCIWorkflow(Stack stack, Path outputPath) {
         StringBuilder prompt = new StringBuilder();
         prompt.append("Generate a GitHub Actions CI workflow for a ").append(stack.getLanguage())
               .append(" application using ").append(stack.getFramework())
@@ -101,12 +104,13 @@ public class GitHubActionsGenerator {
 
         // Use a longer timeout for workflow generation
         Map<String, Object> params = Map.of("timeout", 240); // 4 minutes timeout
-        String ciWorkflowContent = llmClient.generateInfrastructureCode(prompt.toString(), "github-actions");
-        Files.writeString(outputPath, ciWorkflowContent);
-        logger.info("Generated CI workflow at: {}", outputPath);
+        return llmClient.generateInfrastructureCodeAsync(prompt.toString(), "github-actions").thenAccept(ciWorkflowContent -> {
+            GeneratedFiles.write(outputPath, ciWorkflowContent);
+            logger.info("Generated CI workflow at: {}", outputPath);
+        });
     }
     
-    private void generateCDWorkflow(Stack stack, Path outputPath) throws IOException {
+    private CompletableFuture<Void> generateCDWorkflow(Stack stack, Path outputPath) {
         StringBuilder prompt = new StringBuilder();
         prompt.append("Generate a GitHub Actions CD workflow for a ").append(stack.getLanguage())
               .append(" application using ").append(stack.getFramework())
@@ -129,12 +133,13 @@ public class GitHubActionsGenerator {
 
         // Use a longer timeout for workflow generation
         Map<String, Object> params = Map.of("timeout", 240); // 4 minutes timeout
-        String cdWorkflowContent = llmClient.generateInfrastructureCode(prompt.toString(), "github-actions");
-        Files.writeString(outputPath, cdWorkflowContent);
-        logger.info("Generated CD workflow at: {}", outputPath);
+        return llmClient.generateInfrastructureCodeAsync(prompt.toString(), "github-actions").thenAccept(cdWorkflowContent -> {
+            GeneratedFiles.write(outputPath, cdWorkflowContent);
+            logger.info("Generated CD workflow at: {}", outputPath);
+        });
     }
     
-    private void generateTestWorkflow(Stack stack, Path outputPath) throws IOException {
+    private CompletableFuture<Void> generateTestWorkflow(Stack stack, Path outputPath) {
         StringBuilder prompt = new StringBuilder();
         prompt.append("Generate a GitHub Actions test workflow for a ").append(stack.getLanguage())
               .append(" application using ").append(stack.getFramework())
@@ -149,12 +154,13 @@ public class GitHubActionsGenerator {
 
         // Use a longer timeout for workflow generation
         Map<String, Object> params = Map.of("timeout", 180); // 3 minutes timeout
-        String testWorkflowContent = llmClient.generateInfrastructureCode(prompt.toString(), "github-actions");
-        Files.writeString(outputPath, testWorkflowContent);
-        logger.info("Generated test workflow at: {}", outputPath);
+        return llmClient.generateInfrastructureCodeAsync(prompt.toString(), "github-actions").thenAccept(testWorkflowContent -> {
+            GeneratedFiles.write(outputPath, testWorkflowContent);
+            logger.info("Generated test workflow at: {}", outputPath);
+        });
     }
     
-    private void generateSecurityWorkflow(Stack stack, Path outputPath) throws IOException {
+    private CompletableFuture<Void> generateSecurityWorkflow(Stack stack, Path outputPath) {
         StringBuilder prompt = new StringBuilder();
         prompt.append("Generate a GitHub Actions security workflow for a ").append(stack.getLanguage())
               .append(" application using ").append(stack.getFramework())
@@ -175,8 +181,9 @@ public class GitHubActionsGenerator {
 
         // Use a longer timeout for workflow generation
         Map<String, Object> params = Map.of("timeout", 180); // 3 minutes timeout
-        String securityWorkflowContent = llmClient.generateInfrastructureCode(prompt.toString(), "github-actions");
-        Files.writeString(outputPath, securityWorkflowContent);
-        logger.info("Generated security workflow at: {}", outputPath);
+        return llmClient.generateInfrastructureCodeAsync(prompt.toString(), "github-actions").thenAccept(securityWorkflowContent -> {
+            GeneratedFiles.write(outputPath, securityWorkflowContent);
+            logger.info("Generated security workflow at: {}", outputPath);
+        });
     }
 } 
\ No newline at end of file
@@ -10,6 +10,7 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * The type Terraform generator.
@@ -58,44 +59,46 @@ public class TerraformGenerator {
      * @throws IOException the io exception
      */
     public void generateTerraform(Stack stack, Path outputDir) throws IOException {
+        GeneratedFiles.await(generateTerraformAsync(stack, outputDir));
+    }
+
+    /**
+     * Generate terraform without blocking. All four files are requested at
+     * once and each is written as its response arrives.
+     *
+     * @param stack     the stack
+     * @param outputDir the output dir
+     * @return completes once every file is written
+     * @throws IOException if the output dir cannot be created
+     */
+    public CompletableFuture<Void> generateTerraformAsync(Stack stack, Path outputDir) throws IOException {
         logger.info("Generating Terraform configuration for {} {} application on {}", 
                    stack.getLanguage(), stack.getFramework(), cloudProvider);
         
         // Create output directory if it doesn't exist
         Files.createDirectories(outputDir);
         
-        // Generate main.tf
-        Path mainTfPath = outputDir.resolve("main.tf");
-        generateMainTf(stack, mainTfPath);
-        
-        // Generate variables.tf
-        Path variablesTfPath = outputDir.resolve("variables.tf");
-        generateVariablesTf(stack, variablesTfPath);
-        
-        // Generate outputs.tf
-        Path outputsTfPath = outputDir.resolve("outputs.tf");
-        generateOutputsTf(stack, outputsTfPath);
-        
-        // Generate provider.tf
-        Path providerTfPath = outputDir.resolve("provider.tf");
-        generateProviderTf(stack, providerTfPath);
-        
-        logger.info("Generated Terraform configuration in: {}", outputDir);
+        return CompletableFuture.allOf(
+            generateMainTf(stack, outputDir.resolve("main.tf")),
+            generateVariablesTf(stack, outputDir.resolve("variables.tf")),
+            generateOutputsTf(stack, outputDir.resolve("outputs.tf")),
+            generateProviderTf(stack, outputDir.resolve("provider.tf"))
+        ).thenRun(() -> logger.info("Generated Terraform configuration in: {}", outputDir));
     }
     
-    private void generateMainTf(Stack stack, Path outputPath) throws IOException {
+    private CompletableFuture<Void> generateMainTf(Stack stack, Path outputPath) {
         StringBuilder prompt = new StringBuilder();
         prompt.append("Generate a Terraform main.tf file for a ").append(stack.getLanguage())
               .append(" application using ").append(stack.getFramework())
               .append(" framework running on port ").append(stack.getAppPort());
 
-        if (!stack.getDatabases().isEmpty()) {
+        if (!stack.getConfidentDatabases().isEmpty()) {
             prompt.append(" with the following databases: ");
-            prompt.append(String.join(", ", stack.getDatabases()));
+            prompt.append(String.join(", ", stack.getConfidentDatabases()));
             
             // Add port information for each database
             prompt.append("\nDatabase ports: ");
-            for (String db : stack.getDatabases()) {
+            for (String db : stack.getConfidentDatabases()) {
                 prompt.append(db).append("=").append(stack.getDatabasePort(db)).append(", ");
             }
         }
@@ -113,12 +116,13 @@ public class TerraformGenerator {
 
         // Use a longer timeout for Terraform generation
         Map<String, Object> params = Map.of("timeout", 300); // 5 minutes timeout
-        String mainTfContent = llmClient.generateInfrastructureCode(prompt.toString(), "terraform");
-        Files.writeString(outputPath, mainTfContent);
-        logger.info("Generated main.tf at: {}", outputPath);
+        return llmClient.generateInfrastructureCodeAsync(prompt.toString(), "terraform").thenAccept(mainTfContent -> {
+            GeneratedFiles.write(outputPath, mainTfContent);
+            logger.info("Generated main.tf at: {}", outputPath);
+        });
     }
     
-    private void generateVariablesTf(Stack stack, Path outputPath) throws IOException {
+    private CompletableFuture<Void> generateVariablesTf(Stack stack, Path outputPath) {
         StringBuilder prompt = new StringBuilder();
         prompt.append("Generate a Terraform variables.tf file for a ").append(stack.getLanguage())
               .append(" application using ").append(stack.getFramework())
@@ -135,18 +139,19 @@ public class TerraformGenerator {
         prompt.append("- Application name\n");
         prompt.append("- Container port (default: ").append(stack.getAppPort()).append(")\n");
         
-        if (!stack.getDatabases().isEmpty()) {
+        if (!stack.getConfidentDatabases().isEmpty()) {
             prompt.append("- Database configurations\n");
         }
         
         prompt.append("Format the output as valid HCL without additional explanations.\n");
 
-        String variablesTfContent = llmClient.generateInfrastructureCode(prompt.toString(), "terraform");
-        Files.writeString(outputPath, variablesTfContent);
-        logger.info("Generated variables.tf at: {}", outputPath);
+        return llmClient.generateInfrastructureCodeAsync(prompt.toString(), "terraform").thenAccept(variablesTfContent -> {
+            GeneratedFiles.write(outputPath, variablesTfContent);
+            logger.info("Generated variables.tf at: {}", outputPath);
+        });
     }
     
-    private void generateOutputsTf(Stack stack, Path outputPath) throws IOException {
+    private CompletableFuture<Void> generateOutputsTf(Stack stack, Path outputPath) {
         StringBuilder prompt = new StringBuilder();
         prompt.append("Generate a Terraform outputs.tf file for a ").append(stack.getLanguage())
               .append(" application using ").append(stack.getFramework())
@@ -163,12 +168,13 @@ public class TerraformGenerator {
         }
         prompt.append("Format the output as valid HCL without additional explanations.\n");
 
-        String outputsTfContent = llmClient.generateInfrastructureCode(prompt.toString(), "terraform");
-        Files.writeString(outputPath, outputsTfContent);
-        logger.info("Generated outputs.tf at: {}", outputPath);
+        return llmClient.generateInfrastructureCodeAsync(prompt.toString(), "terraform").thenAccept(outputsTfContent -> {
+            GeneratedFiles.write(outputPath, outputsTfContent);
+            logger.info("Generated outputs.tf at: {}", outputPath);
+        });
     }
     
-    private void generateProviderTf(Stack stack, Path outputPath) throws IOException {
+    private CompletableFuture<Void> generateProviderTf(Stack stack, Path outputPath) {
         StringBuilder prompt = new StringBuilder();
         if ("aws".equals(cloudProvider)) {
             prompt.append("Generate a Terraform provider.tf file for AWS.\n");
@@ -179,8 +185,9 @@ public class TerraformGenerator {
         }
         prompt.append("Format the output as valid HCL without additional explanations.\n");
 
-        String providerTfContent = llmClient.generateInfrastructureCode(prompt.toString(), "terraform");
-        Files.writeString(outputPath, providerTfContent);
-        logger.info("Generated provider.tf at: {}", outputPath);
+        return llmClient.generateInfrastructureCodeAsync(prompt.toString(), "terraform").thenAccept(providerTfContent -> {
+            GeneratedFiles.write(outputPath, providerTfContent);
+            logger.info("Generated provider.tf at: {}", outputPath);
+        });
     }
 } 
\ No newline at end of file
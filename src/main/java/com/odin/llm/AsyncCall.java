@@ -0,0 +1,137 @@
+package com.odin.llm;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * One LLM request run on its transport's dispatcher rather than on a caller's
+ * thread, with the same retries as the blocking calls.
+ *
+ * No thread waits while the model generates: the dispatcher sends the request
+ * and parses the response when it arrives, and a retry is scheduled instead
+ * of slept. Cancelling the returned future cancels the HTTP call in flight,
+ * or the retry not yet sent.
+ */
+final class AsyncCall<T> implements Callback {
+    private static final Logger logger = LoggerFactory.getLogger(AsyncCall.class);
+
+    /**
+     * Reads the result out of a successful response.
+     */
+    @FunctionalInterface
+    interface Parser<T> {
+        T parse(Response response) throws IOException;
+    }
+
+    private final OkHttpClient client;
+    private final Request request;
+    private final int maxAttempts;
+    private final Parser<T> parser;
+    private final CompletableFuture<T> result = new CompletableFuture<>();
+    private volatile Call current;
+    private int attempt;
+
+    private AsyncCall(OkHttpClient client, Request request, int maxAttempts, Parser<T> parser) {
+        this.client = client;
+        this.request = request;
+        this.maxAttempts = maxAttempts;
+        this.parser = parser;
+        result.whenComplete((value, error) -> {
+            Call call = current;
+            if (result.isCancelled() && call != null) {
+                call.cancel();
+            }
+        });
+    }
+
+    /**
+     * Sends a request without blocking.
+     *
+     * @param client The endpoint's client, whose dispatcher runs the request
+     * @param request The request, sent again as is on retry
+     * @param maxAttempts Attempts at most before the future fails
+     * @param parser Reads the result out of a successful response, on a dispatcher thread
+     * @return The result, failed with a RuntimeException once every attempt failed
+     */
+    static <T> CompletableFuture<T> enqueue(OkHttpClient client, Request request, int maxAttempts, Parser<T> parser) {
+        AsyncCall<T> call = new AsyncCall<>(client, request, maxAttempts, parser);
+        call.send();
+        return call.result;
+    }
+
+    /**
+     * Transforms a result such that cancelling the transformed future also
+     * cancels the original, which a plain thenApply does not.
+     *
+     * @param source The original result
+     * @param mapping The transformation
+     * @return The transformed result
+     */
+    static <T, R> CompletableFuture<R> map(CompletableFuture<T> source, Function<T, R> mapping) {
+        CompletableFuture<R> mapped = source.thenApply(mapping);
+        mapped.whenComplete((value, error) -> {
+            if (mapped.isCancelled()) {
+                source.cancel(true);
+            }
+        });
+        return mapped;
+    }
+
+    private void send() {
+        attempt++;
+        Call call = client.newCall(request);
+        current = call;
+        // A cancel that raced with the retry has not seen this call yet
+        if (result.isDone()) {
+            call.cancel();
+            return;
+        }
+        call.enqueue(this);
+    }
+
+    @Override
+    public void onFailure(Call call, IOException e) {
+        retry(e);
+    }
+
+    @Override
+    public void onResponse(Call call, Response response) {
+        try (response) {
+            if (!response.isSuccessful()) {
+                throw new IOException("Unexpected response code: " + response);
+            }
+            result.complete(parser.parse(response));
+        } catch (IOException e) {
+            retry(e);
+        } catch (RuntimeException e) {
+            result.completeExceptionally(e);
+        }
+    }
+
+    private void retry(IOException e) {
+        if (result.isDone()) {
+            return;
+        }
+        if (attempt >= maxAttempts) {
+            logger.error("Failed to generate text after {} retries: {}", maxAttempts, e.getMessage());
+            result.completeExceptionally(new RuntimeException("Failed to generate text", e));
+            return;
+        }
+        logger.warn("Attempt {} failed, retrying in {} seconds...", attempt, attempt);
+        CompletableFuture.delayedExecutor(attempt, TimeUnit.SECONDS).execute(() -> {
+            if (!result.isDone()) {
+                send();
+            }
+        });
+    }
+}
@@ -0,0 +1,120 @@
+package com.odin.llm;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * Serves repeated requests to another client from a {@link ResponseCache}.
+ *
+ * Infrastructure code is cached by type as well as prompt, since each
+ * provider wraps the prompt in its own template. Only non-empty responses
+ * are cached, so a failed or empty generation is retried on the next run.
+ */
+final class CachingLLMClient implements LLMClient {
+    private static final Logger logger = LoggerFactory.getLogger(CachingLLMClient.class);
+
+    private final LLMClient delegate;
+    private final String provider;
+    private final ResponseCache cache;
+    private final boolean refresh;
+
+    /**
+     * @param delegate The client asked on a miss
+     * @param provider The provider name, part of every key
+     * @param cache The cache
+     * @param refresh Whether to ignore cached responses, replacing them with fresh ones
+     */
+    CachingLLMClient(LLMClient delegate, String provider, ResponseCache cache, boolean refresh) {
+        this.delegate = delegate;
+        this.provider = provider;
+        this.cache = cache;
+        this.refresh = refresh;
+    }
+
+    @Override
+    public String generateText(String prompt) throws IOException {
+        return generateText(prompt, Map.of());
+    }
+
+    @Override
+    public String generateText(String prompt, Map<String, Object> parameters) {
+        String key = key(ResponseCache.TEXT, prompt, parameters);
+        String cached = lookup(key);
+        return cached != null ? cached : store(key, delegate.generateText(prompt, parameters));
+    }
+
+    @Override
+    public CompletableFuture<String> generateTextAsync(String prompt, Map<String, Object> parameters) {
+        String key = key(ResponseCache.TEXT, prompt, parameters);
+        String cached = lookup(key);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        return AsyncCall.map(delegate.generateTextAsync(prompt, parameters), response -> store(key, response));
+    }
+
+    @Override
+    public String streamText(String prompt, Map<String, Object> parameters, Consumer<String> onToken,
+                             Consumer<GenerationStats> onStats) {
+        String key = key(ResponseCache.TEXT, prompt, parameters);
+        String cached = lookup(key);
+        if (cached != null) {
+            if (!cached.isEmpty()) {
+                onToken.accept(cached);
+            }
+            // A hit generated nothing: its timing is that of the lookup, not of the call that cached it
+            onStats.accept(new GenerationStats(cached.isEmpty() ? -1 : 0, 0, cached.isEmpty() ? 0 : 1, cached.length()));
+            return cached;
+        }
+        return store(key, delegate.streamText(prompt, parameters, onToken, onStats));
+    }
+
+    @Override
+    public String getModel() {
+        return delegate.getModel();
+    }
+
+    @Override
+    public String generateInfrastructureCode(String prompt, String type) {
+        String key = key(ResponseCache.INFRASTRUCTURE + type, prompt, Map.of());
+        String cached = lookup(key);
+        return cached != null ? cached : store(key, delegate.generateInfrastructureCode(prompt, type));
+    }
+
+    @Override
+    public CompletableFuture<String> generateInfrastructureCodeAsync(String prompt, String type) {
+        String key = key(ResponseCache.INFRASTRUCTURE + type, prompt, Map.of());
+        String cached = lookup(key);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        return AsyncCall.map(delegate.generateInfrastructureCodeAsync(prompt, type), response -> store(key, response));
+    }
+
+    private String key(String kind, String prompt, Map<String, Object> parameters) {
+        return ResponseCache.key(provider, delegate.getModel(), kind, prompt, parameters);
+    }
+
+    private String lookup(String key) {
+        if (refresh) {
+            return null;
+        }
+        String cached = cache.get(key);
+        if (cached != null) {
+            logger.info("Using cached {} response {}", provider, key.substring(0, 12));
+        }
+        return cached;
+    }
+
+    private String store(String key, String response) {
+        if (response != null && !response.isBlank()) {
+            cache.put(key, provider, delegate.getModel(), response);
+        }
+        return response;
+    }
+}
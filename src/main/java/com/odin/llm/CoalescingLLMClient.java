@@ -0,0 +1,74 @@
+package com.odin.llm;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * Lets identical requests made at the same time, for instance the same
+ * provider.tf prompt for several services of a monorepo, share one call to
+ * another client.
+ *
+ * Requests are identical if they would share a {@link ResponseCache} key.
+ * Streamed requests are never shared, since each caller wants its own
+ * tokens as they arrive.
+ */
+final class CoalescingLLMClient implements LLMClient {
+    private final LLMClient delegate;
+    private final String provider;
+    private final SingleFlight inFlight;
+
+    /**
+     * @param delegate The client sending the requests
+     * @param provider The provider name, part of every key
+     * @param inFlight The requests in flight, shared by every client of the process
+     */
+    CoalescingLLMClient(LLMClient delegate, String provider, SingleFlight inFlight) {
+        this.delegate = delegate;
+        this.provider = provider;
+        this.inFlight = inFlight;
+    }
+
+    @Override
+    public String generateText(String prompt) throws IOException {
+        return generateText(prompt, Map.of());
+    }
+
+    @Override
+    public String generateText(String prompt, Map<String, Object> parameters) {
+        return inFlight.blocking(key(ResponseCache.TEXT, prompt, parameters), () -> delegate.generateText(prompt, parameters));
+    }
+
+    @Override
+    public CompletableFuture<String> generateTextAsync(String prompt, Map<String, Object> parameters) {
+        return inFlight.async(key(ResponseCache.TEXT, prompt, parameters), () -> delegate.generateTextAsync(prompt, parameters));
+    }
+
+    @Override
+    public String streamText(String prompt, Map<String, Object> parameters, Consumer<String> onToken,
+                             Consumer<GenerationStats> onStats) {
+        return delegate.streamText(prompt, parameters, onToken, onStats);
+    }
+
+    @Override
+    public String getModel() {
+        return delegate.getModel();
+    }
+
+    @Override
+    public String generateInfrastructureCode(String prompt, String type) {
+        return inFlight.blocking(key(ResponseCache.INFRASTRUCTURE + type, prompt, Map.of()),
+            () -> delegate.generateInfrastructureCode(prompt, type));
+    }
+
+    @Override
+    public CompletableFuture<String> generateInfrastructureCodeAsync(String prompt, String type) {
+        return inFlight.async(key(ResponseCache.INFRASTRUCTURE + type, prompt, Map.of()),
+            () -> delegate.generateInfrastructureCodeAsync(prompt, type));
+    }
+
+    private String key(String kind, String prompt, Map<String, Object> parameters) {
+        return ResponseCache.key(provider, delegate.getModel(), kind, prompt, parameters);
+    }
+}
@@ -1,27 +1,37 @@
 package com.odin.llm;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import okhttp3.*;
+import okio.BufferedSource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.time.Duration;
 import java.util.Map;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 /**
  * The type Gemini client.
  */
 public class GeminiClient implements LLMClient {
     private static final Logger logger = LoggerFactory.getLogger(GeminiClient.class);
-    private static final String GEMINI_API_URL = "https://generativelanguage.googleapis.com/v1beta/models/gemini-2.0-flash:generateContent";
+    private static final String GEMINI_MODEL_URL = "https://generativelanguage.googleapis.com/v1beta/models/gemini-2.0-flash";
     private static final MediaType JSON = MediaType.get("application/json");
     private static final int MAX_RETRIES = 3;
     private static final int TIMEOUT_SECONDS = 60;
+    // Idle connections are dropped well before HTTPS front ends close them,
+    // and the hosted API serves many requests at once
+    private static final Duration KEEP_ALIVE = Duration.ofMinutes(2);
+    private static final int MAX_IDLE_CONNECTIONS = 8;
+    private static final int MAX_REQUESTS = 16;
 
     private final OkHttpClient client;
     private final ObjectMapper mapper;
     private final String apiKey;
+    private final String modelUrl;
 
     /**
      * Instantiates a new Gemini client.
@@ -36,15 +46,23 @@ public class GeminiClient implements LLMClient {
      * @param apiKey the api key
      */
     public GeminiClient(String apiKey) {
+        this(apiKey, GEMINI_MODEL_URL);
+    }
+
+    /**
+     * Instantiates a new Gemini client for a server other than the hosted API.
+     *
+     * @param apiKey the api key
+     * @param modelUrl the URL of the model, to which the method is appended
+     */
+    GeminiClient(String apiKey, String modelUrl) {
         if (apiKey == null || apiKey.isEmpty()) {
             throw new IllegalArgumentException("Gemini API key is required");
         }
         this.apiKey = apiKey;
-        this.client = new OkHttpClient.Builder()
-            .connectTimeout(TIMEOUT_SECONDS, TimeUnit.SECONDS)
-            .readTimeout(TIMEOUT_SECONDS, TimeUnit.SECONDS)
-            .writeTimeout(TIMEOUT_SECONDS, TimeUnit.SECONDS)
-            .build();
+        this.modelUrl = modelUrl;
+        this.client = LLMTransport.client(new LLMTransport.Endpoint(modelUrl,
+            Duration.ofSeconds(TIMEOUT_SECONDS), KEEP_ALIVE, MAX_IDLE_CONNECTIONS, MAX_REQUESTS));
         this.mapper = new ObjectMapper();
     }
 
@@ -58,53 +76,13 @@ public class GeminiClient implements LLMClient {
         int retries = 0;
         while (retries < MAX_RETRIES) {
             try {
-                Map<String, Object> promptContent = Map.of(
-                    "parts", new Object[]{
-                        Map.of("text", prompt)
-                    }
-                );
-
-                Map<String, Object> requestBody = Map.of(
-                    "contents", new Object[]{promptContent},
-                    "generationConfig", Map.of(
-                        "temperature", parameters.getOrDefault("temperature", 0.7),
-                        "topP", parameters.getOrDefault("top_p", 0.8),
-                        "topK", parameters.getOrDefault("top_k", 40),
-                        "maxOutputTokens", parameters.getOrDefault("max_tokens", 2048)
-                    )
-                );
-
                 logger.info("Sending prompt to Gemini: {}", prompt);
-                String jsonBody = mapper.writeValueAsString(requestBody);
-                RequestBody body = RequestBody.create(jsonBody, JSON);
-
-                Request request = new Request.Builder()
-                    .url(GEMINI_API_URL + "?key=" + apiKey)
-                    .post(body)
-                    .build();
-
-                try (Response response = client.newCall(request).execute()) {
+                try (Response response = client.newCall(request(prompt, parameters, ":generateContent?")).execute()) {
                     if (!response.isSuccessful()) {
                         throw new IOException("Unexpected response code: " + response);
                     }
 
-                    String responseBody = response.body().string();
-                    logger.info("Received response from Gemini: {}", responseBody);
-                    Map<String, Object> responseMap = mapper.readValue(responseBody, Map.class);
-                    
-                    // Navigate through the Gemini response structure
-                    var candidates = (java.util.List<?>) responseMap.get("candidates");
-                    if (candidates == null || candidates.isEmpty()) {
-                        throw new IOException("No candidates in response");
-                    }
-                    // Extract the first candidate from the list
-                    var candidateContent = (Map<?, ?>) ((Map<?, ?>) candidates.get(0)).get("content");
-                    var parts = (java.util.List<?>) candidateContent.get("parts");
-                    // Get the first part of the response and extract the actual text field (i.e., the model's reply)
-                    var text = (String) ((Map<?, ?>) parts.get(0)).get("text");
-                    
-                    logger.info("Extracted response from Gemini: {}", text);
-                    return text;
+                    return parseResponse(response);
                 }
             } catch (Exception e) {
                 retries++;
@@ -124,9 +102,145 @@ public class GeminiClient implements LLMClient {
         throw new RuntimeException("Failed to generate text after " + MAX_RETRIES + " retries");
     }
 
+    @Override
+    public CompletableFuture<String> generateTextAsync(String prompt, Map<String, Object> parameters) {
+        try {
+            logger.info("Sending prompt to Gemini: {}", prompt);
+            return AsyncCall.enqueue(client, request(prompt, parameters, ":generateContent?"), MAX_RETRIES, this::parseResponse);
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(new RuntimeException("Failed to generate text", e));
+        }
+    }
+
+    /**
+     * Extracts the text of the first candidate. A body of any other shape is
+     * an IOException, like a failed request, so both the blocking and the
+     * asynchronous calls retry it.
+     */
+    private String parseResponse(Response response) throws IOException {
+        String responseBody = response.body().string();
+        logger.info("Received response from Gemini: {}", responseBody);
+        JsonNode root = mapper.readTree(responseBody);
+        
+        // Navigate through the Gemini response structure
+        JsonNode candidates = root.path("candidates");
+        if (!candidates.isArray() || candidates.isEmpty()) {
+            throw new IOException("No candidates in response");
+        }
+        // Get the first part of the first candidate and extract the actual text field (i.e., the model's reply)
+        JsonNode text = candidates.path(0).path("content").path("parts").path(0).path("text");
+        if (!text.isTextual()) {
+            throw new IOException("No text in the first candidate of the response");
+        }
+        
+        logger.info("Extracted response from Gemini: {}", text.asText());
+        return text.asText();
+    }
+
+    /**
+     * Streams the completion from Gemini's server-sent events, each event
+     * carrying a partial response. A failed request is retried only if no
+     * text has reached the caller yet.
+     */
+    @Override
+    public String streamText(String prompt, Map<String, Object> parameters, Consumer<String> onToken,
+                             Consumer<GenerationStats> onStats) {
+        for (int attempt = 1; ; attempt++) {
+            TokenRecorder tokens = new TokenRecorder(onToken);
+            try (Response response = client.newCall(request(prompt, parameters, ":streamGenerateContent?alt=sse&")).execute()) {
+                if (!response.isSuccessful()) {
+                    throw new IOException("Unexpected response code: " + response);
+                }
+                BufferedSource source = response.body().source();
+                StringBuilder data = new StringBuilder();
+                for (String line = source.readUtf8Line(); ; line = source.readUtf8Line()) {
+                    if (line != null && !line.isEmpty()) {
+                        // Only data fields matter; an event's data may span several lines
+                        if (line.startsWith("data:")) {
+                            data.append(line.substring(line.startsWith("data: ") ? 6 : 5)).append('\n');
+                        }
+                        continue;
+                    }
+                    if (data.length() > 0) {
+                        acceptEvent(mapper.readTree(data.toString()), tokens);
+                        data.setLength(0);
+                    }
+                    if (line == null) {
+                        break;
+                    }
+                }
+                GenerationStats stats = tokens.finish();
+                logger.info("Streamed {} characters from Gemini, first token after {} ms, done after {} ms",
+                    stats.getCharacters(), String.format("%.0f", stats.getTimeToFirstTokenMillis()),
+                    String.format("%.0f", stats.getElapsedMillis()));
+                onStats.accept(stats);
+                return tokens.getText();
+            } catch (IOException e) {
+                if (tokens.isStarted() || attempt >= MAX_RETRIES) {
+                    logger.error("Failed to stream text after {} attempts: {}", attempt, e.getMessage());
+                    throw new RuntimeException("Failed to stream text", e);
+                }
+                logger.warn("Attempt {} failed, retrying in {} seconds...", attempt, attempt);
+                try {
+                    Thread.sleep(attempt * 1000L);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException("Interrupted while waiting to retry", ie);
+                }
+            }
+        }
+    }
+
+    private void acceptEvent(JsonNode event, TokenRecorder tokens) throws IOException {
+        if (event.hasNonNull("error")) {
+            throw new IOException("Gemini error: " + event.get("error").path("message").asText());
+        }
+        for (JsonNode part : event.path("candidates").path(0).path("content").path("parts")) {
+            tokens.accept(part.path("text").asText(""));
+        }
+    }
+
+    @Override
+    public String getModel() {
+        return modelUrl.substring(modelUrl.lastIndexOf('/') + 1);
+    }
+
+    private Request request(String prompt, Map<String, Object> parameters, String method) throws IOException {
+        Map<String, Object> promptContent = Map.of(
+            "parts", new Object[]{
+                Map.of("text", prompt)
+            }
+        );
+
+        Map<String, Object> requestBody = Map.of(
+            "contents", new Object[]{promptContent},
+            "generationConfig", Map.of(
+                "temperature", parameters.getOrDefault("temperature", 0.7),
+                "topP", parameters.getOrDefault("top_p", 0.8),
+                "topK", parameters.getOrDefault("top_k", 40),
+                "maxOutputTokens", parameters.getOrDefault("max_tokens", 2048)
+            )
+        );
+
+        RequestBody body = RequestBody.create(mapper.writeValueAsString(requestBody), JSON);
+        return new Request.Builder()
+            .url(modelUrl + method + "key=" + apiKey)
+            .post(body)
+            .build();
+    }
+
     @Override
     public String generateInfrastructureCode(String prompt, String type) {
-        String enhancedPrompt = String.format("""
+        return stripMarkdown(generateText(infrastructurePrompt(prompt, type)));
+    }
+
+    @Override
+    public CompletableFuture<String> generateInfrastructureCodeAsync(String prompt, String type) {
+        return AsyncCall.map(generateTextAsync(infrastructurePrompt(prompt, type), Map.of()), GeminiClient::stripMarkdown);
+    }
+
+    private static String infrastructurePrompt(String prompt, String type) {
+        return String.format("""
             You are an expert DevOps engineer. Generate infrastructure code for the following request:
             Type: %s
             
@@ -164,11 +278,12 @@ public class GeminiClient implements LLMClient {
             """,
             type, prompt
         );
-        
-        String response = generateText(enhancedPrompt);
+    }
+
+    private static String stripMarkdown(String response) {
         // Clean up the response by removing markdown code block markers and ensuring proper formatting
         return response.replaceAll("```(?:yaml|dockerfile)?\\s*", "")
                       .replaceAll("```\\s*$", "")
                       .trim();
     }
-} 
\ No newline at end of file
+}
@@ -0,0 +1,63 @@
+package com.odin.llm;
+
+/**
+ * Timing of a single streamed LLM generation.
+ *
+ * Time to first token is what a user waits before output starts to appear;
+ * the total time is what a non-streaming call would have waited for the
+ * whole completion.
+ */
+public class GenerationStats {
+    private final long timeToFirstTokenNanos;
+    private final long elapsedNanos;
+    private final int chunks;
+    private final long characters;
+
+    /**
+     * Creates a new GenerationStats snapshot.
+     *
+     * @param timeToFirstTokenNanos Time from sending the request to the first generated text, or -1 if none arrived
+     * @param elapsedNanos Time from sending the request to the end of the stream
+     * @param chunks Number of pieces of text received
+     * @param characters Number of characters generated
+     */
+    public GenerationStats(long timeToFirstTokenNanos, long elapsedNanos, int chunks, long characters) {
+        this.timeToFirstTokenNanos = timeToFirstTokenNanos;
+        this.elapsedNanos = elapsedNanos;
+        this.chunks = chunks;
+        this.characters = characters;
+    }
+
+    /**
+     * @return Time to first token in nanoseconds, or -1 if the model generated nothing
+     */
+    public long getTimeToFirstTokenNanos() {
+        return timeToFirstTokenNanos;
+    }
+
+    public double getTimeToFirstTokenMillis() {
+        return timeToFirstTokenNanos / 1_000_000.0;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    public double getElapsedMillis() {
+        return elapsedNanos / 1_000_000.0;
+    }
+
+    public int getChunks() {
+        return chunks;
+    }
+
+    public long getCharacters() {
+        return characters;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("GenerationStats{firstToken=%.1f ms, elapsed=%.1f ms, chunks=%d, characters=%d}",
+            getTimeToFirstTokenMillis(), getElapsedMillis(), chunks, characters);
+    }
+}
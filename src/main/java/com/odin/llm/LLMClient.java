@@ -2,6 +2,8 @@ package com.odin.llm;
 
 import java.io.IOException;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 /**
  * Interface for interacting with different LLM providers.
@@ -27,6 +29,62 @@ public interface LLMClient {
      * @return The generated response from the LLM
      */
     String generateText(String prompt, Map<String, Object> parameters);
+
+    /**
+     * Generates text without blocking the calling thread. Providers that
+     * send their requests asynchronously need no thread per request in
+     * flight; the default runs {@link #generateText(String, Map)} on the
+     * common pool. Cancelling the future abandons the request.
+     * 
+     * @param prompt The input text to send to the LLM
+     * @param parameters Additional parameters for the LLM
+     * @return The generated response from the LLM
+     */
+    default CompletableFuture<String> generateTextAsync(String prompt, Map<String, Object> parameters) {
+        return CompletableFuture.supplyAsync(() -> generateText(prompt, parameters));
+    }
+
+    /**
+     * Generates text, handing it to the callback piece by piece as the
+     * provider produces it, so callers can show progress or write output
+     * before the completion is done. Providers that cannot stream hand over
+     * the whole completion as one piece.
+     * 
+     * @param prompt The input text to send to the LLM
+     * @param parameters Additional parameters for the LLM
+     * @param onToken Receives each piece of generated text, in order, on the calling thread
+     * @return The whole generated text
+     */
+    default String streamText(String prompt, Map<String, Object> parameters, Consumer<String> onToken) {
+        return streamText(prompt, parameters, onToken, stats -> { });
+    }
+
+    /**
+     * Generates text as {@link #streamText(String, Map, Consumer)} does, and
+     * reports the timing of this very generation once it is complete, so
+     * that concurrent calls on one client each get their own.
+     * 
+     * @param prompt The input text to send to the LLM
+     * @param parameters Additional parameters for the LLM
+     * @param onToken Receives each piece of generated text, in order, on the calling thread
+     * @param onStats Receives the timing of the generation, if the provider measures it
+     * @return The whole generated text
+     */
+    default String streamText(String prompt, Map<String, Object> parameters, Consumer<String> onToken,
+                              Consumer<GenerationStats> onStats) {
+        String text = generateText(prompt, parameters);
+        if (text != null && !text.isEmpty()) {
+            onToken.accept(text);
+        }
+        return text;
+    }
+    
+    /**
+     * @return The model this client generates with, or null if the provider offers only one
+     */
+    default String getModel() {
+        return null;
+    }
     
     /**
      * Generates infrastructure code based on the provided prompt.
@@ -36,4 +94,16 @@ public interface LLMClient {
      * @return The generated infrastructure code
      */
     String generateInfrastructureCode(String prompt, String type);
+
+    /**
+     * Generates infrastructure code without blocking the calling thread.
+     * 
+     * @param prompt The input text describing the infrastructure requirements
+     * @param type The type of infrastructure code to generate (e.g., "dockerfile", "docker-compose")
+     * @return The generated infrastructure code
+     * @see #generateTextAsync(String, Map)
+     */
+    default CompletableFuture<String> generateInfrastructureCodeAsync(String prompt, String type) {
+        return CompletableFuture.supplyAsync(() -> generateInfrastructureCode(prompt, type));
+    }
 }
\ No newline at end of file
@@ -5,12 +5,28 @@ import org.slf4j.LoggerFactory;
 
 public class LLMClientFactory {
     private static final Logger logger = LoggerFactory.getLogger(LLMClientFactory.class);
+    // Requests in flight from every client of the process
+    private static final SingleFlight inFlight = new SingleFlight();
+    // Response cache shared by every client of the process, which keeps its size in memory
+    private static ResponseCache responseCache;
 
     public static LLMClient createClient() {
         return createClient(System.getenv("LLM_PROVIDER"));
     }
 
     public static LLMClient createClient(String provider) {
+        return createClient(provider, ResponseCache.Mode.configured());
+    }
+
+    /**
+     * Creates a client for a provider, with identical requests in flight
+     * shared across the process and responses cached as the mode says.
+     *
+     * @param provider The provider name, ollama if null or empty
+     * @param cacheMode How the response cache is used
+     * @return The client
+     */
+    public static LLMClient createClient(String provider, ResponseCache.Mode cacheMode) {
         // Check if we're in test mode
         if (System.getProperty("ODIN_TEST_MODE") != null) {
             logger.info("Test mode detected, using MockLLMClient");
@@ -22,7 +38,7 @@ public class LLMClientFactory {
         }
 
         logger.info("Creating LLM client for provider: {}", provider);
-        return switch (provider.toLowerCase()) {
+        LLMClient client = switch (provider.toLowerCase()) {
             case "ollama" -> new OllamaClient();
             case "gemini" -> new GeminiClient();
             default -> {
@@ -30,5 +46,31 @@ public class LLMClientFactory {
                 throw new IllegalArgumentException("Unsupported LLM provider: " + provider);
             }
         };
+        LLMClient coalesced = new CoalescingLLMClient(client, provider.toLowerCase(), inFlight);
+        return withCache(coalesced, provider.toLowerCase(), cacheMode);
+    }
+
+    /**
+     * Puts the persistent response cache in front of a client, unless
+     * caching is off.
+     *
+     * @param client The client
+     * @param provider The provider name, part of every cache key
+     * @param mode How the cache is used
+     * @return The client, cached according to the mode
+     */
+    static LLMClient withCache(LLMClient client, String provider, ResponseCache.Mode mode) {
+        if (mode == ResponseCache.Mode.OFF) {
+            return client;
+        }
+        return new CachingLLMClient(client, provider, responseCache(), mode == ResponseCache.Mode.REFRESH);
+    }
+
+    private static synchronized ResponseCache responseCache() {
+        if (responseCache == null) {
+            responseCache = new ResponseCache(ResponseCache.defaultDirectory(),
+                ResponseCache.DEFAULT_TTL, ResponseCache.DEFAULT_MAX_BYTES);
+        }
+        return responseCache;
     }
 } 
\ No newline at end of file
@@ -0,0 +1,106 @@
+package com.odin.llm;
+
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Process-wide HTTP transport shared by every {@link LLMClient}.
+ *
+ * Each LLM endpoint gets one OkHttpClient, built on first use, with its own
+ * connection pool and dispatcher tuned for that endpoint. Every client of the
+ * same endpoint shares them. A run that creates many clients, such as one per
+ * generator and four for concurrent generation, therefore reuses warm
+ * connections instead of opening its own, and no client starts threads of its
+ * own.
+ *
+ * Dispatcher threads are daemons, so an idle transport never keeps the
+ * process alive.
+ */
+public final class LLMTransport {
+    private static final Logger logger = LoggerFactory.getLogger(LLMTransport.class);
+
+    // One client per endpoint origin (scheme, host and port)
+    private static final Map<String, OkHttpClient> clients = new ConcurrentHashMap<>();
+
+    /**
+     * Connection settings of one LLM endpoint.
+     */
+    public static final class Endpoint {
+        private final String origin;
+        private final Duration timeout;
+        private final Duration keepAlive;
+        private final int maxIdleConnections;
+        private final int maxRequests;
+
+        /**
+         * @param url Any URL of the endpoint; only its scheme, host and port are used
+         * @param timeout Connect, read and write timeout of each request
+         * @param keepAlive How long an idle connection is kept open for reuse
+         * @param maxIdleConnections Idle connections kept open at most
+         * @param maxRequests Requests in flight at most; further asynchronous calls wait in the dispatcher
+         */
+        public Endpoint(String url, Duration timeout, Duration keepAlive, int maxIdleConnections, int maxRequests) {
+            HttpUrl parsed = HttpUrl.get(url);
+            this.origin = parsed.scheme() + "://" + parsed.host() + ":" + parsed.port();
+            this.timeout = timeout;
+            this.keepAlive = keepAlive;
+            this.maxIdleConnections = maxIdleConnections;
+            this.maxRequests = maxRequests;
+        }
+
+        public String getOrigin() {
+            return origin;
+        }
+    }
+
+    private LLMTransport() {
+    }
+
+    /**
+     * Returns the shared client of an endpoint, building it on first use.
+     * Later calls for the same origin get the same client, whatever settings
+     * they pass.
+     *
+     * @param endpoint The endpoint
+     * @return The endpoint's client
+     */
+    public static OkHttpClient client(Endpoint endpoint) {
+        return clients.computeIfAbsent(endpoint.origin, origin -> build(endpoint));
+    }
+
+    private static OkHttpClient build(Endpoint endpoint) {
+        logger.debug("Opening LLM transport to {} (keep-alive {} s, {} requests at most)",
+            endpoint.origin, endpoint.keepAlive.toSeconds(), endpoint.maxRequests);
+        Dispatcher dispatcher = new Dispatcher(daemonThreads(endpoint.origin));
+        dispatcher.setMaxRequests(endpoint.maxRequests);
+        dispatcher.setMaxRequestsPerHost(endpoint.maxRequests);
+        return new OkHttpClient.Builder()
+            .connectionPool(new ConnectionPool(endpoint.maxIdleConnections, endpoint.keepAlive.toMillis(), TimeUnit.MILLISECONDS))
+            .dispatcher(dispatcher)
+            .connectTimeout(endpoint.timeout)
+            .readTimeout(endpoint.timeout)
+            .writeTimeout(endpoint.timeout)
+            .build();
+    }
+
+    private static ExecutorService daemonThreads(String origin) {
+        AtomicInteger count = new AtomicInteger();
+        return Executors.newCachedThreadPool(task -> {
+            Thread thread = new Thread(task, "odin-llm-" + origin + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+}
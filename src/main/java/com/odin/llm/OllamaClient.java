@@ -1,14 +1,18 @@
 package com.odin.llm;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import okhttp3.*;
+import okio.BufferedSource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.net.http.HttpClient;
+import java.time.Duration;
 import java.util.Map;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 /**
  * The type Ollama client.
@@ -18,10 +22,16 @@ public class OllamaClient implements LLMClient {
     private static final String OLLAMA_API_URL = "http://localhost:11434/api/generate";
     private static final MediaType JSON = MediaType.get("application/json");
     private static final int MAX_RETRIES = 3;
-    private static final int TIMEOUT_SECONDS = 180;    
+    private static final int TIMEOUT_SECONDS = 180;
+    // Ollama keeps a model loaded for five minutes after its last request, and
+    // its connections are kept warm as long. It runs few generations at once,
+    // so more requests in flight would only queue on the server.
+    private static final Duration KEEP_ALIVE = Duration.ofMinutes(5);
+    private static final int MAX_REQUESTS = 4;
     private final OkHttpClient client;
     private final ObjectMapper mapper;
     private final String model;
+    private final String apiUrl;
 
     /**
      * Instantiates a new Ollama client.
@@ -36,13 +46,20 @@ public class OllamaClient implements LLMClient {
      * @param model the model
      */
     public OllamaClient(String model) {
-        this.client = new OkHttpClient.Builder()
-            .connectTimeout(TIMEOUT_SECONDS, TimeUnit.SECONDS)
-            .readTimeout(TIMEOUT_SECONDS, TimeUnit.SECONDS)
-            .writeTimeout(TIMEOUT_SECONDS, TimeUnit.SECONDS)
-            .build();
+        this(model, OLLAMA_API_URL);
+    }
+
+    /**
+     * Instantiates a new Ollama client for a server other than the local default.
+     *
+     * @param model the model
+     * @param apiUrl the URL of the server's generate API
+     */
+    OllamaClient(String model, String apiUrl) {
+        this.client = LLMTransport.client(endpoint(apiUrl));
         this.mapper = new ObjectMapper();
         this.model = model != null ? model : "codellama";
+        this.apiUrl = apiUrl;
     }
 
     /**
@@ -51,13 +68,11 @@ public class OllamaClient implements LLMClient {
      * @param httpClient the http client
      */
     public OllamaClient(HttpClient httpClient) {
-        this.client = new OkHttpClient.Builder()
-            .connectTimeout(TIMEOUT_SECONDS, TimeUnit.SECONDS)
-            .readTimeout(TIMEOUT_SECONDS, TimeUnit.SECONDS)
-            .writeTimeout(TIMEOUT_SECONDS, TimeUnit.SECONDS)
-            .build();
-        this.mapper = new ObjectMapper();
-        this.model = System.getenv("OLLAMA_MODEL") != null ? System.getenv("OLLAMA_MODEL") : "codellama";
+        this(System.getenv("OLLAMA_MODEL"));
+    }
+
+    private static LLMTransport.Endpoint endpoint(String apiUrl) {
+        return new LLMTransport.Endpoint(apiUrl, Duration.ofSeconds(TIMEOUT_SECONDS), KEEP_ALIVE, MAX_REQUESTS, MAX_REQUESTS);
     }
 
     @Override
@@ -70,32 +85,13 @@ public class OllamaClient implements LLMClient {
         int retries = 0;
         while (retries < MAX_RETRIES) {
             try {
-                Map<String, Object> requestBody = Map.of(
-                    "model", model,
-                    "prompt", prompt,
-                    "stream", false,
-                    "options", parameters
-                );
-
-                String jsonBody = mapper.writeValueAsString(requestBody);
                 logger.info("Sending prompt to LLM: {}", prompt);
-                RequestBody body = RequestBody.create(jsonBody, JSON);
-                Request request = new Request.Builder()
-                    .url(OLLAMA_API_URL)
-                    .post(body)
-                    .build();
-
-                try (Response response = client.newCall(request).execute()) {
+                try (Response response = client.newCall(request(prompt, parameters, false)).execute()) {
                     if (!response.isSuccessful()) {
                         throw new IOException("Unexpected response code: " + response);
                     }
 
-                    String responseBody = response.body().string();
-                    logger.info("Received response from LLM: {}", responseBody);
-                    Map<String, Object> responseMap = mapper.readValue(responseBody, Map.class);
-                    String result = (String) responseMap.get("response");
-                    logger.info("Extracted response: {}", result);
-                    return result;
+                    return parseResponse(response);
                 }
             } catch (Exception e) {
                 retries++;
@@ -115,9 +111,106 @@ public class OllamaClient implements LLMClient {
         throw new RuntimeException("Failed to generate text after " + MAX_RETRIES + " retries");
     }
 
+    @Override
+    public CompletableFuture<String> generateTextAsync(String prompt, Map<String, Object> parameters) {
+        try {
+            logger.info("Sending prompt to LLM: {}", prompt);
+            return AsyncCall.enqueue(client, request(prompt, parameters, false), MAX_RETRIES, this::parseResponse);
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(new RuntimeException("Failed to generate text", e));
+        }
+    }
+
+    private String parseResponse(Response response) throws IOException {
+        String responseBody = response.body().string();
+        logger.info("Received response from LLM: {}", responseBody);
+        Map<String, Object> responseMap = mapper.readValue(responseBody, Map.class);
+        String result = (String) responseMap.get("response");
+        logger.info("Extracted response: {}", result);
+        return result;
+    }
+
+    /**
+     * Streams the completion from Ollama's newline-delimited JSON stream,
+     * one generated token per line. A failed request is retried only if no
+     * text has reached the caller yet.
+     */
+    @Override
+    public String streamText(String prompt, Map<String, Object> parameters, Consumer<String> onToken,
+                             Consumer<GenerationStats> onStats) {
+        for (int attempt = 1; ; attempt++) {
+            TokenRecorder tokens = new TokenRecorder(onToken);
+            try (Response response = client.newCall(request(prompt, parameters, true)).execute()) {
+                if (!response.isSuccessful()) {
+                    throw new IOException("Unexpected response code: " + response);
+                }
+                BufferedSource source = response.body().source();
+                for (String line = source.readUtf8Line(); line != null; line = source.readUtf8Line()) {
+                    if (line.isBlank()) {
+                        continue;
+                    }
+                    JsonNode chunk = mapper.readTree(line);
+                    if (chunk.hasNonNull("error")) {
+                        throw new IOException("Ollama error: " + chunk.get("error").asText());
+                    }
+                    tokens.accept(chunk.path("response").asText(""));
+                    if (chunk.path("done").asBoolean()) {
+                        break;
+                    }
+                }
+                GenerationStats stats = tokens.finish();
+                logger.info("Streamed {} characters from LLM, first token after {} ms, done after {} ms",
+                    stats.getCharacters(), String.format("%.0f", stats.getTimeToFirstTokenMillis()),
+                    String.format("%.0f", stats.getElapsedMillis()));
+                onStats.accept(stats);
+                return tokens.getText();
+            } catch (IOException e) {
+                if (tokens.isStarted() || attempt >= MAX_RETRIES) {
+                    logger.error("Failed to stream text after {} attempts: {}", attempt, e.getMessage());
+                    throw new RuntimeException("Failed to stream text", e);
+                }
+                logger.warn("Attempt {} failed, retrying in {} seconds...", attempt, attempt);
+                try {
+                    Thread.sleep(attempt * 1000L);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException("Interrupted while waiting to retry", ie);
+                }
+            }
+        }
+    }
+
+    @Override
+    public String getModel() {
+        return model;
+    }
+
+    private Request request(String prompt, Map<String, Object> parameters, boolean stream) throws IOException {
+        Map<String, Object> requestBody = Map.of(
+            "model", model,
+            "prompt", prompt,
+            "stream", stream,
+            "options", parameters
+        );
+        RequestBody body = RequestBody.create(mapper.writeValueAsString(requestBody), JSON);
+        return new Request.Builder()
+            .url(apiUrl)
+            .post(body)
+            .build();
+    }
+
     @Override
     public String generateInfrastructureCode(String prompt, String type) {
-        String enhancedPrompt = String.format("""
+        return stripMarkdown(generateText(infrastructurePrompt(prompt, type)));
+    }
+
+    @Override
+    public CompletableFuture<String> generateInfrastructureCodeAsync(String prompt, String type) {
+        return AsyncCall.map(generateTextAsync(infrastructurePrompt(prompt, type), Map.of()), OllamaClient::stripMarkdown);
+    }
+
+    private static String infrastructurePrompt(String prompt, String type) {
+        return String.format("""
             You are an expert DevOps engineer. Generate infrastructure code for the following request:
             Type: %s
             
@@ -129,8 +222,9 @@ public class OllamaClient implements LLMClient {
             """,
             type, prompt
         );
-        
-        String response = generateText(enhancedPrompt);
+    }
+
+    private static String stripMarkdown(String response) {
         // Strip out any markdown code block markers
         response = response.replaceAll("```[\\w]*\\n|```", "");
         
@@ -142,4 +236,4 @@ public class OllamaClient implements LLMClient {
         
         return response;
     }
-} 
+}
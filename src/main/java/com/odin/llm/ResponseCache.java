@@ -0,0 +1,308 @@
+package com.odin.llm;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Persistent cache of LLM responses, keyed by everything that determines a
+ * response: provider, model, request kind, normalized prompt, parameters and
+ * {@link #TEMPLATE_VERSION}.
+ *
+ * Each entry is one small JSON file under {@code ~/.odin/cache/llm}, written
+ * atomically, so concurrent clients and processes can share the directory
+ * and CI can save and restore it as an artifact. A hit touches the file's
+ * modification time, which thereby records last use: once the directory
+ * outgrows its size limit, the least recently used entries are deleted
+ * until it is back under {@link #EVICTION_TARGET} of the limit. The size is
+ * counted once, on the first write, and kept up to date in memory after
+ * that, so only a write that crosses the limit lists the directory.
+ * Entries older than the TTL are misses and are deleted when found.
+ */
+public final class ResponseCache {
+    private static final Logger logger = LoggerFactory.getLogger(ResponseCache.class);
+
+    /**
+     * Version of the prompt templates and response post-processing of the
+     * clients. Bump it whenever either changes, so that responses cached for
+     * the old templates are no longer served.
+     */
+    public static final int TEMPLATE_VERSION = 1;
+    /**
+     * System property, or environment variable, selecting the default {@link Mode}.
+     */
+    public static final String MODE_PROPERTY = "ODIN_LLM_CACHE";
+    public static final Duration DEFAULT_TTL = Duration.ofDays(30);
+    public static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+    private static final String SUFFIX = ".json";
+    // Share of the size limit eviction brings the directory down to, so that it does not run on every write once full
+    private static final double EVICTION_TARGET = 0.9;
+    // Kinds of request: plain text, or infrastructure code followed by its type
+    static final String TEXT = "text";
+    static final String INFRASTRUCTURE = "infrastructure:";
+
+    private static final ObjectMapper mapper = new ObjectMapper()
+        .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false)
+        .configure(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS, true);
+
+    private final Path directory;
+    private final Duration ttl;
+    private final long maxBytes;
+    // Bytes of the entries as far as this cache knows, -1 until counted
+    private long size = -1;
+
+    /**
+     * How LLM clients use the cache.
+     */
+    public enum Mode {
+        /** Serve cached responses and cache new ones */
+        ON,
+        /** Always ask the LLM, replacing the cached responses */
+        REFRESH,
+        /** Neither read nor write the cache */
+        OFF;
+
+        /**
+         * @return The default mode, set by {@link #MODE_PROPERTY}, ON if unset or unknown
+         */
+        public static Mode configured() {
+            String value = System.getProperty(MODE_PROPERTY, System.getenv(MODE_PROPERTY));
+            if (value == null || value.isBlank()) {
+                return ON;
+            }
+            try {
+                return valueOf(value.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                logger.warn("Unknown LLM cache mode {}, caching responses", value);
+                return ON;
+            }
+        }
+    }
+
+    /**
+     * One cached response. Public fields for JSON serialization.
+     */
+    public static class Entry {
+        public int version;
+        public String provider;
+        public String model;
+        public long created;
+        public String response;
+    }
+
+    /**
+     * Creates a cache over a directory, which is created on first write.
+     *
+     * @param directory The cache directory
+     * @param ttl How long a response is served after it was cached
+     * @param maxBytes Size the directory is kept under by evicting the least recently used entries
+     */
+    public ResponseCache(Path directory, Duration ttl, long maxBytes) {
+        this.directory = directory;
+        this.ttl = ttl;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @return The default cache directory, {@code ~/.odin/cache/llm}
+     */
+    public static Path defaultDirectory() {
+        return Path.of(System.getProperty("user.home"), ".odin", "cache", "llm");
+    }
+
+    /**
+     * Computes the key of a request. Prompts differing only in line endings
+     * or trailing whitespace share a key, as do parameter maps differing only
+     * in order.
+     *
+     * @param provider The provider name
+     * @param model The model, or null if the provider has only one
+     * @param kind The kind of request, such as plain text or a type of infrastructure code
+     * @param prompt The prompt
+     * @param parameters The generation parameters
+     * @return The key, a hex SHA-256
+     */
+    static String key(String provider, String model, String kind, String prompt, Map<String, Object> parameters) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (String part : new String[] {
+                    String.valueOf(TEMPLATE_VERSION), provider, String.valueOf(model), kind,
+                    normalize(prompt), mapper.writeValueAsString(parameters)}) {
+                digest.update(part.getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException | IOException e) {
+            throw new IllegalStateException("Cannot compute LLM cache key", e);
+        }
+    }
+
+    private static String normalize(String prompt) {
+        return prompt.replace("\r\n", "\n").replaceAll("[ \\t]+\\n", "\n").strip();
+    }
+
+    /**
+     * Looks up a response, marking it as recently used.
+     *
+     * @param key The request's key
+     * @return The cached response, or null if none is cached or it expired
+     */
+    public String get(String key) {
+        Path file = directory.resolve(key + SUFFIX);
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        try {
+            Entry entry = mapper.readValue(file.toFile(), Entry.class);
+            long now = System.currentTimeMillis();
+            if (entry.version != TEMPLATE_VERSION || now - entry.created > ttl.toMillis()) {
+                delete(file);
+                return null;
+            }
+            Files.setLastModifiedTime(file, FileTime.fromMillis(now));
+            return entry.response;
+        } catch (IOException e) {
+            logger.debug("Ignoring unreadable LLM cache entry {}: {}", file, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Stores a response, then evicts the least recently used entries if the
+     * cache outgrew its size limit. Failures are logged, never thrown: the
+     * cache only ever saves time.
+     *
+     * @param key The request's key
+     * @param provider The provider name, kept for inspection
+     * @param model The model, kept for inspection
+     * @param response The response
+     */
+    public void put(String key, String provider, String model, String response) {
+        Entry entry = new Entry();
+        entry.version = TEMPLATE_VERSION;
+        entry.provider = provider;
+        entry.model = model;
+        entry.created = System.currentTimeMillis();
+        entry.response = response;
+        try {
+            Files.createDirectories(directory);
+            Path file = directory.resolve(key + SUFFIX);
+            Path temp = Files.createTempFile(directory, "response", ".tmp");
+            mapper.writeValue(temp.toFile(), entry);
+            long written = Files.size(temp);
+            long replaced = sizeOf(file);
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            if (grow(written - replaced) > maxBytes) {
+                evict();
+            }
+        } catch (IOException e) {
+            logger.warn("Failed to write LLM cache entry to {}: {}", directory, e.getMessage());
+        }
+    }
+
+    /**
+     * Accounts for a write, counting the entries first if they never were.
+     *
+     * @param delta Bytes added to the directory by the write
+     * @return The size of the entries
+     */
+    private synchronized long grow(long delta) throws IOException {
+        if (size < 0) {
+            // Counted after the write, which is therefore included
+            size = measure();
+        } else {
+            size += delta;
+        }
+        return size;
+    }
+
+    private void delete(Path file) throws IOException {
+        long bytes = sizeOf(file);
+        if (Files.deleteIfExists(file)) {
+            synchronized (this) {
+                if (size >= 0) {
+                    size = Math.max(0, size - bytes);
+                }
+            }
+        }
+    }
+
+    private static long sizeOf(Path file) throws IOException {
+        try {
+            return Files.size(file);
+        } catch (NoSuchFileException e) {
+            return 0;
+        }
+    }
+
+    private long measure() throws IOException {
+        long total = 0;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+            for (Path file : stream) {
+                total += sizeOf(file);
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Deletes the least recently used entries until the directory is back
+     * under its eviction target. The directory is listed afresh, so the size
+     * kept in memory also catches up with what other processes wrote.
+     */
+    private synchronized void evict() throws IOException {
+        List<Path> entries = new ArrayList<>();
+        List<BasicFileAttributes> attributes = new ArrayList<>();
+        long total = 0;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+            for (Path file : stream) {
+                try {
+                    BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+                    entries.add(file);
+                    attributes.add(attrs);
+                    total += attrs.size();
+                } catch (NoSuchFileException e) {
+                    // Evicted by another client meanwhile
+                }
+            }
+        }
+        long target = total > maxBytes ? (long) (maxBytes * EVICTION_TARGET) : total;
+        List<Integer> order = new ArrayList<>();
+        for (int i = 0; i < entries.size(); i++) {
+            order.add(i);
+        }
+        order.sort(Comparator.comparing(i -> attributes.get(i).lastModifiedTime()));
+        int evicted = 0;
+        for (int i : order) {
+            if (total <= target) {
+                break;
+            }
+            Files.deleteIfExists(entries.get(i));
+            total -= attributes.get(i).size();
+            evicted++;
+        }
+        size = total;
+        logger.debug("Evicted {} least recently used LLM cache entries from {}", evicted, directory);
+    }
+}
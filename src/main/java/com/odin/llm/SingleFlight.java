@@ -0,0 +1,163 @@
+package com.odin.llm;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
+
+/**
+ * Requests currently in flight, by key, so that an identical request made
+ * meanwhile waits for the same response instead of sending its own.
+ *
+ * A request leaves the table as soon as it completes: nothing is remembered
+ * beyond the call itself (see {@link ResponseCache} for that).
+ */
+final class SingleFlight {
+    private final Map<String, Flight> flights = new HashMap<>();
+
+    /**
+     * One call and the number of callers still waiting for it.
+     */
+    private static final class Flight {
+        private final CompletableFuture<String> call;
+        private int waiters;
+
+        Flight(CompletableFuture<String> call) {
+            this.call = call;
+        }
+    }
+
+    /**
+     * Joins the identical request in flight, or starts it.
+     *
+     * Each caller gets a future of its own. Cancelling it stops only that
+     * caller's wait; the call itself is cancelled once every caller has
+     * cancelled. The request is started outside the table's lock, so a slow
+     * start holds up no other request.
+     *
+     * @param key The request's key
+     * @param start Sends the request
+     * @return The response
+     */
+    CompletableFuture<String> async(String key, Supplier<CompletableFuture<String>> start) {
+        Flight flight;
+        boolean leader = false;
+        synchronized (flights) {
+            flight = flights.get(key);
+            if (flight == null) {
+                flight = launch(key, new CompletableFuture<>());
+                leader = true;
+            }
+            flight.waiters++;
+        }
+        if (leader) {
+            relay(start, flight.call);
+        }
+        Flight joined = flight;
+        CompletableFuture<String> waiter = joined.call.copy();
+        waiter.whenComplete((response, error) -> {
+            if (waiter.isCancelled()) {
+                release(key, joined);
+            }
+        });
+        return waiter;
+    }
+
+    /**
+     * Joins the identical request in flight, or sends it on the calling
+     * thread, which other callers then wait for.
+     *
+     * @param key The request's key
+     * @param send Sends the request and returns its response
+     * @return The response
+     */
+    String blocking(String key, Supplier<String> send) {
+        Flight flight;
+        boolean leader = false;
+        synchronized (flights) {
+            flight = flights.get(key);
+            if (flight == null) {
+                flight = launch(key, new CompletableFuture<>());
+                leader = true;
+            }
+            flight.waiters++;
+        }
+        if (!leader) {
+            try {
+                return flight.call.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof Error error) {
+                    throw error;
+                }
+                throw e.getCause() instanceof RuntimeException runtime ? runtime : e;
+            }
+        }
+        // Whatever the leader ends with, the followers end with too, and the request leaves the table
+        try {
+            String response = send.get();
+            flight.call.complete(response);
+            return response;
+        } catch (Throwable e) {
+            flight.call.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    /**
+     * @return Number of distinct requests in flight
+     */
+    int size() {
+        synchronized (flights) {
+            return flights.size();
+        }
+    }
+
+    private Flight launch(String key, CompletableFuture<String> call) {
+        Flight flight = new Flight(call);
+        flights.put(key, flight);
+        call.whenComplete((response, error) -> {
+            synchronized (flights) {
+                flights.remove(key, flight);
+            }
+        });
+        return flight;
+    }
+
+    /**
+     * Starts a request and completes the call with its outcome. A call
+     * cancelled meanwhile, or later, cancels the request.
+     */
+    private static void relay(Supplier<CompletableFuture<String>> start, CompletableFuture<String> call) {
+        CompletableFuture<String> request;
+        try {
+            request = start.get();
+        } catch (Throwable e) {
+            call.completeExceptionally(e);
+            return;
+        }
+        request.whenComplete((response, error) -> {
+            if (error != null) {
+                call.completeExceptionally(error instanceof CompletionException && error.getCause() != null
+                    ? error.getCause() : error);
+            } else {
+                call.complete(response);
+            }
+        });
+        call.whenComplete((response, error) -> {
+            if (call.isCancelled()) {
+                request.cancel(true);
+            }
+        });
+    }
+
+    private void release(String key, Flight flight) {
+        synchronized (flights) {
+            if (--flight.waiters > 0) {
+                return;
+            }
+            flights.remove(key, flight);
+        }
+        flight.call.cancel(true);
+    }
+}
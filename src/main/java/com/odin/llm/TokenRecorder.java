@@ -0,0 +1,55 @@
+package com.odin.llm;
+
+import java.util.function.Consumer;
+
+/**
+ * Collects the pieces of a streamed completion as they are handed to the
+ * caller, timing the first one.
+ */
+final class TokenRecorder {
+    private final Consumer<String> onToken;
+    private final long start = System.nanoTime();
+    private final StringBuilder text = new StringBuilder();
+    private long timeToFirstToken = -1;
+    private int chunks;
+
+    /**
+     * Starts timing; create it just before sending the request.
+     *
+     * @param onToken The caller's callback
+     */
+    TokenRecorder(Consumer<String> onToken) {
+        this.onToken = onToken;
+    }
+
+    /**
+     * Hands a piece of generated text to the caller. Empty pieces, such as
+     * the final message of a stream, are dropped.
+     */
+    void accept(String token) {
+        if (token == null || token.isEmpty()) {
+            return;
+        }
+        if (timeToFirstToken < 0) {
+            timeToFirstToken = System.nanoTime() - start;
+        }
+        chunks++;
+        text.append(token);
+        onToken.accept(token);
+    }
+
+    /**
+     * @return true once the caller has received any text, after which the request cannot be retried
+     */
+    boolean isStarted() {
+        return chunks > 0;
+    }
+
+    String getText() {
+        return text.toString();
+    }
+
+    GenerationStats finish() {
+        return new GenerationStats(timeToFirstToken, System.nanoTime() - start, chunks, text.length());
+    }
+}
@@ -41,6 +41,15 @@ public class DockerMonitor {
      * Configures timeouts and connection settings for Docker operations.
      */
     public DockerMonitor() {
+        this(LLMClientFactory.createClient());
+    }
+
+    /**
+     * Sets up the monitor with the Docker client and a given LLM for log analysis.
+     *
+     * @param llmClient The LLM client analyzing container logs
+     */
+    public DockerMonitor(LLMClient llmClient) {
         DockerClientConfig config = DefaultDockerClientConfig.createDefaultConfigBuilder().build();
         DockerHttpClient httpClient = new ApacheDockerHttpClient.Builder()
             .dockerHost(config.getDockerHost())
@@ -49,7 +58,7 @@ public class DockerMonitor {
             .responseTimeout(Duration.ofSeconds(45))
             .build();
         this.dockerClient = DockerClientImpl.getInstance(config, httpClient);
-        this.llmClient = LLMClientFactory.createClient();
+        this.llmClient = llmClient;
         this.scheduler = Executors.newScheduledThreadPool(1);
         this.containerStats = new ConcurrentHashMap<>();
         this.containerLogs = new ConcurrentHashMap<>();
@@ -2,11 +2,14 @@ package com.odin.cli;
 
 import com.odin.detection.StackDetector;
 import com.odin.llm.LLMClientFactory;
+import com.odin.llm.ResponseCache;
+import picocli.CommandLine;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
 import java.nio.file.Path;
 import java.nio.file.Files;
+import java.util.List;
 import static org.junit.jupiter.api.Assertions.*;
 import org.junit.jupiter.api.condition.DisabledIfEnvironmentVariable;
 
@@ -138,4 +141,27 @@ public class OdinCommandTest {
         
         assertNotEquals(0, exitCode);
     }
-} 
\ No newline at end of file
+
+    @Test
+    void testCacheSwitchesApplyToEverySubcommand() {
+        OdinCommand refreshed = new OdinCommand();
+        new CommandLine(refreshed).parseArgs("validate", tempDir.toString(), "--refresh");
+        assertEquals(ResponseCache.Mode.REFRESH, refreshed.getCacheMode());
+
+        OdinCommand uncached = new OdinCommand();
+        new CommandLine(uncached).parseArgs("--no-cache", "validate", tempDir.toString());
+        assertEquals(ResponseCache.Mode.OFF, uncached.getCacheMode());
+
+        // The switches last for their run only
+        assertNull(System.getProperty(ResponseCache.MODE_PROPERTY));
+        assertEquals(ResponseCache.Mode.configured(), new OdinCommand().getCacheMode());
+    }
+
+    @Test
+    void testNoAiIsAcceptedByEveryDetectingSubcommand() {
+        for (String command : List.of("init", "docker", "compose", "terraform", "actions", "all", "github", "dockerfile")) {
+            assertDoesNotThrow(() -> new CommandLine(new OdinCommand()).parseArgs(command, tempDir.toString(), "--no-ai"),
+                command);
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package com.odin.detection;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import static org.junit.jupiter.api.Assertions.*;
+
+class ArchiveReaderTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testStreamsTarGzEntriesWithLongNames() throws Exception {
+        String longName = "release-1.0/" + "deeply/nested/".repeat(10) + "main.go";
+        Path archive = tempDir.resolve("release.tar.gz");
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(archive))) {
+            writeTar(out, Map.of(
+                "./release-1.0/go.mod", "module example.com/app\n",
+                longName, "package main\n",
+                "../escape.txt", "outside\n"));
+        }
+
+        Map<String, String> entries = readAll(archive);
+
+        assertEquals(Map.of(
+            "release-1.0/go.mod", "module example.com/app\n",
+            longName, "package main\n"), entries);
+    }
+
+    @Test
+    void testStreamsNestedZipWithoutExtraction() throws Exception {
+        ByteArrayOutputStream nested = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(nested)) {
+            zip.putNextEntry(new ZipEntry("META-INF/maven/g/a/pom.properties"));
+            zip.write("groupId=g\nartifactId=a\n".getBytes(StandardCharsets.UTF_8));
+        }
+        Path archive = tempDir.resolve("app.jar");
+        try (ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(archive))) {
+            zip.putNextEntry(new ZipEntry("lib/"));
+            zip.putNextEntry(new ZipEntry("lib/a.jar"));
+            zip.write(nested.toByteArray());
+            zip.putNextEntry(new ZipEntry("app.properties"));
+            zip.write("port=8080\n".getBytes(StandardCharsets.UTF_8));
+        }
+
+        Map<String, String> inner = new LinkedHashMap<>();
+        ArchiveReader.read(archive, (name, attrs, content) -> {
+            if (ArchiveReader.isArchive(name)) {
+                ArchiveReader.read(content, name, (innerName, innerAttrs, innerContent) -> {
+                    inner.put(innerName, new String(innerContent.readAllBytes(), StandardCharsets.UTF_8));
+                    return true;
+                });
+            }
+            return true;
+        });
+
+        assertEquals(Map.of("META-INF/maven/g/a/pom.properties", "groupId=g\nartifactId=a\n"), inner);
+        Map<String, String> entries = readAll(archive);
+        assertEquals(nested.size(), entries.get("lib/a.jar").length());
+        assertEquals("port=8080\n", entries.get("app.properties"));
+        assertFalse(entries.containsKey("lib/"));
+    }
+
+    @Test
+    void testRecognizesArchiveNames() {
+        assertTrue(ArchiveReader.isArchive("app.jar"));
+        assertTrue(ArchiveReader.isArchive("Release.TGZ"));
+        assertTrue(ArchiveReader.isArchive("release.tar.gz"));
+        assertFalse(ArchiveReader.isArchive("notes.gz"));
+        assertFalse(ArchiveReader.isArchive("app.py"));
+    }
+
+    private static Map<String, String> readAll(Path archive) throws IOException {
+        Map<String, String> entries = new LinkedHashMap<>();
+        ArchiveReader.read(archive, (name, attrs, content) -> {
+            entries.put(name, new String(content.readAllBytes(), StandardCharsets.ISO_8859_1));
+            return true;
+        });
+        return entries;
+    }
+
+    /**
+     * Writes a ustar stream, using GNU long name entries for names over 100 bytes.
+     */
+    static void writeTar(OutputStream out, Map<String, String> files) throws IOException {
+        for (Map.Entry<String, String> file : files.entrySet()) {
+            byte[] name = file.getKey().getBytes(StandardCharsets.UTF_8);
+            if (name.length > 100) {
+                writeTarEntry(out, "././@LongLink", 'L', name);
+            }
+            writeTarEntry(out, file.getKey(), '0', file.getValue().getBytes(StandardCharsets.UTF_8));
+        }
+        out.write(new byte[1024]);
+    }
+
+    private static void writeTarEntry(OutputStream out, String name, char type, byte[] content) throws IOException {
+        byte[] header = new byte[512];
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        System.arraycopy(nameBytes, 0, header, 0, Math.min(100, nameBytes.length));
+        putOctal(header, 100, 8, 0644);
+        putOctal(header, 124, 12, content.length);
+        putOctal(header, 136, 12, 1_700_000_000L);
+        header[156] = (byte) type;
+        System.arraycopy("ustar\u000000".getBytes(StandardCharsets.US_ASCII), 0, header, 257, 8);
+        Arrays.fill(header, 148, 156, (byte) ' ');
+        long checksum = 0;
+        for (byte b : header) {
+            checksum += b & 0xFF;
+        }
+        putOctal(header, 148, 8, checksum);
+        out.write(header);
+        out.write(content);
+        out.write(new byte[(512 - content.length % 512) % 512]);
+    }
+
+    private static void putOctal(byte[] header, int offset, int length, long value) {
+        String octal = String.format("%0" + (length - 1) + "o", value);
+        System.arraycopy(octal.getBytes(StandardCharsets.US_ASCII), 0, header, offset, length - 1);
+    }
+}
@@ -0,0 +1,36 @@
+package com.odin.detection;
+
+import org.junit.jupiter.api.Test;
+import java.nio.charset.StandardCharsets;
+import static org.junit.jupiter.api.Assertions.*;
+
+class ContentHashTest {
+
+    @Test
+    void testBlobIdMatchesGit() {
+        byte[] content = "from flask import Flask\n".getBytes(StandardCharsets.UTF_8);
+
+        assertEquals("5a03df9cd50cf25cb7660ca7515ba70039af2f1a", ContentHash.blobId(content, content.length, content.length));
+    }
+
+    @Test
+    void testXxHash64MatchesReferenceVectors() {
+        assertEquals(0xEF46DB3751D8E999L, xxHash64(""));
+        assertEquals(0x44BC2CF5AD770999L, xxHash64("abc"));
+        // Long enough for the four-lane loop
+        assertEquals(0xFBCEA83C8A378BF1L, xxHash64("Nobody inspects the spammish repetition"));
+    }
+
+    @Test
+    void testXxHash64DependsOnSeedAndLength() {
+        byte[] data = "import redis\nimport redis\n".getBytes(StandardCharsets.UTF_8);
+
+        assertNotEquals(ContentHash.xxHash64(data, data.length, 1), ContentHash.xxHash64(data, data.length, 2));
+        assertNotEquals(ContentHash.xxHash64(data, data.length, 0), ContentHash.xxHash64(data, data.length - 1, 0));
+    }
+
+    private static long xxHash64(String text) {
+        byte[] data = text.getBytes(StandardCharsets.US_ASCII);
+        return ContentHash.xxHash64(data, data.length, 0);
+    }
+}
@@ -0,0 +1,150 @@
+package com.odin.detection;
+
+import com.odin.llm.LLMClient;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+class GitIndexTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testCleanTrackedFilesHaveBlobIds() throws Exception {
+        Path app = writeAged(tempDir.resolve("app.py"), "from flask import Flask\n", 2);
+        Path notes = writeAged(tempDir.resolve("notes.txt"), "untracked\n", 2);
+        writeIndex(tempDir, "app.py");
+
+        GitIndex index = GitIndex.open(tempDir);
+        byte[] content = Files.readAllBytes(app);
+
+        assertEquals(1, index.size());
+        assertEquals(ContentHash.blobId(content, content.length, content.length), index.blobId(app, attributes(app)));
+        assertNull(index.blobId(notes, attributes(notes)));
+
+        writeAged(app, "from flask import Flask, request\n", 2);
+        assertNull(index.blobId(app, attributes(app)));
+    }
+
+    @Test
+    void testFilesNewerThanIndexAreNotTrusted() throws Exception {
+        Path app = writeAged(tempDir.resolve("app.py"), "from flask import Flask\n", 2);
+        writeIndex(tempDir, "app.py");
+        Files.setLastModifiedTime(tempDir.resolve(".git/index"), FileTime.from(Instant.now().minus(3, ChronoUnit.HOURS)));
+
+        assertNull(GitIndex.open(tempDir).blobId(app, attributes(app)));
+    }
+
+    @Test
+    void testOpensFromSubdirectoryAndIgnoresGarbage() throws Exception {
+        Path service = Files.createDirectories(tempDir.resolve("services/api"));
+        Path main = writeAged(service.resolve("main.go"), "package main\n", 2);
+        writeIndex(tempDir, "services/api/main.go");
+
+        assertNotNull(GitIndex.open(service).blobId(main, attributes(main)));
+
+        Files.write(tempDir.resolve(".git/index"), new byte[] {'D', 'I', 'R', 'C', 0, 0, 0, 9});
+        assertNull(GitIndex.open(service));
+    }
+
+    @Test
+    void testTouchedTrackedFileResolvesFromCacheWithoutReading(@TempDir Path cacheDir) throws Exception {
+        Path app = writeAged(tempDir.resolve("app.py"), "from flask import Flask\nimport redis\n", 2);
+        writeIndex(tempDir, "app.py");
+        StackDetector detector = new StackDetector(mock(LLMClient.class));
+        detector.setCacheDirectory(cacheDir);
+        detector.detectStack(tempDir);
+        assertTrue(detector.getLastScanStats().getBytes() > 0);
+
+        // Same content, new modification time, re-staged as e.g. a checkout would
+        Files.setLastModifiedTime(app, FileTime.from(Instant.now().minus(1, ChronoUnit.HOURS)));
+        writeIndex(tempDir, "app.py");
+        Stack stack = detector.detectStack(tempDir);
+
+        assertEquals(0, detector.getLastScanStats().getBytes());
+        assertEquals("flask", stack.getFramework());
+        assertEquals(List.of("redis"), stack.getDatabases());
+    }
+
+    @Test
+    void testFreshCheckoutOfUnchangedTreeUsesCachedStack(@TempDir Path cacheDir) throws Exception {
+        writeAged(tempDir.resolve("requirements.txt"), "flask==3.0\nredis==5.0\n", 3);
+        writeAged(tempDir.resolve("app.py"), "from flask import Flask\n", 3);
+        writeIndex(tempDir, "app.py", "requirements.txt");
+        StackDetector detector = new StackDetector(mock(LLMClient.class));
+        detector.setCacheDirectory(cacheDir);
+        Stack stack = detector.detectStack(tempDir);
+
+        // A new clone of the same commit: same content, every file written anew
+        writeAged(tempDir.resolve("requirements.txt"), "flask==3.0\nredis==5.0\n", 1);
+        writeAged(tempDir.resolve("app.py"), "from flask import Flask\n", 1);
+        writeIndex(tempDir, "app.py", "requirements.txt");
+
+        assertEquals(stack, detector.detectStack(tempDir));
+        assertEquals(0, detector.getLastScanStats().getBytes());
+    }
+
+    private static Path writeAged(Path file, String content, int hours) throws IOException {
+        Files.writeString(file, content);
+        Files.setLastModifiedTime(file, FileTime.from(Instant.now().minus(hours, ChronoUnit.HOURS)));
+        return file;
+    }
+
+    private static BasicFileAttributes attributes(Path file) throws IOException {
+        return Files.readAttributes(file, BasicFileAttributes.class);
+    }
+
+    /**
+     * Writes a version 2 git index staging the given files as they are now.
+     */
+    private static void writeIndex(Path root, String... paths) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0x44495243);
+        out.writeInt(2);
+        out.writeInt(paths.length);
+        String[] sorted = paths.clone();
+        Arrays.sort(sorted);
+        for (String path : sorted) {
+            Path file = root.resolve(path);
+            byte[] content = Files.readAllBytes(file);
+            FileTime modified = Files.getLastModifiedTime(file);
+            out.writeInt(0);
+            out.writeInt(0);
+            out.writeInt((int) modified.to(TimeUnit.SECONDS));
+            out.writeInt(modified.toInstant().getNano());
+            out.writeInt(0);
+            out.writeInt(0);
+            out.writeInt(0100644);
+            out.writeInt(0);
+            out.writeInt(0);
+            out.writeInt(content.length);
+            out.write(HexFormat.of().parseHex(ContentHash.blobId(content, content.length, content.length)));
+            byte[] name = path.getBytes(StandardCharsets.UTF_8);
+            out.writeShort(name.length);
+            out.write(name);
+            int length = 62 + name.length;
+            out.write(new byte[((length + 8) & ~7) - length]);
+        }
+        // The trailing checksum is not verified
+        out.write(new byte[20]);
+        Files.createDirectories(root.resolve(".git"));
+        Files.write(root.resolve(".git/index"), bytes.toByteArray());
+    }
+}
@@ -0,0 +1,93 @@
+package com.odin.detection;
+
+import org.junit.jupiter.api.Test;
+import java.nio.charset.StandardCharsets;
+import java.util.BitSet;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class KeywordMatcherTest {
+
+    private static BitSet match(KeywordMatcher matcher, String content) {
+        byte[] data = content.getBytes(StandardCharsets.UTF_8);
+        return matcher.match(data, data.length);
+    }
+
+    @Test
+    void testMatchesLiteralsAcrossLines() {
+        KeywordMatcher matcher = new KeywordMatcher.Builder()
+            .add(0, "flask|Flask\\(|from flask")
+            .add(1, "redis|Redis|REDIS")
+            .build();
+
+        BitSet hits = match(matcher, "import os\napp = Flask(__name__)\n");
+
+        assertTrue(hits.get(0));
+        assertFalse(hits.get(1));
+    }
+
+    @Test
+    void testReportsEveryRuleInOnePass() {
+        KeywordMatcher matcher = new KeywordMatcher.Builder()
+            .add(0, "postgres")
+            .add(1, "gres")
+            .add(2, "mongo")
+            .build();
+
+        BitSet hits = match(matcher, "DATABASE=postgresql\nCACHE=mongodb");
+
+        assertTrue(hits.get(0));
+        assertTrue(hits.get(1));
+        assertTrue(hits.get(2));
+    }
+
+    @Test
+    void testFallsBackToRegexForNonLiterals() {
+        KeywordMatcher matcher = new KeywordMatcher.Builder()
+            .add(0, "gin\\.Default\\(\\)|ver(sion)?\\s*=\\s*\\d+")
+            .build();
+
+        assertTrue(match(matcher, "version = 2").get(0));
+        assertTrue(match(matcher, "r := gin.Default()").get(0));
+        assertFalse(match(matcher, "gin Default").get(0));
+    }
+
+    @Test
+    void testReportsLineOfFirstMatch() {
+        KeywordMatcher matcher = new KeywordMatcher.Builder()
+            .add(0, "redis")
+            .add(1, "gin\\.Default\\(\\)|ver(sion)?\\s*=\\s*\\d+")
+            .add(2, "mongo")
+            .build();
+        byte[] data = "import os\nimport redis\n\nversion = 2\nredis.ping()\n".getBytes(StandardCharsets.UTF_8);
+        int[] lines = new int[matcher.getRuleCount()];
+
+        BitSet hits = matcher.match(data, data.length, lines);
+
+        assertEquals(2, lines[0]);
+        assertEquals(4, lines[1]);
+        assertFalse(hits.get(2));
+        assertEquals(0, lines[2]);
+    }
+
+    @Test
+    void testSerializedMatcherMatchesLikeOriginal() {
+        KeywordMatcher matcher = new KeywordMatcher.Builder()
+            .add(0, "flask|Flask\\(")
+            .add(1, "gin\\.Default\\(\\)|ver(sion)?\\s*=\\s*\\d+")
+            .build();
+
+        KeywordMatcher restored = KeywordMatcher.fromBytes(matcher.toBytes());
+
+        String content = "app = Flask(__name__)\nversion = 3\n";
+        assertEquals(match(matcher, content), match(restored, content));
+        assertEquals(matcher.getRuleCount(), restored.getRuleCount());
+        assertThrows(IllegalArgumentException.class, () -> KeywordMatcher.fromBytes(new byte[] {0, 1}));
+    }
+
+    @Test
+    void testSplitsOnlyTopLevelAlternatives() {
+        assertEquals(2, KeywordMatcher.splitAlternatives("a(b|c)|d").size());
+        assertEquals("[Test]", KeywordMatcher.toLiteral("\\[Test\\]"));
+        assertNull(KeywordMatcher.toLiteral("[Test]"));
+    }
+}
@@ -0,0 +1,147 @@
+package com.odin.detection;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import static org.junit.jupiter.api.Assertions.*;
+
+class LockfileParserTest {
+
+    @TempDir
+    Path tempDir;
+
+    private Map<String, String> parse(String fileName, String content) throws Exception {
+        Path file = Files.writeString(tempDir.resolve(fileName), content);
+        Map<String, String> packages = new HashMap<>();
+        assertTrue(LockfileParser.parse(file, packages::put));
+        return packages;
+    }
+
+    @Test
+    void testParsesPackageLock() throws Exception {
+        Map<String, String> v3 = parse("package-lock.json", """
+            {
+              "name": "app",
+              "lockfileVersion": 3,
+              "packages": {
+                "": {"name": "app", "dependencies": {"express": "^4.18.0"}},
+                "node_modules/express": {"version": "4.18.2", "dependencies": {"debug": "2.6.9"}},
+                "node_modules/express/node_modules/debug": {"version": "2.6.9"},
+                "node_modules/@types/node": {"version": "20.10.0", "dev": true}
+              }
+            }
+            """);
+        assertEquals(Map.of("express", "4.18.2", "debug", "2.6.9", "@types/node", "20.10.0"), v3);
+
+        Map<String, String> v1 = parse("npm-shrinkwrap.json", """
+            {
+              "lockfileVersion": 1,
+              "dependencies": {
+                "pg": {"version": "8.11.3", "dependencies": {"pg-pool": {"version": "3.6.1"}}}
+              }
+            }
+            """);
+        assertEquals(Map.of("pg", "8.11.3", "pg-pool", "3.6.1"), v1);
+    }
+
+    @Test
+    void testParsesYarnLock() throws Exception {
+        Map<String, String> classic = parse("yarn.lock", """
+            # yarn lockfile v1
+
+            "@babel/core@^7.0.0", "@babel/core@^7.1.0":
+              version "7.2.3"
+              dependencies:
+                debug "^4.1.0"
+
+            redis@^4.0.0:
+              version "4.6.11"
+            """);
+        assertEquals(Map.of("@babel/core", "7.2.3", "redis", "4.6.11"), classic);
+
+        Map<String, String> berry = parse("yarn.lock", """
+            __metadata:
+              version: 6
+
+            "next@npm:^14.0.0":
+              version: 14.0.4
+              resolution: "next@npm:14.0.4"
+            """);
+        assertEquals(Map.of("next", "14.0.4"), berry);
+    }
+
+    @Test
+    void testParsesPnpmLock() throws Exception {
+        Map<String, String> packages = parse("pnpm-lock.yaml", """
+            lockfileVersion: '6.0'
+
+            dependencies:
+              express:
+                specifier: ^4.18.0
+                version: 4.18.2
+
+            packages:
+
+              /express@4.18.2:
+                resolution: {integrity: sha512-abc}
+                dependencies:
+                  debug: 2.6.9
+
+              /@nestjs/core@10.2.0(reflect-metadata@0.1.13):
+                resolution: {integrity: sha512-def}
+
+              /mongodb/6.3.0_snappy@7.2.2:
+                resolution: {integrity: sha512-ghi}
+            """);
+        assertEquals(Map.of("express", "4.18.2", "@nestjs/core", "10.2.0", "mongodb", "6.3.0"), packages);
+    }
+
+    @Test
+    void testParsesCargoLock() throws Exception {
+        Map<String, String> packages = parse("Cargo.lock", """
+            version = 3
+
+            [[package]]
+            name = "actix-web"
+            version = "4.4.0"
+            dependencies = [
+             "actix-http",
+            ]
+
+            [[package]]
+            name = "serde"
+            version = "1.0.193"
+            """);
+        assertEquals(Map.of("actix-web", "4.4.0", "serde", "1.0.193"), packages);
+    }
+
+    @Test
+    void testStreamsLargePackageLock() throws Exception {
+        Path file = tempDir.resolve("package-lock.json");
+        int count = 200_000;
+        try (Writer writer = Files.newBufferedWriter(file)) {
+            writer.write("{\"lockfileVersion\": 3, \"packages\": {\"\": {\"name\": \"app\"}");
+            for (int i = 0; i < count; i++) {
+                writer.write(",\"node_modules/pkg-" + i + "\": {\"version\": \"1.0." + i + "\","
+                    + " \"resolved\": \"https://registry.npmjs.org/pkg-" + i + "/-/pkg-" + i + "-1.0.0.tgz\"}");
+            }
+            writer.write("}}");
+        }
+        assertTrue(Files.size(file) > 10_000_000);
+
+        int[] seen = {0};
+        assertTrue(LockfileParser.parse(file, (name, version) -> seen[0]++));
+        assertEquals(count, seen[0]);
+    }
+
+    @Test
+    void testRejectsMalformedLockfile() throws Exception {
+        Path file = Files.writeString(tempDir.resolve("package-lock.json"), "[1, 2");
+        assertFalse(LockfileParser.parse(file, (name, version) -> fail()));
+        assertFalse(LockfileParser.isLockfile("package.json"));
+    }
+}
@@ -0,0 +1,180 @@
+package com.odin.detection;
+
+import org.junit.jupiter.api.Test;
+import java.nio.file.Path;
+import static org.junit.jupiter.api.Assertions.*;
+
+class ManifestParserTest {
+
+    private static DependencyIndex parse(String fileName, String content) {
+        DependencyIndex index = new DependencyIndex();
+        assertTrue(ManifestParser.parse(Path.of(fileName), content, index));
+        return index;
+    }
+
+    @Test
+    void testParsesPom() {
+        DependencyIndex index = parse("pom.xml", """
+            <project xmlns="http://maven.apache.org/POM/4.0.0">
+                <parent>
+                    <groupId>org.springframework.boot</groupId>
+                    <artifactId>spring-boot-starter-parent</artifactId>
+                    <version>3.2.0</version>
+                </parent>
+                <dependencies>
+                    <dependency>
+                        <groupId>org.postgresql</groupId>
+                        <artifactId>postgresql</artifactId>
+                        <version>42.7.1</version>
+                    </dependency>
+                </dependencies>
+            </project>
+            """);
+
+        assertEquals("3.2.0", index.getVersion("org.springframework.boot:spring-boot-starter-parent"));
+        assertEquals("42.7.1", index.getVersion("org.postgresql:postgresql"));
+        assertTrue(index.matches("org.springframework.boot:*"));
+        assertEquals("java", index.getLanguage());
+    }
+
+    @Test
+    void testResolvesProjectGroupAndDefaultsOnlyPluginGroups() {
+        DependencyIndex index = parse("pom.xml", """
+            <project xmlns="http://maven.apache.org/POM/4.0.0">
+                <parent>
+                    <groupId>com.acme</groupId>
+                    <artifactId>acme-parent</artifactId>
+                    <version>1.0</version>
+                </parent>
+                <artifactId>orders</artifactId>
+                <dependencies>
+                    <dependency>
+                        <groupId>${project.groupId}</groupId>
+                        <artifactId>acme-common</artifactId>
+                        <version>${project.version}</version>
+                    </dependency>
+                    <dependency>
+                        <groupId>${spring.group}</groupId>
+                        <artifactId>spring-web</artifactId>
+                    </dependency>
+                    <dependency>
+                        <artifactId>no-group</artifactId>
+                    </dependency>
+                </dependencies>
+                <build>
+                    <plugins>
+                        <plugin>
+                            <artifactId>maven-surefire-plugin</artifactId>
+                        </plugin>
+                    </plugins>
+                </build>
+            </project>
+            """);
+
+        assertTrue(index.contains("com.acme:acme-common"));
+        assertEquals("", index.getVersion("com.acme:acme-common"));
+        assertTrue(index.contains("org.apache.maven.plugins:maven-surefire-plugin"));
+        assertFalse(index.contains("org.apache.maven.plugins:no-group"));
+        assertFalse(index.contains("${spring.group}:spring-web"));
+        assertFalse(index.matches("${*"));
+    }
+
+    @Test
+    void testParsesGradle() {
+        DependencyIndex index = parse("build.gradle.kts", """
+            dependencies {
+                implementation("io.ktor:ktor-server-core:2.3.7")
+                testImplementation 'org.junit.jupiter:junit-jupiter'
+            }
+            """);
+
+        assertEquals("2.3.7", index.getVersion("io.ktor:ktor-server-core"));
+        assertTrue(index.contains("org.junit.jupiter:junit-jupiter"));
+        assertEquals("kotlin", index.getLanguage());
+    }
+
+    @Test
+    void testParsesPackageJsonAndComposer() {
+        DependencyIndex npm = parse("package.json",
+            "{\"dependencies\": {\"next\": \"14.0.0\"}, \"devDependencies\": {\"jest\": \"^29\"}}");
+        assertEquals("14.0.0", npm.getVersion("next"));
+        assertTrue(npm.contains("jest"));
+
+        DependencyIndex composer = parse("composer.json", "{\"require\": {\"laravel/framework\": \"^10.0\"}}");
+        assertEquals("^10.0", composer.getVersion("laravel/framework"));
+    }
+
+    @Test
+    void testParsesRequirementsAndPyproject() {
+        DependencyIndex requirements = parse("requirements.txt", """
+            # web
+            Flask[async]==2.0.1
+            psycopg2_binary>=2.9 ; python_version > "3.7"
+            -r dev.txt
+            """);
+        assertEquals("==2.0.1", requirements.getVersion("flask"));
+        assertTrue(requirements.contains("psycopg2-binary"));
+        assertEquals(2, requirements.size());
+
+        DependencyIndex pyproject = parse("pyproject.toml", """
+            [project]
+            dependencies = [
+                "fastapi>=0.100",  # api
+                "redis",
+            ]
+
+            [tool.poetry.dependencies]
+            python = "^3.11"
+            boto3 = { version = "^1.28" }
+            """);
+        assertTrue(pyproject.contains("fastapi"));
+        assertTrue(pyproject.contains("redis"));
+        assertEquals("^1.28", pyproject.getVersion("boto3"));
+        assertFalse(pyproject.contains("python"));
+    }
+
+    @Test
+    void testParsesGoModCargoAndGemfile() {
+        DependencyIndex go = parse("go.mod", """
+            module example.com/test
+
+            require github.com/lib/pq v1.10.9
+            require (
+                github.com/gin-gonic/gin v1.7.7
+                github.com/redis/go-redis/v9 v9.3.0 // indirect
+            )
+            """);
+        assertEquals("v1.7.7", go.getVersion("github.com/gin-gonic/gin"));
+        assertTrue(go.contains("github.com/lib/pq"));
+        assertTrue(go.matches("github.com/redis/go-redis*"));
+
+        DependencyIndex cargo = parse("Cargo.toml", """
+            [package]
+            name = "demo"
+            version = "0.1.0"
+
+            [dependencies]
+            actix-web = "4"
+            serde = { version = "1.0", features = ["derive"] }
+
+            [dependencies.tokio-postgres]
+            version = "0.7"
+            """);
+        assertEquals("4", cargo.getVersion("actix-web"));
+        assertEquals("1.0", cargo.getVersion("serde"));
+        assertEquals("0.7", cargo.getVersion("tokio-postgres"));
+        assertFalse(cargo.contains("name"));
+
+        DependencyIndex gems = parse("Gemfile", "source 'https://rubygems.org'\ngem 'rails', '~> 7.1'\ngem \"pg\"\n");
+        assertEquals("~> 7.1", gems.getVersion("rails"));
+        assertTrue(gems.contains("pg"));
+    }
+
+    @Test
+    void testRejectsMalformedManifest() {
+        DependencyIndex index = new DependencyIndex();
+        assertFalse(ManifestParser.parse(Path.of("package.json"), "{not json", index));
+        assertFalse(ManifestParser.parse(Path.of("README.md"), "# readme", index));
+        assertNull(index.getLanguage());
+    }
+}
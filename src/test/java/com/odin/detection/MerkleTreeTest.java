@@ -0,0 +1,43 @@
+package com.odin.detection;
+
+import org.junit.jupiter.api.Test;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import static org.junit.jupiter.api.Assertions.*;
+
+class MerkleTreeTest {
+    private static final Path ROOT = Path.of("/project");
+
+    @Test
+    void testFingerprintDoesNotDependOnWalkOrder() {
+        MerkleTree walked = MerkleTree.build(ROOT, files("pom.xml", "src/main/App.java", "src/test/AppTest.java"),
+            new long[] {1, 2, 3});
+        MerkleTree reordered = MerkleTree.build(ROOT, files("src/test/AppTest.java", "pom.xml", "src/main/App.java"),
+            new long[] {3, 1, 2});
+
+        assertEquals(walked.getFingerprint(), reordered.getFingerprint());
+        assertEquals(4, walked.getDirectories().size());
+        assertNotEquals(walked.getFingerprint(),
+            MerkleTree.build(ROOT, files("pom.xml", "src/main/App.java", "src/test/AppTest.java"),
+                new long[] {1, 2, 4}).getFingerprint());
+    }
+
+    @Test
+    void testComparesTopDownToTheChangedDirectories() {
+        MerkleTree before = MerkleTree.build(ROOT,
+            files("README.md", "services/api/main.go", "services/web/index.js", "docs/old.md"),
+            new long[] {1, 2, 3, 4});
+        MerkleTree after = MerkleTree.build(ROOT,
+            files("README.md", "services/api/main.go", "services/web/index.js", "tools/gen.py"),
+            new long[] {1, 2, 5, 6});
+
+        assertEquals(List.of("docs", "services/web", "tools"), after.changedSince(before.getDirectories()));
+        assertEquals(List.of(), after.changedSince(after.getDirectories()));
+        assertEquals(List.of(), after.changedSince(null));
+    }
+
+    private static List<Path> files(String... paths) {
+        return Arrays.stream(paths).map(ROOT::resolve).toList();
+    }
+}
@@ -0,0 +1,80 @@
+package com.odin.detection;
+
+import com.odin.llm.LLMClient;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+class RuleRegistryTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testBundledRulesCoverBuiltInTables() {
+        RuleRegistry rules = RuleRegistry.bundled();
+
+        assertTrue(rules.getLanguages().contains("java"));
+        assertEquals("nestjs", rules.getFrameworkDependencies().get(0).getKey());
+        assertEquals(5432, rules.getDatabasePorts().get("postgresql"));
+        assertEquals(rules.getContentRuleNames().size(), rules.getMatcher().getRuleCount());
+        assertSame(rules, RuleRegistry.bundled());
+    }
+
+    @Test
+    void testUserPackAddsInHouseFramework() throws Exception {
+        Path userRules = Files.createDirectories(tempDir.resolve("rules"));
+        Files.writeString(userRules.resolve("acme.json"), """
+            {
+              "frameworks": {"acmeweb": "AcmeServer\\\\.start"},
+              "frameworkDependencies": [{"name": "acmeweb", "dependencies": ["com.acme:acme-web"]}],
+              "databases": {"broken": "(unclosed"},
+              "appPorts": {"acmeweb": 9000}
+            }
+            """);
+        Path project = Files.createDirectories(tempDir.resolve("project"));
+        Files.writeString(project.resolve("Main.java"), "class Main { void run() { AcmeServer.start(); } }\n");
+
+        RuleRegistry rules = RuleRegistry.load(userRules, null);
+        Stack stack = new StackDetector(mock(LLMClient.class), rules).detectStack(project);
+
+        assertEquals("acmeweb", stack.getFramework());
+        assertEquals(9000, stack.getAppPort());
+        assertEquals("acmeweb", rules.getFrameworkDependencies().get(0).getKey());
+        assertFalse(rules.getContentRuleNames().contains("broken"));
+        assertNotEquals(RuleRegistry.bundled().getId(), rules.getId());
+    }
+
+    @Test
+    void testReusesCachedCompiledRules() throws Exception {
+        Path cacheDir = tempDir.resolve("cache");
+        RuleRegistry compiled = RuleRegistry.load(null, cacheDir);
+        Path cached = cacheDir.resolve("matcher-" + compiled.getId() + ".bin");
+        assertTrue(Files.isRegularFile(cached));
+
+        RuleRegistry restored = RuleRegistry.load(null, cacheDir);
+        byte[] content = "import redis\nfrom flask import Flask\n".getBytes(StandardCharsets.UTF_8);
+        assertEquals(compiled.getMatcher().match(content, content.length),
+            restored.getMatcher().match(content, content.length));
+
+        // A corrupt cache entry is recompiled rather than trusted
+        Files.write(cached, new byte[] {1, 2, 3});
+        RuleRegistry recompiled = RuleRegistry.load(null, cacheDir);
+        assertEquals(compiled.getMatcher().match(content, content.length),
+            recompiled.getMatcher().match(content, content.length));
+        assertTrue(Files.size(cached) > 3);
+    }
+
+    @Test
+    void testMissingUserRulesAreIgnored() {
+        RuleRegistry rules = RuleRegistry.load(tempDir.resolve("absent"), null);
+
+        assertEquals(RuleRegistry.bundled().getId(), rules.getId());
+        assertEquals(List.copyOf(RuleRegistry.bundled().getContentRuleNames()), rules.getContentRuleNames());
+    }
+}
@@ -1,12 +1,31 @@
 package com.odin.detection;
 
+import com.odin.llm.LLMClient;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
 
 public class StackDetectorTest {
     private StackDetector detector;
@@ -143,6 +162,563 @@ public class StackDetectorTest {
         assertTrue(stack.getDatabases().isEmpty());
     }
     
+    @Test
+    void testScanStatsReportFilesAndBytes() throws Exception {
+        Files.writeString(tempDir.resolve("requirements.txt"), "flask==2.0.1\n");
+        Files.writeString(tempDir.resolve("app.py"), "print('hello')\n");
+        
+        detector.detectStack(tempDir);
+        ScanStats stats = detector.getLastScanStats();
+        
+        assertNotNull(stats);
+        assertEquals(2, stats.getFiles());
+        // requirements.txt names the framework, so app.py is never read
+        assertEquals("flask==2.0.1\n".length(), stats.getBytes());
+        assertTrue(stats.getElapsedNanos() > 0);
+    }
+    
+    @Test
+    void testWeighsLanguagesByBytes() throws Exception {
+        Files.writeString(tempDir.resolve("run.py"), "print('tool')\n");
+        Path src = Files.createDirectories(tempDir.resolve("src/main/java/app"));
+        for (int i = 0; i < 3; i++) {
+            Files.writeString(src.resolve("Service" + i + ".java"), "class Service" + i + " {}\n".repeat(10));
+        }
+        
+        Stack stack = detector.detectStack(tempDir);
+        
+        // The shallow script loses to the bulk of the sources
+        assertEquals("java", stack.getLanguage());
+        assertEquals(List.of("java", "python"), List.copyOf(stack.getLanguageBreakdown().keySet()));
+        assertTrue(stack.getLanguageConfidence() > 0.9);
+        assertEquals(4, detector.getLastScanStats().getFiles());
+    }
+    
+    @Test
+    void testReportsLowConfidenceForMixedSources() throws Exception {
+        Files.writeString(tempDir.resolve("main.go"), "package main\n".repeat(10));
+        Files.writeString(tempDir.resolve("tool.py"), "print('tool')\n".repeat(10));
+        
+        Stack stack = detector.detectStack(tempDir);
+        
+        assertEquals(2, stack.getLanguageBreakdown().size());
+        assertTrue(stack.getLanguageConfidence() < 0.6);
+    }
+    
+    @Test
+    void testRecordsEvidenceAndConfidence() throws Exception {
+        Path src = Files.createDirectories(tempDir.resolve("src"));
+        Files.writeString(src.resolve("cache.js"), "// cache\nconst redis = require('redis');\n");
+        Files.writeString(src.resolve("session.js"), "const client = redis.createClient();\n");
+        Files.writeString(tempDir.resolve("README.md"), "# Demo\n\nA Cassandra backend is planned.\n");
+        
+        Stack stack = detector.detectStack(tempDir);
+        
+        assertEquals(List.of("cassandra", "redis"), stack.getDatabases());
+        assertEquals(List.of(Path.of("src", "cache.js") + ":2", Path.of("src", "session.js") + ":1"),
+            stack.getEvidence().get("database:redis"));
+        assertEquals(List.of("README.md:3"), stack.getEvidence().get("database:cassandra"));
+        assertEquals(0.75, stack.getConfidence("database", "redis"), 1e-9);
+        // A mention in documentation alone is too weak to act upon
+        assertEquals(List.of("database:cassandra"), stack.getWeakDetections());
+        assertEquals(List.of("redis"), stack.getConfidentDatabases());
+    }
+    
+    @Test
+    void testDependenciesAreCertainEvidence() throws Exception {
+        Files.writeString(tempDir.resolve("requirements.txt"), "flask==2.0.1\npsycopg2-binary==2.9.9\n");
+        
+        Stack stack = detector.detectStack(tempDir);
+        
+        assertEquals(1.0, stack.getConfidence("framework", "flask"));
+        assertEquals(List.of("dependency psycopg2-binary"), stack.getEvidence().get("database:postgresql"));
+        assertTrue(stack.getWeakDetections().isEmpty());
+    }
+    
+    @Test
+    void testFileBudgetScansEntrypointsFirst() throws Exception {
+        for (int i = 0; i < 20; i++) {
+            Path dir = Files.createDirectories(tempDir.resolve("lib/pkg" + i));
+            Files.writeString(dir.resolve("helper.py"), "import redis\n");
+        }
+        Files.writeString(tempDir.resolve("app.py"), "from flask import Flask\n");
+        
+        detector.setMaxFiles(1);
+        Stack stack = detector.detectStack(tempDir);
+        
+        assertTrue(stack.isTruncated());
+        assertEquals("flask", stack.getFramework());
+        assertTrue(stack.getDatabases().isEmpty());
+        assertEquals("from flask import Flask\n".length(), detector.getLastScanStats().getBytes());
+    }
+    
+    @Test
+    void testTruncatedStackIsNotCached(@TempDir Path cacheDir) throws Exception {
+        writeAged(tempDir.resolve("app.py"), "from flask import Flask\n");
+        writeAged(tempDir.resolve("cache.py"), "import redis\n");
+        detector.setCacheDirectory(cacheDir);
+        
+        detector.setMaxScanTime(java.time.Duration.ZERO);
+        Stack truncated = detector.detectStack(tempDir);
+        assertTrue(truncated.isTruncated());
+        assertEquals("unknown", truncated.getFramework());
+        
+        detector.setMaxScanTime(null);
+        Stack complete = detector.detectStack(tempDir);
+        assertFalse(complete.isTruncated());
+        assertEquals("flask", complete.getFramework());
+        assertEquals(List.of("redis"), complete.getDatabases());
+    }
+    
+    @Test
+    void testRunWithoutSourceScanKeepsCachedFileEntries(@TempDir Path cacheDir) throws Exception {
+        writeAged(tempDir.resolve("app.py"), "from flask import Flask\n");
+        writeAged(tempDir.resolve("cache.py"), "import redis\n");
+        detector.setCacheDirectory(cacheDir);
+        detector.detectStack(tempDir);
+        
+        // The framework now comes from the manifest, so no source is scanned
+        Path requirements = writeAged(tempDir.resolve("requirements.txt"), "flask==2.0.1\nredis==5.0\n");
+        assertEquals("flask", detector.detectStack(tempDir).getFramework());
+        
+        Files.delete(requirements);
+        Stack stack = detector.detectStack(tempDir);
+        assertEquals(List.of("redis"), stack.getDatabases());
+        assertEquals(0, detector.getLastScanStats().getBytes());
+    }
+    
+    @Test
+    void testFileBudgetCountsOnlyFilesReadFromDisk(@TempDir Path cacheDir) throws Exception {
+        writeAged(tempDir.resolve("app.py"), "from flask import Flask\n");
+        writeAged(tempDir.resolve("cache.py"), "import redis\n");
+        detector.setCacheDirectory(cacheDir);
+        detector.detectStack(tempDir);
+        
+        writeAged(tempDir.resolve("db.py"), "import psycopg2\n");
+        detector.setMaxFiles(1);
+        Stack stack = detector.detectStack(tempDir);
+        
+        assertFalse(stack.isTruncated());
+        assertEquals("flask", stack.getFramework());
+        assertTrue(stack.getDatabases().contains("redis"));
+        assertEquals("import psycopg2\n".length(), detector.getLastScanStats().getBytes());
+    }
+    
+    @Test
+    void testTruncatedScanKeepsUnvisitedCacheEntries(@TempDir Path cacheDir) throws Exception {
+        writeAged(tempDir.resolve("app.py"), "from flask import Flask\n");
+        writeAged(tempDir.resolve("cache.py"), "import redis\n");
+        detector.setCacheDirectory(cacheDir);
+        detector.detectStack(tempDir);
+        
+        writeAged(tempDir.resolve("db.py"), "import psycopg2\n");
+        detector.setMaxScanTime(java.time.Duration.ZERO);
+        assertTrue(detector.detectStack(tempDir).isTruncated());
+        
+        detector.setMaxScanTime(null);
+        Stack stack = detector.detectStack(tempDir);
+        assertFalse(stack.isTruncated());
+        assertEquals("flask", stack.getFramework());
+        assertEquals("import psycopg2\n".length(), detector.getLastScanStats().getBytes());
+    }
+    
+    @Test
+    void testSkipsDenyListedDirectories() throws Exception {
+        Files.writeString(tempDir.resolve("app.py"), "print('hello')\n");
+        Path module = Files.createDirectories(tempDir.resolve("node_modules/express"));
+        Files.writeString(module.resolve("index.js"), "module.exports = require('express');\n");
+        
+        Stack stack = detector.detectStack(tempDir);
+        
+        assertEquals("python", stack.getLanguage());
+        assertEquals("unknown", stack.getFramework());
+        assertEquals(1, detector.getLastScanStats().getFiles());
+    }
+    
+    @Test
+    void testHonorsGitignoreAndDockerignore() throws Exception {
+        Files.writeString(tempDir.resolve(".gitignore"), "# build output\n*.log\ngenerated/\n!keep.log\n");
+        Files.writeString(tempDir.resolve(".dockerignore"), "secrets\n");
+        Files.writeString(tempDir.resolve("main.go"), "package main\n");
+        Files.writeString(tempDir.resolve("debug.log"), "redis connection refused\n");
+        Files.writeString(tempDir.resolve("keep.log"), "started\n");
+        Path generated = Files.createDirectories(tempDir.resolve("src/generated"));
+        Files.writeString(generated.resolve("client.go"), "// mongodb client\n");
+        Path secrets = Files.createDirectories(tempDir.resolve("secrets"));
+        Files.writeString(secrets.resolve("db.env"), "DATABASE_URL=postgres://\n");
+        
+        Stack stack = detector.detectStack(tempDir);
+        
+        assertTrue(stack.getDatabases().isEmpty());
+        // .gitignore, .dockerignore, main.go and keep.log
+        assertEquals(4, detector.getLastScanStats().getFiles());
+    }
+    
+    @Test
+    void testSkipsInvalidIgnorePatterns() throws Exception {
+        Files.writeString(tempDir.resolve(".gitignore"), "[z-a]\n[]\n*.log\n");
+        Files.writeString(tempDir.resolve("main.go"), "package main\n");
+        Files.writeString(tempDir.resolve("debug.log"), "redis connection refused\n");
+        
+        Stack stack = detector.detectStack(tempDir);
+        
+        assertEquals("go", stack.getLanguage());
+        assertTrue(stack.getDatabases().isEmpty());
+        // .gitignore and main.go
+        assertEquals(2, detector.getLastScanStats().getFiles());
+    }
+    
+    @Test
+    void testCustomDenyList() throws Exception {
+        Files.writeString(tempDir.resolve("main.go"), "package main\n");
+        Path tools = Files.createDirectories(tempDir.resolve("tools"));
+        Files.writeString(tools.resolve("seed.py"), "import redis\n");
+        
+        detector.setDenyList(java.util.List.of("tools"));
+        Stack stack = detector.detectStack(tempDir);
+        
+        assertTrue(stack.getDatabases().isEmpty());
+        assertEquals(1, detector.getLastScanStats().getFiles());
+    }
+    
+    @Test
+    void testSkipsBinaryContent() throws Exception {
+        Files.writeString(tempDir.resolve("main.go"), "package main\n");
+        byte[] binary = "\0\0\0redis mongodb postgres".getBytes();
+        Files.write(tempDir.resolve("cache.idx"), binary);
+        Files.write(tempDir.resolve("logo.png"), "redis".getBytes());
+        
+        Stack stack = detector.detectStack(tempDir);
+        
+        assertTrue(stack.getDatabases().isEmpty());
+        assertEquals(3, detector.getLastScanStats().getFiles());
+        assertEquals("package main\n".length(), detector.getLastScanStats().getBytes());
+    }
+    
+    @Test
+    void testReadsOnlyBoundedPrefixOfLargeFiles() throws Exception {
+        StringBuilder bundle = new StringBuilder("const redis = require('redis');\n");
+        while (bundle.length() < 2 * ContentReader.DEFAULT_MAX_BYTES) {
+            bundle.append("var a=function(){return 1};");
+        }
+        bundle.append("\nconst mongo = require('mongodb');\n");
+        Files.writeString(tempDir.resolve("bundle.min.js"), bundle.toString());
+        
+        Stack stack = detector.detectStack(tempDir);
+        
+        assertTrue(stack.getDatabases().contains("redis"));
+        assertFalse(stack.getDatabases().contains("mongodb"));
+        assertEquals(ContentReader.DEFAULT_MAX_BYTES, detector.getLastScanStats().getBytes());
+    }
+    
+    @Test
+    void testResolvesStackFromManifestsWithoutReadingSources() throws Exception {
+        String packageJson = "{\"dependencies\": {\"@nestjs/core\": \"^10\", \"express\": \"^4\", \"pg\": \"^8\"},"
+            + " \"devDependencies\": {\"jest\": \"^29\"}}";
+        Files.writeString(tempDir.resolve("package.json"), packageJson);
+        Path src = Files.createDirectories(tempDir.resolve("src"));
+        Files.writeString(src.resolve("main.ts"), "const mongo = require('mongodb');\n");
+        
+        Stack stack = detector.detectStack(tempDir);
+        
+        assertEquals("nestjs", stack.getFramework());
+        assertEquals(List.of("postgresql"), stack.getDatabases());
+        assertEquals(List.of("jest"), stack.getTestingFrameworks());
+        assertEquals(packageJson.length(), detector.getLastScanStats().getBytes());
+    }
+    
+    @Test
+    void testFallsBackToSourcesWhenManifestsDoNotNameFramework() throws Exception {
+        Files.writeString(tempDir.resolve("requirements.txt"), "redis==5.0\n");
+        Files.writeString(tempDir.resolve("app.py"), "from flask import Flask\n");
+        
+        Stack stack = detector.detectStack(tempDir);
+        
+        assertEquals("flask", stack.getFramework());
+        assertEquals(List.of("redis"), stack.getDatabases());
+    }
+    
+    @Test
+    void testResolvesFrameworkFromLockfileBeforeScanningSources() throws Exception {
+        Files.writeString(tempDir.resolve("package.json"), "{\"dependencies\": {\"@acme/server\": \"^1\"}}");
+        Files.writeString(tempDir.resolve("yarn.lock"), "express@^4.0.0:\n  version \"4.18.2\"\n");
+        Files.writeString(tempDir.resolve("app.js"), "const redis = require('redis');\n");
+        
+        Stack stack = detector.detectStack(tempDir);
+        
+        assertEquals("nodejs", stack.getFramework());
+        assertTrue(stack.getDatabases().isEmpty());
+    }
+    
+    @Test
+    void testDetectsEachServiceOfMonorepo() throws Exception {
+        Files.writeString(tempDir.resolve("package.json"), "{\"devDependencies\": {\"prettier\": \"^3\"}}");
+        Path api = Files.createDirectories(tempDir.resolve("services/api"));
+        Files.writeString(api.resolve("go.mod"), "module api\n\nrequire github.com/gin-gonic/gin v1.9.1\n");
+        Files.writeString(api.resolve("main.go"), "package main\n");
+        Path worker = Files.createDirectories(tempDir.resolve("services/worker"));
+        Files.writeString(worker.resolve("requirements.txt"), "fastapi==0.104\nredis==5.0\n");
+        Path web = Files.createDirectories(tempDir.resolve("web"));
+        Files.writeString(web.resolve("package.json"), "{\"dependencies\": {\"next\": \"14.0.0\"}}");
+        Files.writeString(web.resolve("index.ts"), "export default {};\n");
+        
+        List<Stack> stacks = detector.detectServices(tempDir);
+        
+        assertEquals(3, stacks.size());
+        assertEquals(Path.of("services/api").toString(), stacks.get(0).getPath());
+        assertEquals("go", stacks.get(0).getLanguage());
+        assertEquals("gin", stacks.get(0).getFramework());
+        assertEquals("python", stacks.get(1).getLanguage());
+        assertEquals("fastapi", stacks.get(1).getFramework());
+        assertEquals(List.of("redis"), stacks.get(1).getDatabases());
+        assertEquals("web", stacks.get(2).getPath());
+        assertEquals("typescript", stacks.get(2).getLanguage());
+        assertEquals("nextjs", stacks.get(2).getFramework());
+        assertEquals(6, detector.getLastScanStats().getFiles());
+    }
+    
+    @Test
+    void testSingleServiceProjectIsItsOwnService() throws Exception {
+        Files.writeString(tempDir.resolve("requirements.txt"), "django==4.2\n");
+        Files.writeString(tempDir.resolve("manage.py"), "import django\n");
+        
+        List<Stack> stacks = detector.detectServices(tempDir);
+        
+        assertEquals(1, stacks.size());
+        assertEquals(".", stacks.get(0).getPath());
+        assertEquals("django", stacks.get(0).getFramework());
+    }
+    
+    @Test
+    void testCacheSkipsUnchangedFiles(@TempDir Path cacheDir) throws Exception {
+        writeAged(tempDir.resolve("package.json"), "{\"dependencies\": {\"express\": \"^4.17.1\"}}");
+        writeAged(tempDir.resolve("db.js"), "const mongo = require('mongodb');");
+        detector.setCacheDirectory(cacheDir);
+        
+        Stack first = detector.detectStack(tempDir);
+        assertTrue(detector.getLastScanStats().getBytes() > 0);
+        
+        Stack second = detector.detectStack(tempDir);
+        assertEquals(0, detector.getLastScanStats().getBytes());
+        assertEquals(first.getFramework(), second.getFramework());
+        assertEquals(first.getDatabases(), second.getDatabases());
+    }
+    
+    @Test
+    void testCacheRereadsOnlyChangedFiles(@TempDir Path cacheDir) throws Exception {
+        writeAged(tempDir.resolve("index.js"), "console.log('ready');");
+        Path db = writeAged(tempDir.resolve("db.js"), "const mongo = require('mongodb');");
+        detector.setCacheDirectory(cacheDir);
+        detector.detectStack(tempDir);
+        
+        String changed = "const redis = require('redis');";
+        writeAged(db, changed);
+        Stack stack = new StackDetector().detectStack(tempDir);
+        detector.setCacheDirectory(cacheDir);
+        Stack cached = detector.detectStack(tempDir);
+        
+        assertEquals(changed.length(), detector.getLastScanStats().getBytes());
+        assertEquals(stack.getDatabases(), cached.getDatabases());
+        assertEquals(List.of("redis"), cached.getDatabases());
+    }
+    
+    @Test
+    void testDetectsDemandedAspectsOnlyAndDefersTheRest() throws Exception {
+        String requirements = "pytest==8.0\n";
+        String app = "from flask import Flask\nimport redis\n";
+        Files.writeString(tempDir.resolve("requirements.txt"), requirements);
+        Files.writeString(tempDir.resolve("app.py"), app);
+        
+        Stack named = detector.detectStack(tempDir, EnumSet.of(Stack.Aspect.LANGUAGE, Stack.Aspect.BUILD_TOOL));
+        assertEquals("python", named.getLanguage());
+        assertEquals(0, detector.getLastScanStats().getBytes());
+        
+        Stack stack = detector.detectStack(tempDir, EnumSet.of(Stack.Aspect.TESTING_FRAMEWORKS));
+        assertEquals(List.of("pytest"), stack.getTestingFrameworks());
+        assertEquals(requirements.length(), detector.getLastScanStats().getBytes());
+        assertFalse(stack.isDetected(Stack.Aspect.FRAMEWORK));
+        
+        // The first read of a deferred aspect detects all of them in one pass over the sources
+        assertEquals("flask", stack.getFramework());
+        assertEquals(app.length(), detector.getLastScanStats().getBytes());
+        assertTrue(stack.isDetected(Stack.Aspect.DATABASES));
+        assertEquals(detector.detectStack(tempDir), stack);
+    }
+    
+    @Test
+    void testFailedDeferredDetectionIsRetriedAndComparisonNeverLoads() {
+        AtomicInteger loads = new AtomicInteger();
+        Stack stack = new Stack();
+        stack.defer(EnumSet.of(Stack.Aspect.DATABASES), (target, aspects) -> {
+            if (loads.incrementAndGet() == 1) {
+                throw new IllegalStateException("scan failed");
+            }
+            target.setDatabases(new ArrayList<>(List.of("redis")));
+        });
+        
+        assertNotEquals(new Stack(), stack);
+        stack.hashCode();
+        assertEquals(0, loads.get());
+        
+        assertThrows(IllegalStateException.class, stack::getDatabases);
+        assertFalse(stack.isDetected(Stack.Aspect.DATABASES));
+        assertEquals(List.of("redis"), stack.getDatabases());
+        assertTrue(stack.isDetected(Stack.Aspect.DATABASES));
+        assertEquals(2, loads.get());
+    }
+    
+    @Test
+    void testConfidentStackSkipsAIFallback() throws Exception {
+        Files.writeString(tempDir.resolve("requirements.txt"), "flask==2.0.1\n");
+        Files.writeString(tempDir.resolve("app.py"), "from flask import Flask\n");
+        LLMClient llm = mock(LLMClient.class);
+        StackDetector aiDetector = new StackDetector(llm);
+        aiDetector.setAiFallbackThreshold(StackDetector.DEFAULT_AI_FALLBACK_THRESHOLD);
+        
+        assertEquals("flask", aiDetector.detectStack(tempDir).getFramework());
+        verify(llm, never()).generateText(anyString());
+    }
+    
+    @Test
+    void testUncertainStackMergesBudgetedAIAnalysis() throws Exception {
+        Files.writeString(tempDir.resolve("Main.java"), "class Main { void run() { Router.listen(7070); } }\n");
+        Files.writeString(tempDir.resolve("Data.java"), "class Data {\n" + "    int x;\n".repeat(5000) + "}\n");
+        LLMClient llm = mock(LLMClient.class);
+        when(llm.generateText(anyString())).thenReturn("Framework: Javalin (Java)\nDatabases: Redis, none\nPort: 7070\n");
+        StackDetector aiDetector = new StackDetector(llm);
+        aiDetector.setAiFallbackThreshold(StackDetector.DEFAULT_AI_FALLBACK_THRESHOLD);
+        aiDetector.setAiTokenBudget(500);
+        
+        Stack stack = aiDetector.detectStack(tempDir);
+        
+        assertEquals("javalin", stack.getFramework());
+        assertEquals(List.of("redis"), stack.getDatabases());
+        assertEquals(7070, stack.getAppPort());
+        assertEquals(6379, stack.getDatabasePort("redis"));
+        assertEquals(0.5, stack.getConfidence("framework", "javalin"), 1e-9);
+        assertEquals(List.of("llm analysis"), stack.getEvidence().get("database:redis"));
+        
+        ArgumentCaptor<String> prompt = ArgumentCaptor.forClass(String.class);
+        verify(llm).generateText(prompt.capture());
+        assertTrue(prompt.getValue().contains("Router.listen(7070)"));
+        assertTrue(prompt.getValue().length() < 3000);
+    }
+    
+    @Test
+    void testWeakDetectionOfAspectTheLLMDoesNotAnswerSkipsAIFallback() throws Exception {
+        Files.writeString(tempDir.resolve("app.py"), "from flask import Flask\n");
+        Files.writeString(tempDir.resolve("views.py"), "from flask import render_template\n");
+        Files.writeString(tempDir.resolve("deploy.py"), "# runs on heroku\n");
+        LLMClient llm = mock(LLMClient.class);
+        StackDetector aiDetector = new StackDetector(llm);
+        aiDetector.setAiFallbackThreshold(StackDetector.DEFAULT_AI_FALLBACK_THRESHOLD);
+        
+        Stack stack = aiDetector.detectStack(tempDir);
+        
+        assertEquals(0.75, stack.getConfidence("framework", "flask"), 1e-9);
+        assertEquals(0.5, stack.getConfidence("cloud", "heroku"), 1e-9);
+        verify(llm, never()).generateText(anyString());
+    }
+    
+    @Test
+    void testAIAmendedStackIsNotCached(@TempDir Path cacheDir) throws Exception {
+        writeAged(tempDir.resolve("Main.java"), "class Main { void run() { Router.listen(7070); } }\n");
+        LLMClient llm = mock(LLMClient.class);
+        when(llm.generateText(anyString())).thenReturn("Framework: javalin\nDatabases: none\nPort: 7070\n");
+        StackDetector aiDetector = new StackDetector(llm);
+        aiDetector.setAiFallbackThreshold(StackDetector.DEFAULT_AI_FALLBACK_THRESHOLD);
+        aiDetector.setCacheDirectory(cacheDir);
+        assertEquals("javalin", aiDetector.detectStack(tempDir).getFramework());
+        
+        detector.setCacheDirectory(cacheDir);
+        assertEquals("unknown", detector.detectStack(tempDir).getFramework());
+        
+        // Nor is the static stack of a run without the LLM served to one that would ask it
+        assertEquals("javalin", aiDetector.detectStack(tempDir).getFramework());
+        verify(llm, times(2)).generateText(anyString());
+    }
+    
+    @Test
+    void testDetectsStackFromReleaseTarball() throws Exception {
+        Path archive = tempDir.resolve("myapp-1.0.tar.gz");
+        Map<String, String> files = new LinkedHashMap<>();
+        files.put("myapp-1.0/requirements.txt", "flask==2.0.1\n");
+        files.put("myapp-1.0/app.py", "import redis\nfrom flask import Flask\n");
+        files.put("myapp-1.0/node_modules/lib/index.js", "require('mongodb');\n");
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(archive))) {
+            ArchiveReaderTest.writeTar(out, files);
+        }
+        
+        Stack stack = detector.detectStack(archive);
+        
+        assertEquals("python", stack.getLanguage());
+        assertEquals("flask", stack.getFramework());
+        assertEquals(List.of("redis"), stack.getDatabases());
+        assertEquals(List.of("myapp-1.0/app.py:1"), stack.getEvidence().get("database:redis"));
+        assertEquals(2, detector.getLastScanStats().getFiles());
+    }
+    
+    @Test
+    void testDetectsStackFromFatJarLibraries() throws Exception {
+        Path archive = tempDir.resolve("app.jar");
+        try (ZipOutputStream jar = new ZipOutputStream(Files.newOutputStream(archive))) {
+            jar.putNextEntry(new ZipEntry("BOOT-INF/classes/com/acme/App.class"));
+            jar.write(new byte[] {(byte) 0xCA, (byte) 0xFE, (byte) 0xBA, (byte) 0xBE, 0, 0});
+            jar.putNextEntry(new ZipEntry("BOOT-INF/lib/spring-boot-3.1.0.jar"));
+            jar.write(library("org.springframework.boot", "spring-boot", "3.1.0"));
+            jar.putNextEntry(new ZipEntry("BOOT-INF/lib/jedis-4.4.0.jar"));
+            jar.write(library("redis.clients", "jedis", "4.4.0"));
+        }
+        
+        Stack stack = detector.detectStack(archive);
+        
+        assertEquals("java", stack.getLanguage());
+        assertEquals("spring", stack.getFramework());
+        assertEquals(List.of("redis"), stack.getDatabases());
+        assertEquals(1.0, stack.getConfidence("database", "redis"));
+    }
+    
+    /**
+     * Builds a library jar carrying only its Maven coordinates.
+     */
+    private static byte[] library(String groupId, String artifactId, String version) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream jar = new ZipOutputStream(bytes)) {
+            jar.putNextEntry(new ZipEntry("META-INF/maven/" + groupId + "/" + artifactId + "/pom.properties"));
+            jar.write(("groupId=" + groupId + "\nartifactId=" + artifactId + "\nversion=" + version + "\n")
+                .getBytes(StandardCharsets.UTF_8));
+            jar.putNextEntry(new ZipEntry("META-INF/maven/" + groupId + "/" + artifactId + "/pom.xml"));
+            jar.write("<project><dependencies><dependency><groupId>org.mongodb</groupId><artifactId>mongodb-driver-sync</artifactId></dependency></dependencies></project>"
+                .getBytes(StandardCharsets.UTF_8));
+        }
+        return bytes.toByteArray();
+    }
+    
+    @Test
+    void testIdenticalFilesAreMatchedOnceAndAttributedToEachCopy() throws Exception {
+        Files.writeString(tempDir.resolve("app.py"), "from flask import Flask\n");
+        for (String service : List.of("billing", "orders", "users")) {
+            Path client = Files.createDirectories(tempDir.resolve(service).resolve("generated"));
+            Files.writeString(client.resolve("cache.py"), "import redis\n");
+        }
+        
+        Stack stack = detector.detectStack(tempDir);
+        
+        assertEquals(2, detector.getLastScanStats().getDuplicates());
+        assertEquals(List.of("billing/generated/cache.py:1", "orders/generated/cache.py:1", "users/generated/cache.py:1"),
+            stack.getEvidence().get("database:redis").stream().sorted().toList());
+        assertEquals(0.875, stack.getConfidence("database", "redis"), 1e-9);
+    }
+    
+    /**
+     * Writes a file with a modification time outside the cache's racy window.
+     */
+    private static Path writeAged(Path file, String content) throws Exception {
+        Files.writeString(file, content);
+        Files.setLastModifiedTime(file, FileTime.from(Instant.now().minus(1, ChronoUnit.HOURS)));
+        return file;
+    }
+    
     @Test
     void testDetectEmptyDirectory() {
         assertThrows(IllegalArgumentException.class, () -> {
@@ -0,0 +1,105 @@
+package com.odin.detection;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.junit.jupiter.api.Assertions.*;
+
+class StackWatcherTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testReportsStackOnlyWhenItChanges() throws Exception {
+        Files.writeString(tempDir.resolve("index.js"), "console.log('ready');");
+        BlockingQueue<Stack> changes = new LinkedBlockingQueue<>();
+
+        try (StackWatcher watcher = new StackWatcher(new StackDetector(), tempDir, Duration.ofMillis(100))) {
+            Stack initial = watcher.start();
+            assertTrue(initial.getDatabases().isEmpty());
+
+            Thread thread = new Thread(() -> {
+                try {
+                    watcher.watch(changes::add);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            thread.start();
+
+            // A change that does not affect detection is not reported
+            Files.writeString(tempDir.resolve("README.md"), "# Demo");
+            assertNull(changes.poll(1, TimeUnit.SECONDS));
+
+            Path src = Files.createDirectory(tempDir.resolve("src"));
+            Thread.sleep(300);
+            Files.writeString(src.resolve("db.js"), "const redis = require('redis');");
+
+            Stack changed = changes.poll(10, TimeUnit.SECONDS);
+            assertNotNull(changed);
+            assertTrue(changed.getDatabases().contains("redis"));
+            assertEquals(changed, watcher.getCurrent());
+
+            watcher.close();
+            thread.join(5000);
+            assertFalse(thread.isAlive());
+        }
+    }
+
+    @Test
+    void testIgnoresChurnInIgnoredPathsAndFollowsIgnoreFileEdits() throws Exception {
+        Files.writeString(tempDir.resolve(".gitignore"), "*.log\nbuild/\n");
+        Files.writeString(tempDir.resolve("index.js"), "console.log('ready');");
+        Path build = Files.createDirectory(tempDir.resolve("build"));
+        AtomicInteger detections = new AtomicInteger();
+        StackDetector detector = new StackDetector() {
+            @Override
+            Stack detectStack(Path projectDir, DetectionCache cache) throws java.io.IOException {
+                detections.incrementAndGet();
+                return super.detectStack(projectDir, cache);
+            }
+        };
+        BlockingQueue<Stack> changes = new LinkedBlockingQueue<>();
+
+        try (StackWatcher watcher = new StackWatcher(detector, tempDir, Duration.ofMillis(100))) {
+            watcher.start();
+            Thread thread = new Thread(() -> {
+                try {
+                    watcher.watch(changes::add);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            thread.start();
+
+            // Ignored by .gitignore: no re-detection at all
+            Files.writeString(tempDir.resolve("server.log"), "redis connection refused\n");
+            Thread.sleep(1000);
+            assertEquals(1, detections.get());
+
+            // Un-ignoring build/ starts watching it
+            Files.writeString(tempDir.resolve(".gitignore"), "*.log\n");
+            long deadline = System.currentTimeMillis() + 10_000;
+            while (detections.get() < 2 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(50);
+            }
+            assertEquals(2, detections.get());
+            Thread.sleep(300);
+            Files.writeString(build.resolve("db.js"), "const redis = require('redis');");
+
+            Stack changed = changes.poll(10, TimeUnit.SECONDS);
+            assertNotNull(changed);
+            assertTrue(changed.getDatabases().contains("redis"));
+
+            watcher.close();
+            thread.join(5000);
+        }
+    }
+}
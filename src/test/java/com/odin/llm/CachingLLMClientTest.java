@@ -0,0 +1,142 @@
+package com.odin.llm;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import static org.junit.jupiter.api.Assertions.*;
+
+class CachingLLMClientTest {
+    private static final long SLOW_GENERATION_NANOS = 5_000_000_000L;
+
+    @TempDir
+    Path cacheDir;
+
+    @Test
+    void testServesRepeatedRequestsFromDisk() throws Exception {
+        CountingClient ollama = new CountingClient("codellama");
+        ResponseCache cache = new ResponseCache(cacheDir, Duration.ofDays(1), 1 << 20);
+
+        String first = new CachingLLMClient(ollama, "ollama", cache, false)
+            .generateInfrastructureCode("Generate a Dockerfile\r\nfor node  \n", "dockerfile");
+        // A new run: a new client over the same directory
+        LLMClient warm = new CachingLLMClient(ollama, "ollama", cache, false);
+        String second = warm.generateInfrastructureCode("Generate a Dockerfile\nfor node", "dockerfile");
+        String async = warm.generateInfrastructureCodeAsync("Generate a Dockerfile\nfor node", "dockerfile").get();
+
+        assertEquals(first, second);
+        assertEquals(first, async);
+        assertEquals(1, ollama.calls);
+
+        warm.generateInfrastructureCode("Generate a Dockerfile\nfor node", "docker-compose");
+        warm.generateText("Generate a Dockerfile\nfor node", Map.of("temperature", 0.2));
+        new CachingLLMClient(new CountingClient("llama3"), "ollama", cache, false)
+            .generateInfrastructureCode("Generate a Dockerfile\nfor node", "dockerfile");
+        assertEquals(3, ollama.calls);
+        try (Stream<Path> entries = Files.list(cacheDir)) {
+            assertEquals(4, entries.count());
+        }
+    }
+
+    @Test
+    void testRefreshReplacesCachedResponses() {
+        CountingClient gemini = new CountingClient(null);
+        ResponseCache cache = new ResponseCache(cacheDir, Duration.ofDays(1), 1 << 20);
+        new CachingLLMClient(gemini, "gemini", cache, false).generateText("Explain the stack", Map.of());
+
+        String refreshed = new CachingLLMClient(gemini, "gemini", cache, true).generateText("Explain the stack", Map.of());
+        String cached = new CachingLLMClient(gemini, "gemini", cache, false).generateText("Explain the stack", Map.of());
+
+        assertEquals(2, gemini.calls);
+        assertEquals("response 2", refreshed);
+        assertEquals(refreshed, cached);
+    }
+
+    @Test
+    void testCacheHitReportsItsOwnGenerationStats() {
+        CountingClient ollama = new CountingClient("codellama");
+        ResponseCache cache = new ResponseCache(cacheDir, Duration.ofDays(1), 1 << 20);
+        LLMClient client = new CachingLLMClient(ollama, "ollama", cache, false);
+        List<GenerationStats> reported = new ArrayList<>();
+
+        client.streamText("Explain the stack", Map.of(), token -> { }, reported::add);
+        String cached = client.streamText("Explain the stack", Map.of(), token -> { }, reported::add);
+
+        assertEquals(1, ollama.calls);
+        assertEquals(2, reported.size());
+        assertEquals(SLOW_GENERATION_NANOS, reported.get(0).getElapsedNanos());
+        assertEquals(0, reported.get(1).getElapsedNanos());
+        assertEquals(0, reported.get(1).getTimeToFirstTokenNanos());
+        assertEquals(cached.length(), reported.get(1).getCharacters());
+    }
+
+    @Test
+    void testExpiresAndEvictsLeastRecentlyUsedEntries() throws Exception {
+        String old = ResponseCache.key("ollama", "codellama", "text", "old", Map.of());
+        String used = ResponseCache.key("ollama", "codellama", "text", "used", Map.of());
+        String unused = ResponseCache.key("ollama", "codellama", "text", "unused", Map.of());
+        ResponseCache cache = new ResponseCache(cacheDir, Duration.ofDays(1), 1 << 20);
+        cache.put(old, "ollama", "codellama", "stale");
+        assertNull(new ResponseCache(cacheDir, Duration.ZERO, 1 << 20).get(old));
+        assertFalse(Files.exists(cacheDir.resolve(old + ".json")));
+
+        cache.put(used, "ollama", "codellama", "x".repeat(400));
+        cache.put(unused, "ollama", "codellama", "y".repeat(400));
+        Files.setLastModifiedTime(cacheDir.resolve(used + ".json"), FileTime.fromMillis(1000));
+        Files.setLastModifiedTime(cacheDir.resolve(unused + ".json"), FileTime.fromMillis(2000));
+        assertNotNull(cache.get(used));
+
+        long entrySize = Files.size(cacheDir.resolve(used + ".json"));
+        ResponseCache bounded = new ResponseCache(cacheDir, Duration.ofDays(1), 2 * entrySize + entrySize / 2);
+        bounded.put(old, "ollama", "codellama", "z".repeat(400));
+
+        assertNotNull(bounded.get(used));
+        assertNotNull(bounded.get(old));
+        assertNull(bounded.get(unused));
+    }
+
+    private static final class CountingClient implements LLMClient {
+        private final String model;
+        private int calls;
+
+        CountingClient(String model) {
+            this.model = model;
+        }
+
+        @Override
+        public String generateText(String prompt) {
+            return generateText(prompt, Map.of());
+        }
+
+        @Override
+        public String generateText(String prompt, Map<String, Object> parameters) {
+            return "response " + ++calls;
+        }
+
+        @Override
+        public String generateInfrastructureCode(String prompt, String type) {
+            return "FROM node:20 # " + ++calls;
+        }
+
+        @Override
+        public String streamText(String prompt, Map<String, Object> parameters, Consumer<String> onToken,
+                                 Consumer<GenerationStats> onStats) {
+            String text = generateText(prompt, parameters);
+            onToken.accept(text);
+            onStats.accept(new GenerationStats(SLOW_GENERATION_NANOS / 2, SLOW_GENERATION_NANOS, 1, text.length()));
+            return text;
+        }
+
+        @Override
+        public String getModel() {
+            return model;
+        }
+    }
+}
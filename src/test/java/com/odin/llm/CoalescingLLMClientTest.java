@@ -0,0 +1,175 @@
+package com.odin.llm;
+
+import org.junit.jupiter.api.Test;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.junit.jupiter.api.Assertions.*;
+
+class CoalescingLLMClientTest {
+
+    @Test
+    void testIdenticalConcurrentRequestsShareOneCall() throws Exception {
+        PendingClient ollama = new PendingClient();
+        SingleFlight inFlight = new SingleFlight();
+        List<CompletableFuture<String>> services = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            // One client per service, as the generators create them
+            LLMClient client = new CoalescingLLMClient(ollama, "ollama", inFlight);
+            services.add(client.generateInfrastructureCodeAsync("Generate a Terraform provider.tf file for AWS.", "terraform"));
+        }
+        CompletableFuture<String> variables = new CoalescingLLMClient(ollama, "ollama", inFlight)
+            .generateInfrastructureCodeAsync("Generate a Terraform variables.tf file for AWS.", "terraform");
+
+        assertEquals(2, ollama.calls.size());
+        assertEquals(2, inFlight.size());
+        ollama.calls.get(0).complete("provider \"aws\" {}");
+        ollama.calls.get(1).complete("variable \"region\" {}");
+
+        for (CompletableFuture<String> service : services) {
+            assertEquals("provider \"aws\" {}", service.get(1, TimeUnit.SECONDS));
+        }
+        assertEquals("variable \"region\" {}", variables.get(1, TimeUnit.SECONDS));
+        assertEquals(0, inFlight.size());
+
+        // Completed requests are not remembered
+        new CoalescingLLMClient(ollama, "ollama", inFlight)
+            .generateInfrastructureCodeAsync("Generate a Terraform provider.tf file for AWS.", "terraform");
+        assertEquals(3, ollama.calls.size());
+    }
+
+    @Test
+    void testCallIsCancelledOnlyOnceEveryWaiterCancelled() {
+        PendingClient ollama = new PendingClient();
+        SingleFlight inFlight = new SingleFlight();
+        LLMClient client = new CoalescingLLMClient(ollama, "ollama", inFlight);
+        CompletableFuture<String> first = client.generateTextAsync("Explain the stack", Map.of());
+        CompletableFuture<String> second = client.generateTextAsync("Explain the stack", Map.of());
+
+        first.cancel(true);
+        assertFalse(ollama.calls.get(0).isCancelled());
+        assertFalse(second.isDone());
+
+        second.cancel(true);
+        assertTrue(ollama.calls.get(0).isCancelled());
+        assertEquals(0, inFlight.size());
+    }
+
+    @Test
+    void testBlockingCallersWaitForTheLeader() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger generations = new AtomicInteger();
+        LLMClient slow = new PendingClient() {
+            @Override
+            public String generateInfrastructureCode(String prompt, String type) {
+                generations.incrementAndGet();
+                started.countDown();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return "FROM node:20";
+            }
+        };
+        SingleFlight inFlight = new SingleFlight();
+        CompletableFuture<String> leader = CompletableFuture.supplyAsync(() ->
+            new CoalescingLLMClient(slow, "ollama", inFlight).generateInfrastructureCode("Dockerfile", "dockerfile"));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        CompletableFuture<String> follower = new CompletableFuture<>();
+        Thread followerThread = new Thread(() -> follower.complete(
+            new CoalescingLLMClient(slow, "ollama", inFlight).generateInfrastructureCode("Dockerfile", "dockerfile")));
+        followerThread.start();
+        // Parked once it waits for the leader
+        while (followerThread.getState() != Thread.State.WAITING && !follower.isDone()) {
+            Thread.sleep(5);
+        }
+        CompletableFuture<String> asyncFollower = new CoalescingLLMClient(slow, "ollama", inFlight)
+            .generateInfrastructureCodeAsync("Dockerfile", "dockerfile");
+
+        release.countDown();
+
+        assertEquals("FROM node:20", leader.get(5, TimeUnit.SECONDS));
+        assertEquals("FROM node:20", follower.get(5, TimeUnit.SECONDS));
+        assertEquals("FROM node:20", asyncFollower.get(5, TimeUnit.SECONDS));
+        assertEquals(1, generations.get());
+    }
+
+    @Test
+    void testRequestIsStartedOutsideTheLock() throws Exception {
+        SingleFlight inFlight = new SingleFlight();
+        CompletableFuture<String> other = new CompletableFuture<>();
+
+        // Another request, on another thread, gets through while this one is being started
+        CompletableFuture<String> started = inFlight.async("slow", () -> {
+            CompletableFuture.runAsync(() -> other.complete(inFlight.blocking("other", () -> "other")));
+            assertEquals("other", other.orTimeout(5, TimeUnit.SECONDS).join());
+            return CompletableFuture.completedFuture("slow");
+        });
+
+        assertEquals("slow", started.get(5, TimeUnit.SECONDS));
+        assertEquals(0, inFlight.size());
+    }
+
+    @Test
+    void testLeaderErrorReachesFollowersAndClearsTheRequest() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        SingleFlight inFlight = new SingleFlight();
+        CompletableFuture<Void> leader = CompletableFuture.runAsync(() -> inFlight.blocking("Dockerfile", () -> {
+            started.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            throw new OutOfMemoryError("response too large");
+        }));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        CompletableFuture<String> follower = inFlight.async("Dockerfile", () -> fail("joins the leader"));
+
+        release.countDown();
+
+        ExecutionException error = assertThrows(ExecutionException.class, () -> follower.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(OutOfMemoryError.class, error.getCause());
+        assertThrows(ExecutionException.class, () -> leader.get(5, TimeUnit.SECONDS));
+        assertEquals(0, inFlight.size());
+    }
+
+    private static class PendingClient implements LLMClient {
+        final List<CompletableFuture<String>> calls = new ArrayList<>();
+
+        @Override
+        public String generateText(String prompt) {
+            return generateText(prompt, Map.of());
+        }
+
+        @Override
+        public String generateText(String prompt, Map<String, Object> parameters) {
+            return generateTextAsync(prompt, parameters).join();
+        }
+
+        @Override
+        public CompletableFuture<String> generateTextAsync(String prompt, Map<String, Object> parameters) {
+            CompletableFuture<String> call = new CompletableFuture<>();
+            calls.add(call);
+            return call;
+        }
+
+        @Override
+        public String generateInfrastructureCode(String prompt, String type) {
+            return generateInfrastructureCodeAsync(prompt, type).join();
+        }
+
+        @Override
+        public CompletableFuture<String> generateInfrastructureCodeAsync(String prompt, String type) {
+            return generateTextAsync(prompt, Map.of());
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.odin.llm;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.Test;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.junit.jupiter.api.Assertions.*;
+
+class GeminiClientTest {
+
+    @Test
+    void testStreamTextReadsServerSentEvents() throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        List<String> queries = new ArrayList<>();
+        server.createContext("/v1beta/models/gemini-2.0-flash:streamGenerateContent", exchange -> {
+            queries.add(exchange.getRequestURI().getQuery());
+            exchange.getResponseHeaders().add("Content-Type", "text/event-stream");
+            exchange.sendResponseHeaders(200, 0);
+            try (OutputStream body = exchange.getResponseBody()) {
+                for (String event : List.of(
+                        "data: {\"candidates\":[{\"content\":{\"parts\":[{\"text\":\"services:\\n\"}]}}]}\r\n\r\n",
+                        ": keep-alive\n\n",
+                        "data: {\"candidates\":[{\"content\":{\"parts\":\n"
+                            + "data: [{\"text\":\"  web:\"},{\"text\":\" {}\"}]}}]}\n\n")) {
+                    body.write(event.getBytes(StandardCharsets.UTF_8));
+                    body.flush();
+                }
+            }
+        });
+        server.start();
+        try {
+            GeminiClient client = new GeminiClient("test-key",
+                "http://127.0.0.1:" + server.getAddress().getPort() + "/v1beta/models/gemini-2.0-flash");
+            List<String> tokens = new ArrayList<>();
+            List<GenerationStats> reported = new ArrayList<>();
+
+            String text = client.streamText("Generate a compose file", Map.of(), tokens::add, reported::add);
+
+            assertEquals(List.of("services:\n", "  web:", " {}"), tokens);
+            assertEquals("services:\n  web: {}", text);
+            assertEquals("alt=sse&key=test-key", queries.get(0));
+            assertEquals(3, reported.get(0).getChunks());
+            assertTrue(reported.get(0).getTimeToFirstTokenNanos() >= 0);
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    void testStreamTextFailsOnAnErrorEvent() throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", exchange -> {
+            exchange.sendResponseHeaders(200, 0);
+            try (OutputStream body = exchange.getResponseBody()) {
+                body.write(("data: {\"candidates\":[{\"content\":{\"parts\":[{\"text\":\"FROM\"}]}}]}\n\n"
+                    + "data: {\"error\":{\"message\":\"quota exceeded\"}}\n\n").getBytes(StandardCharsets.UTF_8));
+            }
+        });
+        server.start();
+        try {
+            GeminiClient client = new GeminiClient("test-key",
+                "http://127.0.0.1:" + server.getAddress().getPort() + "/models/gemini");
+
+            RuntimeException e = assertThrows(RuntimeException.class,
+                () -> client.streamText("Generate a Dockerfile", Map.of(), token -> { }));
+
+            assertTrue(e.getCause().getMessage().contains("quota exceeded"));
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    void testMalformedResponseIsRetriedLikeAFailedRequest() throws Exception {
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        AtomicInteger requests = new AtomicInteger();
+        server.createContext("/", exchange -> {
+            // Every other response has a candidate without content
+            String body = requests.incrementAndGet() % 2 == 1
+                ? "{\"candidates\":[{\"finishReason\":\"OTHER\"}]}"
+                : "{\"candidates\":[{\"content\":{\"parts\":[{\"text\":\"FROM node:20\"}]}}]}";
+            byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        });
+        server.start();
+        try {
+            GeminiClient client = new GeminiClient("test-key",
+                "http://127.0.0.1:" + server.getAddress().getPort() + "/models/gemini");
+
+            assertEquals("FROM node:20", client.generateText("Generate a Dockerfile", Map.of()));
+            assertEquals(2, requests.get());
+            assertEquals("FROM node:20", client.generateTextAsync("Generate a Dockerfile", Map.of()).get(10, TimeUnit.SECONDS));
+            assertEquals(4, requests.get());
+        } finally {
+            server.stop(0);
+        }
+    }
+}
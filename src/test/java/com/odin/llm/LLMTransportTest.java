@@ -0,0 +1,36 @@
+package com.odin.llm;
+
+import okhttp3.OkHttpClient;
+import org.junit.jupiter.api.Test;
+import java.time.Duration;
+import static org.junit.jupiter.api.Assertions.*;
+
+class LLMTransportTest {
+
+    @Test
+    void testClientsOfOneEndpointShareTheirTransport() {
+        OkHttpClient generate = LLMTransport.client(new LLMTransport.Endpoint("http://llm.test:11434/api/generate",
+            Duration.ofSeconds(30), Duration.ofMinutes(5), 4, 3));
+        OkHttpClient chat = LLMTransport.client(new LLMTransport.Endpoint("http://llm.test:11434/api/chat",
+            Duration.ofSeconds(10), Duration.ofMinutes(1), 1, 1));
+
+        assertSame(generate, chat);
+        assertEquals(3, chat.dispatcher().getMaxRequestsPerHost());
+        assertEquals(30_000, chat.readTimeoutMillis());
+    }
+
+    @Test
+    void testEachEndpointHasItsOwnPoolAndDispatcher() {
+        OkHttpClient local = LLMTransport.client(new LLMTransport.Endpoint("http://local.test/",
+            Duration.ofSeconds(30), Duration.ofMinutes(5), 4, 2));
+        OkHttpClient remote = LLMTransport.client(new LLMTransport.Endpoint("https://remote.test/v1/generate",
+            Duration.ofSeconds(30), Duration.ofMinutes(2), 8, 16));
+
+        assertNotSame(local.connectionPool(), remote.connectionPool());
+        assertNotSame(local.dispatcher(), remote.dispatcher());
+        assertEquals(2, local.dispatcher().getMaxRequests());
+        assertEquals(16, remote.dispatcher().getMaxRequests());
+        assertEquals("https://remote.test:443", new LLMTransport.Endpoint("https://remote.test/x",
+            Duration.ofSeconds(1), Duration.ofSeconds(1), 1, 1).getOrigin());
+    }
+}
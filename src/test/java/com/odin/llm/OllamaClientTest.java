@@ -1,8 +1,20 @@
 package com.odin.llm;
 
+import com.sun.net.httpserver.HttpServer;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import okhttp3.OkHttpClient;
 import static org.junit.jupiter.api.Assertions.*;
 
 class OllamaClientTest {
@@ -40,4 +52,129 @@ class OllamaClientTest {
         // that doesn't make actual HTTP calls
         assertTrue(true);
     }
-} 
\ No newline at end of file
+
+    @Test
+    void testStreamTextDeliversTokensAsTheyArrive() throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        List<String> requests = new ArrayList<>();
+        server.createContext("/api/generate", exchange -> {
+            requests.add(new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8));
+            exchange.getResponseHeaders().add("Content-Type", "application/x-ndjson");
+            exchange.sendResponseHeaders(200, 0);
+            try (OutputStream body = exchange.getResponseBody()) {
+                for (String line : List.of(
+                        "{\"response\":\"FROM \",\"done\":false}",
+                        "{\"response\":\"eclipse-temurin\",\"done\":false}",
+                        "{\"response\":\"\",\"done\":true,\"eval_count\":2}")) {
+                    body.write((line + "\n").getBytes(StandardCharsets.UTF_8));
+                    body.flush();
+                }
+            }
+        });
+        server.start();
+        try {
+            OllamaClient client = new OllamaClient("codellama",
+                "http://127.0.0.1:" + server.getAddress().getPort() + "/api/generate");
+            List<String> tokens = new ArrayList<>();
+            List<GenerationStats> reported = new ArrayList<>();
+
+            String text = client.streamText("Generate a Dockerfile", Map.of(), tokens::add, reported::add);
+
+            assertEquals(List.of("FROM ", "eclipse-temurin"), tokens);
+            assertEquals("FROM eclipse-temurin", text);
+            assertTrue(requests.get(0).contains("\"stream\":true"));
+            assertEquals(1, reported.size());
+            GenerationStats stats = reported.get(0);
+            assertEquals(2, stats.getChunks());
+            assertEquals(20, stats.getCharacters());
+            assertTrue(stats.getTimeToFirstTokenNanos() >= 0);
+            assertTrue(stats.getElapsedNanos() >= stats.getTimeToFirstTokenNanos());
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    void testStreamTextFallsBackToTheWholeTextOnMockClient() {
+        List<String> tokens = new ArrayList<>();
+        List<GenerationStats> reported = new ArrayList<>();
+
+        String text = llmClient.streamText("Generate a Dockerfile for a Java Spring Boot application", Map.of(),
+            tokens::add, reported::add);
+
+        assertEquals(List.of(text), tokens);
+        assertTrue(reported.isEmpty());
+    }
+
+    @Test
+    void testGenerateTextAsyncRetriesWithoutBlockingTheCaller() throws Exception {
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        AtomicInteger requests = new AtomicInteger();
+        server.createContext("/api/generate", exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            if (requests.incrementAndGet() == 1) {
+                exchange.sendResponseHeaders(503, -1);
+                exchange.close();
+                return;
+            }
+            byte[] body = "{\"response\":\"```dockerfile\\nFROM node:20\\n```\",\"done\":true}".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+        try {
+            OllamaClient client = new OllamaClient("codellama",
+                "http://127.0.0.1:" + server.getAddress().getPort() + "/api/generate");
+
+            CompletableFuture<String> code = client.generateInfrastructureCodeAsync("Generate a Dockerfile", "dockerfile");
+
+            assertFalse(code.isDone());
+            assertEquals("FROM node:20", code.get(10, TimeUnit.SECONDS));
+            assertEquals(2, requests.get());
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    void testCancellingTheFutureCancelsTheCall() throws Exception {
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        CountDownLatch received = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        server.createContext("/api/generate", exchange -> {
+            received.countDown();
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.close();
+        });
+        server.setExecutor(java.util.concurrent.Executors.newCachedThreadPool());
+        server.start();
+        try {
+            String url = "http://127.0.0.1:" + server.getAddress().getPort() + "/api/generate";
+            OllamaClient client = new OllamaClient("codellama", url);
+            OkHttpClient transport = LLMTransport.client(new LLMTransport.Endpoint(url,
+                java.time.Duration.ofSeconds(1), java.time.Duration.ofSeconds(1), 1, 1));
+
+            CompletableFuture<String> text = client.generateTextAsync("Generate a Dockerfile", Map.of());
+            assertTrue(received.await(5, TimeUnit.SECONDS));
+            assertEquals(1, transport.dispatcher().runningCallsCount());
+
+            assertTrue(text.cancel(true));
+
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (transport.dispatcher().runningCallsCount() > 0 && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(0, transport.dispatcher().runningCallsCount());
+            assertTrue(text.isCancelled());
+        } finally {
+            release.countDown();
+            server.stop(0);
+        }
+    }
+}